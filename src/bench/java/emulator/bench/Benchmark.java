@@ -0,0 +1,165 @@
+package emulator.bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import emulator.vz200.VZ200;
+
+/**
+ * A single benchmark, run by the BenchmarkRunner in a number of
+ * warmup and measurement iterations, each of which yields a score.
+ *
+ * Throughput benchmarks repeat their workload for about the
+ * requested iteration time and report operations per time unit.
+ * Single shot benchmarks run their workload exactly once per
+ * iteration and report the time it took, such that one-time costs
+ * like construction and startup can be measured including their
+ * cold parts.
+ */
+public abstract class Benchmark
+{
+  public enum Mode
+  {
+    THROUGHPUT("thrpt"),
+    SINGLE_SHOT("ss");
+
+    private final String id;
+
+    private Mode(final String id)
+    {
+      this.id = id;
+    }
+
+    /**
+     * Returns the short identifier of the mode as used in the JSON
+     * output, compatible with JMH.
+     */
+    public String getId()
+    {
+      return id;
+    }
+  }
+
+  /**
+   * Results are added to this sink, such that the JIT compiler can
+   * not eliminate the benchmarked code as dead code.
+   */
+  private static volatile long sink;
+
+  private static final PrintStream NULL_OUT =
+    new PrintStream(OutputStream.nullOutputStream());
+
+  private final String name;
+  private final Mode mode;
+  private final String unit;
+
+  private Benchmark()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  protected Benchmark(final String name, final Mode mode, final String unit)
+  {
+    if (name == null) {
+      throw new NullPointerException("name");
+    }
+    if (mode == null) {
+      throw new NullPointerException("mode");
+    }
+    if (unit == null) {
+      throw new NullPointerException("unit");
+    }
+    this.name = name;
+    this.mode = mode;
+    this.unit = unit;
+  }
+
+  public String getName()
+  {
+    return name;
+  }
+
+  public Mode getMode()
+  {
+    return mode;
+  }
+
+  /**
+   * Returns the unit of this benchmark's scores, e.g. "ops/us".
+   */
+  public String getUnit()
+  {
+    return unit;
+  }
+
+  protected static void consume(final long value)
+  {
+    sink += value;
+  }
+
+  /**
+   * Runs the specified action with System.out discarded, since the
+   * emulator's constructors report their progress on System.out.
+   */
+  protected static void runQuietly(final Runnable action)
+  {
+    final PrintStream out = System.out;
+    System.setOut(NULL_OUT);
+    try {
+      action.run();
+    } finally {
+      System.setOut(out);
+    }
+  }
+
+  /**
+   * Creates a VZ200 without windows and audio lines.
+   * @throws IOException If the VZ200's ROM is not available.
+   */
+  protected static VZ200 createHeadlessVZ200() throws IOException
+  {
+    System.setProperty("java.awt.headless", "true");
+    final PrintStream out = System.out;
+    System.setOut(NULL_OUT);
+    try {
+      return new VZ200(true);
+    } finally {
+      System.setOut(out);
+    }
+  }
+
+  /**
+   * Prepares the workload before the first iteration.
+   * @throws IOException If a resource needed for this benchmark
+   * (e.g. the VZ200's ROM) is not available.  In that case, the
+   * benchmark is skipped.
+   */
+  public void setup() throws IOException
+  {
+  }
+
+  /**
+   * Runs a single iteration.
+   * @param iterationTime Approximate duration of the iteration in
+   * [ns].  Ignored by single shot benchmarks.
+   * @return The score of this iteration in units of getUnit().
+   */
+  public abstract double runIteration(long iterationTime);
+
+  /**
+   * Releases the workload after the last iteration, e.g. disposes
+   * machines created by setup(), such that they do not accumulate
+   * across benchmarks.
+   */
+  public void teardown()
+  {
+  }
+}
+
+/*
+  Local Variables:
+    coding:utf-8
+    mode:Java
+    End:
+*/
@@ -0,0 +1,319 @@
+package emulator.bench;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the emulator's benchmark suite and emits the results as JSON
+ * in the format of JMH's JSON result files, such that results can be
+ * tracked across builds with the usual JMH tooling.
+ *
+ * JMH itself is not used, since the build is Makefile based and must
+ * work without downloading dependencies.  Consequently, benchmarks
+ * run in the runner's JVM rather than in forked ones; run each
+ * benchmark in a JVM of its own by specifying its name, if
+ * interference between benchmarks (e.g. via JIT profiles) matters.
+ */
+public class BenchmarkRunner
+{
+  private static final int DEFAULT_WARMUP_ITERATIONS = 3;
+  private static final int DEFAULT_MEASUREMENT_ITERATIONS = 5;
+  private static final long DEFAULT_ITERATION_TIME = 1000; // [ms]
+
+  private static final String PACKAGE_PREFIX = "emulator.bench.";
+
+  /**
+   * Quantiles of Student's t distribution at 99.9% two-sided
+   * confidence for 1 to 10 degrees of freedom, as used by JMH.
+   */
+  private static final double[] T_QUANTILES = {
+    636.619, 31.599, 12.924, 8.610, 6.869,
+    5.959, 5.408, 5.041, 4.781, 4.587
+  };
+  private static final double Z_QUANTILE = 3.291;
+
+  private static class Result
+  {
+    private final Benchmark benchmark;
+    private final double[] scores;
+
+    public Result(final Benchmark benchmark, final double[] scores)
+    {
+      this.benchmark = benchmark;
+      this.scores = scores;
+    }
+
+    public double getScore()
+    {
+      double sum = 0.0;
+      for (final double score : scores) {
+        sum += score;
+      }
+      return sum / scores.length;
+    }
+
+    /**
+     * Returns the half width of the 99.9% confidence interval of
+     * the mean score, or NaN, if there are less than 2 scores.
+     */
+    public double getScoreError()
+    {
+      final int n = scores.length;
+      if (n < 2) {
+        return Double.NaN;
+      }
+      final double mean = getScore();
+      double sumOfSquares = 0.0;
+      for (final double score : scores) {
+        sumOfSquares += (score - mean) * (score - mean);
+      }
+      final double stdDev = Math.sqrt(sumOfSquares / (n - 1));
+      return tQuantile(n - 1) * stdDev / Math.sqrt(n);
+    }
+  }
+
+  private final List<Benchmark> benchmarks;
+  private int warmupIterations;
+  private int measurementIterations;
+  private long iterationTime;
+  private String outputFileName;
+  private final List<String> filters;
+
+  public BenchmarkRunner()
+  {
+    benchmarks = new ArrayList<Benchmark>();
+    for (final InstructionThroughput.Engine engine :
+           InstructionThroughput.Engine.values()) {
+      benchmarks.add(new InstructionThroughput(engine));
+    }
+    benchmarks.add(new MemoryBusAccess(false));
+    benchmarks.add(new MemoryBusAccess(true));
+    benchmarks.add(new RomBoot());
+    benchmarks.add(new CPUStartup());
+    warmupIterations = DEFAULT_WARMUP_ITERATIONS;
+    measurementIterations = DEFAULT_MEASUREMENT_ITERATIONS;
+    iterationTime = DEFAULT_ITERATION_TIME;
+    outputFileName = null;
+    filters = new ArrayList<String>();
+  }
+
+  private static double tQuantile(final int degreesOfFreedom)
+  {
+    if (degreesOfFreedom <= T_QUANTILES.length) {
+      return T_QUANTILES[degreesOfFreedom - 1];
+    }
+    // Cornish-Fisher expansion, accurate to 3 digits beyond 10
+    // degrees of freedom
+    final double z = Z_QUANTILE;
+    final double n = degreesOfFreedom;
+    return
+      z + (z * z * z + z) / (4 * n) +
+      (5 * Math.pow(z, 5) + 16 * z * z * z + 3 * z) / (96 * n * n);
+  }
+
+  private boolean isSelected(final Benchmark benchmark)
+  {
+    if (filters.isEmpty()) {
+      return true;
+    }
+    for (final String filter : filters) {
+      if (benchmark.getName().contains(filter)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Result run(final Benchmark benchmark)
+  {
+    System.out.printf("# Benchmark: %s%s (%s)%n",
+                      PACKAGE_PREFIX, benchmark.getName(),
+                      benchmark.getMode().getId());
+    try {
+      benchmark.setup();
+    } catch (final IOException e) {
+      System.out.printf("# Skipped: %s%n%n", e.getMessage());
+      return null;
+    }
+    final long iterationNanoTime = iterationTime * 1000000;
+    final double[] scores = new double[measurementIterations];
+    try {
+      for (int i = 0; i < warmupIterations; i++) {
+        final double score = benchmark.runIteration(iterationNanoTime);
+        System.out.printf("# Warmup Iteration %3d: %.3f %s%n",
+                          i + 1, score, benchmark.getUnit());
+      }
+      for (int i = 0; i < measurementIterations; i++) {
+        scores[i] = benchmark.runIteration(iterationNanoTime);
+        System.out.printf("Iteration %3d: %.3f %s%n",
+                          i + 1, scores[i], benchmark.getUnit());
+      }
+    } finally {
+      benchmark.teardown();
+    }
+    final Result result = new Result(benchmark, scores);
+    System.out.printf("Result: %.3f ±(99.9%%) %.3f %s%n%n",
+                      result.getScore(), result.getScoreError(),
+                      benchmark.getUnit());
+    return result;
+  }
+
+  private static String quote(final String text)
+  {
+    final StringBuilder s = new StringBuilder("\"");
+    for (int i = 0; i < text.length(); i++) {
+      final char ch = text.charAt(i);
+      if ((ch == '"') || (ch == '\\')) {
+        s.append('\\').append(ch);
+      } else if (ch < ' ') {
+        s.append(String.format("\\u%04x", (int)ch));
+      } else {
+        s.append(ch);
+      }
+    }
+    return s.append('"').toString();
+  }
+
+  private static String number(final double value)
+  {
+    return Double.isNaN(value) ? "\"NaN\"" : String.valueOf(value);
+  }
+
+  private void writeJson(final PrintWriter out, final List<Result> results)
+  {
+    out.println("[");
+    for (int i = 0; i < results.size(); i++) {
+      final Result result = results.get(i);
+      final Benchmark benchmark = result.benchmark;
+      final double score = result.getScore();
+      final double scoreError = result.getScoreError();
+      final String time =
+        benchmark.getMode() == Benchmark.Mode.THROUGHPUT ?
+        quote(iterationTime + " ms") : "null";
+      out.println("  {");
+      out.println("    \"benchmark\" : " +
+                  quote(PACKAGE_PREFIX + benchmark.getName()) + ",");
+      out.println("    \"mode\" : " +
+                  quote(benchmark.getMode().getId()) + ",");
+      out.println("    \"threads\" : 1,");
+      out.println("    \"forks\" : 0,");
+      out.println("    \"jvm\" : " +
+                  quote(System.getProperty("java.home")) + ",");
+      out.println("    \"jdkVersion\" : " +
+                  quote(System.getProperty("java.version")) + ",");
+      out.println("    \"warmupIterations\" : " + warmupIterations + ",");
+      out.println("    \"warmupTime\" : " + time + ",");
+      out.println("    \"measurementIterations\" : " +
+                  measurementIterations + ",");
+      out.println("    \"measurementTime\" : " + time + ",");
+      out.println("    \"primaryMetric\" : {");
+      out.println("      \"score\" : " + number(score) + ",");
+      out.println("      \"scoreError\" : " + number(scoreError) + ",");
+      out.println("      \"scoreConfidence\" : [ " +
+                  number(score - scoreError) + ", " +
+                  number(score + scoreError) + " ],");
+      out.println("      \"scoreUnit\" : " +
+                  quote(benchmark.getUnit()) + ",");
+      final StringBuilder rawData = new StringBuilder();
+      for (int j = 0; j < result.scores.length; j++) {
+        rawData.append(j > 0 ? ", " : "").append(number(result.scores[j]));
+      }
+      out.println("      \"rawData\" : [ [ " + rawData + " ] ]");
+      out.println("    },");
+      out.println("    \"secondaryMetrics\" : {");
+      out.println("    }");
+      out.println("  }" + (i < results.size() - 1 ? "," : ""));
+    }
+    out.println("]");
+  }
+
+  private void run() throws IOException
+  {
+    final List<Result> results = new ArrayList<Result>();
+    for (final Benchmark benchmark : benchmarks) {
+      if (isSelected(benchmark)) {
+        final Result result = run(benchmark);
+        if (result != null) {
+          results.add(result);
+        }
+      }
+    }
+    if (outputFileName != null) {
+      try (final PrintWriter out =
+           new PrintWriter(new OutputStreamWriter(new FileOutputStream(outputFileName),
+                                                  StandardCharsets.UTF_8))) {
+        writeJson(out, results);
+      }
+      System.out.println("wrote results to " + outputFileName);
+    } else {
+      final PrintWriter out = new PrintWriter(System.out);
+      writeJson(out, results);
+      out.flush();
+    }
+  }
+
+  private static void usage()
+  {
+    System.out.println("usage: BenchmarkRunner [-wi N] [-i N] [-r MS] " +
+                       "[-o FILE.json] [NAME...]");
+    System.out.println("  -wi N  number of warmup iterations (default: " +
+                       DEFAULT_WARMUP_ITERATIONS + ")");
+    System.out.println("  -i N   number of measurement iterations " +
+                       "(default: " + DEFAULT_MEASUREMENT_ITERATIONS + ")");
+    System.out.println("  -r MS  time per throughput iteration (default: " +
+                       DEFAULT_ITERATION_TIME + ")");
+    System.out.println("  -o FILE.json  write JSON results to file " +
+                       "rather than to stdout");
+    System.out.println("  NAME   run only benchmarks whose name contains NAME");
+    System.exit(1);
+  }
+
+  private static int parseCount(final String value, final int minValue)
+  {
+    try {
+      final int number = Integer.parseInt(value);
+      if (number >= minValue) {
+        return number;
+      }
+    } catch (final NumberFormatException e) {
+      // fall through to usage
+    }
+    usage();
+    return 0;
+  }
+
+  public static void main(final String argv[]) throws IOException
+  {
+    final BenchmarkRunner runner = new BenchmarkRunner();
+    for (int i = 0; i < argv.length; i++) {
+      final String arg = argv[i];
+      if (arg.equals("-wi") && (i + 1 < argv.length)) {
+        runner.warmupIterations = parseCount(argv[++i], 0);
+      } else if (arg.equals("-i") && (i + 1 < argv.length)) {
+        runner.measurementIterations = parseCount(argv[++i], 1);
+      } else if (arg.equals("-r") && (i + 1 < argv.length)) {
+        runner.iterationTime = parseCount(argv[++i], 1);
+      } else if (arg.equals("-o") && (i + 1 < argv.length)) {
+        runner.outputFileName = argv[++i];
+      } else if (arg.startsWith("-")) {
+        usage();
+      } else {
+        runner.filters.add(arg);
+      }
+    }
+    runner.run();
+    System.exit(0);
+  }
+}
+
+/*
+  Local Variables:
+    coding:utf-8
+    mode:Java
+    End:
+*/
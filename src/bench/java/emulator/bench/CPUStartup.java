@@ -0,0 +1,40 @@
+package emulator.bench;
+
+import emulator.z80.MemoryBus;
+import emulator.z80.Z80;
+
+/**
+ * Construction of the Z80 core, which is dominated by setting up the
+ * decode table and the dispatch tables, and thus by far the largest
+ * part of the emulator's startup time.
+ */
+public class CPUStartup extends Benchmark
+{
+  public CPUStartup()
+  {
+    super("CPUStartup", Mode.SINGLE_SHOT, "ms/op");
+  }
+
+  @Override
+  public double runIteration(final long iterationTime)
+  {
+    final MemoryBus memory = MemoryBus.createRAMMemoryBus(0, 65536);
+    final MemoryBus io = MemoryBus.createRAMMemoryBus(0, 256);
+    final long startTime = System.nanoTime();
+    final Z80[] z80 = new Z80[1];
+    runQuietly(() -> {
+        z80[0] = new Z80(memory, io, false);
+      });
+    final long time = System.nanoTime() - startTime;
+    consume(z80[0].getWallClockCycles());
+    z80[0].dispose();
+    return time * 1.0e-6;
+  }
+}
+
+/*
+  Local Variables:
+    coding:utf-8
+    mode:Java
+    End:
+*/
@@ -0,0 +1,106 @@
+package emulator.bench;
+
+import emulator.z80.CPU;
+import emulator.z80.MemoryBus;
+import emulator.z80.Z80;
+
+/**
+ * Raw instruction throughput of the Z80 core, i.e. the cost of
+ * fetchNextOperation() plus execute(), on a synthetic loop in plain
+ * RAM without any peripherals.  The loop mixes 8 bit arithmetic,
+ * memory writes, prefixed (CB and DD) operations and branches.
+ */
+public class InstructionThroughput extends Benchmark
+{
+  public enum Engine
+  {
+    DECODE_TABLE("table"),
+    SWITCH_DISPATCH("switch"),
+    TRANSLATION_CACHE("cached");
+
+    private final String id;
+
+    private Engine(final String id)
+    {
+      this.id = id;
+    }
+
+    public String getId()
+    {
+      return id;
+    }
+  }
+
+  private static final int[] LOOP = {
+    0x21, 0x00, 0x80, //       LD HL,8000
+    0x06, 0x00,       //       LD B,00
+    0x80,             // LOOP: ADD A,B
+    0x23,             //       INC HL
+    0x77,             //       LD (HL),A
+    0xcb, 0x27,       //       SLA A
+    0xdd, 0x7e, 0x01, //       LD A,(IX+01)
+    0x10, 0xf7,       //       DJNZ LOOP
+    0xc3, 0x00, 0x00  //       JP 0000
+  };
+
+  private static final int BATCH_SIZE = 10000;
+
+  private final Engine engine;
+  private Z80 z80;
+
+  public InstructionThroughput(final Engine engine)
+  {
+    super("InstructionThroughput." + engine.getId(),
+          Mode.THROUGHPUT, "ops/us");
+    this.engine = engine;
+  }
+
+  @Override
+  public void setup()
+  {
+    final MemoryBus memory = MemoryBus.createRAMMemoryBus(0, 65536);
+    final MemoryBus io = MemoryBus.createRAMMemoryBus(0, 256);
+    runQuietly(() -> {
+        z80 = new Z80(memory, io, engine != Engine.DECODE_TABLE);
+      });
+    z80.setTranslationCacheEnabled(engine == Engine.TRANSLATION_CACHE);
+    for (int i = 0; i < LOOP.length; i++) {
+      memory.writeByte(i, LOOP[i], 0);
+    }
+  }
+
+  @Override
+  public double runIteration(final long iterationTime)
+  {
+    final long startTime = System.nanoTime();
+    long instructions = 0;
+    long time;
+    try {
+      do {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+          z80.fetchNextOperation().execute();
+        }
+        instructions += BATCH_SIZE;
+        time = System.nanoTime() - startTime;
+      } while (time < iterationTime);
+    } catch (final CPU.MismatchException e) {
+      throw new InternalError(e.getMessage(), e);
+    }
+    consume(z80.getWallClockCycles());
+    return instructions * 1000.0 / time;
+  }
+
+  @Override
+  public void teardown()
+  {
+    z80.dispose();
+    z80 = null;
+  }
+}
+
+/*
+  Local Variables:
+    coding:utf-8
+    mode:Java
+    End:
+*/
@@ -0,0 +1,86 @@
+package emulator.bench;
+
+import java.io.IOException;
+
+import emulator.vz200.VZ200;
+import emulator.z80.MemoryBus;
+
+/**
+ * Memory bus accesses with the real VZ200 device set.  Reads sweep
+ * the whole address space, i.e. ROM, memory mapped I/O, video RAM
+ * and RAM, in proportion to their size; writes sweep video RAM and
+ * RAM.
+ */
+public class MemoryBusAccess extends Benchmark
+{
+  private static final int WRITE_START = 0x7000;
+
+  private final boolean write;
+  private VZ200 vz200;
+  private MemoryBus memoryBus;
+  private long wallClockTime;
+
+  public MemoryBusAccess(final boolean write)
+  {
+    super("MemoryBusAccess." + (write ? "write" : "read"),
+          Mode.THROUGHPUT, "ops/us");
+    this.write = write;
+  }
+
+  @Override
+  public void setup() throws IOException
+  {
+    vz200 = createHeadlessVZ200();
+    memoryBus = vz200.getMemoryBus();
+    wallClockTime = vz200.getZ80().getWallClockTime();
+  }
+
+  private long readSweep()
+  {
+    long sum = 0;
+    for (int address = 0; address < 0x10000; address++) {
+      sum += memoryBus.readByte(address, wallClockTime);
+    }
+    return sum;
+  }
+
+  private long writeSweep()
+  {
+    for (int address = WRITE_START; address < 0x10000; address++) {
+      memoryBus.writeByte(address, address & 0xff, wallClockTime);
+    }
+    return 0x10000 - WRITE_START;
+  }
+
+  @Override
+  public double runIteration(final long iterationTime)
+  {
+    final long startTime = System.nanoTime();
+    long accesses = 0;
+    long time;
+    do {
+      if (write) {
+        accesses += writeSweep();
+      } else {
+        consume(readSweep());
+        accesses += 0x10000;
+      }
+      time = System.nanoTime() - startTime;
+    } while (time < iterationTime);
+    return accesses * 1000.0 / time;
+  }
+
+  @Override
+  public void teardown()
+  {
+    vz200.dispose();
+    vz200 = null;
+  }
+}
+
+/*
+  Local Variables:
+    coding:utf-8
+    mode:Java
+    End:
+*/
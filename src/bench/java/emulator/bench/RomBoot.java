@@ -0,0 +1,108 @@
+package emulator.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import emulator.vz200.VZ200;
+import emulator.z80.MemoryBus;
+
+/**
+ * Boot of the VZ200's ROM until the BASIC prompt "READY" shows up
+ * in video RAM, executed as fast as possible on the calling thread.
+ * Each iteration restores a snapshot of the same machine as taken
+ * right after power-on, i.e. CPU, RAM, video RAM and I/O, such that
+ * each iteration boots from identical state, and construction of
+ * the machine is not part of the measurement (see CPUStartup for
+ * that).
+ */
+public class RomBoot extends Benchmark
+{
+  private static final int VIDEO_START = 0x7000;
+  private static final int VIDEO_TEXT_LENGTH = 0x0200;
+  private static final long CHECK_CYCLES = 10000;
+  private static final long MAX_BOOT_CYCLES = 100000000;
+  private static final String PROMPT = "READY";
+
+  private VZ200 vz200;
+  private MemoryBus memoryBus;
+  private byte[] powerOnSnapshot;
+
+  public RomBoot()
+  {
+    super("RomBoot", Mode.SINGLE_SHOT, "ms/op");
+  }
+
+  @Override
+  public void setup() throws IOException
+  {
+    vz200 = createHeadlessVZ200();
+    memoryBus = vz200.getMemoryBus();
+    final ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+    vz200.writeSnapshot(new DataOutputStream(snapshot));
+    powerOnSnapshot = snapshot.toByteArray();
+  }
+
+  /**
+   * Checks the video RAM's text screen for the prompt, ignoring the
+   * difference between normal and inverse characters.
+   */
+  private boolean promptVisible()
+  {
+    final long wallClockTime = vz200.getZ80().getWallClockTime();
+    int matched = 0;
+    for (int i = 0; i < VIDEO_TEXT_LENGTH; i++) {
+      final int charCode =
+        memoryBus.readByte(VIDEO_START + i, wallClockTime) & 0x3f;
+      if (charCode == (PROMPT.charAt(matched) & 0x3f)) {
+        if (++matched == PROMPT.length()) {
+          return true;
+        }
+      } else {
+        matched = (charCode == (PROMPT.charAt(0) & 0x3f)) ? 1 : 0;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public double runIteration(final long iterationTime)
+  {
+    try {
+      vz200.readSnapshot(new DataInputStream(
+        new ByteArrayInputStream(powerOnSnapshot)));
+    } catch (final IOException e) {
+      throw new InternalError("failed restoring power-on snapshot: " +
+                              e.getMessage(), e);
+    }
+    final long startTime = System.nanoTime();
+    long cycles = 0;
+    do {
+      if (cycles >= MAX_BOOT_CYCLES) {
+        throw new InternalError("BASIC prompt not reached within " +
+                                MAX_BOOT_CYCLES + " cycles");
+      }
+      vz200.runCycles(CHECK_CYCLES);
+      cycles += CHECK_CYCLES;
+    } while (!promptVisible());
+    final long time = System.nanoTime() - startTime;
+    consume(cycles);
+    return time * 1.0e-6;
+  }
+
+  @Override
+  public void teardown()
+  {
+    vz200.dispose();
+    vz200 = null;
+  }
+}
+
+/*
+  Local Variables:
+    coding:utf-8
+    mode:Java
+    End:
+*/
@@ -23,6 +23,8 @@ public class AudioFileSampler implements CassetteInputSampler
   private static final double INPUT_FILTER_ALPHA = 0.9;
 
   private final File file;
+  private final double speed;
+  private final double dcOffsetRatio;
   private final WallClockProvider wallClockProvider;
   private final long startWallClockTime;
   private final double framesPerNanoSecond;
@@ -58,6 +60,8 @@ public class AudioFileSampler implements CassetteInputSampler
     throws IOException
   {
     this.file = file;
+    this.speed = speed;
+    this.dcOffsetRatio = dcOffset;
     this.volume = volume < -1.0 ? -1.0 : (volume > 1.0 ? 1.0 : volume);
     this.dcOffset = (VALUE_HI - VALUE_LO) *
       ((dcOffset < 0.7 ? 0.7 : (dcOffset > 1.3 ? 1.3 : dcOffset)) - 1.0);
@@ -124,6 +128,45 @@ public class AudioFileSampler implements CassetteInputSampler
     return (short)value;
   }
 
+  @Override
+  public long getNextTransitionTime(final long wallClockTime)
+  {
+    final long time = wallClockTime - startWallClockTime;
+    if (time < 0) {
+      return startWallClockTime;
+    }
+    // the value changes whenever seek() reaches the next frame
+    final long frame = (long)(framesPerNanoSecond * time + 0.5);
+    final long nextTime =
+      startWallClockTime +
+      (long)Math.ceil((frame + 0.5) * nanoSecondsPerFrame);
+    return nextTime > wallClockTime ? nextTime : wallClockTime + 1;
+  }
+
+  public double getVolume()
+  {
+    return volume;
+  }
+
+  public double getSpeed()
+  {
+    return speed;
+  }
+
+  /**
+   * Returns the DC offset as specified on construction, i.e. as
+   * ratio relative to 1.0.
+   */
+  public double getDcOffset()
+  {
+    return dcOffsetRatio;
+  }
+
+  public long getStartWallClockTime()
+  {
+    return startWallClockTime;
+  }
+
   @Override
   public float getProgress()
   {
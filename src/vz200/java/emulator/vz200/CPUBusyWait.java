@@ -35,7 +35,19 @@ public class CPUBusyWait extends Box implements PreferencesChangeListener
     "  time.\n" +
     "</html>\n";
 
+  private static final String TOOL_TIP_HYBRID_WAIT =
+    "<html>\n" +
+    "  As a compromise between sleep and busy wait, the emulator<br />\n" +
+    "  can park its thread for the bulk of the waiting time, and<br />\n" +
+    "  busy wait only for a short tail, the length of which is<br />\n" +
+    "  calibrated against the parking precision of the host.<br />\n" +
+    "  This approach yields jitter close to that of busy wait<br />\n" +
+    "  at a CPU load close to that of sleeping.  It has no<br />\n" +
+    "  effect while busy wait is selected.\n" +
+    "</html>\n";
+
   private final JCheckBox cbBusyWait;
+  private final JCheckBox cbHybridWait;
   private boolean busyWait;
 
   public CPUBusyWait()
@@ -53,6 +65,16 @@ public class CPUBusyWait extends Box implements PreferencesChangeListener
         busyWaitChanged();
       });
     bxBusyWait.add(Box.createHorizontalGlue());
+    final Box bxHybridWait = new Box(BoxLayout.X_AXIS);
+    add(bxHybridWait);
+    cbHybridWait = new JCheckBox("Hybrid Wait");
+    cbHybridWait.setToolTipText(TOOL_TIP_HYBRID_WAIT);
+    bxHybridWait.add(cbHybridWait);
+    cbHybridWait.setMnemonic(KeyEvent.VK_H);
+    cbHybridWait.addChangeListener((final ChangeEvent event) -> {
+        hybridWaitChanged();
+      });
+    bxHybridWait.add(Box.createHorizontalGlue());
     add(Box.createVerticalGlue());
     final UserPreferences userPreferences = UserPreferences.getInstance();
     userPreferences.addListener(this);
@@ -65,6 +87,13 @@ public class CPUBusyWait extends Box implements PreferencesChangeListener
     userPreferences.setBusyWait(busyWait);
   }
 
+  private void hybridWaitChanged()
+  {
+    final boolean hybridWait = cbHybridWait.isSelected();
+    final UserPreferences userPreferences = UserPreferences.getInstance();
+    userPreferences.setHybridWait(hybridWait);
+  }
+
   @Override
   public void speedChanged(final int frequency)
   {
@@ -84,6 +113,20 @@ public class CPUBusyWait extends Box implements PreferencesChangeListener
   {
     this.busyWait = busyWait;
     cbBusyWait.setSelected(busyWait);
+    cbHybridWait.setEnabled(!busyWait);
+  }
+
+  @Override
+  public void hybridWaitChanged(final boolean hybridWait)
+  {
+    cbHybridWait.setSelected(hybridWait);
+  }
+
+  @Override
+  public void maxSpeedChanged(final boolean maxSpeed)
+  {
+    // This callback is handled elsewhere.
+    // Hence, do nothing here.
   }
 }
 
@@ -7,7 +7,9 @@ import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JLabel;
+import javax.swing.event.ChangeEvent;
 
 import emulator.z80.PreferencesChangeListener;
 import emulator.z80.UserPreferences;
@@ -16,8 +18,19 @@ public class CPUSpeedControl extends Box implements PreferencesChangeListener
 {
   private static final long serialVersionUID = -865874602941269179L;
 
+  private static final String TOOL_TIP_MAX_SPEED =
+    "<html>\n" +
+    "  Run the emulation as fast as the host allows, e.g. for<br />\n" +
+    "  fast-forwarding through cassette loads.  Timing of all<br />\n" +
+    "  peripherals stays consistent with the emulated CPU clock,<br />\n" +
+    "  but speaker and cassette monitor output are dropped<br />\n" +
+    "  while this mode is active.  Recording to a cassette<br />\n" +
+    "  file still works.\n" +
+    "</html>\n";
+
   private final JLabel lbSpeed;
   private final JButton btChange;
+  private final JCheckBox cbMaxSpeed;
   private final CPUSpeedSelectionDialog dlCPUSpeedSelection;
   private int frequency;
 
@@ -49,6 +62,18 @@ public class CPUSpeedControl extends Box implements PreferencesChangeListener
     bxChangeButton.add(btChange);
     bxChangeButton.add(Box.createHorizontalStrut(5));
     add(Box.createHorizontalStrut(5));
+
+    final Box bxMaxSpeed = new Box(BoxLayout.Y_AXIS);
+    add(bxMaxSpeed);
+    cbMaxSpeed = new JCheckBox("Max Speed");
+    cbMaxSpeed.setToolTipText(TOOL_TIP_MAX_SPEED);
+    cbMaxSpeed.setMnemonic(KeyEvent.VK_M);
+    cbMaxSpeed.addChangeListener((final ChangeEvent event) -> {
+        maxSpeedChanged();
+      });
+    bxMaxSpeed.add(cbMaxSpeed);
+    bxMaxSpeed.add(Box.createHorizontalStrut(5));
+    add(Box.createHorizontalStrut(5));
     dlCPUSpeedSelection = new CPUSpeedSelectionDialog(owner);
     final UserPreferences userPreferences = UserPreferences.getInstance();
     userPreferences.addListener(this);
@@ -65,6 +90,15 @@ public class CPUSpeedControl extends Box implements PreferencesChangeListener
     }
   }
 
+  private void maxSpeedChanged()
+  {
+    final boolean maxSpeed = cbMaxSpeed.isSelected();
+    final UserPreferences userPreferences = UserPreferences.getInstance();
+    if (userPreferences.getMaxSpeed() != maxSpeed) {
+      userPreferences.setMaxSpeed(maxSpeed);
+    }
+  }
+
   @Override
   public void speedChanged(final int frequency)
   {
@@ -85,6 +119,19 @@ public class CPUSpeedControl extends Box implements PreferencesChangeListener
     // This callback is handled elsewhere.
     // Hence, do nothing here.
   }
+
+  @Override
+  public void hybridWaitChanged(final boolean hybridWait)
+  {
+    // This callback is handled elsewhere.
+    // Hence, do nothing here.
+  }
+
+  @Override
+  public void maxSpeedChanged(final boolean maxSpeed)
+  {
+    cbMaxSpeed.setSelected(maxSpeed);
+  }
 }
 
 /*
@@ -11,6 +11,7 @@ import javax.swing.event.ChangeEvent;
 
 import emulator.z80.CPU;
 import emulator.z80.PreferencesChangeListener;
+import emulator.z80.StatisticsSnapshot;
 import emulator.z80.UserPreferences;
 
 public class CPUStatistics extends Box implements PreferencesChangeListener
@@ -18,14 +19,17 @@ public class CPUStatistics extends Box implements PreferencesChangeListener
   private static final long serialVersionUID = -8929542516657150731L;
 
   private final CPU cpu;
+  private final StatisticsSnapshot statistics;
   private final JCheckBox cbEnable;
   private final JPanel pnStatistics;
   private final JLabel lbAvgSpeedLabel;
+  private final JLabel lbMinMaxSpeedLabel;
   private final JLabel lbAvgThreadLoadLabel;
-  private final JLabel lbAvgJitterLabel;
+  private final JLabel lbJitterLabel;
   private final JLabel lbAvgSpeedValue;
+  private final JLabel lbMinMaxSpeedValue;
   private final JLabel lbAvgThreadLoadValue;
-  private final JLabel lbAvgJitterValue;
+  private final JLabel lbJitterValue;
   private boolean statisticsEnabled;
 
   public CPUStatistics(final CPU cpu)
@@ -35,14 +39,17 @@ public class CPUStatistics extends Box implements PreferencesChangeListener
       throw new NullPointerException("cpu");
     }
     this.cpu = cpu;
+    statistics = new StatisticsSnapshot();
     setBorder(BorderFactory.createTitledBorder("CPU Statistics"));
 
     lbAvgSpeedLabel = new JLabel("Actual avg. speed [Hz]:");
     lbAvgSpeedValue = new JLabel();
+    lbMinMaxSpeedLabel = new JLabel("Min. / max. speed [Hz]:");
+    lbMinMaxSpeedValue = new JLabel();
     lbAvgThreadLoadLabel = new JLabel("Avg. thread load [%]:");
     lbAvgThreadLoadValue = new JLabel();
-    lbAvgJitterLabel = new JLabel("Avg. jitter [µs]:");
-    lbAvgJitterValue = new JLabel();
+    lbJitterLabel = new JLabel("Jitter p50 / p90 / p99 [µs]:");
+    lbJitterValue = new JLabel();
     pnStatistics = new JPanel();
 
     final Box bxEnable = new Box(BoxLayout.X_AXIS);
@@ -62,16 +69,18 @@ public class CPUStatistics extends Box implements PreferencesChangeListener
     final Box bxLabels = new Box(BoxLayout.Y_AXIS);
     pnStatistics.add(bxLabels);
     bxLabels.add(lbAvgSpeedLabel);
+    bxLabels.add(lbMinMaxSpeedLabel);
     bxLabels.add(lbAvgThreadLoadLabel);
-    bxLabels.add(lbAvgJitterLabel);
+    bxLabels.add(lbJitterLabel);
     bxLabels.add(Box.createHorizontalStrut(5));
     pnStatistics.add(Box.createHorizontalStrut(5));
 
     final Box bxValues = new Box(BoxLayout.Y_AXIS);
     pnStatistics.add(bxValues);
     bxValues.add(lbAvgSpeedValue);
+    bxValues.add(lbMinMaxSpeedValue);
     bxValues.add(lbAvgThreadLoadValue);
-    bxValues.add(lbAvgJitterValue);
+    bxValues.add(lbJitterValue);
 
     bxValues.add(Box.createHorizontalStrut(5));
     pnStatistics.add(Box.createHorizontalStrut(5));
@@ -95,10 +104,20 @@ public class CPUStatistics extends Box implements PreferencesChangeListener
 
   private void updateValues()
   {
-    lbAvgSpeedValue.setText("" + cpu.getAvgSpeed());
-    lbAvgThreadLoadValue.setText("" + cpu.getAvgThreadLoad());
-    final double jitterMicroSeconds = cpu.getAvgJitter() * 0.001;
-    lbAvgJitterValue.setText("" + jitterMicroSeconds);
+    statistics.copyFrom(cpu.getStatistics());
+    lbAvgSpeedValue.setText(String.format("%.0f", statistics.getAvgSpeed()));
+    lbMinMaxSpeedValue.setText(String.format("%.0f / %.0f",
+                                             statistics.getMinSpeed(),
+                                             statistics.getMaxSpeed()));
+    lbAvgThreadLoadValue.setText(String.format("%.1f", 100.0 *
+                                               statistics.getAvgThreadLoad()));
+    lbJitterValue.setText(String.format("%.1f / %.1f / %.1f",
+                                        0.001 * statistics.
+                                        getJitterPercentile(50.0),
+                                        0.001 * statistics.
+                                        getJitterPercentile(90.0),
+                                        0.001 * statistics.
+                                        getJitterPercentile(99.0)));
   }
 
   private void enableChanged()
@@ -123,10 +142,12 @@ public class CPUStatistics extends Box implements PreferencesChangeListener
     pnStatistics.setEnabled(statisticsEnabled);
     lbAvgSpeedLabel.setEnabled(statisticsEnabled);
     lbAvgSpeedValue.setEnabled(statisticsEnabled);
+    lbMinMaxSpeedLabel.setEnabled(statisticsEnabled);
+    lbMinMaxSpeedValue.setEnabled(statisticsEnabled);
     lbAvgThreadLoadLabel.setEnabled(statisticsEnabled);
     lbAvgThreadLoadValue.setEnabled(statisticsEnabled);
-    lbAvgJitterLabel.setEnabled(statisticsEnabled);
-    lbAvgJitterValue.setEnabled(statisticsEnabled);
+    lbJitterLabel.setEnabled(statisticsEnabled);
+    lbJitterValue.setEnabled(statisticsEnabled);
   }
 
   @Override
@@ -135,6 +156,20 @@ public class CPUStatistics extends Box implements PreferencesChangeListener
     // This callback is handled elsewhere.
     // Hence, do nothing here.
   }
+
+  @Override
+  public void hybridWaitChanged(final boolean hybridWait)
+  {
+    // This callback is handled elsewhere.
+    // Hence, do nothing here.
+  }
+
+  @Override
+  public void maxSpeedChanged(final boolean maxSpeed)
+  {
+    // This callback is handled elsewhere.
+    // Hence, do nothing here.
+  }
 }
 
 /*
@@ -8,6 +8,12 @@ public interface CassetteInputSampler extends ProgressProvider
   static final short VALUE_HI = 32767;
 
   short getValue(final long wallClockTime);
+
+  /**
+   * Returns a wall clock time later than the specified one, such
+   * that getValue() will not change its value before that time.
+   */
+  long getNextTransitionTime(final long wallClockTime);
   void stop();
   boolean isStopped();
   File getFile();
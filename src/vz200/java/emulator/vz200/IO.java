@@ -1,22 +1,33 @@
 package emulator.vz200;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.File;
 
 import emulator.z80.CPU;
 import emulator.z80.CPUControl;
+import emulator.z80.CPUControlAutomaton;
+import emulator.z80.EventScheduler;
 import emulator.z80.MemoryBus;
+import emulator.z80.PreferencesChangeListener;
+import emulator.z80.UserPreferences;
 import emulator.z80.Util;
 import emulator.z80.WallClockProvider;
 
 public class IO implements
-                  CPU.WallClockListener,
                   WallClockProvider,
                   MemoryBus.BusReader, MemoryBus.BusWriter,
-                  CassetteTransportListener
+                  CassetteTransportListener, PreferencesChangeListener
 {
   private final static int DEFAULT_BASE_ADDRESS = 0x6800;
   private final static int MEMORY_SIZE = 0x0800;
+  private final static int VIDEO_BASE_ADDRESS = 0x7000;
+
+  // kinds of cassette input in saved state
+  private final static int CASSETTE_IN_NONE = 0;
+  private final static int CASSETTE_IN_VZ_FILE = 1;
+  private final static int CASSETTE_IN_AUDIO_FILE = 2;
 
   private final static CassetteInputSampler CLOSED_INPUT_SAMPLER =
     new CassetteInputSampler() {
@@ -26,6 +37,10 @@ public class IO implements
         System.out.printf("WARNING: %s: EOF%n", this);
         return VALUE_LO;
       }
+      public long getNextTransitionTime(final long wallClockTime)
+      {
+        return Long.MAX_VALUE;
+      }
       public void stop()
       {
         System.out.printf("WARNING: %s: already stopped%n", this);
@@ -38,6 +53,7 @@ public class IO implements
   private final int baseAddress;
   private final Video video;
   private final Keyboard keyboard;
+  private final KeyboardMatrix keyboardMatrix;
   private final SettingsGUI settingsGUI;
   private final Speaker speaker;
   private final CassetteCtrlRoomOut cassetteCtrlRoomOut;
@@ -46,9 +62,15 @@ public class IO implements
   private final MonoAudioStreamRenderer cassetteCtrlRoomOutRenderer;
   private FileStreamRenderer fileStreamRenderer;
   private CassetteInputSampler cassetteInputSampler;
-  private long timePerClockCycle;
-  private long wallClockCycles;
-  private long wallClockTime;
+  private CassetteInputSampler scheduledInputSampler;
+  private boolean cassInHigh;
+  private boolean maxSpeed;
+  private final CPU cpu;
+  private final EventScheduler eventScheduler;
+  private final int videoFsDeviceId;
+  private final int cassetteInDeviceId;
+  private InputRecorder inputRecorder;
+  private InputPlayer inputPlayer;
 
   private IO()
   {
@@ -58,33 +80,100 @@ public class IO implements
   public IO(final CPUControl cpuControl, final CPU cpu,
             final long currentWallClockTime)
     throws IOException
+  {
+    this(cpuControl, cpu, currentWallClockTime, false);
+  }
+
+  /**
+   * @param headless If true, no windows are opened and no audio lines
+   * are acquired: video renders into an off-screen framebuffer,
+   * speaker and cassette monitor output are discarded, cassette
+   * output may still be recorded into a file, and keyboard input is
+   * expected to be scripted via the keyboard matrix.
+   */
+  public IO(final CPUControl cpuControl, final CPU cpu,
+            final long currentWallClockTime, final boolean headless)
+    throws IOException
   {
     this.cpuControl = cpuControl;
+    this.cpu = cpu;
     this.baseAddress = DEFAULT_BASE_ADDRESS;
-    keyboard = new Keyboard(baseAddress);
-    video = new Video();
-    video.addKeyListener(keyboard.getKeyListener());
-    speakerRenderer = new MonoAudioStreamRenderer("speaker renderer");
-    speaker = new Speaker(this);
-    speakerRenderer.setSignalEventSource(speaker);
-    speakerRenderer.start();
-    cassetteCtrlRoomOutRenderer =
-      new MonoAudioStreamRenderer("cassette out renderer");
-    cassetteCtrlRoomOut = new CassetteCtrlRoomOut(this);
-    cassetteCtrlRoomOutRenderer.setSignalEventSource(cassetteCtrlRoomOut);
-    cassetteCtrlRoomOutRenderer.start();
+    keyboardMatrix = new KeyboardMatrix();
+    video = new Video(VIDEO_BASE_ADDRESS, headless);
+    if (headless) {
+      keyboard = null;
+      speakerRenderer = null;
+      speaker = null;
+      cassetteCtrlRoomOutRenderer = null;
+      cassetteCtrlRoomOut = null;
+    } else {
+      keyboard = new Keyboard(baseAddress, keyboardMatrix);
+      video.addKeyListener(keyboard.getKeyListener());
+      speakerRenderer = new MonoAudioStreamRenderer("speaker renderer");
+      speaker = new Speaker(this);
+      speakerRenderer.setSignalEventSource(speaker);
+      speakerRenderer.start();
+      cassetteCtrlRoomOutRenderer =
+        new MonoAudioStreamRenderer("cassette out renderer");
+      cassetteCtrlRoomOut = new CassetteCtrlRoomOut(this);
+      cassetteCtrlRoomOutRenderer.setSignalEventSource(cassetteCtrlRoomOut);
+      cassetteCtrlRoomOutRenderer.start();
+    }
     cassetteFileOut = new CassetteFileOut(this);
-    settingsGUI = new SettingsGUI(cpuControl, cpu, speaker, speakerRenderer,
-                                  cassetteCtrlRoomOut,
-                                  cassetteCtrlRoomOutRenderer,
-                                  this);
-    settingsGUI.addTransportListener(this);
+    if (headless) {
+      settingsGUI = null;
+    } else {
+      settingsGUI = new SettingsGUI(cpuControl, cpu, speaker, speakerRenderer,
+                                    cassetteCtrlRoomOut,
+                                    cassetteCtrlRoomOutRenderer,
+                                    this);
+      settingsGUI.addTransportListener(this);
+      cpuControl.addStateChangeListener(new CPUControlAutomaton.Listener() {
+          public void stateChanged(final CPUControlAutomaton.State state)
+          {
+            video.setFrameSynchronous(state !=
+                                      CPUControlAutomaton.State.STOPPED);
+          }
+        });
+    }
     cassetteInputSampler = CLOSED_INPUT_SAMPLER;
+    scheduledInputSampler = CLOSED_INPUT_SAMPLER;
+    eventScheduler = cpu.getEventScheduler();
+    videoFsDeviceId = eventScheduler.addDevice(new EventScheduler.Device() {
+        public void eventDue(final long timePerClockCycle,
+                             final long wallClockCycles,
+                             final long wallClockTime)
+        {
+          videoFsDue(wallClockTime);
+        }
+      });
+    eventScheduler.scheduleAtTime(videoFsDeviceId, video.getNextFsTime());
+    cassetteInDeviceId = eventScheduler.addDevice(new EventScheduler.Device() {
+        public void eventDue(final long timePerClockCycle,
+                             final long wallClockCycles,
+                             final long wallClockTime)
+        {
+          sampleCassetteIn(wallClockTime);
+        }
+      });
+    UserPreferences.getInstance().addListener(this);
+  }
+
+  /**
+   * Stops cassette input and output, and unregisters from the user
+   * preferences.  To be called when the machine is no longer used.
+   */
+  public void dispose()
+  {
+    cassetteStop();
+    UserPreferences.getInstance().removeListener(this);
   }
 
   public void resync(final long wallClockTime)
   {
-    speaker.resync();
+    if (speaker != null) {
+      speaker.resync();
+    }
     if (cassetteCtrlRoomOut != null) {
       cassetteCtrlRoomOut.resync();
     }
@@ -98,7 +187,15 @@ public class IO implements
     return video;
   }
 
-  private long lastWallClockTime = 0;
+  public KeyboardMatrix getKeyboardMatrix()
+  {
+    return keyboardMatrix;
+  }
+
+  public boolean isHeadless()
+  {
+    return settingsGUI == null;
+  }
 
   private boolean isCassInHigh(final long wallClockTime)
   {
@@ -118,27 +215,49 @@ public class IO implements
      * a regular cassetteInputSampler basically is an atomic operation
      * (namely, changing the value of a 64 bit pointer).
      *
-     * In the following code, in the worst case, cassetteInputSampler
-     * changes from a regular cassetteInputSampler to
-     * CLOSED_INPUT_SAMPLER while this method is executed.  In this
-     * case, we will inadvertently call
-     * CLOSED_INPUT_SAMPLER.getValue(), resulting in a pseudo default
-     * signal value, which should be still ok.
+     * The sampler's value is not polled here, but sampled by the
+     * event scheduler at each transition of the signal.  Only when
+     * the AWT event thread has switched the sampler, this method
+     * takes over the new sampler into the CPU thread.
      */
-    if (cassetteInputSampler == CLOSED_INPUT_SAMPLER)
-      return false;
-    if ((wallClockTime - lastWallClockTime) > 0x04000000) {
-      lastWallClockTime = wallClockTime;
+    final CassetteInputSampler sampler = cassetteInputSampler;
+    if (sampler != scheduledInputSampler) {
+      scheduledInputSampler = sampler;
+      if (inputRecorder != null) {
+        inputRecorder.cassetteInChanged(sampler);
+      }
+      sampleCassetteIn(wallClockTime);
     }
-    final short value = cassetteInputSampler.getValue(wallClockTime);
-    if (cassetteCtrlRoomOut != null) {
+    return cassInHigh;
+  }
+
+  private void sampleCassetteIn(final long wallClockTime)
+  {
+    final CassetteInputSampler sampler = scheduledInputSampler;
+    if (sampler == CLOSED_INPUT_SAMPLER) {
+      cassInHigh = false;
+      eventScheduler.cancel(cassetteInDeviceId);
+      return;
+    }
+    final short value = sampler.getValue(wallClockTime);
+    if ((cassetteCtrlRoomOut != null) && !maxSpeed) {
       cassetteCtrlRoomOut.putEvent(value <= 0 ? 3 : 0, wallClockTime);
     }
-    if (cassetteInputSampler.isStopped()) {
-      settingsGUI.cassetteStop();
-      cassetteInputSampler = CLOSED_INPUT_SAMPLER;
+    cassInHigh = value <= 0;
+    if (sampler.isStopped()) {
+      if (settingsGUI != null) {
+        settingsGUI.cassetteStop();
+      }
+      if (cassetteInputSampler == sampler) {
+        cassetteInputSampler = CLOSED_INPUT_SAMPLER;
+      }
+      scheduledInputSampler = CLOSED_INPUT_SAMPLER;
+      eventScheduler.cancel(cassetteInDeviceId);
+    } else {
+      final long nextTransitionTime =
+        sampler.getNextTransitionTime(wallClockTime);
+      eventScheduler.scheduleAtTime(cassetteInDeviceId, nextTransitionTime);
     }
-    return value <= 0;
   }
 
   public int readByte(final int address, final long wallClockTime)
@@ -146,10 +265,14 @@ public class IO implements
     final int addressOffset = (address - baseAddress) & 0xffff;
     int data;
     if (addressOffset < MEMORY_SIZE) {
-      data = keyboard.readByte(address, wallClockTime) & 0x3f;
+      if (inputRecorder != null) {
+        data = inputRecorder.readKeyboard(addressOffset) & 0x3f;
+      } else {
+        data = keyboardMatrix.read(addressOffset) & 0x3f;
+      }
       if (isCassInHigh(wallClockTime))
         data |= 0x40;
-      if (video.hs())
+      if (video.hs(wallClockTime))
         data |= 0x80;
     } else {
       data = BYTE_UNDEFINED;
@@ -169,11 +292,13 @@ public class IO implements
   {
     final int addressOffset = (address - baseAddress) & 0xffff;
     if (addressOffset < MEMORY_SIZE) {
-      if (speaker != null) {
+      // audio lines are rendered in real time and hence can not
+      // follow at max speed => drop their events
+      if ((speaker != null) && !maxSpeed) {
         speaker.putEvent((value >> 5) & 0x1, value  & 0x1, wallClockTime);
       }
       final int cassetteOutValue = (value >> 1) & 0x3;
-      if (cassetteCtrlRoomOut != null) {
+      if ((cassetteCtrlRoomOut != null) && !maxSpeed) {
         cassetteCtrlRoomOut.putEvent(cassetteOutValue, wallClockTime);
       }
       if (cassetteFileOut != null) {
@@ -191,31 +316,203 @@ public class IO implements
     writeByte(address, (value >> 8) & 0xff, wallClockTime);
   }
 
-  public void wallClockChanged(final long timePerClockCycle,
-                               final long wallClockCycles,
-                               final long wallClockTime)
+  private void videoFsDue(final long wallClockTime)
   {
-    this.timePerClockCycle = timePerClockCycle;
-    this.wallClockCycles = wallClockCycles;
-    this.wallClockTime = wallClockTime;
-    if (video.updateWallClock(wallClockCycles, wallClockTime)) {
+    if (video.updateWallClock(wallClockTime)) {
       cpuControl.requestIRQ();
+      if (inputRecorder != null) {
+        inputRecorder.frameDone();
+      }
+      if (inputPlayer != null) {
+        inputPlayer.frameDone();
+      }
+    }
+    eventScheduler.scheduleAtTime(videoFsDeviceId, video.getNextFsTime());
+  }
+
+  /**
+   * Writes the state of video, keyboard matrix and cassette input in
+   * binary form.  The cassette input is saved as file path, playback
+   * parameters and start time, such that the tape position can be
+   * restored as long as the file is still available.  Must be called
+   * from the CPU thread or while the CPU is stopped.
+   */
+  public void writeState(final DataOutputStream out) throws IOException
+  {
+    video.writeState(out);
+    keyboardMatrix.writeState(out);
+    writeCassetteInState(out, cassetteInputSampler);
+  }
+
+  /**
+   * Writes the specified cassette input as file path, playback
+   * parameters and start time.
+   */
+  void writeCassetteInState(final DataOutputStream out,
+                            final CassetteInputSampler sampler)
+    throws IOException
+  {
+    if (sampler == CLOSED_INPUT_SAMPLER) {
+      out.writeByte(CASSETTE_IN_NONE);
+    } else if (sampler instanceof VZFileSampler) {
+      final VZFileSampler vzFileSampler = (VZFileSampler)sampler;
+      out.writeByte(CASSETTE_IN_VZ_FILE);
+      out.writeUTF(vzFileSampler.getFile().getAbsolutePath());
+      out.writeDouble(vzFileSampler.getSpeed());
+      out.writeBoolean(vzFileSampler.getTrimLeadIn());
+      out.writeLong(vzFileSampler.getStartWallClockTime());
+    } else if (sampler instanceof AudioFileSampler) {
+      final AudioFileSampler audioFileSampler = (AudioFileSampler)sampler;
+      out.writeByte(CASSETTE_IN_AUDIO_FILE);
+      out.writeUTF(audioFileSampler.getFile().getAbsolutePath());
+      out.writeDouble(audioFileSampler.getVolume());
+      out.writeDouble(audioFileSampler.getSpeed());
+      out.writeDouble(audioFileSampler.getDcOffset());
+      out.writeLong(audioFileSampler.getStartWallClockTime());
+    } else {
+      throw new IOException("unsupported cassette input: " + sampler);
+    }
+  }
+
+  /**
+   * Recreates a cassette input as written by writeCassetteInState().
+   */
+  CassetteInputSampler readCassetteInState(final DataInputStream in)
+    throws IOException
+  {
+    final int kind = in.readUnsignedByte();
+    switch (kind) {
+    case CASSETTE_IN_NONE:
+      return CLOSED_INPUT_SAMPLER;
+    case CASSETTE_IN_VZ_FILE: {
+      final File file = new File(in.readUTF());
+      final double speed = in.readDouble();
+      final boolean trimLeadIn = in.readBoolean();
+      final long startWallClockTime = in.readLong();
+      return new VZFileSampler(file, speed, trimLeadIn,
+                               this, startWallClockTime);
     }
+    case CASSETTE_IN_AUDIO_FILE: {
+      final File file = new File(in.readUTF());
+      final double volume = in.readDouble();
+      final double speed = in.readDouble();
+      final double dcOffset = in.readDouble();
+      final long startWallClockTime = in.readLong();
+      return new AudioFileSampler(file, volume, speed, dcOffset,
+                                  this, startWallClockTime);
+    }
+    default:
+      throw new IOException("invalid cassette input kind: " + kind);
+    }
+  }
+
+  /**
+   * Restores the state as written by writeState().  The CPU's state
+   * must have been restored before, since the cassette input is
+   * resampled at the CPU's wall clock time.  Must be called from the
+   * CPU thread or while the CPU is stopped.  Note that the cassette
+   * transport controls of the settings GUI do not follow a restored
+   * cassette input.
+   */
+  public void readState(final DataInputStream in) throws IOException
+  {
+    video.readState(in);
+    keyboardMatrix.readState(in);
+    final CassetteInputSampler sampler = readCassetteInState(in);
+    if (cassetteInputSampler != CLOSED_INPUT_SAMPLER) {
+      System.out.printf("%s: aborted%n",
+                        cassetteInputSampler.getFile().getName());
+      cassetteInputSampler.stop();
+    }
+    cassetteInputSampler = sampler;
+    scheduledInputSampler = sampler;
+    sampleCassetteIn(getWallClockTime());
+  }
+
+  /**
+   * Installs a recorder of keyboard and cassette input, or removes
+   * it, if null.  Must be called from the CPU thread or while the CPU
+   * is stopped.
+   */
+  void setInputRecorder(final InputRecorder inputRecorder)
+  {
+    this.inputRecorder = inputRecorder;
+  }
+
+  /**
+   * Installs a player of recorded keyboard and cassette input, or
+   * removes it, if null.  Must be called from the CPU thread or
+   * while the CPU is stopped.
+   */
+  void setInputPlayer(final InputPlayer inputPlayer)
+  {
+    this.inputPlayer = inputPlayer;
+    if (inputPlayer != null) {
+      inputPlayer.start();
+    }
+  }
+
+  /**
+   * Switches to the specified cassette input on behalf of an input
+   * player.  Like a cassette input started via the transport
+   * controls, the CPU takes it over upon its next access.
+   */
+  void replayCassetteIn(final CassetteInputSampler sampler)
+  {
+    if ((cassetteInputSampler != CLOSED_INPUT_SAMPLER) &&
+        (cassetteInputSampler != sampler)) {
+      cassetteInputSampler.stop();
+    }
+    cassetteInputSampler = sampler;
+  }
+
+  @Override
+  public void speedChanged(final int frequency)
+  {
+    // This callback is handled by CPU class (or its implementor).
+    // Hence, do nothing here.
+  }
+
+  @Override
+  public void statisticsEnabledChanged(final boolean statisticsEnabled)
+  {
+    // This callback is handled elsewhere.
+    // Hence, do nothing here.
+  }
+
+  @Override
+  public void busyWaitChanged(final boolean busyWait)
+  {
+    // This callback is handled elsewhere.
+    // Hence, do nothing here.
+  }
+
+  @Override
+  public void hybridWaitChanged(final boolean hybridWait)
+  {
+    // This callback is handled elsewhere.
+    // Hence, do nothing here.
+  }
+
+  @Override
+  public void maxSpeedChanged(final boolean maxSpeed)
+  {
+    this.maxSpeed = maxSpeed;
   }
 
   public long getTimePerClockCycle()
   {
-    return timePerClockCycle;
+    return cpu.getTimePerClockCycle();
   }
 
   public long getWallClockCycles()
   {
-    return wallClockCycles;
+    return cpu.getWallClockCycles();
   }
 
   public long getWallClockTime()
   {
-    return wallClockTime;
+    return cpu.getWallClockTime();
   }
 
   @Override
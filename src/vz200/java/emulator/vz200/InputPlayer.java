@@ -0,0 +1,256 @@
+package emulator.vz200;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import emulator.z80.CPU;
+import emulator.z80.EventScheduler;
+import emulator.z80.RewindBuffer;
+
+/**
+ * Replays a recording of an InputRecorder: restores the machine from
+ * the recording's snapshot, and then injects each recorded keyboard
+ * matrix change and cassette input change at exactly the recorded
+ * CPU cycle via the event scheduler.  Since the emulation itself is
+ * deterministic, the machine then runs exactly as during recording,
+ * independent of host speed.  Upon each field sync, the screen
+ * contents are compared against the recorded hash; the first
+ * mismatching frame is reported as divergence.
+ *
+ * Keyboard and cassette input must not be changed otherwise while
+ * replaying, hence replay is meant for headless machines.  All
+ * methods must be called from the CPU thread or while the CPU is
+ * stopped.
+ */
+public class InputPlayer implements EventScheduler.Device
+{
+  private static class Event
+  {
+    private final long cycle;
+    private final int type;
+    private final int row;
+    private final int value;
+    private final byte[] cassetteInState;
+
+    private Event(final long cycle, final int type, final int row,
+                  final int value, final byte[] cassetteInState)
+    {
+      this.cycle = cycle;
+      this.type = type;
+      this.row = row;
+      this.value = value;
+      this.cassetteInState = cassetteInState;
+    }
+  }
+
+  private final File file;
+  private final IO io;
+  private final CPU cpu;
+  private final EventScheduler eventScheduler;
+  private final int deviceId;
+  private final List<Event> events;
+  private final List<long[]> frames; // pairs of cycle and hash
+  private final long endCycle;
+  private int eventIndex;
+  private int frameIndex;
+  private int divergentFrame;
+
+  private InputPlayer()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  /**
+   * Reads the specified recording and restores the machine from the
+   * recording's snapshot.  Replay starts as soon as the player is
+   * installed into the machine's I/O.
+   */
+  public InputPlayer(final File file, final RewindBuffer.Machine machine,
+                     final IO io, final CPU cpu)
+    throws IOException
+  {
+    if (file == null) {
+      throw new NullPointerException("file");
+    }
+    if (machine == null) {
+      throw new NullPointerException("machine");
+    }
+    if (io == null) {
+      throw new NullPointerException("io");
+    }
+    if (cpu == null) {
+      throw new NullPointerException("cpu");
+    }
+    this.file = file;
+    this.io = io;
+    this.cpu = cpu;
+    events = new ArrayList<Event>();
+    frames = new ArrayList<long[]>();
+    try (final DataInputStream in =
+         new DataInputStream(new BufferedInputStream(
+           new FileInputStream(file)))) {
+      if (in.readInt() != InputRecorder.MAGIC) {
+        throw new IOException("not a VZ200 input recording");
+      }
+      final int version = in.readInt();
+      if (version != InputRecorder.VERSION) {
+        throw new IOException("unsupported input recording version: " +
+                              version);
+      }
+      final byte[] snapshot = new byte[in.readInt()];
+      in.readFully(snapshot);
+      endCycle = readRecords(in);
+      machine.readSnapshot(new DataInputStream(
+        new ByteArrayInputStream(snapshot)));
+    } catch (final EOFException e) {
+      throw new IOException("input recording truncated", e);
+    }
+    eventIndex = 0;
+    frameIndex = 0;
+    divergentFrame = -1;
+    eventScheduler = cpu.getEventScheduler();
+    deviceId = eventScheduler.addDevice(this);
+  }
+
+  private long readRecords(final DataInputStream in) throws IOException
+  {
+    while (true) {
+      final int type = in.readUnsignedByte();
+      final long cycle = in.readLong();
+      switch (type) {
+      case InputRecorder.RECORD_END:
+        return cycle;
+      case InputRecorder.RECORD_KEYBOARD_ROW: {
+        final int row = in.readUnsignedByte();
+        final int value = in.readUnsignedByte();
+        if (row >= KeyboardMatrix.getRowCount()) {
+          throw new IOException("invalid keyboard row: " + row);
+        }
+        events.add(new Event(cycle, type, row, value, null));
+        break;
+      }
+      case InputRecorder.RECORD_CASSETTE_IN: {
+        final byte[] cassetteInState = new byte[in.readUnsignedShort()];
+        in.readFully(cassetteInState);
+        events.add(new Event(cycle, type, 0, 0, cassetteInState));
+        break;
+      }
+      case InputRecorder.RECORD_FRAME:
+        frames.add(new long[] { cycle, in.readLong() });
+        break;
+      default:
+        throw new IOException("invalid record type: " + type);
+      }
+    }
+  }
+
+  public File getFile()
+  {
+    return file;
+  }
+
+  /**
+   * Returns the CPU cycle at which the recording ended.
+   */
+  public long getEndCycle()
+  {
+    return endCycle;
+  }
+
+  public int getRecordedFrameCount()
+  {
+    return frames.size();
+  }
+
+  /**
+   * Returns the number of frames compared so far.
+   */
+  public int getReplayedFrameCount()
+  {
+    return frameIndex;
+  }
+
+  /**
+   * Returns the index of the first frame whose screen contents or
+   * cycle differ from the recording, or -1, if there is none.
+   */
+  public int getDivergentFrame()
+  {
+    return divergentFrame;
+  }
+
+  /**
+   * Injects all events that are due.  Called once upon installation
+   * into the I/O, and thereafter via the event scheduler.
+   */
+  void start()
+  {
+    eventDue(cpu.getTimePerClockCycle(),
+             cpu.getWallClockCycles(), cpu.getWallClockTime());
+  }
+
+  @Override
+  public void eventDue(final long timePerClockCycle,
+                       final long wallClockCycles, final long wallClockTime)
+  {
+    while ((eventIndex < events.size()) &&
+           (events.get(eventIndex).cycle <= wallClockCycles)) {
+      final Event event = events.get(eventIndex++);
+      if (event.type == InputRecorder.RECORD_KEYBOARD_ROW) {
+        io.getKeyboardMatrix().setRow(event.row, event.value);
+      } else {
+        try {
+          io.replayCassetteIn(io.readCassetteInState(
+            new DataInputStream(
+              new ByteArrayInputStream(event.cassetteInState))));
+        } catch (final IOException e) {
+          System.out.printf("WARNING: %s: failed replaying cassette " +
+                            "input: %s%n", file.getName(), e.getMessage());
+        }
+      }
+    }
+    if (eventIndex < events.size()) {
+      eventScheduler.schedule(deviceId, events.get(eventIndex).cycle);
+    }
+  }
+
+  /**
+   * Called by the I/O upon each field sync.
+   */
+  void frameDone()
+  {
+    if (frameIndex >= frames.size()) {
+      return;
+    }
+    final long[] frame = frames.get(frameIndex);
+    if ((divergentFrame < 0) &&
+        ((frame[0] != cpu.getWallClockCycles()) ||
+         (frame[1] != io.getVideo().getContentsHash()))) {
+      divergentFrame = frameIndex;
+      System.out.printf("WARNING: %s: replay diverges at frame %d " +
+                        "(cycle %d)%n", file.getName(), frameIndex,
+                        frame[0]);
+    }
+    frameIndex++;
+  }
+
+  public String toString()
+  {
+    return "InputPlayer[file=" + file + ", events=" + events.size() +
+      ", frames=" + frames.size() + "]";
+  }
+}
+
+/*
+  Local Variables:
+    coding:utf-8
+    mode:Java
+    End:
+*/
@@ -0,0 +1,226 @@
+package emulator.vz200;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import emulator.z80.CPU;
+import emulator.z80.RewindBuffer;
+
+/**
+ * Records all input of a machine that is not determined by the
+ * emulation itself, i.e. keyboard matrix changes and cassette input
+ * changes, each together with the CPU cycle at which the CPU first
+ * observes it.  Together with a snapshot of the machine at the start
+ * of the recording, this makes a run reproducible, cycle by cycle,
+ * via InputPlayer.
+ *
+ * Keyboard input arrives asynchronously from the AWT event thread.
+ * Therefore, while recording, the CPU does not read the keyboard
+ * matrix directly, but a latched copy of it, which is updated (and
+ * each change recorded) only when the CPU accesses the keyboard.
+ * Likewise, a change of the cassette input is recorded when the CPU
+ * takes it over.  For divergence detection, a hash of the screen
+ * contents is recorded for each video frame.
+ *
+ * Except for close(), all methods must be called from the CPU
+ * thread or while the CPU is stopped.
+ */
+public class InputRecorder
+{
+  static final int MAGIC = 0x565a4952; // "VZIR"
+  static final int VERSION = 1;
+
+  // record types
+  static final int RECORD_END = 0;
+  static final int RECORD_KEYBOARD_ROW = 1;
+  static final int RECORD_CASSETTE_IN = 2;
+  static final int RECORD_FRAME = 3;
+
+  private final File file;
+  private final IO io;
+  private final CPU cpu;
+  private final KeyboardMatrix matrix;
+  private final KeyboardMatrix latchedMatrix;
+  private final DataOutputStream out;
+  private long frameCount;
+  private boolean closed;
+
+  private InputRecorder()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  /**
+   * Creates the specified file and writes a snapshot of the machine
+   * in its current state into it.  Recording starts as soon as the
+   * recorder is installed into the machine's I/O.
+   */
+  public InputRecorder(final File file, final RewindBuffer.Machine machine,
+                       final IO io, final CPU cpu)
+    throws IOException
+  {
+    if (file == null) {
+      throw new NullPointerException("file");
+    }
+    if (machine == null) {
+      throw new NullPointerException("machine");
+    }
+    if (io == null) {
+      throw new NullPointerException("io");
+    }
+    if (cpu == null) {
+      throw new NullPointerException("cpu");
+    }
+    this.file = file;
+    this.io = io;
+    this.cpu = cpu;
+    matrix = io.getKeyboardMatrix();
+    latchedMatrix = new KeyboardMatrix();
+    for (int row = 0; row < KeyboardMatrix.getRowCount(); row++) {
+      latchedMatrix.setRow(row, matrix.getRow(row));
+    }
+    final ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+    machine.writeSnapshot(new DataOutputStream(snapshot));
+    out = new DataOutputStream(new BufferedOutputStream(
+      new FileOutputStream(file)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(snapshot.size());
+      snapshot.writeTo(out);
+    } catch (final IOException e) {
+      out.close();
+      throw e;
+    }
+    frameCount = 0;
+    closed = false;
+  }
+
+  public File getFile()
+  {
+    return file;
+  }
+
+  public long getFrameCount()
+  {
+    return frameCount;
+  }
+
+  private void failed(final IOException e)
+  {
+    System.out.printf("WARNING: %s: failed recording input: %s, " +
+                      "recording stopped%n", file.getName(), e.getMessage());
+    closed = true;
+    try {
+      out.close();
+    } catch (final IOException e2) {
+      // already reported the original error
+    }
+  }
+
+  /**
+   * Called by the I/O upon each CPU access of the keyboard, instead
+   * of reading the keyboard matrix.
+   */
+  int readKeyboard(final int address)
+  {
+    for (int row = 0; row < KeyboardMatrix.getRowCount(); row++) {
+      final int value = matrix.getRow(row);
+      if (value != latchedMatrix.getRow(row)) {
+        latchedMatrix.setRow(row, value);
+        keyboardRowChanged(row, value);
+      }
+    }
+    return latchedMatrix.read(address);
+  }
+
+  private synchronized void keyboardRowChanged(final int row, final int value)
+  {
+    if (closed) {
+      return;
+    }
+    try {
+      out.writeByte(RECORD_KEYBOARD_ROW);
+      out.writeLong(cpu.getWallClockCycles());
+      out.writeByte(row);
+      out.writeByte(value);
+    } catch (final IOException e) {
+      failed(e);
+    }
+  }
+
+  /**
+   * Called by the I/O when the CPU takes over a new cassette input.
+   */
+  synchronized void cassetteInChanged(final CassetteInputSampler sampler)
+  {
+    if (closed) {
+      return;
+    }
+    try {
+      final ByteArrayOutputStream cassetteInState =
+        new ByteArrayOutputStream();
+      io.writeCassetteInState(new DataOutputStream(cassetteInState), sampler);
+      out.writeByte(RECORD_CASSETTE_IN);
+      out.writeLong(cpu.getWallClockCycles());
+      out.writeShort(cassetteInState.size());
+      cassetteInState.writeTo(out);
+    } catch (final IOException e) {
+      failed(e);
+    }
+  }
+
+  /**
+   * Called by the I/O upon each field sync.
+   */
+  synchronized void frameDone()
+  {
+    if (closed) {
+      return;
+    }
+    try {
+      out.writeByte(RECORD_FRAME);
+      out.writeLong(cpu.getWallClockCycles());
+      out.writeLong(io.getVideo().getContentsHash());
+      frameCount++;
+    } catch (final IOException e) {
+      failed(e);
+    }
+  }
+
+  /**
+   * Terminates the recording with the current CPU cycle and closes
+   * the file.  May be called from any thread, e.g. upon application
+   * exit.
+   */
+  public synchronized void close()
+  {
+    if (closed) {
+      return;
+    }
+    try {
+      out.writeByte(RECORD_END);
+      out.writeLong(cpu.getWallClockCycles());
+      closed = true;
+      out.close();
+    } catch (final IOException e) {
+      failed(e);
+    }
+  }
+
+  public String toString()
+  {
+    return "InputRecorder[file=" + file + ", frames=" + frameCount + "]";
+  }
+}
+
+/*
+  Local Variables:
+    coding:utf-8
+    mode:Java
+    End:
+*/
@@ -58,13 +58,22 @@ public class Keyboard extends JFrame
   }
 
   public Keyboard(final int baseAddress) throws IOException
+  {
+    this(baseAddress, new KeyboardMatrix());
+  }
+
+  public Keyboard(final int baseAddress, final KeyboardMatrix matrix)
+    throws IOException
   {
     super("VZ200 Keyboard");
+    if (matrix == null) {
+      throw new NullPointerException("matrix");
+    }
     this.baseAddress = baseAddress;
+    this.matrix = matrix;
     setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
     addWindowListener(ApplicationExitListener.defaultInstance);
     addWindowListener(this);
-    matrix = new KeyboardMatrix();
     getContentPane().setLayout(new BorderLayout());
     panel = new KeyboardPanel(matrix);
     getContentPane().add(panel, BorderLayout.CENTER);
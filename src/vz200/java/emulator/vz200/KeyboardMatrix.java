@@ -1,6 +1,9 @@
 package emulator.vz200;
 
 import java.awt.event.KeyEvent;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -256,7 +259,7 @@ public class KeyboardMatrix {
     keys.add(key);
   }
 
-  private static Key lookupKeyByLabel(String label) {
+  public static Key lookupKeyByLabel(String label) {
     for (Iterator<Key> keyIterator = getKeyIterator(); keyIterator.hasNext();) {
       Key key = keyIterator.next();
       if (key.getKeyLabel().equals(label)) {
@@ -374,6 +377,14 @@ public class KeyboardMatrix {
     }
   }
 
+  public int getRow(int row) {
+    return rows[row];
+  }
+
+  public void setRow(int row, int value) {
+    rows[row] = value;
+  }
+
   public int read(int address) {
     int data = ~0x0;
     for (int row = 0; row < ROW_COUNT; row++) {
@@ -383,6 +394,18 @@ public class KeyboardMatrix {
     return data;
   }
 
+  public void writeState(DataOutputStream out) throws IOException {
+    for (int row = 0; row < ROW_COUNT; row++) {
+      out.writeByte(rows[row]);
+    }
+  }
+
+  public void readState(DataInputStream in) throws IOException {
+    for (int row = 0; row < ROW_COUNT; row++) {
+      rows[row] = in.readUnsignedByte();
+    }
+  }
+
   public KeyboardMatrix() {
     rows = new int[ROW_COUNT];
     Arrays.fill(rows, 0xff);
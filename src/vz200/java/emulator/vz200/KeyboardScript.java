@@ -0,0 +1,137 @@
+package emulator.vz200;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+import emulator.z80.CPU;
+import emulator.z80.EventScheduler;
+
+/**
+ * Scripted keyboard input for headless operation.  Text to be typed
+ * is translated into key strokes on the keyboard matrix.  Each key
+ * stroke is pressed and released in terms of the emulated CPU's wall
+ * clock via the event scheduler, such that the result of a script
+ * does not depend on the speed of the emulator host.
+ *
+ * All methods must be called from the CPU thread or while the CPU
+ * is stopped.
+ */
+public class KeyboardScript implements EventScheduler.Device
+{
+  private static final long KEY_DOWN_TIME = 100000000; // [ns]
+  private static final long KEY_UP_TIME = 100000000; // [ns]
+
+  private final KeyboardMatrix matrix;
+  private final CPU cpu;
+  private final EventScheduler eventScheduler;
+  private final int deviceId;
+  private final KeyboardMatrix.Key shiftKey;
+  private final Deque<KeyboardMatrix.Key[]> strokes;
+  private KeyboardMatrix.Key[] pressedKeys;
+
+  private KeyboardScript()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  public KeyboardScript(final KeyboardMatrix matrix, final CPU cpu)
+  {
+    if (matrix == null) {
+      throw new NullPointerException("matrix");
+    }
+    if (cpu == null) {
+      throw new NullPointerException("cpu");
+    }
+    this.matrix = matrix;
+    this.cpu = cpu;
+    eventScheduler = cpu.getEventScheduler();
+    deviceId = eventScheduler.addDevice(this);
+    shiftKey = KeyboardMatrix.lookupKeyByLabel("SHIFT");
+    strokes = new ArrayDeque<KeyboardMatrix.Key[]>();
+    pressedKeys = null;
+  }
+
+  private KeyboardMatrix.Key[] charToStroke(final char ch)
+  {
+    if (ch == '\n') {
+      return new KeyboardMatrix.Key[] {
+        KeyboardMatrix.lookupKeyByLabel("RETURN")
+      };
+    }
+    if (ch == ' ') {
+      return new KeyboardMatrix.Key[] {
+        KeyboardMatrix.lookupKeyByLabel("SPACE")
+      };
+    }
+    final String label = String.valueOf(Character.toUpperCase(ch));
+    for (final Iterator<KeyboardMatrix.Key> keyIterator =
+           KeyboardMatrix.getKeyIterator(); keyIterator.hasNext();) {
+      final KeyboardMatrix.Key key = keyIterator.next();
+      if (label.equals(key.getKeyLabel())) {
+        return new KeyboardMatrix.Key[] { key };
+      }
+    }
+    for (final Iterator<KeyboardMatrix.Key> keyIterator =
+           KeyboardMatrix.getKeyIterator(); keyIterator.hasNext();) {
+      final KeyboardMatrix.Key key = keyIterator.next();
+      if (label.equals(key.getShiftLabel())) {
+        return new KeyboardMatrix.Key[] { shiftKey, key };
+      }
+    }
+    throw new IllegalArgumentException("no key for character: " + ch);
+  }
+
+  /**
+   * Appends the specified text to the keys to be typed.  Letters are
+   * typed as upper case letters; '\n' is typed as RETURN key.
+   */
+  public void type(final String text)
+  {
+    if (text == null) {
+      throw new NullPointerException("text");
+    }
+    for (int i = 0; i < text.length(); i++) {
+      strokes.add(charToStroke(text.charAt(i)));
+    }
+    if ((pressedKeys == null) && !eventScheduler.isScheduled(deviceId)) {
+      eventScheduler.scheduleAtTime(deviceId, cpu.getWallClockTime());
+    }
+  }
+
+  /**
+   * Returns true if all scripted keys have been typed and released.
+   */
+  public boolean isIdle()
+  {
+    return (pressedKeys == null) && strokes.isEmpty();
+  }
+
+  @Override
+  public void eventDue(final long timePerClockCycle,
+                       final long wallClockCycles, final long wallClockTime)
+  {
+    if (pressedKeys != null) {
+      for (final KeyboardMatrix.Key key : pressedKeys) {
+        matrix.setSelected(key, false);
+      }
+      pressedKeys = null;
+      if (!strokes.isEmpty()) {
+        eventScheduler.scheduleAtTime(deviceId, wallClockTime + KEY_UP_TIME);
+      }
+    } else if (!strokes.isEmpty()) {
+      pressedKeys = strokes.remove();
+      for (final KeyboardMatrix.Key key : pressedKeys) {
+        matrix.setSelected(key, true);
+      }
+      eventScheduler.scheduleAtTime(deviceId, wallClockTime + KEY_DOWN_TIME);
+    }
+  }
+}
+
+/*
+  Local Variables:
+    coding:utf-8
+    mode:Java
+    End:
+*/
@@ -1,6 +1,14 @@
 package emulator.vz200;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URL;
 import javax.swing.ImageIcon;
@@ -11,9 +19,11 @@ import emulator.z80.MemoryBus;
 import emulator.z80.Monitor;
 import emulator.z80.RAMMemory;
 import emulator.z80.ROMMemory;
+import emulator.z80.RewindBuffer;
+import emulator.z80.UserPreferences;
 import emulator.z80.Z80;
 
-public class VZ200
+public class VZ200 implements RewindBuffer.Machine
 {
   private static final String IMAGES_ROOT_PATH = ".";
   private static final int RAM_START = 0x7800;
@@ -21,12 +31,24 @@ public class VZ200
   private static final String OS_RESOURCENAME = "os.rom";
   private static final int OS_START = 0x0000;
   private static final int OS_LENGTH = 0x4000;
+  private static final int IO_START = 0x6800;
+  private static final int IO_LENGTH = 0x0800;
+  private static final int VIDEO_START = 0x7000;
+  private static final int VIDEO_LENGTH = 0x0800;
+  private static final long DEFAULT_HEADLESS_CYCLES = 20000000;
+  private static final int SNAPSHOT_MAGIC = 0x565a5353; // "VZSS"
+  private static final int SNAPSHOT_VERSION = 1;
 
+  private final Z80 z80;
   private final CPUControl cpuControl;
   private final MemoryBus portMemoryBus;
   private final MemoryBus mainMemoryBus;
+  private final RAMMemory ram;
   private final IO io;
   private final Monitor monitor;
+  private final KeyboardScript keyboardScript;
+  private final RewindBuffer rewindBuffer;
+  private InputRecorder inputRecorder;
 
   public static ImageIcon createIcon(final String imageFileName,
                                      final String altText)
@@ -40,27 +62,245 @@ public class VZ200
   }
 
   public VZ200() throws IOException
+  {
+    this(false);
+  }
+
+  /**
+   * @param headless If true, the machine is set up without any
+   * windows, audio lines and interactive monitor, and is driven by
+   * calling runCycles() rather than by the CPU control thread.
+   */
+  public VZ200(final boolean headless) throws IOException
   {
     final ROMMemory rom = new ROMMemory((Class<? extends Object>)VZ200.class,
                                         OS_RESOURCENAME,
                                         OS_START, OS_LENGTH);
     portMemoryBus = new MemoryBus();
     mainMemoryBus = new MemoryBus();
-    final Z80 z80 = new Z80(mainMemoryBus, portMemoryBus);
+    z80 = new Z80(mainMemoryBus, portMemoryBus);
     cpuControl = new CPUControl(z80);
     cpuControl.addResourceLocation(VZ200.class);
-    final RAMMemory ram = new RAMMemory(RAM_START, RAM_LENGTH);
-    io = new IO(cpuControl, z80, z80.getWallClockTime());
-    z80.addWallClockListener(io);
+    ram = new RAMMemory(RAM_START, RAM_LENGTH);
+    io = new IO(cpuControl, z80, z80.getWallClockTime(), headless);
     final Video video = io.getVideo();
-    mainMemoryBus.addReader(ram);
-    mainMemoryBus.addWriter(ram);
-    mainMemoryBus.addWriter(rom);
-    mainMemoryBus.addReader(io);
-    mainMemoryBus.addWriter(io);
-    mainMemoryBus.addReader(video);
-    mainMemoryBus.addWriter(video);
-    monitor = new Monitor(cpuControl);
+    mainMemoryBus.addReader(ram, RAM_START, RAM_LENGTH);
+    mainMemoryBus.addWriter(ram, RAM_START, RAM_LENGTH);
+    mainMemoryBus.addWriter(rom, OS_START, OS_LENGTH);
+    mainMemoryBus.addReader(io, IO_START, IO_LENGTH);
+    mainMemoryBus.addWriter(io, IO_START, IO_LENGTH);
+    mainMemoryBus.addReader(video, VIDEO_START, VIDEO_LENGTH);
+    mainMemoryBus.addWriter(video, VIDEO_START, VIDEO_LENGTH);
+    if (headless) {
+      monitor = null;
+      keyboardScript = new KeyboardScript(io.getKeyboardMatrix(), z80);
+      rewindBuffer = null;
+    } else {
+      monitor = new Monitor(cpuControl);
+      keyboardScript = null;
+      rewindBuffer = new RewindBuffer(this, z80);
+      rewindBuffer.setEnabled(UserPreferences.getInstance().
+                              getRewindEnabled());
+      monitor.setRewindBuffer(rewindBuffer);
+    }
+  }
+
+  public Z80 getZ80()
+  {
+    return z80;
+  }
+
+  /**
+   * Returns the bus that connects the CPU with ROM, RAM, video RAM
+   * and memory mapped I/O.
+   */
+  public MemoryBus getMemoryBus()
+  {
+    return mainMemoryBus;
+  }
+
+  public Video getVideo()
+  {
+    return io.getVideo();
+  }
+
+  /**
+   * Returns the scripted keyboard of a headless machine, or null.
+   */
+  public KeyboardScript getKeyboardScript()
+  {
+    return keyboardScript;
+  }
+
+  /**
+   * For headless operation: executes instructions on the calling
+   * thread, without synchronizing with the host's clock, until at
+   * least the specified number of CPU cycles has passed.
+   */
+  public void runCycles(final long cycles)
+  {
+    final long stopCycle = z80.getWallClockCycles() + cycles;
+    try {
+      while (z80.getWallClockCycles() < stopCycle) {
+        z80.fetchNextOperation().execute();
+      }
+    } catch (final CPU.MismatchException e) {
+      throw new InternalError(e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Writes a snapshot of the complete machine state, i.e. CPU
+   * registers, interrupt state and wall clock, RAM, video RAM and
+   * video modes, keyboard matrix and cassette input position, in
+   * compact binary form.  ROM contents are not included.  Must be
+   * called from the CPU thread or while the CPU is stopped.
+   */
+  @Override
+  public void writeSnapshot(final DataOutputStream out) throws IOException
+  {
+    out.writeInt(SNAPSHOT_MAGIC);
+    out.writeInt(SNAPSHOT_VERSION);
+    z80.writeState(out);
+    ram.writeContents(out);
+    io.writeState(out);
+    out.flush();
+  }
+
+  /**
+   * Restores a snapshot as written by writeSnapshot().  Must be
+   * called from the CPU thread or while the CPU is stopped.  If the
+   * snapshot turns out to be corrupt after its header has been
+   * accepted, the machine is left in an undefined state.
+   */
+  @Override
+  public void readSnapshot(final DataInputStream in) throws IOException
+  {
+    if (in.readInt() != SNAPSHOT_MAGIC) {
+      throw new IOException("not a VZ200 snapshot");
+    }
+    final int version = in.readInt();
+    if (version != SNAPSHOT_VERSION) {
+      throw new IOException("unsupported snapshot version: " + version);
+    }
+    z80.readState(in);
+    ram.readContents(in);
+    io.readState(in);
+    if (in.read() >= 0) {
+      throw new IOException("EOF expected: snapshot too long");
+    }
+  }
+
+  public void saveSnapshot(final File file) throws IOException
+  {
+    try (final DataOutputStream out =
+         new DataOutputStream(new BufferedOutputStream(
+           new FileOutputStream(file)))) {
+      writeSnapshot(out);
+    }
+  }
+
+  public void loadSnapshot(final File file) throws IOException
+  {
+    try (final DataInputStream in =
+         new DataInputStream(new BufferedInputStream(
+           new FileInputStream(file)))) {
+      readSnapshot(in);
+    }
+  }
+
+  /**
+   * Creates a headless copy of this machine in its current state,
+   * e.g. for running many divergent scenarios from a single booted
+   * machine.  RAM is shared copy-on-write between this machine and
+   * the copy, such that forking only costs the pages that either
+   * machine writes to later on.  All other state (see
+   * writeSnapshot()) is copied.  The scripted keyboard of the copy
+   * starts idle.  Must be called from the CPU thread or while the
+   * CPU is stopped; afterwards, both machines may run on different
+   * threads.  The copy must be disposed via dispose() when no longer
+   * needed, since otherwise the user preferences keep it reachable.
+   */
+  public VZ200 fork() throws IOException
+  {
+    final VZ200 copy = new VZ200(true);
+    final ByteArrayOutputStream state = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(state);
+    z80.writeState(out);
+    io.writeState(out);
+    out.flush();
+    final DataInputStream in =
+      new DataInputStream(new ByteArrayInputStream(state.toByteArray()));
+    copy.z80.readState(in);
+    copy.io.readState(in);
+    copy.ram.copyFrom(ram);
+    return copy;
+  }
+
+  /**
+   * Releases a headless machine: stops input recording and cassette
+   * I/O, terminates the CPU control thread, if started, and
+   * unregisters CPU, CPU control and I/O from the user preferences.
+   * Afterwards, the machine must not be used any more.  Must be
+   * called from the thread that drives the machine, or while the CPU
+   * is stopped.
+   */
+  public void dispose()
+  {
+    stopInputRecording();
+    io.setInputPlayer(null);
+    io.dispose();
+    cpuControl.dispose();
+    z80.dispose();
+  }
+
+  /**
+   * Returns the number of RAM pages that this machine currently
+   * shares with forked machines.
+   */
+  public int getSharedRAMPageCount()
+  {
+    return ram.getSharedPageCount();
+  }
+
+  /**
+   * Starts recording all keyboard and cassette input into the
+   * specified file, preceded by a snapshot of the current state,
+   * such that the run can be reproduced via startInputReplay().
+   * Must be called from the CPU thread or while the CPU is stopped.
+   */
+  public void startInputRecording(final File file) throws IOException
+  {
+    stopInputRecording();
+    inputRecorder = new InputRecorder(file, this, io, z80);
+    io.setInputRecorder(inputRecorder);
+  }
+
+  /**
+   * Stops a recording started by startInputRecording(), if any.  May
+   * be called from any thread, e.g. upon application exit.
+   */
+  public void stopInputRecording()
+  {
+    final InputRecorder recorder = inputRecorder;
+    if (recorder != null) {
+      recorder.close();
+      io.setInputRecorder(null);
+      inputRecorder = null;
+    }
+  }
+
+  /**
+   * Restores the snapshot of the specified input recording and
+   * starts replaying its input.  Must be called from the CPU thread
+   * or while the CPU is stopped.
+   * @return The player, e.g. for checking for divergence.
+   */
+  public InputPlayer startInputReplay(final File file) throws IOException
+  {
+    final InputPlayer player = new InputPlayer(file, this, io, z80);
+    io.setInputPlayer(player);
+    return player;
   }
 
   private void run()
@@ -71,9 +311,165 @@ public class VZ200
                 "g0");
   }
 
+  private static long usedMemory()
+  {
+    final Runtime runtime = Runtime.getRuntime();
+    System.gc();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /**
+   * @return The exit status, i.e. 1, if the run failed or a replay
+   * diverged, and 0 otherwise.
+   */
+  private static int runHeadless(long cycles, final String text,
+                                 final File frameFile,
+                                 final File loadSnapshotFile,
+                                 final File saveSnapshotFile,
+                                 final File recordFile,
+                                 final File replayFile)
+    throws IOException
+  {
+    final long memoryBefore = usedMemory();
+    final long startTime = System.nanoTime();
+    final VZ200 vz200 = new VZ200(true);
+    final long startupTime = System.nanoTime() - startTime;
+    final long memoryPerInstance = usedMemory() - memoryBefore;
+    System.out.printf("headless startup: %.2f ms, memory: %d KiB%n",
+                      startupTime * 1.0e-6, memoryPerInstance / 1024);
+    try {
+      if (loadSnapshotFile != null) {
+        final long loadStartTime = System.nanoTime();
+        try {
+          vz200.loadSnapshot(loadSnapshotFile);
+        } catch (final IOException e) {
+          System.out.printf("failed loading snapshot %s: %s%n",
+                            loadSnapshotFile, e.getMessage());
+          return 1;
+        }
+        final long loadTime = System.nanoTime() - loadStartTime;
+        System.out.printf("headless snapshot load: %.2f ms%n",
+                          loadTime * 1.0e-6);
+      }
+      InputPlayer player = null;
+      if (replayFile != null) {
+        try {
+          player = vz200.startInputReplay(replayFile);
+        } catch (final IOException e) {
+          System.out.printf("failed loading input recording %s: %s%n",
+                            replayFile, e.getMessage());
+          return 1;
+        }
+        if (cycles < 0) {
+          cycles =
+            player.getEndCycle() - vz200.getZ80().getWallClockCycles();
+        }
+      }
+      if (cycles < 0) {
+        cycles = DEFAULT_HEADLESS_CYCLES;
+      }
+      if (recordFile != null) {
+        vz200.startInputRecording(recordFile);
+      }
+      if (text != null) {
+        vz200.getKeyboardScript().type(text);
+      }
+      final long runStartTime = System.nanoTime();
+      vz200.runCycles(cycles);
+      final long runTime = System.nanoTime() - runStartTime;
+      System.out.printf("headless run: %d cycles in %.2f ms%n",
+                        cycles, runTime * 1.0e-6);
+      vz200.stopInputRecording();
+      if (player != null) {
+        if (player.getDivergentFrame() >= 0) {
+          System.out.printf("headless replay: diverged at frame %d of %d%n",
+                            player.getDivergentFrame(),
+                            player.getRecordedFrameCount());
+        } else {
+          System.out.printf("headless replay: %d of %d frames verified%n",
+                            player.getReplayedFrameCount(),
+                            player.getRecordedFrameCount());
+        }
+      }
+      if (frameFile != null) {
+        vz200.getVideo().saveFrame(frameFile);
+      }
+      if (saveSnapshotFile != null) {
+        vz200.saveSnapshot(saveSnapshotFile);
+      }
+      return ((player != null) && (player.getDivergentFrame() >= 0)) ? 1 : 0;
+    } finally {
+      vz200.dispose();
+    }
+  }
+
+  private static void usage()
+  {
+    System.out.println("usage: VZ200 [-record FILE.vzi] " +
+                       "[-headless [-cycles N] [-type TEXT] " +
+                       "[-frame FILE.png] [-load FILE.vzs] " +
+                       "[-save FILE.vzs] [-replay FILE.vzi]]");
+    System.out.println("  In TEXT, \\n denotes the RETURN key.");
+    System.out.println("  -load restores a machine snapshot before, " +
+                       "-save writes one after running.");
+    System.out.println("  -record records all input, -replay replays " +
+                       "it, by default up to the end of the recording.");
+    System.exit(1);
+  }
+
   public static void main(final String argv[]) throws IOException
   {
-    new VZ200().run();
+    boolean headless = false;
+    long cycles = -1;
+    String text = null;
+    File frameFile = null;
+    File loadSnapshotFile = null;
+    File saveSnapshotFile = null;
+    File recordFile = null;
+    File replayFile = null;
+    for (int i = 0; i < argv.length; i++) {
+      final String arg = argv[i];
+      if (arg.equals("-headless")) {
+        headless = true;
+      } else if (arg.equals("-cycles") && (i + 1 < argv.length)) {
+        cycles = Long.parseLong(argv[++i]);
+      } else if (arg.equals("-type") && (i + 1 < argv.length)) {
+        text = argv[++i].replace("\\n", "\n");
+      } else if (arg.equals("-frame") && (i + 1 < argv.length)) {
+        frameFile = new File(argv[++i]);
+      } else if (arg.equals("-load") && (i + 1 < argv.length)) {
+        loadSnapshotFile = new File(argv[++i]);
+      } else if (arg.equals("-save") && (i + 1 < argv.length)) {
+        saveSnapshotFile = new File(argv[++i]);
+      } else if (arg.equals("-record") && (i + 1 < argv.length)) {
+        recordFile = new File(argv[++i]);
+      } else if (arg.equals("-replay") && (i + 1 < argv.length)) {
+        replayFile = new File(argv[++i]);
+      } else {
+        usage();
+      }
+    }
+    if (headless) {
+      System.setProperty("java.awt.headless", "true");
+      final int status =
+        runHeadless(cycles, text, frameFile, loadSnapshotFile,
+                    saveSnapshotFile, recordFile, replayFile);
+      if (status != 0) {
+        System.exit(status);
+      }
+    } else {
+      if (replayFile != null) {
+        usage();
+      }
+      final VZ200 vz200 = new VZ200();
+      if (recordFile != null) {
+        vz200.startInputRecording(recordFile);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+              vz200.stopInputRecording();
+            }));
+      }
+      vz200.run();
+    }
   }
 }
 
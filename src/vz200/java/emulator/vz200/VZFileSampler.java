@@ -19,6 +19,7 @@ public class VZFileSampler implements CassetteInputSampler
   private static final long DEFAULT_HALF_SHORT_CYCLE = 287103; // [ns]
   private static final long DEFAULT_GAP_TIME_SPAN = 3065000; // [ns]
   private final File file;
+  private final double speed;
   private final boolean trimLeadIn;
   private final WallClockProvider wallClockProvider;
   private final long startWallClockTime;
@@ -41,6 +42,7 @@ public class VZFileSampler implements CassetteInputSampler
   private final long chkSumHiStartTime;
   private final long leadOutStartTime;
   private final long eofStartTime;
+  private final long[] segmentStartTimes;
   private byte lastValue;
   private boolean stopped;
 
@@ -57,6 +59,7 @@ public class VZFileSampler implements CassetteInputSampler
     throws IOException
   {
     this.file = file;
+    this.speed = speed;
     this.trimLeadIn = trimLeadIn;
     this.wallClockProvider = wallClockProvider;
     startWallClockTime = wallClockTime;
@@ -93,6 +96,13 @@ public class VZFileSampler implements CassetteInputSampler
     chkSumHiStartTime = chkSumLoStartTime + 1 * byteTimeSpan;
     leadOutStartTime = chkSumHiStartTime + 1 * byteTimeSpan;
     eofStartTime = leadOutStartTime + 20 * byteTimeSpan;
+    segmentStartTimes = new long[] {
+      leadIn0x80StartTime, leadIn0xfeStartTime, fileTypeStartTime,
+      fileNameStartTime, gapStartTime, startAddrLoStartTime,
+      startAddrHiStartTime, endAddrLoStartTime, endAddrHiStartTime,
+      contentStartTime, chkSumLoStartTime, chkSumHiStartTime,
+      leadOutStartTime, eofStartTime
+    };
     stopped = false;
     System.out.printf("%s: start playing %s%n", file.getName(), vzFile);
   }
@@ -109,6 +119,21 @@ public class VZFileSampler implements CassetteInputSampler
     return file;
   }
 
+  public double getSpeed()
+  {
+    return speed;
+  }
+
+  public boolean getTrimLeadIn()
+  {
+    return trimLeadIn;
+  }
+
+  public long getStartWallClockTime()
+  {
+    return startWallClockTime;
+  }
+
   @Override
   public float getProgress()
   {
@@ -150,6 +175,38 @@ public class VZFileSampler implements CassetteInputSampler
     return getValueOfBit((b >>> (7 - bit)) & 0x1, time % bitTimeSpan);
   }
 
+  @Override
+  public long getNextTransitionTime(final long wallClockTime)
+  {
+    int segment = 0;
+    while ((segment + 1 < segmentStartTimes.length) &&
+           (segmentStartTimes[segment + 1] <= wallClockTime)) {
+      segment++;
+    }
+    final long segmentStartTime = segmentStartTimes[segment];
+    if (wallClockTime < segmentStartTime) {
+      return segmentStartTime;
+    }
+    /*
+     * Within a segment, the value may change at each multiple of
+     * halfShortCycle (bit boundaries) or just after it (since
+     * getValueOfBit() compares inclusively).
+     */
+    final long time = wallClockTime - segmentStartTime;
+    final long nextTime =
+      segmentStartTime +
+      ((time % halfShortCycle == 0) ?
+       time + 1 :
+       (time / halfShortCycle + 1) * halfShortCycle);
+    if (segment + 1 < segmentStartTimes.length) {
+      final long nextSegmentStartTime = segmentStartTimes[segment + 1];
+      if (nextTime > nextSegmentStartTime) {
+        return nextSegmentStartTime;
+      }
+    }
+    return nextTime;
+  }
+
   @Override
   public short getValue(final long wallClockTime)
   {
@@ -1,7 +1,14 @@
 package emulator.vz200;
 
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.event.KeyListener;
+import java.awt.image.BufferedImage;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
-import javax.swing.JPanel;
+import javax.imageio.ImageIO;
 import javax.swing.JFrame;
 
 import emulator.z80.CPU;
@@ -9,10 +16,9 @@ import emulator.z80.MemoryBus;
 import emulator.z80.RAMMemory;
 import emulator.z80.Util;
 
-public class Video extends JFrame
+public class Video
   implements MemoryBus.BusReader, MemoryBus.BusWriter
 {
-  private static final long serialVersionUID = 8771293905230414438L;
   private static final int DEFAULT_BASE_ADDRESS = 0x7000;
 
   // horizontal sync
@@ -24,12 +30,14 @@ public class Video extends JFrame
   private static final long FS_CYCLE = 40960000; // [ns]
   private static final long FS_CYCLE_LOW = 2480000; // [ns]
 
+  private final JFrame frame;
   private final VideoPanel panel;
   private final RAMMemory videoRAM;
   private final int baseAddress;
-  private long wallClockTime;
   private long prevHsCycleLowStart;
   private long prevFsCycleLowStart;
+  private BufferedImage framebuffer;
+  private volatile boolean frameSynchronous;
 
   @Override
   public int readByte(final int address, final long wallClockTime)
@@ -51,6 +59,9 @@ public class Video extends JFrame
     videoRAM.writeByte(address, value, wallClockTime);
     if (value != previousValue) {
       panel.invalidate(address);
+      if (!frameSynchronous) {
+        panel.presentFrame();
+      }
     }
   }
 
@@ -63,39 +74,66 @@ public class Video extends JFrame
     if (value != previousValue) {
       panel.invalidate(address);
       panel.invalidate(address + 1);
+      if (!frameSynchronous) {
+        panel.presentFrame();
+      }
     }
   }
 
   @Override
   public void resync(final long wallClockTime) {}
 
-  public boolean hs()
+  public boolean hs(final long wallClockTime)
   {
+    if (wallClockTime - prevHsCycleLowStart >= HS_CYCLE) {
+      // catch up with all horizontal syncs passed since last call
+      prevHsCycleLowStart =
+        wallClockTime - (wallClockTime - prevHsCycleLowStart) % HS_CYCLE;
+    }
     return wallClockTime - prevHsCycleLowStart >= HS_CYCLE_LOW;
   }
 
-  public boolean fs()
+  public boolean fs(final long wallClockTime)
   {
     return wallClockTime - prevFsCycleLowStart >= FS_CYCLE_LOW;
   }
 
-  public boolean updateWallClock(final long wallClockCycles,
-                                 final long wallClockTime)
+  /**
+   * Returns the wall clock time in ns of the next field sync, that
+   * is, of the next video interrupt.
+   */
+  public long getNextFsTime()
+  {
+    return prevFsCycleLowStart + FS_CYCLE;
+  }
+
+  public boolean updateWallClock(final long wallClockTime)
   {
-    this.wallClockTime = wallClockTime;
-    if (wallClockTime - prevHsCycleLowStart >= HS_CYCLE) {
-      prevHsCycleLowStart += HS_CYCLE;
-    }
     final boolean doIrq;
     if (wallClockTime - prevFsCycleLowStart >= FS_CYCLE) {
       prevFsCycleLowStart += FS_CYCLE;
       doIrq = true;
+      panel.presentFrame();
     } else {
       doIrq = false;
     }
     return doIrq;
   }
 
+  /**
+   * While the CPU is running, changes of the screen are presented
+   * once per field sync (frame synchronous).  While it is stopped,
+   * e.g. when video RAM is changed via the monitor, changes are
+   * presented immediately.
+   */
+  public void setFrameSynchronous(final boolean frameSynchronous)
+  {
+    this.frameSynchronous = frameSynchronous;
+    if (!frameSynchronous) {
+      panel.presentFrame();
+    }
+  }
+
   public void setColorMode(final boolean colorMode)
   {
     panel.setColorMode(colorMode);
@@ -109,7 +147,103 @@ public class Video extends JFrame
   public void setZoomFactor(final int zoomFactor)
   {
     panel.setZoomFactor(zoomFactor);
-    pack();
+    if (frame != null) {
+      frame.pack();
+    }
+  }
+
+  public void addKeyListener(final KeyListener listener)
+  {
+    if (frame != null) {
+      frame.addKeyListener(listener);
+    }
+  }
+
+  public boolean isOffScreen()
+  {
+    return frame == null;
+  }
+
+  /**
+   * Paints the current screen content into an off-screen
+   * framebuffer.  The framebuffer is reused for subsequent calls as
+   * long as the zoom factor does not change.  Must be called from
+   * the CPU thread or while the CPU is stopped.
+   */
+  public BufferedImage renderFrame()
+  {
+    final Dimension size = panel.getPreferredSize();
+    if ((framebuffer == null) ||
+        (framebuffer.getWidth() != size.width) ||
+        (framebuffer.getHeight() != size.height)) {
+      framebuffer = new BufferedImage(size.width, size.height,
+                                      BufferedImage.TYPE_INT_RGB);
+    }
+    final Graphics g = framebuffer.createGraphics();
+    try {
+      panel.paintComponent(g);
+    } finally {
+      g.dispose();
+    }
+    return framebuffer;
+  }
+
+  /**
+   * Renders the current screen content and saves it as PNG file.
+   */
+  public void saveFrame(final File file) throws IOException
+  {
+    if (!ImageIO.write(renderFrame(), "png", file)) {
+      throw new IOException("no PNG image writer available");
+    }
+  }
+
+  /**
+   * Returns a 64 bit FNV-1a hash of video RAM, display mode and color
+   * mode, i.e. of everything that determines the screen content.
+   */
+  public long getContentsHash()
+  {
+    long hash = 0xcbf29ce484222325L;
+    final int size = videoRAM.getSize();
+    for (int i = 0; i < size; i++) {
+      hash ^= videoRAM.readByte(baseAddress + i, 0);
+      hash *= 0x100000001b3L;
+    }
+    hash ^= (panel.getDisplayMode() ? 0x1 : 0x0) |
+      (panel.getColorMode() ? 0x2 : 0x0);
+    hash *= 0x100000001b3L;
+    return hash;
+  }
+
+  /**
+   * Writes video RAM, display and color mode and the state of the
+   * sync signals in binary form.
+   */
+  public void writeState(final DataOutputStream out) throws IOException
+  {
+    videoRAM.writeContents(out);
+    out.writeBoolean(panel.getDisplayMode());
+    out.writeBoolean(panel.getColorMode());
+    out.writeLong(prevHsCycleLowStart);
+    out.writeLong(prevFsCycleLowStart);
+  }
+
+  /**
+   * Restores the state as written by writeState(), and repaints the
+   * whole screen.
+   */
+  public void readState(final DataInputStream in) throws IOException
+  {
+    videoRAM.readContents(in);
+    panel.setDisplayMode(in.readBoolean());
+    panel.setColorMode(in.readBoolean());
+    prevHsCycleLowStart = in.readLong();
+    prevFsCycleLowStart = in.readLong();
+    panel.invalidateAll();
+    if (!frameSynchronous) {
+      panel.presentFrame();
+    }
   }
 
   public Video() throws IOException
@@ -119,19 +253,33 @@ public class Video extends JFrame
 
   public Video(final int baseAddress) throws IOException
   {
-    super("VZ200 Video Screen");
+    this(baseAddress, false);
+  }
+
+  /**
+   * @param offScreen If true, no window is opened, and the screen
+   * content is available only via renderFrame().
+   */
+  public Video(final int baseAddress, final boolean offScreen)
+    throws IOException
+  {
     this.baseAddress = baseAddress;
-    wallClockTime = 0;
     prevHsCycleLowStart = 0;
     prevFsCycleLowStart = 0;
-    setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
-    addWindowListener(ApplicationExitListener.defaultInstance);
-    setJMenuBar(new VideoMenu(this));
-    panel = new VideoPanel(baseAddress);
-    getContentPane().add(panel);
+    frameSynchronous = false;
+    panel = new VideoPanel(baseAddress, offScreen);
     videoRAM = panel.getVideoRAM();
-    pack();
-    setVisible(true);
+    if (offScreen) {
+      frame = null;
+    } else {
+      frame = new JFrame("VZ200 Video Screen");
+      frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+      frame.addWindowListener(ApplicationExitListener.defaultInstance);
+      frame.setJMenuBar(new VideoMenu(this));
+      frame.getContentPane().add(panel);
+      frame.pack();
+      frame.setVisible(true);
+    }
   }
 
   public String toString()
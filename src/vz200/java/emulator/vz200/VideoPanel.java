@@ -3,12 +3,15 @@ package emulator.vz200;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
-import java.io.DataInputStream;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
 
-import emulator.z80.CPU;
 import emulator.z80.RAMMemory;
 import emulator.z80.ROMMemory;
 
@@ -17,6 +20,7 @@ public class VideoPanel extends JPanel
   private static final long serialVersionUID = 1223323375329148324L;
 
   private static final int MEMORY_SIZE = 0x0800;
+  private static final int DIRTY_WORDS = MEMORY_SIZE / 64;
   private static final String CHARSET_RESOURCENAME = "charset.rom";
   private static final int CHARSET_LENGTH = 3072;
   public static final boolean COLOR_MODE_GREEN = false;
@@ -24,6 +28,17 @@ public class VideoPanel extends JPanel
   public static final boolean DISPLAY_MODE_TEXT = false;
   public static final boolean DISPLAY_MODE_GRAPHICS = true;
 
+  // screen geometry in emulated pixels
+  private static final int SCREEN_WIDTH = 320;
+  private static final int SCREEN_HEIGHT = 256;
+  private static final int BORDER = 32;
+  private static final int COLUMNS = 32;
+  private static final int CELL_WIDTH = 8;
+  private static final int CHAR_HEIGHT = 12;
+  private static final int CHAR_PIXELS = CELL_WIDTH * CHAR_HEIGHT;
+  private static final int TEXT_ROWS = 16;
+  private static final int GRAPHICS_HEIGHT = 3;
+  private static final int GRAPHICS_ROWS = 64;
 
   private static final Color GREEN_FRAME_COLOR =
     Color.green.darker().darker().darker();
@@ -59,32 +74,61 @@ public class VideoPanel extends JPanel
     Color.orange.darker(), Color.cyan, Color.magenta, Color.orange
   };
 
+  /**
+   * Snapshot of video RAM and mode flags, together with the video
+   * RAM bytes that changed since the previous snapshot.
+   */
+  private static class Frame
+  {
+    private final byte[] videoRAM;
+    private final long[] dirty; // one bit per video RAM byte
+    private boolean allDirty;
+    private boolean displayMode;
+    private boolean colorMode;
+
+    private Frame()
+    {
+      videoRAM = new byte[MEMORY_SIZE];
+      dirty = new long[DIRTY_WORDS];
+      allDirty = true;
+    }
+  }
+
   private final int baseAddress;
   private final RAMMemory videoRAM;
-  private final int[] directVideoRAM;
-  private final int[] charset; // use int rather than signed byte to save casts
+  private final byte[] charset;
   private int zoomFactor;
   private Dimension preferredSize;
-  private Color frameColor;
-  private Color[] textColorTable, graphicsColorTable;
+
+  // emulated state, owned by the CPU thread
   private boolean displayMode;
   private boolean colorMode;
 
-  // active window
-  private int axleft;
-  private int axright;
-  private int aybottom;
-  private int aytop;
+  // framebuffer in emulated resolution, scaled when painted
+  private final BufferedImage screenImage;
+  private final int[] screenPixels;
 
-  // full screen window
-  private int frameWidth;
-  private int sxleft;
-  private int sxright;
-  private int sytop;
-  private int sybottom;
+  // rendering state, owned by the AWT event thread (on-screen) or
+  // by the caller of paintComponent() (off-screen)
+  private boolean renderedDisplayMode;
+  private boolean renderedColorMode;
+  private boolean lookupTablesValid;
+  private int frameColor;
 
-  // invalidation
-  private final Invalidator invalidator;
+  // pixels of each character code for the rendered color mode
+  private final int[] textPixels;
+
+  // pixels of a single line of each graphics byte value for the
+  // rendered color mode
+  private final int[] graphicsPixels;
+
+  // invalidation: dirty marks are written by the CPU thread only,
+  // and handed over to the renderer once per frame
+  private final boolean offScreen;
+  private final long[] dirty; // one bit per video RAM byte
+  private boolean allDirty;
+  private boolean anyDirty;
+  private final Presenter presenter;
 
   private VideoPanel()
   {
@@ -92,19 +136,39 @@ public class VideoPanel extends JPanel
   }
 
   public VideoPanel(final int baseAddress) throws IOException
+  {
+    this(baseAddress, false);
+  }
+
+  /**
+   * @param offScreen If true, the panel is never displayed, but only
+   * painted on demand into an off-screen framebuffer, such that no
+   * repaint requests are posted to the AWT event thread.
+   */
+  public VideoPanel(final int baseAddress, final boolean offScreen)
+    throws IOException
   {
     this.baseAddress = baseAddress;
+    this.offScreen = offScreen;
     charset =
       new ROMMemory((Class<? extends Object>)VideoPanel.class,
                     CHARSET_RESOURCENAME,
-		    0x0000, CHARSET_LENGTH).getByteArray();
+		    0x0000, CHARSET_LENGTH).getBytes();
     videoRAM = new RAMMemory(baseAddress, 0x0800);
-    directVideoRAM = videoRAM.getByteArray();
-    invalidator = new Invalidator();
+    screenImage = new BufferedImage(SCREEN_WIDTH, SCREEN_HEIGHT,
+                                    BufferedImage.TYPE_INT_RGB);
+    screenPixels =
+      ((DataBufferInt)screenImage.getRaster().getDataBuffer()).getData();
+    textPixels = new int[256 * CHAR_PIXELS];
+    graphicsPixels = new int[256 * CELL_WIDTH];
+    lookupTablesValid = false;
+    dirty = new long[DIRTY_WORDS];
+    presenter = offScreen ? null : new Presenter();
     setZoomFactor(UserPreferences.getInstance().getVideoZoomFactor());
-    colorMode = COLOR_MODE_RED; // force initial update
-    setColorMode(COLOR_MODE_GREEN);
-    setDisplayMode(DISPLAY_MODE_TEXT);
+    displayMode = DISPLAY_MODE_TEXT;
+    colorMode = COLOR_MODE_GREEN;
+    invalidateAll();
+    presentFrame();
   }
 
   public RAMMemory getVideoRAM()
@@ -112,6 +176,10 @@ public class VideoPanel extends JPanel
     return videoRAM;
   }
 
+  /**
+   * Must be called from the AWT event thread, unless the panel is
+   * off-screen.
+   */
   public void setZoomFactor(final int zoomFactor)
   {
     if (zoomFactor < 1) {
@@ -121,22 +189,9 @@ public class VideoPanel extends JPanel
       throw new IllegalArgumentException("zoomFactor > 3");
     }
     this.zoomFactor = zoomFactor;
-
-    // complete screen
-    sxleft = 0;
-    sxright = 320 * zoomFactor - 1;
-    sytop = 0;
-    sybottom = 256 * zoomFactor - 1;
-
-    // active window
-    frameWidth = 32 * zoomFactor;
-    axleft = sxleft + 32 * zoomFactor;
-    axright = sxright - 32 * zoomFactor;
-    aytop = sytop + 32 * zoomFactor;
-    aybottom = sybottom - 32 * zoomFactor;
-
-    preferredSize = new Dimension(320 * zoomFactor, 256 * zoomFactor);
-    invalidateAll();
+    preferredSize = new Dimension(SCREEN_WIDTH * zoomFactor,
+                                  SCREEN_HEIGHT * zoomFactor);
+    repaint();
   }
 
   public Dimension getPreferredSize()
@@ -148,15 +203,6 @@ public class VideoPanel extends JPanel
   {
     if (this.colorMode != colorMode) {
       this.colorMode = colorMode;
-      if (colorMode == COLOR_MODE_GREEN) {
-        frameColor = GREEN_FRAME_COLOR;
-        textColorTable = GREEN_TEXT_COLOR_TABLE;
-        graphicsColorTable = GREEN_GRAPHICS_COLOR_TABLE;
-      } else { // (colorMode == COLOR_MODE_RED)
-        frameColor = RED_FRAME_COLOR;
-        textColorTable = RED_TEXT_COLOR_TABLE;
-        graphicsColorTable = RED_GRAPHICS_COLOR_TABLE;
-      }
       invalidateAll();
     }
   }
@@ -174,222 +220,284 @@ public class VideoPanel extends JPanel
     return displayMode;
   }
 
-  public void paintComponent(final Graphics g)
+  public boolean getColorMode()
   {
-    // current area to redraw
-    int cxleft = sxleft;
-    int cxright = sxright;
-    int cytop = sytop;
-    int cybottom = sybottom;
-
-    g.setColor(frameColor);
-    if (cytop < aytop) {
-      g.fillRect(cxleft, cytop, cxright - cxleft + 1, aytop - cytop);
-      cytop = aytop;
+    return colorMode;
+  }
+
+  private void updateLookupTables(final boolean colorMode)
+  {
+    final Color[] textColorTable;
+    final Color[] graphicsColorTable;
+    if (colorMode == COLOR_MODE_GREEN) {
+      frameColor = GREEN_FRAME_COLOR.getRGB();
+      textColorTable = GREEN_TEXT_COLOR_TABLE;
+      graphicsColorTable = GREEN_GRAPHICS_COLOR_TABLE;
+    } else { // (colorMode == COLOR_MODE_RED)
+      frameColor = RED_FRAME_COLOR.getRGB();
+      textColorTable = RED_TEXT_COLOR_TABLE;
+      graphicsColorTable = RED_GRAPHICS_COLOR_TABLE;
     }
-    if (cxleft < axleft) {
-      g.fillRect(cxleft, cytop, axleft - cxleft, cybottom - cytop + 1);
-      cxleft = axleft;
+    final int black = Color.black.getRGB();
+    for (int charCode = 0; charCode < 256; charCode++) {
+      final int fgColor = textColorTable[charCode >> 4].getRGB();
+      int index = charCode * CHAR_PIXELS;
+      int charsetIndex = charCode * CHAR_HEIGHT;
+      for (int yline = 0; yline < CHAR_HEIGHT; yline++) {
+        final int charline = charset[charsetIndex++] & 0xff;
+        for (int xline = 0; xline < CELL_WIDTH; xline++) {
+          textPixels[index++] =
+            ((charline >> xline) & 0x1) != 0 ? fgColor : black;
+        }
+      }
     }
-    if (cybottom > aybottom) {
-      g.fillRect(cxleft, aybottom + 1,
-		 cxright - cxleft + 1, cybottom - aybottom);
-      cybottom = aybottom;
+    final int[] graphicsColors = new int[graphicsColorTable.length];
+    for (int i = 0; i < graphicsColors.length; i++) {
+      graphicsColors[i] = graphicsColorTable[i].getRGB();
     }
-    if (cxright > axright) {
-      g.fillRect(axright + 1, cytop,
-		 cxright - axright, cybottom - cytop + 1);
-      cxright = axright;
+    for (int value = 0; value < 256; value++) {
+      int index = value * CELL_WIDTH;
+      for (int shift = 6; shift >= 0; shift -= 2) {
+        final int color = graphicsColors[(value >> shift) & 0x3];
+        graphicsPixels[index++] = color;
+        graphicsPixels[index++] = color;
+      }
     }
-
-    if (displayMode == DISPLAY_MODE_TEXT)
-      paintTextMode(g, cxleft, cxright, cytop, cybottom);
-    else // (displayMode == DISPLAY_MODE_GRAPHICS)
-      paintGraphicsMode(g, cxleft, cxright, cytop, cybottom);
+    renderedColorMode = colorMode;
+    lookupTablesValid = true;
   }
 
-  public void paintTextMode(final Graphics g,
-			    final int cxleft, final int cxright,
-			    final int cytop, final int cybottom)
+  /**
+   * Rasterizes the screen area of the specified video RAM byte of
+   * the frame into the framebuffer.  In text mode, only the first
+   * 512 bytes are visible.
+   */
+  private void rasterize(final Frame frame, final int addressOffset)
   {
-    final int x0 = (cxleft - frameWidth) / zoomFactor / 8;
-    final int x1 = (cxright - frameWidth) / zoomFactor / 8 + 1;
-    final int y0 = (cytop - frameWidth) / zoomFactor / 12;
-    final int y1 = (cybottom - frameWidth) / zoomFactor / 12 + 1;
-    final int zoomFactor8 = 8 * zoomFactor;
-    final int zoomFactor12 = 12 * zoomFactor;
-    int sy0 = y0 * zoomFactor12 + frameWidth;
-    for (int y = y0; y < y1; y++) {
-      int sx0 = x0 * zoomFactor8 + frameWidth;
-      for (int x = x0; x < x1; x++) {
-	final int charCode = directVideoRAM[(y << 5) + x];
-	final Color fgColor = textColorTable[charCode >> 4];
-	int sy = sy0;
-	int charsetIndex = charCode * 12;
-	for (int yline = 0; yline < 12; yline++) {
-	  int charline = charset[charsetIndex++];
-	  int sx = sx0;
-	  int mask = 1;
-	  for (int xline = 0; xline < 8; xline++) {
-	    if ((charline & mask) == 0)
-	      g.setColor(Color.black);
-	    else
-	      g.setColor(fgColor);
-	    g.fillRect(sx, sy, zoomFactor, zoomFactor);
-	    mask <<= 1;
-	    sx += zoomFactor;
-	  }
-	  sy += zoomFactor;
-	}
-	sx0 += zoomFactor8;
+    final int x = addressOffset & 0x1f;
+    final int y = addressOffset >> 5;
+    final int charCode = frame.videoRAM[addressOffset] & 0xff;
+    final int[] pixels;
+    final int lines;
+    final int srcStep;
+    int src;
+    if (renderedDisplayMode == DISPLAY_MODE_TEXT) {
+      if (y >= TEXT_ROWS) {
+        return;
       }
-      sy0 += zoomFactor12;
+      pixels = textPixels;
+      lines = CHAR_HEIGHT;
+      srcStep = CELL_WIDTH;
+      src = charCode * CHAR_PIXELS;
+    } else { // (renderedDisplayMode == DISPLAY_MODE_GRAPHICS)
+      // all lines of a graphics cell are equal
+      pixels = graphicsPixels;
+      lines = GRAPHICS_HEIGHT;
+      srcStep = 0;
+      src = charCode * CELL_WIDTH;
+    }
+    int dst = (BORDER + y * lines) * SCREEN_WIDTH + BORDER + x * CELL_WIDTH;
+    for (int line = 0; line < lines; line++) {
+      System.arraycopy(pixels, src, screenPixels, dst, CELL_WIDTH);
+      src += srcStep;
+      dst += SCREEN_WIDTH;
     }
   }
 
-  public void paintGraphicsMode(final Graphics g,
-				final int cxleft, final int cxright,
-				final int cytop, final int cybottom)
+  private void rasterizeAll(final Frame frame)
   {
-    final int x0 = (cxleft - frameWidth) / zoomFactor / 8;
-    final int x1 = (cxright - frameWidth) / zoomFactor / 8 + 1;
-    final int y0 = (cytop - frameWidth) / zoomFactor / 3;
-    final int y1 = (cybottom - frameWidth) / zoomFactor / 3 + 1;
-
-    final int zoomFactor2 = 2 * zoomFactor;
-    final int zoomFactor3 = 3 * zoomFactor;
-    final int zoomFactor8 = 8 * zoomFactor;
-    final int _sx = x0 * zoomFactor8 + 6 * zoomFactor + frameWidth;
-
-    int sy0 = y0 * zoomFactor3 + frameWidth;
-    for (int y = y0; y < y1; y++) {
-      int sx0 = _sx;
-      for (int x = x0; x < x1; x++) {
-	int charCode = directVideoRAM[(y << 5) + x];
-	int sx = sx0;
-	for (int xline = 0; xline < 4; xline++) {
-	  g.setColor(graphicsColorTable[charCode & 0x3]);
-	  g.fillRect(sx, sy0, zoomFactor2, zoomFactor3);
-	  charCode >>= 2;
-	  sx -= zoomFactor2;
-	}
-	sx0 += zoomFactor8;
-      }
-      sy0 += zoomFactor3;
+    Arrays.fill(screenPixels, frameColor);
+    for (int addressOffset = 0; addressOffset < MEMORY_SIZE; addressOffset++) {
+      rasterize(frame, addressOffset);
     }
   }
 
-  public void repaintTextMode(final boolean[] dirty)
+  /**
+   * Rasterizes all dirty video RAM bytes of the frame and requests
+   * repainting of each affected row of characters (text mode) or
+   * pixels (graphics mode).
+   */
+  private void rasterizeDirty(final Frame frame)
   {
-    final int dx = zoomFactor * 8;
-    final int dy = zoomFactor * 12;
-    int index = 0;
-    int y = frameWidth;
-    for (int cy = 0; cy < 16; cy++) {
-      int x = frameWidth;
-      for (int cx = 0; cx < 32; cx++) {
-	if (dirty[index++])
-	  repaint(0, x, y, dx, dy);
-	x += dx;
+    final int rows;
+    final int rowHeight;
+    if (renderedDisplayMode == DISPLAY_MODE_TEXT) {
+      rows = TEXT_ROWS;
+      rowHeight = CHAR_HEIGHT;
+    } else { // (renderedDisplayMode == DISPLAY_MODE_GRAPHICS)
+      rows = GRAPHICS_ROWS;
+      rowHeight = GRAPHICS_HEIGHT;
+    }
+    for (int row = 0; row < rows; row++) {
+      // a row of 32 bytes occupies one half of a dirty word
+      long rowBits =
+        (frame.dirty[row >>> 1] >>> ((row & 0x1) << 5)) & 0xffffffffL;
+      if (rowBits != 0) {
+        final int rowStart = row * COLUMNS;
+        do {
+          rasterize(frame, rowStart + Long.numberOfTrailingZeros(rowBits));
+          rowBits &= rowBits - 1;
+        } while (rowBits != 0);
+        repaint(0,
+                BORDER * zoomFactor,
+                (BORDER + row * rowHeight) * zoomFactor,
+                COLUMNS * CELL_WIDTH * zoomFactor,
+                rowHeight * zoomFactor);
       }
-      y += dy;
     }
   }
 
-  public void repaintGraphicsMode(final boolean[] dirty)
+  /**
+   * Renders the frame into the framebuffer, and clears its dirty
+   * marks.
+   */
+  private void render(final Frame frame, final boolean doRepaint)
   {
-    final int dx = zoomFactor * 2;
-    final int dy = zoomFactor * 3;
-    int index = 0;
-    int y = frameWidth;
-    for (int cy = 0; cy < 64; cy++) {
-      int x = frameWidth;
-      for (int cx = 0; cx < 128; cx++) {
-	if (dirty[index])
-	  repaint(0, x, y, dx, dy);
-	x += dx;
-        if ((cx & 0x3) == 0x3) index++;
+    boolean allDirty = frame.allDirty;
+    if (!lookupTablesValid || (renderedColorMode != frame.colorMode)) {
+      updateLookupTables(frame.colorMode);
+      allDirty = true;
+    }
+    if (renderedDisplayMode != frame.displayMode) {
+      renderedDisplayMode = frame.displayMode;
+      allDirty = true;
+    }
+    if (allDirty) {
+      rasterizeAll(frame);
+      if (doRepaint) {
+        repaint();
       }
-      y += dy;
+    } else if (doRepaint) {
+      rasterizeDirty(frame);
     }
+    Arrays.fill(frame.dirty, 0L);
+    frame.allDirty = false;
   }
 
-  public void repaint(final boolean[] dirty)
+  /**
+   * Blits the framebuffer, scaled by the zoom factor.  An off-screen
+   * panel is not presented any frames and hence renders the current
+   * video RAM contents first.
+   */
+  public void paintComponent(final Graphics g)
   {
-    if (displayMode == DISPLAY_MODE_TEXT)
-      repaintTextMode(dirty);
-    else
-      repaintGraphicsMode(dirty);
+    if (offScreen) {
+      final Frame frame = new Frame();
+      takeSnapshot(frame);
+      render(frame, false);
+    }
+    g.drawImage(screenImage, 0, 0, preferredSize.width, preferredSize.height,
+                null);
   }
 
+  /**
+   * Marks the specified video RAM byte as changed.  Must be called
+   * from the CPU thread or while the CPU is stopped.
+   */
   public void invalidate(final int address)
   {
-    invalidator.invalidate(address);
+    final int addressOffset = (address - baseAddress) & 0xffff;
+    if (addressOffset < MEMORY_SIZE) {
+      dirty[addressOffset >>> 6] |= 1L << addressOffset;
+      anyDirty = true;
+    }
   }
 
+  /**
+   * Marks the complete screen as changed, e.g. when switching display
+   * or color mode.  Must be called from the CPU thread or while the
+   * CPU is stopped.
+   */
   public void invalidateAll()
   {
-    invalidator.invalidateAll();
+    allDirty = true;
+    anyDirty = true;
   }
 
-  private class Invalidator implements Runnable
+  private void takeSnapshot(final Frame frame)
   {
-    private boolean[] dirtyCollect, dirtyHandle;
-    private boolean allDirtyCollect, allDirtyHandle;
-    private boolean scheduled;
+    for (int addressOffset = 0; addressOffset < MEMORY_SIZE; addressOffset++) {
+      frame.videoRAM[addressOffset] =
+        (byte)videoRAM.readByte(baseAddress + addressOffset, 0);
+    }
+    frame.displayMode = displayMode;
+    frame.colorMode = colorMode;
+  }
 
-    public Invalidator()
-    {
-      dirtyCollect = new boolean[MEMORY_SIZE];
-      dirtyHandle = new boolean[MEMORY_SIZE];
-      scheduled = false;
+  /**
+   * Hands a snapshot of video RAM and mode flags over to the AWT
+   * event thread for rendering, if anything has changed since the
+   * previous call.  Called once per field sync, such that rendering
+   * is bounded to one pass per emulated frame and never shows a
+   * partially updated frame.  Must be called from the CPU thread or
+   * while the CPU is stopped.
+   */
+  public void presentFrame()
+  {
+    if (anyDirty && (presenter != null)) {
+      presenter.present();
     }
+  }
+
+  /**
+   * Hands frames over from the CPU thread to the AWT event thread
+   * without locking, using two frames: the frame that was published
+   * last, and the other one, which the event thread has finished
+   * rendering as soon as it has taken the frame published last.  If
+   * the event thread has not yet taken the frame published last, the
+   * CPU thread reclaims it, such that its dirty marks are merged with
+   * the new ones rather than lost.
+   */
+  private class Presenter implements Runnable
+  {
+    private final AtomicReference<Frame> pendingFrame;
+    private final AtomicBoolean scheduled;
+    private final Frame[] frames;
+    private int lastPublished; // accessed by the CPU thread only
 
-    public synchronized void invalidate(final int address)
+    public Presenter()
     {
-      final int addressOffset = (address - baseAddress) & 0xffff;
-      if (addressOffset < MEMORY_SIZE) {
-        dirtyCollect[addressOffset] = true;
-        if (!scheduled) {
-          SwingUtilities.invokeLater(this);
-          scheduled = true;
-        }
-      }
+      pendingFrame = new AtomicReference<Frame>();
+      scheduled = new AtomicBoolean();
+      frames = new Frame[] { new Frame(), new Frame() };
+      lastPublished = 1;
     }
 
     /**
-     * Call this when switching graphics or color mode.
+     * Takes over the snapshot and dirty marks into a frame, publishes
+     * it, and schedules rendering, if not yet scheduled.
      */
-    public synchronized void invalidateAll()
+    public void present()
     {
-      allDirtyCollect = true;
-      if (!scheduled) {
-	SwingUtilities.invokeLater(this);
-	scheduled = true;
+      final Frame unreadFrame = pendingFrame.getAndSet(null);
+      final Frame frame;
+      if (unreadFrame != null) {
+        frame = unreadFrame;
+      } else {
+        lastPublished ^= 0x1;
+        frame = frames[lastPublished];
+      }
+      takeSnapshot(frame);
+      for (int i = 0; i < DIRTY_WORDS; i++) {
+        frame.dirty[i] |= dirty[i];
+        dirty[i] = 0L;
+      }
+      frame.allDirty |= allDirty;
+      allDirty = false;
+      anyDirty = false;
+      pendingFrame.set(frame);
+      if (!scheduled.getAndSet(true)) {
+        SwingUtilities.invokeLater(this);
       }
-    }
-
-    private synchronized void updateDirtyData()
-    {
-      final boolean[] dirty = dirtyCollect;
-      dirtyCollect = dirtyHandle;
-      dirtyHandle = dirty;
-      final boolean allDirty = allDirtyCollect;
-      allDirtyCollect = allDirtyHandle;
-      allDirtyHandle = allDirty;
-      scheduled = false;
     }
 
     public void run()
     {
-      updateDirtyData();
-      if (allDirtyHandle)
-	repaint();
-      else
-	repaint(dirtyHandle);
-      for (int i = 0; i < MEMORY_SIZE; i++)
-	dirtyHandle[i] = false;
-      allDirtyHandle = false;
+      scheduled.set(false);
+      final Frame frame = pendingFrame.getAndSet(null);
+      if (frame != null) {
+        render(frame, true);
+      }
     }
   }
 }
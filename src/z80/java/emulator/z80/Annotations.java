@@ -151,6 +151,20 @@ public class Annotations {
     return adr2label.get(address);
   }
 
+  /**
+   * Returns the address of the closest label at or before the
+   * specified address, or -1, if there is no such label.
+   */
+  public int findPrecedingLabelAddress(int address) {
+    int labelAddress = -1;
+    for (int candidate : adr2label.keySet()) {
+      if ((candidate <= address) && (candidate > labelAddress)) {
+        labelAddress = candidate;
+      }
+    }
+    return labelAddress;
+  }
+
   public int resolveLabel(String label) {
     return label2adr.get(label);
   }
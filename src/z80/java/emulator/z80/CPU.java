@@ -45,12 +45,34 @@ public interface CPU extends WallClockProvider, PreferencesChangeListener
     ConcreteOpCode createOpCode();
   }
 
+  /**
+   * Listener that is notified after each single instruction.  Since
+   * this is expensive, peripherals should rather implement
+   * DeadlineListener.
+   */
   public interface WallClockListener
   {
     void wallClockChanged(long timePerClockCycle,
                           long wallClockCycles, long wallClockTime);
   }
 
+  /**
+   * Listener that is notified only when the CPU's wall clock reaches
+   * the deadline that the listener has announced.
+   */
+  public interface DeadlineListener
+  {
+    /**
+     * Called as soon as the instruction that reaches or passes the
+     * most recently announced deadline has been executed.  May also
+     * be called earlier, e.g. upon a change of the CPU speed.
+     *
+     * @return The next deadline in CPU cycles since startup.
+     */
+    long deadlineReached(long timePerClockCycle,
+                         long wallClockCycles, long wallClockTime);
+  }
+
   int doPOP();
   void doPUSH(int op);
 
@@ -67,6 +89,8 @@ public interface CPU extends WallClockProvider, PreferencesChangeListener
   void requestNMI();
 
   void addWallClockListener(WallClockListener listener);
+  void addDeadlineListener(DeadlineListener listener);
+  EventScheduler getEventScheduler();
 
   /**
    * When pausing and then continuing the CPU to run, the emulated
@@ -93,6 +117,29 @@ public interface CPU extends WallClockProvider, PreferencesChangeListener
    */
   double getAvgJitter();
 
+  /**
+   * Returns the CPU thread's history of statistics samples.  Take a
+   * copy via StatisticsSnapshot.copyFrom() before evaluating it.
+   */
+  StatisticsSnapshot getStatistics();
+
+  // Profiling
+
+  /**
+   * Returns the CPU thread's execution profile, or null, if profiling
+   * has never been enabled.  Evaluate it only while the CPU is
+   * stopped.
+   */
+  Profiler getProfiler();
+
+  /**
+   * Enables or disables counting executed instructions per
+   * operation and per address.
+   */
+  void setProfilingEnabled(boolean enabled);
+
+  boolean isProfilingEnabled();
+
   public class MismatchException extends Exception
   {
     private static final long serialVersionUID = 3640134396555784341L;
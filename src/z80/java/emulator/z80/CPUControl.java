@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.locks.LockSupport;
 
 public class CPUControl implements CPUControlAPI, PreferencesChangeListener
 {
@@ -16,6 +17,8 @@ public class CPUControl implements CPUControlAPI, PreferencesChangeListener
   private final List<CPUControlAutomaton.Listener> stateChangeListeners;
   private final List<Class<?>> resourceLocations;
   private CPUControlAutomaton automaton;
+  private ControlThread controlThread;
+  private volatile boolean disposed;
   private boolean singleStep;
   private boolean trace;
   private Integer breakPoint;
@@ -27,6 +30,42 @@ public class CPUControl implements CPUControlAPI, PreferencesChangeListener
    */
   private boolean busyWait;
 
+  /**
+   * Turn on, if you require almost the precision of busy waiting,
+   * but can not afford its CPU load.  Ignored while busyWait is on.
+   */
+  private boolean hybridWait;
+
+  /**
+   * Bounds in [ns] for the busy waiting tail of hybrid waiting.
+   */
+  private static final long MIN_SPIN_TAIL = 10000;
+  private static final long MAX_SPIN_TAIL = 2000000;
+
+  /**
+   * Averaged amount of time in [ns] by that parking the thread
+   * overshoots the requested time span, as observed on this host.
+   */
+  private long avgParkOvershoot;
+
+  /**
+   * If on, instructions are executed as fast as possible, without
+   * synchronizing the CPU's wall clock with system time.
+   */
+  private volatile boolean maxSpeed;
+
+  /**
+   * Maximum time span in [ns] of CPU wall clock time to execute
+   * without checking the host's clock.
+   */
+  private long sliceTime;
+
+  /**
+   * Maximum time span in [ns] that the CPU's wall clock may run
+   * ahead of the host's clock.
+   */
+  private long jitterBudget;
+
   private static final boolean DEBUG = false;
 
   private void printMessage(final String message)
@@ -116,6 +155,21 @@ public class CPUControl implements CPUControlAPI, PreferencesChangeListener
     return cpu.getAnnotations();
   }
 
+  public Profiler getProfiler()
+  {
+    return cpu.getProfiler();
+  }
+
+  public void setProfilingEnabled(final boolean enabled)
+  {
+    cpu.setProfilingEnabled(enabled);
+  }
+
+  public boolean isProfilingEnabled()
+  {
+    return cpu.isProfilingEnabled();
+  }
+
   public void writeByteToMemory(final int address, final int dataByte)
   {
     memory.writeByte(address, dataByte, cpu.getWallClockCycles());
@@ -153,6 +207,43 @@ public class CPUControl implements CPUControlAPI, PreferencesChangeListener
     this.busyWait = busyWait;
   }
 
+  public void hybridWaitChanged(final boolean hybridWait)
+  {
+    this.hybridWait = hybridWait;
+  }
+
+  /**
+   * Waits until System.nanoTime() reaches the specified time by
+   * parking the thread for the bulk of the time span, and busy
+   * waiting for the remaining tail.  The tail is twice the parking
+   * overshoot observed so far, such that parking rarely returns too
+   * late.
+   */
+  private void hybridWaitUntil(final long resumeTime)
+  {
+    final long spinTail =
+      Math.min(Math.max(2 * avgParkOvershoot, MIN_SPIN_TAIL), MAX_SPIN_TAIL);
+    final long parkStartTime = System.nanoTime();
+    final long parkTime = resumeTime - parkStartTime - spinTail;
+    if (parkTime > 0) {
+      LockSupport.parkNanos(parkTime);
+      final long overshoot = System.nanoTime() - parkStartTime - parkTime;
+      avgParkOvershoot += (Math.max(overshoot, 0) - avgParkOvershoot) / 8;
+    } else {
+      // the tail covers the whole time span, e.g. after an outlier
+      // => let it shrink, such that calibration can resume
+      avgParkOvershoot -= avgParkOvershoot / 16;
+    }
+    while (System.nanoTime() - resumeTime < 0) {
+      Thread.onSpinWait();
+    }
+  }
+
+  public void maxSpeedChanged(final boolean maxSpeed)
+  {
+    this.maxSpeed = maxSpeed;
+  }
+
   public void addLogListener(final LogListener listener)
   {
     logListeners.add(listener);
@@ -195,6 +286,48 @@ public class CPUControl implements CPUControlAPI, PreferencesChangeListener
     return null;
   }
 
+  /**
+   * Executes instructions until the CPU's wall clock reaches the
+   * specified cycle, or the CPU is requested to stop, or max speed
+   * mode is switched to a value other than the specified one.
+   * @return The most recently executed operation.
+   */
+  private CPU.ConcreteOperation executeSlice(CPU.ConcreteOperation op,
+                                             final long stopCycle,
+                                             final boolean unthrottled)
+  {
+    while ((cpu.getWallClockCycles() < stopCycle) &&
+           (maxSpeed == unthrottled) &&
+           (automaton.getState() == CPUControlAutomaton.State.RUNNING)) {
+      try {
+        op = cpu.fetchNextOperation();
+        op.execute();
+        if (trace) {
+          logOperation(op);
+        }
+      } catch (final CPU.MismatchException e) {
+        logError(e.getMessage());
+        breakPoint = regPC.getValue(); // stop executing
+      }
+      if (singleStep ||
+          ((breakPoint != null) && (regPC.getValue() == breakPoint))) {
+        requestStop();
+      }
+    }
+    return op;
+  }
+
+  /**
+   * Synchronization with the host's clock is done in slices: While
+   * the CPU's wall clock is behind (or just up with) the host's
+   * clock, instructions are executed without looking at the host's
+   * clock until either sliceTime has passed or the CPU's wall clock
+   * is jitterBudget ahead of the host's clock, whichever comes
+   * first.  Then the host's clock is checked again.  Hence, the
+   * host's clock is read once per slice rather than once per
+   * instruction, and the CPU's wall clock never runs ahead by more
+   * than jitterBudget plus a single instruction.
+   */
   private void _execute()
   {
     long systemStartTime = 0;
@@ -212,27 +345,35 @@ public class CPUControl implements CPUControlAPI, PreferencesChangeListener
       acknowledgeStartCompleted();
       while (automaton.getState() == CPUControlAutomaton.State.RUNNING) {
         long systemTime = System.nanoTime();
+        if (maxSpeed) {
+          op = executeSlice(op, Long.MAX_VALUE, true);
+          final long maxSpeedStopTime = System.nanoTime();
+          busyTime += maxSpeedStopTime - systemTime;
+          // restart pacing from here rather than trying to go back
+          // in time to where max speed mode was entered
+          deltaStartTime = cpu.getWallClockTime() - maxSpeedStopTime;
+          jitter = 0;
+          // peripherals fed in real time need to catch up
+          cpu.resyncPeripherals();
+          continue;
+        }
         long cpuTime = cpu.getWallClockTime();
         jitter = systemTime - cpuTime + deltaStartTime;
         if (jitter > 0) {
-          try {
-            op = cpu.fetchNextOperation();
-            op.execute();
-            if (trace) {
-              logOperation(op);
-            }
-          } catch (final CPU.MismatchException e) {
-            logError(e.getMessage());
-            breakPoint = regPC.getValue(); // stop executing
-          }
-          if (singleStep ||
-              ((breakPoint != null) && (regPC.getValue() == breakPoint))) {
-            requestStop();
-          }
+          final long sliceSpan = Math.min(sliceTime, jitter + jitterBudget);
+          final long timePerClockCycle = cpu.getTimePerClockCycle();
+          final long stopCycle =
+            cpu.getWallClockCycles() +
+            (sliceSpan + timePerClockCycle - 1) / timePerClockCycle;
+          op = executeSlice(op, stopCycle, false);
           busyTime += System.nanoTime() - systemTime;
         } else {
+          // the host's clock will be up with the CPU's one at
+          final long resumeTime = systemTime - jitter;
           if (busyWait) {
-            while (System.nanoTime() - systemTime < 0);
+            while (System.nanoTime() - resumeTime < 0);
+          } else if (hybridWait) {
+            hybridWaitUntil(resumeTime);
           } else {
             try {
               Thread.sleep(1);
@@ -272,6 +413,32 @@ public class CPUControl implements CPUControlAPI, PreferencesChangeListener
     cpuStopped();
   }
 
+  public void setSliceTime(final long sliceTime)
+  {
+    if (sliceTime <= 0) {
+      throw new IllegalArgumentException("sliceTime <= 0");
+    }
+    this.sliceTime = sliceTime;
+  }
+
+  public long getSliceTime()
+  {
+    return sliceTime;
+  }
+
+  public void setJitterBudget(final long jitterBudget)
+  {
+    if (jitterBudget < 0) {
+      throw new IllegalArgumentException("jitterBudget < 0");
+    }
+    this.jitterBudget = jitterBudget;
+  }
+
+  public long getJitterBudget()
+  {
+    return jitterBudget;
+  }
+
   public void setSingleStep(final boolean singleStep)
   {
     this.singleStep = singleStep;
@@ -297,12 +464,6 @@ public class CPUControl implements CPUControlAPI, PreferencesChangeListener
     automaton.setState(CPUControlAutomaton.State.RUNNING);
   }
 
-  private void requestStart()
-  {
-    printMessage("requestStart()");
-    automaton.setState(CPUControlAutomaton.State.STARTING);
-  }
-
   private void awaitStartRequest()
   {
     printMessage("awaitStartRequest()...");
@@ -315,22 +476,31 @@ public class CPUControl implements CPUControlAPI, PreferencesChangeListener
    * Execution of this method is guarded by the locking mechanism.
    */
 
-  private void awaitStart()
+  private void requestAndAwaitStart()
   {
-    printMessage("awaitStart()...");
-    automaton.awaitState(CPUControlAutomaton.State.RUNNING);
-    printMessage("awaitStart() done");
+    printMessage("requestAndAwaitStart()...");
+    automaton.setStateAndAwait(CPUControlAutomaton.State.STARTING,
+                               CPUControlAutomaton.State.RUNNING);
+    printMessage("requestAndAwaitStart() done");
   }
 
   public void execute()
   {
     printMessage("execute()...");
     synchronized(automaton) {
+      if (disposed) {
+        throw new IllegalStateException("CPU control has been disposed");
+      }
       if (automaton.getState() != CPUControlAutomaton.State.STOPPED) {
         throw new InternalError("trying to start Monitor while it is not stopped");
       }
-      requestStart();
-      awaitStart();
+      if (controlThread == null) {
+        // headless machines are driven directly and never get here
+        printMessage("CPU control thread: starting");
+        controlThread = new ControlThread();
+        controlThread.start();
+      }
+      requestAndAwaitStart();
     }
     printMessage("execute() done");
   }
@@ -372,6 +542,35 @@ public class CPUControl implements CPUControlAPI, PreferencesChangeListener
     return false;
   }
 
+  /**
+   * Stops the CPU, if running, terminates the control thread, if
+   * started, and unregisters from the user preferences.  Afterwards,
+   * the CPU can not be started any more.
+   */
+  public void dispose()
+  {
+    printMessage("dispose()...");
+    synchronized(automaton) {
+      if (disposed) {
+        return;
+      }
+      stop();
+      disposed = true;
+      UserPreferences.getInstance().removeListener(this);
+      if (controlThread != null) {
+        // wake up the control thread, which then sees the flag
+        automaton.setState(CPUControlAutomaton.State.STARTING);
+        try {
+          controlThread.join();
+        } catch (final InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        controlThread = null;
+      }
+    }
+    printMessage("dispose() done");
+  }
+
   private void acknowledgeStopCompleted()
   {
     printMessage("acknowledgeStopCompleted()");
@@ -395,10 +594,14 @@ public class CPUControl implements CPUControlAPI, PreferencesChangeListener
       printMessage("CPU control thread: started");
       while (true) {
         awaitStartRequest();
+        if (disposed) {
+          break;
+        }
         printMessage("CPU: starting code execution");
         _execute();
         printMessage("CPU: code execution stopped");
       }
+      printMessage("CPU control thread: terminated");
     }
   }
 
@@ -418,13 +621,17 @@ public class CPUControl implements CPUControlAPI, PreferencesChangeListener
     setSingleStep(false);
     setTrace(false);
     setBreakPoint(null);
+    avgParkOvershoot = MIN_SPIN_TAIL;
+    setSliceTime(UserPreferences.getInstance().getSliceTime());
+    setJitterBudget(UserPreferences.getInstance().getJitterBudget());
     logListeners = new ArrayList<LogListener>();
     stateChangeListeners = new ArrayList<CPUControlAutomaton.Listener>();
     resourceLocations = new ArrayList<Class<?>>();
     addResourceLocation(CPUControl.class);
     UserPreferences.getInstance().addListener(this);
-    printMessage("CPU control thread: starting");
-    new ControlThread().start();
+    // the control thread is started upon first execute()
+    controlThread = null;
+    disposed = false;
   }
 }
 
@@ -55,6 +55,20 @@ public interface CPUControlAPI extends WallClockProvider
    */
   Annotations getAnnotations();
 
+  /**
+   * Returns the execution profile of the CPU, or null, if profiling
+   * has never been enabled.  Evaluate it only while the CPU is
+   * stopped.
+   */
+  Profiler getProfiler();
+
+  /**
+   * Enables or disables profiling of executed instructions.
+   */
+  void setProfilingEnabled(final boolean enabled);
+
+  boolean isProfilingEnabled();
+
   /**
    * Write byte to memory via CPU bus.
    */
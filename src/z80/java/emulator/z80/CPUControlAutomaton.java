@@ -135,7 +135,7 @@ public class CPUControlAutomaton
   private static class Awaiter implements Listener
   {
     private final State awaitState;
-    private State listenedState;
+    private boolean reached;
     private boolean dirty;
 
     private Awaiter()
@@ -146,14 +146,18 @@ public class CPUControlAutomaton
     public Awaiter(final State awaitState)
     {
       this.awaitState = awaitState;
-      listenedState = null;
+      reached = false;
       dirty = false;
     }
 
     public synchronized void stateChanged(final State listenedState)
     {
-      this.listenedState = listenedState;
-      notify();
+      // remember even transient states, e.g. if the CPU thread
+      // hits a break point right after starting
+      if (listenedState == awaitState) {
+        reached = true;
+        notify();
+      }
     }
 
     public synchronized void await() {
@@ -161,15 +165,14 @@ public class CPUControlAutomaton
         throw new InternalError("to ensure unique notify/listening matching, AwaitThread can not be re-used");
       }
       dirty = true;
-      while (true) {
+      // the state may already have changed before entering this
+      // method, e.g. if the CPU thread immediately runs at max speed
+      while (!reached) {
         try {
           wait();
         } catch (final InterruptedException e) {
           // ignore
         }
-        if (listenedState == awaitState) {
-          break;
-        }
       }
     }
   }
@@ -181,6 +184,21 @@ public class CPUControlAutomaton
     awaiter.await();
     removeListener(awaiter);
   }
+
+  /**
+   * Changes to the specified state and waits until the awaited state
+   * has been reached.  Listening starts before the state change,
+   * such that the awaited state is not missed, even if it is left
+   * again before this method gets to wait for it.
+   */
+  public void setStateAndAwait(final State state, final State awaitState)
+  {
+    final Awaiter awaiter = new Awaiter(awaitState);
+    addListener(awaiter);
+    setState(state);
+    awaiter.await();
+    removeListener(awaiter);
+  }
 }
 
 /*
@@ -0,0 +1,102 @@
+package emulator.z80;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Build tool for the precomputed decode table of the Z80 CPU.
+ *
+ * Invoked with a file name, computes the decode table from the
+ * instruction set and writes it into that file, which the build
+ * then packages as resource next to the Z80 class.
+ *
+ * Invoked with option -verify, checks that the decode table that the
+ * Z80 CPU loads from its resource is identical to the decode table
+ * computed from the instruction set at runtime.
+ */
+public class DecodeTableGenerator
+{
+  private DecodeTableGenerator()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  private static Z80 createZ80()
+  {
+    // discard the CPU's progress messages
+    final PrintStream out = System.out;
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    try {
+      return new Z80(MemoryBus.createRAMMemoryBus(0, 65536),
+                     MemoryBus.createRAMMemoryBus(0, 256), false);
+    } finally {
+      System.setOut(out);
+    }
+  }
+
+  private static void generate(final String fileName) throws IOException
+  {
+    final Z80 z80 = createZ80();
+    final byte[] image = z80.computeDecodeTableImage();
+    try (final OutputStream out =
+         new GZIPOutputStream(new BufferedOutputStream(
+           new FileOutputStream(fileName)))) {
+      out.write(image);
+    }
+    System.out.printf("wrote decode table (%d bytes uncompressed) to %s%n",
+                      image.length, fileName);
+  }
+
+  private static boolean verify() throws IOException
+  {
+    final Z80 z80 = createZ80();
+    if (!z80.isDecodeTablePrecomputed()) {
+      System.out.println("no valid precomputed decode table found");
+      return false;
+    }
+    final byte[] precomputedImage = z80.getDecodeTableImage();
+    final byte[] computedImage = z80.computeDecodeTableImage();
+    final int mismatch = Arrays.mismatch(precomputedImage, computedImage);
+    if (mismatch >= 0) {
+      System.out.printf("precomputed decode table differs from computed " +
+                        "one at byte offset %d%n", mismatch);
+      return false;
+    }
+    System.out.printf("precomputed decode table verified (%d bytes)%n",
+                      precomputedImage.length);
+    return true;
+  }
+
+  private static void usage()
+  {
+    System.out.println("usage: DecodeTableGenerator FILE | -verify");
+    System.exit(1);
+  }
+
+  public static void main(final String argv[]) throws IOException
+  {
+    if (argv.length != 1) {
+      usage();
+    }
+    if (argv[0].equals("-verify")) {
+      System.exit(verify() ? 0 : 1);
+    } else if (argv[0].startsWith("-")) {
+      usage();
+    } else {
+      generate(argv[0]);
+      System.exit(0);
+    }
+  }
+}
+
+/*
+  Local Variables:
+    coding:utf-8
+    mode:Java
+    End:
+*/
@@ -0,0 +1,250 @@
+package emulator.z80;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+/**
+ * Build tool for differential testing of the Z80 CPU's execution
+ * engines.
+ *
+ * Runs a reference CPU, that decodes via the precomputed decode
+ * table with all optional features off, in lockstep with a CPU under
+ * test on random memory contents, with random registers and random
+ * jumps.  The CPU under test is run once for each execution engine
+ * variant (switch dispatch, lazy flags, translation cache, and all
+ * combined), always with statistics sampling and profiling enabled,
+ * since these must not alter emulation.  After each instruction,
+ * mnemonic, opcode, clock periods, registers and the cycle counter
+ * are compared, and memory contents at the end of each run.
+ */
+public class EngineVerifier
+{
+  private static final int DEFAULT_STEPS = 200000;
+  private static final int MAX_REPORTED_MISMATCHES = 5;
+
+  private enum Variant
+  {
+    SWITCH_DISPATCH(true, false, false),
+    LAZY_FLAGS(false, true, false),
+    TRANSLATION_CACHE(false, false, true),
+    ALL(true, true, true);
+
+    private final boolean switchDispatch;
+    private final boolean lazyFlags;
+    private final boolean translationCache;
+
+    private Variant(final boolean switchDispatch, final boolean lazyFlags,
+                    final boolean translationCache)
+    {
+      this.switchDispatch = switchDispatch;
+      this.lazyFlags = lazyFlags;
+      this.translationCache = translationCache;
+    }
+  }
+
+  private EngineVerifier()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  private static Z80 createZ80(final MemoryBus memory,
+                               final boolean switchDispatch)
+  {
+    // discard the CPU's progress messages
+    final PrintStream out = System.out;
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    try {
+      return new Z80(memory, MemoryBus.createRAMMemoryBus(0, 256),
+                     switchDispatch);
+    } finally {
+      System.setOut(out);
+    }
+  }
+
+  private static void copyRegisters(final CPU from, final CPU to)
+  {
+    final CPU.Register[] fromRegisters = from.getAllRegisters();
+    final CPU.Register[] toRegisters = to.getAllRegisters();
+    for (int index = 0; index < fromRegisters.length; index++) {
+      toRegisters[index].setValue(fromRegisters[index].getValue());
+    }
+  }
+
+  private static String registersToString(final CPU cpu)
+  {
+    final StringBuilder s = new StringBuilder();
+    for (final CPU.Register register : cpu.getAllRegisters()) {
+      if (s.length() > 0) {
+        s.append(" ");
+      }
+      s.append(register.getName() + "=" +
+               Integer.toHexString(register.getValue()));
+    }
+    return s.toString();
+  }
+
+  private static void randomizeRegisters(final CPU cpu, final Random random)
+  {
+    for (final CPU.Register register : cpu.getAllRegisters()) {
+      final String name = register.getName();
+      final int value;
+      if (name.equals("IM")) {
+        value = random.nextInt(3);
+      } else if ((name.length() == 1) || name.equals("F")) {
+        value = random.nextInt(0x100);
+      } else {
+        value = random.nextInt(0x10000);
+      }
+      register.setValue(value);
+    }
+  }
+
+  private static int findMemoryMismatch(final MemoryBus memory1,
+                                        final MemoryBus memory2)
+  {
+    for (int address = 0; address < 0x10000; address++) {
+      if (memory1.readByte(address, 0) != memory2.readByte(address, 0)) {
+        return address;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean verify(final Variant variant, final long seed,
+                                final int steps)
+  {
+    final Random random = new Random(seed);
+    final MemoryBus referenceMemory = MemoryBus.createRAMMemoryBus(0, 65536);
+    final MemoryBus memory = MemoryBus.createRAMMemoryBus(0, 65536);
+    final Z80 reference = createZ80(referenceMemory, false);
+    final Z80 z80 = createZ80(memory, variant.switchDispatch);
+    z80.setLazyFlagsEnabled(variant.lazyFlags);
+    z80.setTranslationCacheEnabled(variant.translationCache);
+    z80.statisticsEnabledChanged(true);
+    z80.setProfilingEnabled(true);
+    for (int address = 0; address < 0x10000; address++) {
+      final int value = random.nextInt(0x100);
+      referenceMemory.writeByte(address, value, 0);
+      memory.writeByte(address, value, 0);
+    }
+    randomizeRegisters(reference, random);
+    copyRegisters(reference, z80);
+    int mismatches = 0;
+    int exceptions = 0;
+    for (int step = 0; step < steps; step++) {
+      final String registersBefore = registersToString(reference);
+      CPU.ConcreteOperation referenceOperation = null;
+      CPU.ConcreteOperation operation = null;
+      String referenceException = null;
+      String exception = null;
+      try {
+        referenceOperation = reference.fetchNextOperation();
+        referenceOperation.execute();
+      } catch (final Throwable t) {
+        referenceException = t.getClass().getName();
+      }
+      try {
+        operation = z80.fetchNextOperation();
+        operation.execute();
+      } catch (final Throwable t) {
+        exception = t.getClass().getName();
+      }
+      if ((referenceException != null) || (exception != null)) {
+        if ((referenceException == null) ||
+            !referenceException.equals(exception)) {
+          System.out.printf("%s: step %d: exception %s, expected %s%n" +
+                            "  registers before: %s%n",
+                            variant, step, exception, referenceException,
+                            registersBefore);
+          return false;
+        }
+        exceptions++;
+        reference.getProgramCounter().setValue(random.nextInt(0x10000));
+        copyRegisters(reference, z80);
+        continue;
+      }
+      final String referenceMnemonic =
+        referenceOperation.getConcreteMnemonic();
+      final String referenceRegisters = registersToString(reference);
+      final String registers = registersToString(z80);
+      if (!referenceRegisters.equals(registers) ||
+          (reference.getWallClockCycles() != z80.getWallClockCycles()) ||
+          (referenceOperation.getClockPeriods() !=
+           operation.getClockPeriods()) ||
+          !referenceMnemonic.equals(operation.getConcreteMnemonic()) ||
+          !referenceOperation.createOpCode().toString().
+          equals(operation.createOpCode().toString())) {
+        System.out.printf("%s: step %d: %s (%s), expected %s (%s)%n" +
+                          "  registers before: %s%n" +
+                          "  registers after:  %s, cycles %d%n" +
+                          "  expected:         %s, cycles %d%n",
+                          variant, step,
+                          operation.getConcreteMnemonic(),
+                          operation.createOpCode(),
+                          referenceMnemonic,
+                          referenceOperation.createOpCode(),
+                          registersBefore,
+                          registers, z80.getWallClockCycles(),
+                          referenceRegisters,
+                          reference.getWallClockCycles());
+        if (++mismatches >= MAX_REPORTED_MISMATCHES) {
+          return false;
+        }
+        copyRegisters(reference, z80);
+      }
+      if (referenceMnemonic.startsWith("HALT") || (random.nextInt(50) == 0)) {
+        final int address = random.nextInt(0x10000);
+        reference.getProgramCounter().setValue(address);
+        z80.getProgramCounter().setValue(address);
+      }
+    }
+    final int memoryMismatch = findMemoryMismatch(referenceMemory, memory);
+    if (memoryMismatch >= 0) {
+      System.out.printf("%s: memory differs at address 0x%04x%n",
+                        variant, memoryMismatch);
+      return false;
+    }
+    System.out.printf("%s: %d steps verified (%d exceptions, %d cycles)%n",
+                      variant, steps, exceptions,
+                      reference.getWallClockCycles());
+    return mismatches == 0;
+  }
+
+  private static void usage()
+  {
+    System.out.println("usage: EngineVerifier [SEED [STEPS]]");
+    System.exit(1);
+  }
+
+  public static void main(final String argv[])
+  {
+    if (argv.length > 2) {
+      usage();
+    }
+    long seed = 1;
+    int steps = DEFAULT_STEPS;
+    try {
+      if (argv.length > 0) {
+        seed = Long.parseLong(argv[0]);
+      }
+      if (argv.length > 1) {
+        steps = Integer.parseInt(argv[1]);
+      }
+    } catch (final NumberFormatException e) {
+      usage();
+    }
+    boolean ok = true;
+    for (final Variant variant : Variant.values()) {
+      ok &= verify(variant, seed, steps);
+    }
+    System.exit(ok ? 0 : 1);
+  }
+}
+
+/*
+  Local Variables:
+    coding:utf-8
+    mode:Java
+    End:
+*/
@@ -0,0 +1,277 @@
+package emulator.z80;
+
+import java.util.Arrays;
+
+/**
+ * Central scheduler for timed events of peripheral devices.  Each
+ * registered device may have at most one pending event, given as
+ * the number of CPU cycles since startup at which the event is due.
+ * Pending events are kept in a primitive min-heap, such that the
+ * CPU only needs to compare its cycle counter against the earliest
+ * event after each instruction, and the run time of dispatching
+ * scales with the number of events rather than with the number of
+ * instructions.
+ *
+ * Except for requestReschedule(), all methods must be called from
+ * the CPU thread.
+ */
+public class EventScheduler
+{
+  public interface Device
+  {
+    /**
+     * Called as soon as the instruction that reaches or passes the
+     * cycle of this device's pending event has been executed.  The
+     * event is removed before calling this method, such that the
+     * device may schedule its next event from within this method.
+     * May also be called earlier, e.g. upon a change of the CPU
+     * speed.
+     */
+    void eventDue(long timePerClockCycle,
+                  long wallClockCycles, long wallClockTime);
+  }
+
+  private static final int INITIAL_CAPACITY = 8;
+
+  private final WallClockProvider wallClockProvider;
+  private Device[] devices;
+  private int deviceCount;
+
+  // heap of pending events, ordered by cycle
+  private long[] heapCycles;
+  private int[] heapDeviceIds;
+  private int heapSize;
+
+  // position of each device's pending event in the heap, or -1
+  private int[] heapIndex;
+
+  // volatile, since requestReschedule() may write it from any thread
+  private volatile long nextEventCycle;
+  private volatile boolean rescheduleRequested;
+
+  private EventScheduler()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  public EventScheduler(final WallClockProvider wallClockProvider)
+  {
+    if (wallClockProvider == null) {
+      throw new NullPointerException("wallClockProvider");
+    }
+    this.wallClockProvider = wallClockProvider;
+    devices = new Device[INITIAL_CAPACITY];
+    heapCycles = new long[INITIAL_CAPACITY];
+    heapDeviceIds = new int[INITIAL_CAPACITY];
+    heapIndex = new int[INITIAL_CAPACITY];
+    deviceCount = 0;
+    heapSize = 0;
+    nextEventCycle = Long.MAX_VALUE;
+  }
+
+  /**
+   * Registers a device.
+   * @return The device ID to be used for scheduling events.
+   */
+  public int addDevice(final Device device)
+  {
+    if (device == null) {
+      throw new NullPointerException("device");
+    }
+    if (deviceCount == devices.length) {
+      final int capacity = 2 * devices.length;
+      devices = Arrays.copyOf(devices, capacity);
+      heapCycles = Arrays.copyOf(heapCycles, capacity);
+      heapDeviceIds = Arrays.copyOf(heapDeviceIds, capacity);
+      heapIndex = Arrays.copyOf(heapIndex, capacity);
+    }
+    devices[deviceCount] = device;
+    heapIndex[deviceCount] = -1;
+    return deviceCount++;
+  }
+
+  /**
+   * Returns the cycle of the earliest pending event, or
+   * Long.MAX_VALUE, if there is none.
+   */
+  public long getNextEventCycle()
+  {
+    return nextEventCycle;
+  }
+
+  public boolean isScheduled(final int deviceId)
+  {
+    return heapIndex[deviceId] >= 0;
+  }
+
+  /**
+   * Sets the device's pending event to the specified cycle,
+   * replacing any previously pending event of that device.
+   */
+  public void schedule(final int deviceId, final long cycle)
+  {
+    if ((deviceId < 0) || (deviceId >= deviceCount)) {
+      throw new IllegalArgumentException("unknown device: " + deviceId);
+    }
+    int index = heapIndex[deviceId];
+    if (index < 0) {
+      index = heapSize++;
+      heapDeviceIds[index] = deviceId;
+      heapIndex[deviceId] = index;
+      heapCycles[index] = cycle;
+      siftUp(index);
+    } else {
+      final long previousCycle = heapCycles[index];
+      heapCycles[index] = cycle;
+      if (cycle < previousCycle) {
+        siftUp(index);
+      } else {
+        siftDown(index);
+      }
+    }
+    updateNextEventCycle();
+  }
+
+  /**
+   * Sets the device's pending event to the first instruction that
+   * reaches or passes the specified wall clock time, but not earlier
+   * than the end of the next instruction.
+   */
+  public void scheduleAtTime(final int deviceId, final long wallClockTime)
+  {
+    final long timePerClockCycle = wallClockProvider.getTimePerClockCycle();
+    final long timeSpan = wallClockTime - wallClockProvider.getWallClockTime();
+    final long cycles =
+      timeSpan > 0 ?
+      (timeSpan + timePerClockCycle - 1) / timePerClockCycle :
+      1;
+    schedule(deviceId, wallClockProvider.getWallClockCycles() + cycles);
+  }
+
+  /**
+   * Removes the device's pending event, if any.
+   */
+  public void cancel(final int deviceId)
+  {
+    final int index = heapIndex[deviceId];
+    if (index >= 0) {
+      removeAt(index);
+      updateNextEventCycle();
+    }
+  }
+
+  /**
+   * Asks all devices with a pending event to reschedule at the end
+   * of the current instruction.  To be called when the mapping of
+   * wall clock time to cycles has changed.  May be called from any
+   * thread.
+   */
+  public void requestReschedule()
+  {
+    rescheduleRequested = true;
+    nextEventCycle = Long.MIN_VALUE;
+  }
+
+  /**
+   * Calls back all devices whose pending event is due.
+   */
+  public void dispatch(final long timePerClockCycle,
+                       final long wallClockCycles, final long wallClockTime)
+  {
+    if (rescheduleRequested) {
+      rescheduleRequested = false;
+      // lowering all cycles to the same bound keeps the heap ordered
+      for (int index = 0; index < heapSize; index++) {
+        if (heapCycles[index] > wallClockCycles) {
+          heapCycles[index] = wallClockCycles;
+        }
+      }
+    }
+    while ((heapSize > 0) && (heapCycles[0] <= wallClockCycles)) {
+      final int deviceId = heapDeviceIds[0];
+      removeAt(0);
+      devices[deviceId].eventDue(timePerClockCycle,
+                                 wallClockCycles, wallClockTime);
+    }
+    updateNextEventCycle();
+  }
+
+  /**
+   * Publishes the cycle of the earliest pending event, unless a
+   * reschedule has been requested concurrently, which must not get
+   * lost by overwriting its request marker.
+   */
+  private void updateNextEventCycle()
+  {
+    nextEventCycle = heapSize > 0 ? heapCycles[0] : Long.MAX_VALUE;
+    if (rescheduleRequested) {
+      nextEventCycle = Long.MIN_VALUE;
+    }
+  }
+
+  private void removeAt(final int index)
+  {
+    heapIndex[heapDeviceIds[index]] = -1;
+    final int last = --heapSize;
+    if (index < last) {
+      move(last, index);
+      siftDown(index);
+      siftUp(index);
+    }
+  }
+
+  private void move(final int from, final int to)
+  {
+    heapCycles[to] = heapCycles[from];
+    heapDeviceIds[to] = heapDeviceIds[from];
+    heapIndex[heapDeviceIds[to]] = to;
+  }
+
+  private void siftUp(int index)
+  {
+    final long cycle = heapCycles[index];
+    final int deviceId = heapDeviceIds[index];
+    while (index > 0) {
+      final int parent = (index - 1) >>> 1;
+      if (heapCycles[parent] <= cycle) {
+        break;
+      }
+      move(parent, index);
+      index = parent;
+    }
+    heapCycles[index] = cycle;
+    heapDeviceIds[index] = deviceId;
+    heapIndex[deviceId] = index;
+  }
+
+  private void siftDown(int index)
+  {
+    final long cycle = heapCycles[index];
+    final int deviceId = heapDeviceIds[index];
+    while (true) {
+      int child = 2 * index + 1;
+      if (child >= heapSize) {
+        break;
+      }
+      if ((child + 1 < heapSize) &&
+          (heapCycles[child + 1] < heapCycles[child])) {
+        child++;
+      }
+      if (heapCycles[child] >= cycle) {
+        break;
+      }
+      move(child, index);
+      index = child;
+    }
+    heapCycles[index] = cycle;
+    heapDeviceIds[index] = deviceId;
+    heapIndex[deviceId] = index;
+  }
+}
+
+/*
+  Local Variables:
+    coding:utf-8
+    mode:Java
+    End:
+*/
@@ -38,6 +38,15 @@ public class MemoryBus implements CPU.Memory {
     public void resync(long wallClockTime);
   }
 
+  /*
+   * A bus reader that merely observes writes, e.g. for invalidating
+   * caches.  Observers do not prevent the CPU from writing directly
+   * into the backing array of a RAM page (see getDirectPageData()).
+   * Hence, they only see writes that pass the bus, and must get
+   * notified by the CPU about its direct writes by other means.
+   */
+  public interface WriteObserver extends BusReader {}
+
   public static MemoryBus createRAMMemoryBus(int baseAddress, int size)
   {
     MemoryBus memoryBus = new MemoryBus();
@@ -47,51 +56,312 @@ public class MemoryBus implements CPU.Memory {
     return memoryBus;
   }
 
+  /*
+   * The address space is split into pages.  For each page, the bus
+   * keeps the devices mapped onto that page, such that an access
+   * only involves the devices that may feel addressed.  If there is
+   * exactly one device on a page, it is called directly.  Devices
+   * that are registered without address range are mapped onto all
+   * pages.  Since each device must issue BYTE_UNDEFINED for
+   * addresses that it does not decode, AND-ing the results of all
+   * devices on a page (open bus semantics) is still correct for
+   * overlapping or not page-aligned mappings.
+   */
+  private static final int PAGE_SHIFT = 8;
+  private static final int PAGES = 0x10000 >>> PAGE_SHIFT;
+  private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+
   private List<BusReader> readers;
   private List<BusWriter> writers;
+  private List<List<BusReader>> pageReaderLists;
+  private List<List<BusWriter>> pageWriterLists;
+  private BusReader[][] pageReaders;
+  private BusWriter[][] pageWriters;
+  private BusReader[] singlePageReader;
+  private BusWriter[] singlePageWriter;
+
+  /*
+   * Pages that are completely backed by a plain RAM or ROM device
+   * may be accessed directly via the device's backing array.
+   */
+  private byte[][] directPageData;
+  private int[] directPageOffset;
+  private boolean[] directPageWritable;
+  private boolean[] directPageWriteProtected;
 
   public MemoryBus() {
     readers = new ArrayList<BusReader>();
     writers = new ArrayList<BusWriter>();
+    pageReaderLists = new ArrayList<List<BusReader>>(PAGES);
+    pageWriterLists = new ArrayList<List<BusWriter>>(PAGES);
+    for (int page = 0; page < PAGES; page++) {
+      pageReaderLists.add(new ArrayList<BusReader>());
+      pageWriterLists.add(new ArrayList<BusWriter>());
+    }
+    pageReaders = new BusReader[PAGES][0];
+    pageWriters = new BusWriter[PAGES][0];
+    singlePageReader = new BusReader[PAGES];
+    singlePageWriter = new BusWriter[PAGES];
+    directPageData = new byte[PAGES][];
+    directPageOffset = new int[PAGES];
+    directPageWritable = new boolean[PAGES];
+    directPageWriteProtected = new boolean[PAGES];
+  }
+
+  /**
+   * Returns the backing array of each page, or null, if the page
+   * is not backed by exactly one plain RAM or ROM device.  For a
+   * page that has a backing array, the byte at address a is
+   * located at index (a - getDirectPageOffset()[page]), to be
+   * masked with 0xff when reading.  The
+   * returned arrays are updated in place whenever a device is
+   * registered, or a RAM device replaces one of its pages (see
+   * RAMMemory.copyFrom()).
+   */
+  public byte[][] getDirectPageData() {
+    return directPageData;
+  }
+
+  public int[] getDirectPageOffset() {
+    return directPageOffset;
+  }
+
+  /**
+   * Returns, for each page, whether writes may go directly into
+   * the page's backing array, since apart from write observers no
+   * other device listens to writes on that page, and the backing
+   * array is not shared copy-on-write with other RAM devices.
+   */
+  public boolean[] getDirectPageWritable() {
+    return directPageWritable;
+  }
+
+  /**
+   * Returns, for each page, whether the page has a backing array,
+   * but no device (apart from write observers) listens to writes on
+   * that page, such that writes can be dropped (ROM).
+   */
+  public boolean[] getDirectPageWriteProtected() {
+    return directPageWriteProtected;
+  }
+
+  private static boolean isPlainMemory(Object device) {
+    Class<?> deviceClass = device.getClass();
+    return
+      (deviceClass == RAMMemory.class) || (deviceClass == ROMMemory.class);
+  }
+
+  /**
+   * Recomputes direct access of the page that starts at the
+   * specified address.
+   */
+  void updateDirectPage(int pageStart) {
+    int page = pageStart >>> PAGE_SHIFT;
+    BusWriter writer = singlePageWriter[page];
+    Object memory = null;
+    byte[] data = null;
+    int dataOffset = 0;
+    boolean shared = false;
+    if ((writer != null) && isPlainMemory(writer)) {
+      if (writer instanceof RAMMemory) {
+        RAMMemory ramMemory = (RAMMemory)writer;
+        data = ramMemory.getDirectPage(pageStart);
+        if (data != null) {
+          dataOffset = pageStart;
+          shared = ramMemory.isDirectPageShared(pageStart);
+        }
+      } else {
+        ROMMemory romMemory = (ROMMemory)writer;
+        int offset = pageStart - romMemory.baseAddress;
+        if ((offset >= 0) && (offset + PAGE_MASK < romMemory.data.length)) {
+          data = romMemory.data;
+          dataOffset = romMemory.baseAddress;
+        }
+      }
+      if (data != null) {
+        memory = writer;
+      } // else page not completely covered
+    }
+    boolean onlyMemoryListens = true;
+    boolean hasWriteListener = false;
+    for (BusReader reader : pageReaders[page]) {
+      if (!(reader instanceof WriteObserver)) {
+        hasWriteListener = true;
+        if (reader != memory) {
+          onlyMemoryListens = false;
+        }
+      }
+    }
+    if (memory != null) {
+      directPageData[page] = data;
+      directPageOffset[page] = dataOffset;
+      directPageWritable[page] =
+        hasWriteListener && onlyMemoryListens && !shared;
+      directPageWriteProtected[page] = !hasWriteListener;
+    } else {
+      directPageData[page] = null;
+      directPageOffset[page] = 0;
+      directPageWritable[page] = false;
+      directPageWriteProtected[page] = false;
+    }
+  }
+
+  private void attach(Object device) {
+    if (device instanceof RAMMemory) {
+      ((RAMMemory)device).attach(this);
+    }
+  }
+
+  private static int getFirstPage(int baseAddress, int size) {
+    if (baseAddress < 0)
+      throw new IllegalArgumentException("baseAddress < 0");
+    if (size <= 0)
+      throw new IllegalArgumentException("size <= 0");
+    if (baseAddress + size > 0x10000)
+      throw new IllegalArgumentException("baseAddress + size beyond 64K");
+    return baseAddress >>> PAGE_SHIFT;
   }
 
+  private static int getLastPage(int baseAddress, int size) {
+    return (baseAddress + size - 1) >>> PAGE_SHIFT;
+  }
+
+  /**
+   * Registers a device that listens to all writes on the bus.
+   */
   public void addReader(BusReader reader) {
+    addReader(reader, 0, 0x10000);
+  }
+
+  /**
+   * Registers a device that listens to writes within the specified
+   * address range only.
+   */
+  public void addReader(BusReader reader, int baseAddress, int size) {
     if (reader == null)
       throw new NullPointerException("reader");
+    int firstPage = getFirstPage(baseAddress, size);
+    int lastPage = getLastPage(baseAddress, size);
     readers.add(reader);
+    attach(reader);
+    for (int page = firstPage; page <= lastPage; page++) {
+      List<BusReader> pageReaderList = pageReaderLists.get(page);
+      pageReaderList.add(reader);
+      pageReaders[page] =
+        pageReaderList.toArray(new BusReader[pageReaderList.size()]);
+      singlePageReader[page] =
+        pageReaderList.size() == 1 ? reader : null;
+      updateDirectPage(page << PAGE_SHIFT);
+    }
+  }
+
+  /**
+   * Unregisters a device that has been registered via addReader().
+   * Has no effect, if the device is not registered.
+   */
+  public void removeReader(BusReader reader) {
+    if (!readers.remove(reader))
+      return;
+    for (int page = 0; page < PAGES; page++) {
+      List<BusReader> pageReaderList = pageReaderLists.get(page);
+      if (pageReaderList.remove(reader)) {
+        pageReaders[page] =
+          pageReaderList.toArray(new BusReader[pageReaderList.size()]);
+        singlePageReader[page] =
+          pageReaderList.size() == 1 ? pageReaderList.get(0) : null;
+        updateDirectPage(page << PAGE_SHIFT);
+      }
+    }
   }
 
+  /**
+   * Registers a device that drives all reads from the bus.
+   */
   public void addWriter(BusWriter writer) {
+    addWriter(writer, 0, 0x10000);
+  }
+
+  /**
+   * Registers a device that drives reads from the bus within the
+   * specified address range only.
+   */
+  public void addWriter(BusWriter writer, int baseAddress, int size) {
     if (writer == null)
       throw new NullPointerException("writer");
+    int firstPage = getFirstPage(baseAddress, size);
+    int lastPage = getLastPage(baseAddress, size);
     writers.add(writer);
+    attach(writer);
+    for (int page = firstPage; page <= lastPage; page++) {
+      List<BusWriter> pageWriterList = pageWriterLists.get(page);
+      pageWriterList.add(writer);
+      pageWriters[page] =
+        pageWriterList.toArray(new BusWriter[pageWriterList.size()]);
+      singlePageWriter[page] =
+        pageWriterList.size() == 1 ? writer : null;
+      updateDirectPage(page << PAGE_SHIFT);
+    }
   }
 
   public int readByte(int address, long wallClockTime) {
+    int page = (address & 0xffff) >>> PAGE_SHIFT;
+    BusWriter writer = singlePageWriter[page];
+    if (writer != null) {
+      return writer.readByte(address, wallClockTime) & 0xff;
+    }
     int result = 0xff;
-    for (BusWriter writer : writers) {
-      result &= writer.readByte(address, wallClockTime);
+    for (BusWriter pageWriter : pageWriters[page]) {
+      result &= pageWriter.readByte(address, wallClockTime);
     }
     return result;
   }
 
   public int readShort(int address, long wallClockTime) {
+    if ((address & PAGE_MASK) == PAGE_MASK) {
+      // crossing page boundary
+      return
+        readByte(address, wallClockTime) |
+        (readByte(address + 1, wallClockTime) << 8);
+    }
+    int page = (address & 0xffff) >>> PAGE_SHIFT;
+    BusWriter writer = singlePageWriter[page];
+    if (writer != null) {
+      return writer.readShort(address, wallClockTime) & 0xffff;
+    }
     int result = 0xffff;
-    for (BusWriter writer : writers) {
-      result &= writer.readShort(address, wallClockTime);
+    for (BusWriter pageWriter : pageWriters[page]) {
+      result &= pageWriter.readShort(address, wallClockTime);
     }
     return result;
   }
 
   public void writeByte(int address, int value, long wallClockTime) {
-    for (BusReader reader : readers) {
+    int page = (address & 0xffff) >>> PAGE_SHIFT;
+    BusReader reader = singlePageReader[page];
+    if (reader != null) {
       reader.writeByte(address, value, wallClockTime);
+      return;
+    }
+    for (BusReader pageReader : pageReaders[page]) {
+      pageReader.writeByte(address, value, wallClockTime);
     }
   }
 
   public void writeShort(int address, int value, long wallClockTime) {
-    for (BusReader reader : readers) {
+    if ((address & PAGE_MASK) == PAGE_MASK) {
+      // crossing page boundary
+      writeByte(address, value & 0xff, wallClockTime);
+      writeByte(address + 1, (value >>> 8) & 0xff, wallClockTime);
+      return;
+    }
+    int page = (address & 0xffff) >>> PAGE_SHIFT;
+    BusReader reader = singlePageReader[page];
+    if (reader != null) {
       reader.writeShort(address, value, wallClockTime);
+      return;
+    }
+    for (BusReader pageReader : pageReaders[page]) {
+      pageReader.writeShort(address, value, wallClockTime);
     }
   }
 
@@ -21,6 +21,7 @@ public class Monitor implements CPUControlAPI.LogListener
   private CPUControl cpuControl;
   private CPU.Register[] registers;
   private Annotations annotations;
+  private RewindBuffer rewindBuffer;
   private int address;
   private PushbackInputStream stdin;
   private PrintStream stdout, stderr;
@@ -456,6 +457,42 @@ public class Monitor implements CPUControlAPI.LogListener
     }
   }
 
+  private enum ProfileAction {
+    START, STOP, SHOW;
+  }
+
+  private ProfileAction profileAction;
+
+  private void parseProfileCommand() throws ParseError {
+    if (tryParseSymbol(SYMBOL_ADD)) {
+      profileAction = ProfileAction.START;
+    } else if (tryParseSymbol(SYMBOL_TO)) {
+      profileAction = ProfileAction.STOP;
+    } else {
+      if (!eof()) parseNumber(num1);
+      profileAction = ProfileAction.SHOW;
+    }
+  }
+
+  private enum RewindAction {
+    START, STOP, LIST, REWIND;
+  }
+
+  private RewindAction rewindAction;
+
+  private void parseRewindCommand() throws ParseError {
+    if (tryParseSymbol(SYMBOL_ADD)) {
+      rewindAction = RewindAction.START;
+    } else if (tryParseSymbol(SYMBOL_TO)) {
+      rewindAction = RewindAction.STOP;
+    } else if (tryParseSymbol(SYMBOL_ASSIGN)) {
+      parseNumber(num1);
+      rewindAction = RewindAction.REWIND;
+    } else {
+      rewindAction = RewindAction.LIST;
+    }
+  }
+
   private void parseCommand() throws ParseError {
     pos = 0;
     if (eof())
@@ -501,6 +538,12 @@ public class Monitor implements CPUControlAPI.LogListener
       case 'n' :
         parseAnnotationCommand();
 	break;
+      case 'f' :
+        parseProfileCommand();
+	break;
+      case 'w' :
+        parseRewindCommand();
+	break;
       case 'p' :
 	parseNumber(num1);
 	if (!eof()) {
@@ -596,6 +639,131 @@ public class Monitor implements CPUControlAPI.LogListener
     }
   }
 
+  private static final int DEFAULT_HOT_SPOTS = 16;
+
+  private String formatShare(long value, long total) {
+    return String.format("%5.1f%%", total > 0 ? 100.0 * value / total : 0.0);
+  }
+
+  private String formatAddressWithLabel(int address) {
+    int labelAddress = annotations.findPrecedingLabelAddress(address);
+    if (labelAddress < 0) {
+      return Util.hexShortStr(address);
+    }
+    String label = annotations.getLabel(labelAddress);
+    if (labelAddress == address) {
+      return Util.hexShortStr(address) + " " + label;
+    }
+    return
+      Util.hexShortStr(address) + " " + label + "+" +
+      (address - labelAddress > 0xff ?
+       Util.hexShortStr(address - labelAddress) :
+       Util.hexByteStr(address - labelAddress));
+  }
+
+  private void profile() {
+    Profiler profiler = cpuControl.getProfiler();
+    switch (profileAction) {
+    case START:
+      if (profiler != null) {
+        profiler.clear();
+      }
+      cpuControl.setProfilingEnabled(true);
+      logInfo("profiling started");
+      break;
+    case STOP:
+      cpuControl.setProfilingEnabled(false);
+      logInfo("profiling stopped");
+      break;
+    case SHOW:
+      if (profiler == null) {
+        logInfo("no profile recorded (use f+ to start profiling)");
+        break;
+      }
+      int maxSize = num1.parsed() ? num1.getValue() : DEFAULT_HOT_SPOTS;
+      long totalCount = profiler.getTotalCount();
+      long totalCycles = profiler.getTotalCycles();
+      logInfo(String.format("profiling %s, %d instructions, %d T-states",
+                            cpuControl.isProfilingEnabled() ?
+                            "enabled" : "stopped",
+                            totalCount, totalCycles));
+      logInfo("");
+      logInfo("hot addresses       instructions       T-states");
+      for (int address : profiler.getHotAddresses(maxSize)) {
+        long cycles = profiler.getAddressCycles(address);
+        logInfo(String.format("  %12d %14d %s  %s",
+                              profiler.getAddressCount(address), cycles,
+                              formatShare(cycles, totalCycles),
+                              formatAddressWithLabel(address)));
+      }
+      logInfo("");
+      logInfo("hot operations      instructions       T-states");
+      for (int operation : profiler.getHotOperations(maxSize)) {
+        long cycles = profiler.getOperationCycles(operation);
+        logInfo(String.format("  %12d %14d %s  %s",
+                              profiler.getOperationCount(operation), cycles,
+                              formatShare(cycles, totalCycles),
+                              profiler.getOperationName(operation)));
+      }
+      break;
+    default:
+      throw new InternalError("unexpected case fall-through");
+    }
+  }
+
+  private void rewind() throws ParseError {
+    if (rewindBuffer == null) {
+      logError("rewinding not supported by this machine");
+      return;
+    }
+    switch (rewindAction) {
+    case START:
+      rewindBuffer.clear();
+      rewindBuffer.setEnabled(true);
+      logInfo("rewind recording started");
+      break;
+    case STOP:
+      rewindBuffer.setEnabled(false);
+      logInfo("rewind recording stopped");
+      break;
+    case LIST:
+      logInfo(String.format("rewind recording %s, %d states, %d of %d kB",
+                            rewindBuffer.isEnabled() ? "enabled" : "stopped",
+                            rewindBuffer.size(),
+                            rewindBuffer.getMemoryUsage() / 1024,
+                            rewindBuffer.getMemoryBudget() / 1024));
+      for (int index = 0; index < rewindBuffer.size(); index++) {
+        logInfo(String.format("  %s %c %12.3f ms  %s",
+                              Util.hexShortStr(index),
+                              rewindBuffer.isKeyframe(index) ? '*' : ' ',
+                              rewindBuffer.getWallClockTime(index) * 1.0e-6,
+                              formatAddressWithLabel(rewindBuffer.
+                                                     getProgramCounter(index))));
+      }
+      break;
+    case REWIND:
+      int index = num1.getValue();
+      if (index >= rewindBuffer.size()) {
+        throw new ParseError("no such recorded state", num1.getLocation());
+      }
+      long startTime = System.nanoTime();
+      try {
+        rewindBuffer.rewind(index);
+      } catch (IOException e) {
+        logError("failed rewinding: " + e.getMessage());
+        return;
+      }
+      long stopTime = System.nanoTime();
+      logInfo(String.format("rewound to %.3f ms in %.3f ms",
+                            cpuControl.getWallClockTime() * 1.0e-6,
+                            (stopTime - startTime) * 1.0e-6));
+      printRegisters();
+      break;
+    default:
+      throw new InternalError("unexpected case fall-through");
+    }
+  }
+
   private static String fill(char ch, int length) {
     StringBuffer s = new StringBuffer(length);
     for (int i = 0; i < length; i++) {
@@ -955,6 +1123,17 @@ public class Monitor implements CPUControlAPI.LogListener
     logInfo("  n=<filename>                     replace load");
     logInfo("  n+=<filename>                    append load");
     logInfo("");
+    logInfo("Profiling");
+    logInfo("  f+                               start (and reset) profiling");
+    logInfo("  f-                               stop profiling");
+    logInfo("  f[<count>]                       show hot spots");
+    logInfo("");
+    logInfo("Rewind");
+    logInfo("  w+                               start (and reset) recording");
+    logInfo("  w-                               stop recording");
+    logInfo("  w                                list recorded states");
+    logInfo("  w=<index>                        rewind to recorded state");
+    logInfo("");
     logInfo("Miscelleanous");
     logInfo("  h                                help (this page)");
     logInfo("  q                                quit");
@@ -1068,6 +1247,12 @@ public class Monitor implements CPUControlAPI.LogListener
       case 'n' :
 	annotate();
 	break;
+      case 'f' :
+	profile();
+	break;
+      case 'w' :
+	rewind();
+	break;
       case 'u' :
 	unassemble();
 	break;
@@ -1170,6 +1355,14 @@ public class Monitor implements CPUControlAPI.LogListener
     history = new History();
   }
 
+  /**
+   * Makes the specified rewind buffer available for the monitor's
+   * rewind commands.
+   */
+  public void setRewindBuffer(RewindBuffer rewindBuffer) {
+    this.rewindBuffer = rewindBuffer;
+  }
+
   private static void usage() {
     System.out.println("Usage: emulator.z80.Monitor <classname of CPU>");
   }
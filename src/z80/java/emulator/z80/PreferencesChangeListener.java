@@ -27,6 +27,28 @@ public interface PreferencesChangeListener
    * off.
    */
   void busyWaitChanged(final boolean busyWait);
+
+  /**
+   * Turn on / off hybrid waiting when synchronizing wall clock with
+   * system time.  Hybrid waiting parks the thread for the bulk of
+   * the waiting time, and busy waits only for a short, calibrated
+   * tail.  This yields almost the precision of busy waiting at
+   * little system CPU load.  Ignored while busy waiting is on.
+   * @param hybridWait If true, hybrid wait is turned on, otherwise
+   * off.
+   */
+  void hybridWaitChanged(final boolean hybridWait);
+
+  /**
+   * Turn on / off max speed mode.  In max speed mode, the wall clock
+   * is not synchronized with system time at all, but instructions
+   * are executed as fast as the host allows.  All timing of
+   * peripherals still refers to the CPU's wall clock, such that
+   * emulation stays consistent, just faster than real time.
+   * @param maxSpeed If true, max speed mode is turned on, otherwise
+   * off.
+   */
+  void maxSpeedChanged(final boolean maxSpeed);
 }
 
 /*
@@ -0,0 +1,184 @@
+package emulator.z80;
+
+/**
+ * Execution profile of the CPU.  For each generic operation of the
+ * instruction set (i.e. each leaf of the decode table) and for each
+ * address of the program counter, counts the number of executed
+ * instructions and the number of consumed clock periods.
+ *
+ * Counters are kept in primitive arrays and updated by the CPU
+ * thread without locking and without allocating memory.  Other
+ * threads should evaluate the profile only while the CPU is stopped;
+ * otherwise, the counters are read as approximate values.
+ */
+public class Profiler
+{
+  public static final int ADDRESS_SPACE_SIZE = 0x10000;
+
+  private final String[] operationNames;
+  private final long[] operationCounts;
+  private final long[] operationCycles;
+  private final long[] addressCounts;
+  private final long[] addressCycles;
+
+  private Profiler()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  /**
+   * @param operationNames The generic mnemonic of each operation,
+   * indexed by operation.
+   */
+  public Profiler(final String[] operationNames)
+  {
+    if (operationNames == null) {
+      throw new NullPointerException("operationNames");
+    }
+    this.operationNames = operationNames;
+    operationCounts = new long[operationNames.length];
+    operationCycles = new long[operationNames.length];
+    addressCounts = new long[ADDRESS_SPACE_SIZE];
+    addressCycles = new long[ADDRESS_SPACE_SIZE];
+  }
+
+  /**
+   * Accounts for a single executed instruction.  To be called only
+   * by the CPU thread.
+   */
+  void record(final int operation, final int address,
+              final int clockPeriods)
+  {
+    operationCounts[operation]++;
+    operationCycles[operation] += clockPeriods;
+    addressCounts[address]++;
+    addressCycles[address] += clockPeriods;
+  }
+
+  /**
+   * Resets all counters to 0.
+   */
+  public void clear()
+  {
+    for (int i = 0; i < operationNames.length; i++) {
+      operationCounts[i] = 0;
+      operationCycles[i] = 0;
+    }
+    for (int i = 0; i < ADDRESS_SPACE_SIZE; i++) {
+      addressCounts[i] = 0;
+      addressCycles[i] = 0;
+    }
+  }
+
+  public int getOperations()
+  {
+    return operationNames.length;
+  }
+
+  public String getOperationName(final int operation)
+  {
+    return operationNames[operation];
+  }
+
+  public long getOperationCount(final int operation)
+  {
+    return operationCounts[operation];
+  }
+
+  public long getOperationCycles(final int operation)
+  {
+    return operationCycles[operation];
+  }
+
+  public long getAddressCount(final int address)
+  {
+    return addressCounts[address];
+  }
+
+  public long getAddressCycles(final int address)
+  {
+    return addressCycles[address];
+  }
+
+  /**
+   * Returns the total number of executed instructions.
+   */
+  public long getTotalCount()
+  {
+    long totalCount = 0;
+    for (int i = 0; i < operationNames.length; i++) {
+      totalCount += operationCounts[i];
+    }
+    return totalCount;
+  }
+
+  /**
+   * Returns the total number of consumed clock periods.
+   */
+  public long getTotalCycles()
+  {
+    long totalCycles = 0;
+    for (int i = 0; i < operationNames.length; i++) {
+      totalCycles += operationCycles[i];
+    }
+    return totalCycles;
+  }
+
+  /**
+   * Returns the indices of the at most maxSize largest non-zero
+   * values, largest value first.
+   */
+  private static int[] selectTop(final long[] values, final int maxSize)
+  {
+    if (maxSize < 0) {
+      throw new IllegalArgumentException("maxSize < 0");
+    }
+    final int[] top = new int[Math.min(maxSize, values.length)];
+    int size = 0;
+    for (int i = 0; i < values.length; i++) {
+      final long value = values[i];
+      if ((value == 0) ||
+          ((size == top.length) &&
+           ((size == 0) || (value <= values[top[size - 1]])))) {
+        continue;
+      }
+      int pos = size < top.length ? size++ : size - 1;
+      while ((pos > 0) && (values[top[pos - 1]] < value)) {
+        top[pos] = top[pos - 1];
+        pos--;
+      }
+      top[pos] = i;
+    }
+    if (size < top.length) {
+      final int[] result = new int[size];
+      System.arraycopy(top, 0, result, 0, size);
+      return result;
+    }
+    return top;
+  }
+
+  /**
+   * Returns the indices of the at most maxSize operations that
+   * consumed most clock periods, hottest operation first.
+   */
+  public int[] getHotOperations(final int maxSize)
+  {
+    return selectTop(operationCycles, maxSize);
+  }
+
+  /**
+   * Returns the at most maxSize addresses whose instructions
+   * consumed most clock periods, hottest address first.
+   */
+  public int[] getHotAddresses(final int maxSize)
+  {
+    return selectTop(addressCycles, maxSize);
+  }
+}
+
+/*
+  Local Variables:
+    coding:utf-8
+    mode:Java
+    End:
+*/
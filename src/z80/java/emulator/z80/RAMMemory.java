@@ -1,47 +1,207 @@
 // TODO: move this class into new package 'emulator.cpu'.
 package emulator.z80;
 
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Default implementation for RAM Memory.
+ *
+ * Contents are kept in pages of 256 bytes, such that pages can be
+ * shared copy-on-write between multiple instances (see copyFrom()).
+ * A shared page is never written again; instead, the first write
+ * of any of its sharers replaces the sharer's page with a private
+ * copy.  Hence, instances that share pages may be used by different
+ * threads without further synchronization.
  */
-public class RAMMemory extends ROMMemory implements MemoryBus.BusReader {
-  private static int[] createRAMData(int size) {
+public class RAMMemory implements MemoryBus.BusReader, MemoryBus.BusWriter {
+  static final int PAGE_SHIFT = 8;
+  static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+  private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+  private final int baseAddress;
+  private final int size;
+  private final byte[][] pages;
+  private final boolean[] pageShared;
+  private final List<MemoryBus> buses;
+
+  private RAMMemory() {
+    throw new UnsupportedOperationException("unsupported constructor");
+  }
+
+  public RAMMemory(int baseAddress, int size) {
+    if (baseAddress < 0)
+      throw new IllegalArgumentException("baseAddress < 0");
     if (size < 0)
       throw new IllegalArgumentException("size < 0");
-    return new int[size];
+    if (baseAddress + size < 0)
+      throw new IllegalArgumentException("baseAddress + size beyond MAX_INT");
+    this.baseAddress = baseAddress;
+    this.size = size;
+    int pageCount = (size + PAGE_MASK) >>> PAGE_SHIFT;
+    pages = new byte[pageCount][];
+    for (int index = 0; index < pageCount; index++) {
+      pages[index] = new byte[PAGE_SIZE];
+    }
+    pageShared = new boolean[pageCount];
+    buses = new ArrayList<MemoryBus>();
   }
 
-  public RAMMemory(int baseAddress, int size) {
-    super(baseAddress, createRAMData(size));
+  public int getBaseAddress() {
+    return baseAddress;
   }
 
-  public void writeByte(int address, int value, long wallClockTime) {
-    int addressOffset = (address - baseAddress) & 0xffff;
-    if (addressOffset < data.length) {
-      data[addressOffset] = value & 0xff;
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Called by a memory bus that this memory is connected to, such
+   * that the bus gets notified whenever a page is replaced.
+   */
+  void attach(MemoryBus bus) {
+    if (!buses.contains(bus)) {
+      buses.add(bus);
     }
   }
 
-  public void writeShort(int address, int value, long wallClockTime) {
+  /**
+   * Returns the backing array of the bus page that starts at the
+   * specified address, or null, if that bus page is not completely
+   * covered by exactly one page of this memory.  The byte at address
+   * a is located at index (a - pageStart).  The backing array of a
+   * page changes when a shared page is written to.
+   */
+  byte[] getDirectPage(int pageStart) {
+    int offset = pageStart - baseAddress;
+    if (((baseAddress & PAGE_MASK) != 0) ||
+        (offset < 0) || (offset + PAGE_SIZE > size)) {
+      return null;
+    }
+    return pages[offset >>> PAGE_SHIFT];
+  }
+
+  /**
+   * Returns true, if the bus page that starts at the specified
+   * address is shared with other memories and thus must not be
+   * written to directly.
+   */
+  boolean isDirectPageShared(int pageStart) {
+    return pageShared[(pageStart - baseAddress) >>> PAGE_SHIFT];
+  }
+
+  private void pageReplaced(int index) {
+    for (MemoryBus bus : buses) {
+      bus.updateDirectPage(baseAddress + (index << PAGE_SHIFT));
+    }
+  }
+
+  private byte[] getWritablePage(int index) {
+    if (pageShared[index]) {
+      pages[index] = pages[index].clone();
+      pageShared[index] = false;
+      pageReplaced(index);
+    }
+    return pages[index];
+  }
+
+  /**
+   * Makes the contents of this memory a copy of the contents of the
+   * specified memory of the same size.  Rather than copying, all
+   * pages are shared copy-on-write between both memories, such that
+   * a page is only copied when either memory first writes to it.
+   * Must not be called while either memory is being accessed by
+   * another thread.
+   */
+  public void copyFrom(RAMMemory source) {
+    if (source == null)
+      throw new NullPointerException("source");
+    if (source.size != size)
+      throw new IllegalArgumentException("size mismatch");
+    for (int index = 0; index < pages.length; index++) {
+      boolean wasShared = source.pageShared[index];
+      pages[index] = source.pages[index];
+      pageShared[index] = true;
+      source.pageShared[index] = true;
+      pageReplaced(index);
+      if (!wasShared) {
+        source.pageReplaced(index);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of pages that are currently shared with
+   * other memories.
+   */
+  public int getSharedPageCount() {
+    int count = 0;
+    for (boolean shared : pageShared) {
+      if (shared) count++;
+    }
+    return count;
+  }
+
+  /**
+   * Writes the complete contents of this memory.
+   */
+  public void writeContents(OutputStream out) throws IOException {
+    for (int index = 0; index < pages.length; index++) {
+      out.write(pages[index], 0, Math.min(size - (index << PAGE_SHIFT),
+                                          PAGE_SIZE));
+    }
+  }
+
+  /**
+   * Replaces the complete contents of this memory.
+   */
+  public void readContents(DataInputStream in) throws IOException {
+    for (int index = 0; index < pages.length; index++) {
+      in.readFully(getWritablePage(index), 0,
+                   Math.min(size - (index << PAGE_SHIFT), PAGE_SIZE));
+    }
+  }
+
+  public int readByte(int address, long wallClockTime) {
     int addressOffset = (address - baseAddress) & 0xffff;
-    if (addressOffset < data.length) {
-      data[addressOffset] = value & 0xff;
+    int result;
+    if (addressOffset < size) {
+      result = pages[addressOffset >>> PAGE_SHIFT][addressOffset & PAGE_MASK];
+      result &= 0xff;
+    } else {
+      result = BYTE_UNDEFINED;
     }
-    addressOffset = (addressOffset + 1) & 0xffff;
-    value >>>= 8;
-    if (addressOffset < data.length) {
-      data[addressOffset] = value & 0xff;
+    return result;
+  }
+
+  public int readShort(int address, long wallClockTime) {
+    int resultLSB = readByte(address, wallClockTime);
+    int resultMSB = readByte(address + 1, wallClockTime);
+    return (resultMSB << 8) | resultLSB;
+  }
+
+  public void writeByte(int address, int value, long wallClockTime) {
+    int addressOffset = (address - baseAddress) & 0xffff;
+    if (addressOffset < size) {
+      getWritablePage(addressOffset >>> PAGE_SHIFT)[addressOffset & PAGE_MASK] =
+        (byte)value;
     }
   }
 
-  public int[] getByteArray() {
-    return data;
+  public void writeShort(int address, int value, long wallClockTime) {
+    writeByte(address, value, wallClockTime);
+    writeByte(address + 1, value >>> 8, wallClockTime);
   }
 
+  public void resync(long wallClockTime) {}
+
   public String toString()
   {
     return "RAM Memory[baseAddress=" + Util.hexShortStr(baseAddress) +
-      ", size=" + Util.hexShortStr(data.length) + "]";
+      ", size=" + Util.hexShortStr(size) + "]";
   }
 }
 
@@ -6,18 +6,19 @@ import java.io.InputStream;
 import java.io.IOException;
 
 /**
- * Default implementation for ROM Memory.
+ * Default implementation for ROM Memory.  Contents are kept in a
+ * byte array, i.e. one byte of heap per emulated byte.
  */
 public class ROMMemory implements MemoryBus.BusWriter
 {
   protected int baseAddress;
-  protected int[] data;
+  protected byte[] data;
 
   private ROMMemory() {
     throw new UnsupportedOperationException("unsupported constructor");
   }
 
-  protected ROMMemory(int baseAddress, int[] data) {
+  protected ROMMemory(int baseAddress, byte[] data) {
     if (baseAddress < 0)
       throw new IllegalArgumentException("baseAddress < 0");
     if (data == null)
@@ -36,7 +37,7 @@ public class ROMMemory implements MemoryBus.BusWriter
     this(baseAddress, loadROM(baseClass, resourceName, size));
   }
 
-  private static int[] loadROM(Class<? extends Object> baseClass,
+  private static byte[] loadROM(Class<? extends Object> baseClass,
                                String resourceName, int size)
     throws IOException
   {
@@ -50,21 +51,34 @@ public class ROMMemory implements MemoryBus.BusWriter
       throw new IOException("EOF expected: " + resourceName +
 			    " file too long");
     is.close();
-    int[] data = new int[size];
-    for (int i = 0; i < size; i++)
-      data[i] = romBytes[i] & 0xff;
+    return romBytes;
+  }
+
+  /**
+   * Returns the backing array of this memory.  Note that bytes are
+   * signed in Java, i.e. mask with 0xff when reading.
+   */
+  public byte[] getBytes() {
     return data;
   }
 
+  /**
+   * @deprecated Returns a copy only.  Use getBytes() for direct
+   * access.
+   */
+  @Deprecated
   public int[] getByteArray() {
-    return data;
+    int[] byteArray = new int[data.length];
+    for (int i = 0; i < data.length; i++)
+      byteArray[i] = data[i] & 0xff;
+    return byteArray;
   }
 
   public int readByte(int address, long wallClockTime) {
     int addressOffset = (address - baseAddress) & 0xffff;
     int result;
     if (addressOffset < data.length) {
-      result = data[addressOffset];
+      result = data[addressOffset] & 0xff;
     } else {
       result = BYTE_UNDEFINED;
     }
@@ -75,14 +89,14 @@ public class ROMMemory implements MemoryBus.BusWriter
     int addressOffset = (address - baseAddress) & 0xffff;
     int resultLSB;
     if (addressOffset < data.length) {
-      resultLSB = data[addressOffset];
+      resultLSB = data[addressOffset] & 0xff;
     } else {
       resultLSB = BYTE_UNDEFINED;
     }
     addressOffset = (addressOffset + 1) & 0xffff;
     int resultMSB;
     if (addressOffset < data.length) {
-      resultMSB = data[addressOffset];
+      resultMSB = data[addressOffset] & 0xff;
     } else {
       resultMSB = BYTE_UNDEFINED;
     }
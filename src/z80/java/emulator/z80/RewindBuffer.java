@@ -0,0 +1,427 @@
+package emulator.z80;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Records the state of a machine at regular intervals of emulated
+ * time, such that the machine can be rewound to any recorded point.
+ *
+ * States are captured on the CPU thread via the CPU's event
+ * scheduler.  Every n-th state is stored completely (keyframe); the
+ * states in between are stored as difference to their predecessor,
+ * namely as run length encoded XOR of both states.  Since most of a
+ * machine's memory does not change within a few milliseconds of
+ * emulated time, differences are typically small.  States are kept
+ * in a ring buffer; when the buffer exceeds its memory budget, the
+ * oldest keyframe is dropped together with its differences.
+ *
+ * Except for capturing, all methods must be called while the CPU is
+ * stopped.
+ */
+public class RewindBuffer implements EventScheduler.Device
+{
+  /**
+   * A machine whose complete state can be saved and restored, e.g.
+   * a CPU together with its memory and peripherals.
+   */
+  public interface Machine
+  {
+    void writeSnapshot(DataOutputStream out) throws IOException;
+    void readSnapshot(DataInputStream in) throws IOException;
+  }
+
+  private static class Entry
+  {
+    private final long wallClockTime;
+    private final long wallClockCycles;
+    private final int programCounter;
+    private final boolean keyframe;
+    private final byte[] data; // complete state or encoded difference
+
+    private Entry(final long wallClockTime, final long wallClockCycles,
+                  final int programCounter, final boolean keyframe,
+                  final byte[] data)
+    {
+      this.wallClockTime = wallClockTime;
+      this.wallClockCycles = wallClockCycles;
+      this.programCounter = programCounter;
+      this.keyframe = keyframe;
+      this.data = data;
+    }
+  }
+
+  private static final int INITIAL_CAPACITY = 64;
+
+  // minimum number of equal bytes that terminate a run of changed bytes
+  private static final int MIN_EQUAL_RUN = 3;
+
+  private final Machine machine;
+  private final CPU cpu;
+  private final EventScheduler eventScheduler;
+  private final int deviceId;
+  private final long interval; // [ns]
+  private final int keyframeInterval;
+  private final long memoryBudget; // [bytes]
+  private final ByteArrayOutputStream stateBuffer;
+  private final ByteArrayOutputStream deltaBuffer;
+  private Entry[] entries;
+  private int head;
+  private int count;
+  private long memoryUsage;
+  private byte[] lastState;
+  private int statesSinceKeyframe;
+  private long nextCaptureTime;
+  private boolean enabled;
+
+  private RewindBuffer()
+  {
+    throw new UnsupportedOperationException("unsupported empty constructor");
+  }
+
+  /**
+   * Creates a rewind buffer that is configured by the user
+   * preferences.
+   */
+  public RewindBuffer(final Machine machine, final CPU cpu)
+  {
+    this(machine, cpu,
+         UserPreferences.getInstance().getRewindInterval(),
+         UserPreferences.getInstance().getRewindKeyframeInterval(),
+         UserPreferences.getInstance().getRewindMemoryBudget());
+  }
+
+  /**
+   * @param interval Time span in [ns] of emulated time between
+   * captured states.
+   * @param keyframeInterval Number of captured states from one
+   * keyframe to the next one.
+   * @param memoryBudget Maximum number of bytes of stored states.
+   */
+  public RewindBuffer(final Machine machine, final CPU cpu,
+                      final long interval, final int keyframeInterval,
+                      final long memoryBudget)
+  {
+    if (machine == null) {
+      throw new NullPointerException("machine");
+    }
+    if (cpu == null) {
+      throw new NullPointerException("cpu");
+    }
+    if (interval <= 0) {
+      throw new IllegalArgumentException("interval <= 0");
+    }
+    if (keyframeInterval <= 0) {
+      throw new IllegalArgumentException("keyframeInterval <= 0");
+    }
+    if (memoryBudget <= 0) {
+      throw new IllegalArgumentException("memoryBudget <= 0");
+    }
+    this.machine = machine;
+    this.cpu = cpu;
+    this.interval = interval;
+    this.keyframeInterval = keyframeInterval;
+    this.memoryBudget = memoryBudget;
+    stateBuffer = new ByteArrayOutputStream();
+    deltaBuffer = new ByteArrayOutputStream();
+    entries = new Entry[INITIAL_CAPACITY];
+    eventScheduler = cpu.getEventScheduler();
+    deviceId = eventScheduler.addDevice(this);
+    clear();
+  }
+
+  /**
+   * Drops all recorded states.
+   */
+  public void clear()
+  {
+    Arrays.fill(entries, null);
+    head = 0;
+    count = 0;
+    memoryUsage = 0;
+    lastState = null;
+    statesSinceKeyframe = 0;
+    nextCaptureTime = cpu.getWallClockTime();
+  }
+
+  /**
+   * Starts or stops recording.  Recording starts with capturing the
+   * current state at the end of the next instruction.
+   */
+  public void setEnabled(final boolean enabled)
+  {
+    this.enabled = enabled;
+    if (enabled) {
+      nextCaptureTime = cpu.getWallClockTime();
+      eventScheduler.scheduleAtTime(deviceId, nextCaptureTime);
+    } else {
+      eventScheduler.cancel(deviceId);
+    }
+  }
+
+  public boolean isEnabled()
+  {
+    return enabled;
+  }
+
+  public long getInterval()
+  {
+    return interval;
+  }
+
+  public long getMemoryBudget()
+  {
+    return memoryBudget;
+  }
+
+  /**
+   * Returns the number of bytes of all stored states.
+   */
+  public long getMemoryUsage()
+  {
+    return memoryUsage;
+  }
+
+  /**
+   * Returns the number of recorded states, which are indexed from 0
+   * (oldest) to size() - 1 (most recent).
+   */
+  public int size()
+  {
+    return count;
+  }
+
+  private Entry get(final int index)
+  {
+    if ((index < 0) || (index >= count)) {
+      throw new IndexOutOfBoundsException("index: " + index);
+    }
+    return entries[(head + index) % entries.length];
+  }
+
+  public long getWallClockTime(final int index)
+  {
+    return get(index).wallClockTime;
+  }
+
+  public long getWallClockCycles(final int index)
+  {
+    return get(index).wallClockCycles;
+  }
+
+  public int getProgramCounter(final int index)
+  {
+    return get(index).programCounter;
+  }
+
+  public boolean isKeyframe(final int index)
+  {
+    return get(index).keyframe;
+  }
+
+  private void addLast(final Entry entry)
+  {
+    if (count == entries.length) {
+      final Entry[] newEntries = new Entry[2 * entries.length];
+      for (int index = 0; index < count; index++) {
+        newEntries[index] = get(index);
+      }
+      entries = newEntries;
+      head = 0;
+    }
+    entries[(head + count) % entries.length] = entry;
+    count++;
+    memoryUsage += entry.data.length;
+  }
+
+  private void removeFirst()
+  {
+    memoryUsage -= entries[head].data.length;
+    entries[head] = null;
+    head = (head + 1) % entries.length;
+    count--;
+  }
+
+  private void removeLast()
+  {
+    final int index = (head + count - 1) % entries.length;
+    memoryUsage -= entries[index].data.length;
+    entries[index] = null;
+    count--;
+  }
+
+  /**
+   * Drops the oldest keyframes with their differences until the
+   * memory budget is met, but always keeps the most recent keyframe.
+   */
+  private void enforceMemoryBudget()
+  {
+    while (memoryUsage > memoryBudget) {
+      int nextKeyframe = 1;
+      while ((nextKeyframe < count) && !get(nextKeyframe).keyframe) {
+        nextKeyframe++;
+      }
+      if (nextKeyframe >= count) {
+        break;
+      }
+      for (int i = 0; i < nextKeyframe; i++) {
+        removeFirst();
+      }
+    }
+  }
+
+  private static void writeVarInt(final ByteArrayOutputStream out, int value)
+  {
+    while (value >= 0x80) {
+      out.write((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  private static int readVarInt(final byte[] data, final int[] pos)
+  {
+    int value = 0;
+    int shift = 0;
+    int b;
+    do {
+      b = data[pos[0]++] & 0xff;
+      value |= (b & 0x7f) << shift;
+      shift += 7;
+    } while (b >= 0x80);
+    return value;
+  }
+
+  /**
+   * Encodes the XOR of both states as sequence of pairs of run
+   * lengths of equal and changed bytes, each run of changed bytes
+   * followed by the XOR of these bytes.
+   */
+  private byte[] encodeDelta(final byte[] previousState, final byte[] state)
+  {
+    deltaBuffer.reset();
+    int pos = 0;
+    while (pos < state.length) {
+      final int equalStart = pos;
+      while ((pos < state.length) && (state[pos] == previousState[pos])) {
+        pos++;
+      }
+      if (pos == state.length) {
+        break;
+      }
+      final int changedStart = pos;
+      int equalRun = 0;
+      while ((pos < state.length) && (equalRun < MIN_EQUAL_RUN)) {
+        equalRun = state[pos] == previousState[pos] ? equalRun + 1 : 0;
+        pos++;
+      }
+      pos -= equalRun;
+      writeVarInt(deltaBuffer, changedStart - equalStart);
+      writeVarInt(deltaBuffer, pos - changedStart);
+      for (int i = changedStart; i < pos; i++) {
+        deltaBuffer.write(state[i] ^ previousState[i]);
+      }
+    }
+    return deltaBuffer.toByteArray();
+  }
+
+  private static void applyDelta(final byte[] state, final byte[] delta)
+  {
+    final int[] deltaPos = new int[1];
+    int pos = 0;
+    while (deltaPos[0] < delta.length) {
+      pos += readVarInt(delta, deltaPos);
+      final int changedRun = readVarInt(delta, deltaPos);
+      for (int i = 0; i < changedRun; i++) {
+        state[pos++] ^= delta[deltaPos[0]++];
+      }
+    }
+  }
+
+  private void capture() throws IOException
+  {
+    stateBuffer.reset();
+    final DataOutputStream out = new DataOutputStream(stateBuffer);
+    machine.writeSnapshot(out);
+    out.flush();
+    final byte[] state = stateBuffer.toByteArray();
+    final boolean keyframe =
+      (lastState == null) || (lastState.length != state.length) ||
+      (statesSinceKeyframe + 1 >= keyframeInterval);
+    final byte[] data = keyframe ? state : encodeDelta(lastState, state);
+    addLast(new Entry(cpu.getWallClockTime(), cpu.getWallClockCycles(),
+                      cpu.getProgramCounter().getValue(), keyframe, data));
+    statesSinceKeyframe = keyframe ? 0 : statesSinceKeyframe + 1;
+    lastState = state;
+    enforceMemoryBudget();
+  }
+
+  @Override
+  public void eventDue(final long timePerClockCycle,
+                       final long wallClockCycles, final long wallClockTime)
+  {
+    if (!enabled) {
+      return;
+    }
+    if (wallClockTime >= nextCaptureTime) {
+      try {
+        capture();
+      } catch (final IOException e) {
+        System.out.println("WARNING: rewind: failed capturing state: " +
+                           e.getMessage() + ", recording stopped");
+        enabled = false;
+        return;
+      }
+      nextCaptureTime = wallClockTime + interval;
+    }
+    eventScheduler.scheduleAtTime(deviceId, nextCaptureTime);
+  }
+
+  /**
+   * Restores the machine state recorded at the specified index.  All
+   * states recorded later are dropped, since the machine will
+   * diverge from them.  Note that restoring is not free of side
+   * effects outside of the machine: e.g. the VZ200 closes the file of
+   * a cassette that is playing, and reopens it to resume at the
+   * restored position (see its IO.readState()).
+   */
+  public void rewind(final int index) throws IOException
+  {
+    final Entry entry = get(index);
+    int keyframeIndex = index;
+    while (!get(keyframeIndex).keyframe) {
+      keyframeIndex--;
+    }
+    final byte[] state = get(keyframeIndex).data.clone();
+    for (int i = keyframeIndex + 1; i <= index; i++) {
+      applyDelta(state, get(i).data);
+    }
+    machine.readSnapshot(new DataInputStream(new ByteArrayInputStream(state)));
+    while (count > index + 1) {
+      removeLast();
+    }
+    lastState = state;
+    statesSinceKeyframe = index - keyframeIndex;
+    nextCaptureTime = entry.wallClockTime + interval;
+    if (enabled) {
+      eventScheduler.scheduleAtTime(deviceId, nextCaptureTime);
+    }
+  }
+
+  public String toString()
+  {
+    return String.format("RewindBuffer[states=%d, memory=%d/%d bytes]",
+                         count, memoryUsage, memoryBudget);
+  }
+}
+
+/*
+  Local Variables:
+    coding:utf-8
+    mode:Java
+    End:
+*/
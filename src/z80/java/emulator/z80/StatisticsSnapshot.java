@@ -0,0 +1,211 @@
+package emulator.z80;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Recent history of CPU statistics samples.  Each sample covers a
+ * time slice of emulated CPU time and holds the actual speed, the
+ * thread load and the jitter, i.e. the difference between the
+ * emulated and the host's time span of that slice.
+ *
+ * The CPU thread adds samples to its own instance without locking
+ * and without allocating memory, guarded by a sequence counter.  Any
+ * other thread takes a consistent copy into an instance of its own
+ * via copyFrom(), which retries while the CPU thread is updating,
+ * and then evaluates the copy at leisure.
+ */
+public class StatisticsSnapshot
+{
+  public static final int HISTORY_SIZE = 100;
+
+  private volatile int sequence;
+  private long sampleCount;
+  private final double[] speeds;
+  private final double[] threadLoads;
+  private final long[] jitters;
+
+  // scratch space for computing percentiles
+  private final long[] sortedJitters;
+  private int sortedJittersSequence;
+
+  public StatisticsSnapshot()
+  {
+    sequence = 0;
+    sampleCount = 0;
+    speeds = new double[HISTORY_SIZE];
+    threadLoads = new double[HISTORY_SIZE];
+    jitters = new long[HISTORY_SIZE];
+    sortedJitters = new long[HISTORY_SIZE];
+    sortedJittersSequence = -1;
+  }
+
+  /**
+   * Adds a sample.  To be called only by the single writer thread.
+   * @param speed Actual speed in [Hz].
+   * @param threadLoad Thread load, 0.0 &leq; value &leq; 1.0.
+   * @param jitter Emulated minus host time span of the slice in [ns].
+   */
+  void addSample(final double speed, final double threadLoad,
+                 final long jitter)
+  {
+    final int index = (int)(sampleCount % HISTORY_SIZE);
+    sequence++;
+    VarHandle.storeStoreFence();
+    speeds[index] = speed;
+    threadLoads[index] = threadLoad;
+    jitters[index] = jitter;
+    sampleCount++;
+    sequence++;
+  }
+
+  /**
+   * Discards all samples.  To be called only by the single writer
+   * thread.
+   */
+  void clear()
+  {
+    sequence++;
+    VarHandle.storeStoreFence();
+    sampleCount = 0;
+    sequence++;
+  }
+
+  /**
+   * Takes a consistent copy of the source's samples.  May be called
+   * from any thread while the CPU thread updates the source.
+   */
+  public void copyFrom(final StatisticsSnapshot source)
+  {
+    while (true) {
+      final int startSequence = source.sequence;
+      if ((startSequence & 0x1) == 0) {
+        sampleCount = source.sampleCount;
+        System.arraycopy(source.speeds, 0, speeds, 0, HISTORY_SIZE);
+        System.arraycopy(source.threadLoads, 0, threadLoads, 0, HISTORY_SIZE);
+        System.arraycopy(source.jitters, 0, jitters, 0, HISTORY_SIZE);
+        VarHandle.loadLoadFence();
+        if (source.sequence == startSequence) {
+          break;
+        }
+      }
+      Thread.onSpinWait();
+    }
+    sequence += 2; // invalidate cached percentiles
+  }
+
+  /**
+   * Returns the total number of samples taken so far.
+   */
+  public long getSampleCount()
+  {
+    return sampleCount;
+  }
+
+  /**
+   * Returns the number of samples in the history.
+   */
+  public int getSize()
+  {
+    return (int)Math.min(sampleCount, HISTORY_SIZE);
+  }
+
+  private double average(final double[] values)
+  {
+    final int size = getSize();
+    if (size == 0) {
+      return 0.0;
+    }
+    double sum = 0.0;
+    for (int i = 0; i < size; i++) {
+      sum += values[i];
+    }
+    return sum / size;
+  }
+
+  /**
+   * Returns the average speed in [Hz] over the history.
+   */
+  public double getAvgSpeed()
+  {
+    return average(speeds);
+  }
+
+  public double getMinSpeed()
+  {
+    final int size = getSize();
+    double minSpeed = size > 0 ? Double.MAX_VALUE : 0.0;
+    for (int i = 0; i < size; i++) {
+      minSpeed = Math.min(minSpeed, speeds[i]);
+    }
+    return minSpeed;
+  }
+
+  public double getMaxSpeed()
+  {
+    final int size = getSize();
+    double maxSpeed = 0.0;
+    for (int i = 0; i < size; i++) {
+      maxSpeed = Math.max(maxSpeed, speeds[i]);
+    }
+    return maxSpeed;
+  }
+
+  /**
+   * Returns the average thread load over the history, 0.0 &leq;
+   * value &leq; 1.0.
+   */
+  public double getAvgThreadLoad()
+  {
+    return average(threadLoads);
+  }
+
+  /**
+   * Returns the average jitter in [ns] over the history.
+   */
+  public double getAvgJitter()
+  {
+    final int size = getSize();
+    if (size == 0) {
+      return 0.0;
+    }
+    double sum = 0.0;
+    for (int i = 0; i < size; i++) {
+      sum += jitters[i];
+    }
+    return sum / size;
+  }
+
+  /**
+   * Returns the specified percentile of the absolute jitter in [ns]
+   * over the history.
+   * @param percentile Percentile, 0.0 &leq; value &leq; 100.0.
+   */
+  public long getJitterPercentile(final double percentile)
+  {
+    if ((percentile < 0.0) || (percentile > 100.0)) {
+      throw new IllegalArgumentException("percentile out of range");
+    }
+    final int size = getSize();
+    if (size == 0) {
+      return 0;
+    }
+    if (sortedJittersSequence != sequence) {
+      for (int i = 0; i < size; i++) {
+        sortedJitters[i] = Math.abs(jitters[i]);
+      }
+      Arrays.sort(sortedJitters, 0, size);
+      sortedJittersSequence = sequence;
+    }
+    final int index =
+      Math.min((int)Math.ceil(percentile / 100.0 * size) - 1, size - 1);
+    return sortedJitters[Math.max(index, 0)];
+  }
+}
+
+/*
+  Local Variables:
+    coding:utf-8
+    mode:Java
+    End:
+*/
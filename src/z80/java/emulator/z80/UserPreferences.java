@@ -1,7 +1,7 @@
 package emulator.z80;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.prefs.Preferences;
 
 public class UserPreferences
@@ -31,13 +31,46 @@ public class UserPreferences
   private static final boolean PREFS_DEFAULT_STATISTICS_ENABLED = false;
   private static final String PREFS_NAME_BUSY_WAIT = "busy-wait";
   private static final boolean PREFS_DEFAULT_BUSY_WAIT = false;
+  private static final String PREFS_NAME_HYBRID_WAIT = "hybrid-wait";
+  private static final boolean PREFS_DEFAULT_HYBRID_WAIT = false;
+  private static final String PREFS_NAME_SLICE_TIME = "slice-time";
+  private static final long PREFS_DEFAULT_SLICE_TIME = 1000000; // [ns]
+  private static final String PREFS_NAME_JITTER_BUDGET = "jitter-budget";
+  private static final long PREFS_DEFAULT_JITTER_BUDGET = 1000000; // [ns]
+  private static final String PREFS_NAME_SWITCH_DISPATCH = "switch-dispatch";
+  private static final boolean PREFS_DEFAULT_SWITCH_DISPATCH = false;
+  private static final String PREFS_NAME_LAZY_FLAGS = "lazy-flags";
+  private static final boolean PREFS_DEFAULT_LAZY_FLAGS = false;
+  private static final String PREFS_NAME_TRANSLATION_CACHE =
+    "translation-cache";
+  private static final boolean PREFS_DEFAULT_TRANSLATION_CACHE = false;
+  private static final String PREFS_NAME_REWIND_ENABLED = "rewind-enabled";
+  private static final boolean PREFS_DEFAULT_REWIND_ENABLED = false;
+  private static final String PREFS_NAME_REWIND_INTERVAL = "rewind-interval";
+  private static final long PREFS_DEFAULT_REWIND_INTERVAL = 100000000; // [ns]
+  private static final String PREFS_NAME_REWIND_KEYFRAME_INTERVAL =
+    "rewind-keyframe-interval";
+  private static final int PREFS_DEFAULT_REWIND_KEYFRAME_INTERVAL = 10;
+  private static final String PREFS_NAME_REWIND_MEMORY_BUDGET =
+    "rewind-memory-budget";
+  private static final long PREFS_DEFAULT_REWIND_MEMORY_BUDGET =
+    16 * 1024 * 1024; // [bytes]
 
   private final List<PreferencesChangeListener> listeners;
 
+  /**
+   * Running at max speed is meant for fast-forwarding, and therefore
+   * deliberately not persisted across sessions.
+   */
+  private boolean maxSpeed;
+
   private UserPreferences()
   {
     cpuPreferences = Preferences.userRoot().node(PREFS_PATH_CPU);
-    listeners = new ArrayList<PreferencesChangeListener>();
+    // listeners may come and go with forked headless machines on any
+    // thread, while preference changes are reported on the GUI thread
+    listeners = new CopyOnWriteArrayList<PreferencesChangeListener>();
+    maxSpeed = false;
   }
 
   public static UserPreferences getInstance()
@@ -51,6 +84,13 @@ public class UserPreferences
     listener.speedChanged(getFrequency());
     listener.statisticsEnabledChanged(getStatisticsEnabled());
     listener.busyWaitChanged(getBusyWait());
+    listener.hybridWaitChanged(getHybridWait());
+    listener.maxSpeedChanged(getMaxSpeed());
+  }
+
+  public void removeListener(final PreferencesChangeListener listener)
+  {
+    listeners.remove(listener);
   }
 
   public void setFrequency(final int frequency)
@@ -103,6 +143,231 @@ public class UserPreferences
     return
       cpuPreferences.getBoolean(PREFS_NAME_BUSY_WAIT, PREFS_DEFAULT_BUSY_WAIT);
   }
+
+  public void setHybridWait(final boolean hybridWait)
+  {
+    cpuPreferences.putBoolean(PREFS_NAME_HYBRID_WAIT, hybridWait);
+    for (final PreferencesChangeListener listener : listeners) {
+      listener.hybridWaitChanged(hybridWait);
+    }
+  }
+
+  public boolean getHybridWait()
+  {
+    return
+      cpuPreferences.getBoolean(PREFS_NAME_HYBRID_WAIT,
+                                PREFS_DEFAULT_HYBRID_WAIT);
+  }
+
+  /**
+   * Maximum time span in [ns] of emulated CPU time that the CPU
+   * control executes without synchronizing with the host's clock.
+   * Evaluated when the CPU control is created.
+   */
+  public void setSliceTime(final long sliceTime)
+  {
+    cpuPreferences.putLong(PREFS_NAME_SLICE_TIME, sliceTime);
+  }
+
+  public long getSliceTime()
+  {
+    long sliceTime =
+      cpuPreferences.getLong(PREFS_NAME_SLICE_TIME, PREFS_DEFAULT_SLICE_TIME);
+    if ((sliceTime < 1) || (sliceTime > 1000000000)) {
+      System.out.println("error: slice time [ns]: " + sliceTime +
+                         ", resetting to default (" +
+                         PREFS_DEFAULT_SLICE_TIME + ")");
+      sliceTime = PREFS_DEFAULT_SLICE_TIME;
+      setSliceTime(sliceTime);
+    }
+    return sliceTime;
+  }
+
+  /**
+   * Maximum time span in [ns] that the emulated CPU may run ahead of
+   * the host's clock.  Evaluated when the CPU control is created.
+   */
+  public void setJitterBudget(final long jitterBudget)
+  {
+    cpuPreferences.putLong(PREFS_NAME_JITTER_BUDGET, jitterBudget);
+  }
+
+  public long getJitterBudget()
+  {
+    long jitterBudget =
+      cpuPreferences.getLong(PREFS_NAME_JITTER_BUDGET,
+                             PREFS_DEFAULT_JITTER_BUDGET);
+    if ((jitterBudget < 0) || (jitterBudget > 1000000000)) {
+      System.out.println("error: jitter budget [ns]: " + jitterBudget +
+                         ", resetting to default (" +
+                         PREFS_DEFAULT_JITTER_BUDGET + ")");
+      jitterBudget = PREFS_DEFAULT_JITTER_BUDGET;
+      setJitterBudget(jitterBudget);
+    }
+    return jitterBudget;
+  }
+
+  public void setMaxSpeed(final boolean maxSpeed)
+  {
+    this.maxSpeed = maxSpeed;
+    for (final PreferencesChangeListener listener : listeners) {
+      listener.maxSpeedChanged(maxSpeed);
+    }
+  }
+
+  public boolean getMaxSpeed()
+  {
+    return maxSpeed;
+  }
+
+  /**
+   * Selects the execution engine of the CPU.  Since the engine is
+   * chosen when the CPU is created, changing this value takes effect
+   * only upon next start of the emulator.  Hence, there is no
+   * listener callback for this preference.
+   */
+  public void setSwitchDispatch(final boolean switchDispatch)
+  {
+    cpuPreferences.putBoolean(PREFS_NAME_SWITCH_DISPATCH, switchDispatch);
+  }
+
+  public boolean getSwitchDispatch()
+  {
+    return
+      cpuPreferences.getBoolean(PREFS_NAME_SWITCH_DISPATCH,
+                                PREFS_DEFAULT_SWITCH_DISPATCH);
+  }
+
+  /**
+   * Enables lazy evaluation of the CPU flags.  Like the execution
+   * engine, this value is applied when the CPU is created.
+   */
+  public void setLazyFlags(final boolean lazyFlags)
+  {
+    cpuPreferences.putBoolean(PREFS_NAME_LAZY_FLAGS, lazyFlags);
+  }
+
+  public boolean getLazyFlags()
+  {
+    return
+      cpuPreferences.getBoolean(PREFS_NAME_LAZY_FLAGS,
+                                PREFS_DEFAULT_LAZY_FLAGS);
+  }
+
+  /**
+   * Enables caching of decoded basic blocks.  Applied when the CPU
+   * is created.
+   */
+  public void setTranslationCache(final boolean translationCache)
+  {
+    cpuPreferences.putBoolean(PREFS_NAME_TRANSLATION_CACHE, translationCache);
+  }
+
+  public boolean getTranslationCache()
+  {
+    return
+      cpuPreferences.getBoolean(PREFS_NAME_TRANSLATION_CACHE,
+                                PREFS_DEFAULT_TRANSLATION_CACHE);
+  }
+
+  /**
+   * Enables capturing machine states for rewinding right from
+   * startup of the emulator.  Otherwise, capturing starts with the
+   * monitor's w+ command.  Evaluated when the rewind buffer is
+   * created.
+   */
+  public void setRewindEnabled(final boolean rewindEnabled)
+  {
+    cpuPreferences.putBoolean(PREFS_NAME_REWIND_ENABLED, rewindEnabled);
+  }
+
+  public boolean getRewindEnabled()
+  {
+    return
+      cpuPreferences.getBoolean(PREFS_NAME_REWIND_ENABLED,
+                                PREFS_DEFAULT_REWIND_ENABLED);
+  }
+
+  /**
+   * Time span in [ns] of emulated CPU time between two machine states
+   * captured for rewinding.  Evaluated when the rewind buffer is
+   * created.
+   */
+  public void setRewindInterval(final long rewindInterval)
+  {
+    cpuPreferences.putLong(PREFS_NAME_REWIND_INTERVAL, rewindInterval);
+  }
+
+  public long getRewindInterval()
+  {
+    long rewindInterval =
+      cpuPreferences.getLong(PREFS_NAME_REWIND_INTERVAL,
+                             PREFS_DEFAULT_REWIND_INTERVAL);
+    if ((rewindInterval < 1000000) || (rewindInterval > 10000000000L)) {
+      System.out.println("error: rewind interval [ns]: " + rewindInterval +
+                         ", resetting to default (" +
+                         PREFS_DEFAULT_REWIND_INTERVAL + ")");
+      rewindInterval = PREFS_DEFAULT_REWIND_INTERVAL;
+      setRewindInterval(rewindInterval);
+    }
+    return rewindInterval;
+  }
+
+  /**
+   * Number of captured machine states from one complete machine
+   * state (keyframe) to the next one.  The states in between are
+   * stored as differences only.  Evaluated when the rewind buffer is
+   * created.
+   */
+  public void setRewindKeyframeInterval(final int rewindKeyframeInterval)
+  {
+    cpuPreferences.putInt(PREFS_NAME_REWIND_KEYFRAME_INTERVAL,
+                          rewindKeyframeInterval);
+  }
+
+  public int getRewindKeyframeInterval()
+  {
+    int rewindKeyframeInterval =
+      cpuPreferences.getInt(PREFS_NAME_REWIND_KEYFRAME_INTERVAL,
+                            PREFS_DEFAULT_REWIND_KEYFRAME_INTERVAL);
+    if ((rewindKeyframeInterval < 1) || (rewindKeyframeInterval > 1000)) {
+      System.out.println("error: rewind keyframe interval: " +
+                         rewindKeyframeInterval +
+                         ", resetting to default (" +
+                         PREFS_DEFAULT_REWIND_KEYFRAME_INTERVAL + ")");
+      rewindKeyframeInterval = PREFS_DEFAULT_REWIND_KEYFRAME_INTERVAL;
+      setRewindKeyframeInterval(rewindKeyframeInterval);
+    }
+    return rewindKeyframeInterval;
+  }
+
+  /**
+   * Maximum number of bytes of captured machine states that the
+   * rewind buffer holds before dropping the oldest ones.  Evaluated
+   * when the rewind buffer is created.
+   */
+  public void setRewindMemoryBudget(final long rewindMemoryBudget)
+  {
+    cpuPreferences.putLong(PREFS_NAME_REWIND_MEMORY_BUDGET,
+                           rewindMemoryBudget);
+  }
+
+  public long getRewindMemoryBudget()
+  {
+    long rewindMemoryBudget =
+      cpuPreferences.getLong(PREFS_NAME_REWIND_MEMORY_BUDGET,
+                             PREFS_DEFAULT_REWIND_MEMORY_BUDGET);
+    if ((rewindMemoryBudget < 65536) ||
+        (rewindMemoryBudget > 1024L * 1024 * 1024)) {
+      System.out.println("error: rewind memory budget [bytes]: " +
+                         rewindMemoryBudget +
+                         ", resetting to default (" +
+                         PREFS_DEFAULT_REWIND_MEMORY_BUDGET + ")");
+      rewindMemoryBudget = PREFS_DEFAULT_REWIND_MEMORY_BUDGET;
+      setRewindMemoryBudget(rewindMemoryBudget);
+    }
+    return rewindMemoryBudget;
+  }
 }
 
 /*
@@ -1,11 +1,23 @@
 package emulator.z80;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Vector;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
 
 public class Z80 implements CPU {
   // *** CODE FETCHING UNIT ***************************************************
@@ -66,15 +78,13 @@ public class Z80 implements CPU {
   private class MemoryCodeFetcher implements CodeFetcher {
     private final static int CACHE_SIZE = 4;
     private CPU.Memory memory;
-    private Reg16 regPC;
     private int pos, size;
     private int[] cache;
 
     private MemoryCodeFetcher() {}
 
-    public MemoryCodeFetcher(CPU.Memory memory, Reg16 regPC) {
+    public MemoryCodeFetcher(CPU.Memory memory) {
       this.memory = memory;
-      this.regPC = regPC;
       cache = new int[CACHE_SIZE];
       size = 0;
       pos = 0;
@@ -83,8 +93,7 @@ public class Z80 implements CPU {
     public int fetchNextByte() {
       if (pos < size)
 	return cache[pos++];
-      int result = memory.readByte((regPC.getValue() + pos) & 0xffff,
-                                   wallClockTime) & 0xff;
+      int result = readMemoryByte((regPC + pos) & 0xffff);
       cache[pos++] = result;
       size = pos;
       return result;
@@ -112,7 +121,7 @@ public class Z80 implements CPU {
 
     public String toString() {
       StringBuffer sb = new StringBuffer();
-      sb.append(Util.hexShortStr(regPC.getValue()));
+      sb.append(Util.hexShortStr(regPC));
       sb.append("-   ");
       for (int i = 0; i < size; i++) {
 	sb.append(" " + Util.hexByteStr(cache[i]));
@@ -157,7 +166,7 @@ public class Z80 implements CPU {
 
     public String toString() {
       StringBuffer sb = new StringBuffer();
-      sb.append(Util.hexShortStr(regPC.getValue()));
+      sb.append(Util.hexShortStr(regPC));
       sb.append("-   ");
       sb.append(" " + Util.hexByteStr(intr_bus_data));
       for (int i = 0; i < 3; i++) {
@@ -167,35 +176,211 @@ public class Z80 implements CPU {
     }
   }
 
+  /**
+   * Code fetcher that delivers op-code bytes from a fixed array.
+   * Needed for resolving op-codes that have already been fetched by
+   * the switch dispatch engine, and for probing the decode table.
+   */
+  private class CodeBytesFetcher implements CodeFetcher {
+    private int[] code;
+    private int address;
+    private int length;
+    private int pos;
+
+    private CodeBytesFetcher() {}
+
+    public CodeBytesFetcher(int[] code) {
+      this.code = code;
+      length = code.length;
+      pos = 0;
+    }
+
+    public void setCode(int address, int length) {
+      this.address = address;
+      this.length = length;
+      pos = 0;
+    }
+
+    public int fetchNextByte() {
+      return fetchByte(pos++);
+    }
+
+    public int fetchByte(int index) {
+      pos = index + 1;
+      return index < length ? code[index] : 0;
+    }
+
+    public void restart() {
+      pos = 0;
+    }
+
+    public void reset() {
+      pos = 0;
+    }
+
+    public String toString() {
+      StringBuffer sb = new StringBuffer();
+      sb.append(Util.hexShortStr(address));
+      sb.append("-   ");
+      for (int i = 0; i < length; i++) {
+	sb.append(" " + Util.hexByteStr(code[i]));
+      }
+      return sb.toString();
+    }
+  }
+
   private MemoryCodeFetcher memoryCodeFetcher;
   private IntrBusDataFetcher intrBusDataFetcher;
 
   // *** CPU REGISTERS ********************************************************
 
+  /*
+   * The processor status is held in a primitive register file of
+   * plain int fields that the execute path accesses directly.  8 bit
+   * registers always hold values 0x00..0xff, 16 bit registers values
+   * 0x0000..0xffff.  The register objects below are merely views on
+   * these fields, as needed for the monitor, for the mnemonic
+   * functions, and for the generic register arguments of the
+   * operations of the decode table.
+   */
+  private int regA, regF, regB, regC, regD, regE, regH, regL;
+  private int regIX, regIY;
+  private int regI, regR;
+  private int regSP, regPC;
+  private int regAF_, regBC_, regDE_, regHL_;
+  private int regIM;
+
+  private int getBC() { return (regB << 8) | regC; }
+
+  private int getDE() { return (regD << 8) | regE; }
+
+  private int getHL() { return (regH << 8) | regL; }
+
+  private int getAF() { return (regA << 8) | getF(); }
+
+  private void setBC(int value) {
+    regB = (value >>> 8) & 0xff;
+    regC = value & 0xff;
+  }
+
+  private void setDE(int value) {
+    regD = (value >>> 8) & 0xff;
+    regE = value & 0xff;
+  }
+
+  private void setHL(int value) {
+    regH = (value >>> 8) & 0xff;
+    regL = value & 0xff;
+  }
+
+  private void setAF(int value) {
+    regA = (value >>> 8) & 0xff;
+    setF(value);
+  }
+
+  /**
+   * Reads 8 bit register B, C, D, E, H, L, (HL) or A, as selected by
+   * the 3 bit register index of an op-code.
+   */
+  private int getReg8(int index) {
+    switch (index) {
+      case 0: return regB;
+      case 1: return regC;
+      case 2: return regD;
+      case 3: return regE;
+      case 4: return regH;
+      case 5: return regL;
+      case 6: return readMemoryByte(getHL());
+      case 7: return regA;
+      default: throw new InternalError("bad register index: " + index);
+    }
+  }
+
+  /**
+   * Writes 8 bit register B, C, D, E, H, L, (HL) or A, as selected by
+   * the 3 bit register index of an op-code.
+   */
+  private void setReg8(int index, int value) {
+    switch (index) {
+      case 0: regB = value & 0xff; break;
+      case 1: regC = value & 0xff; break;
+      case 2: regD = value & 0xff; break;
+      case 3: regE = value & 0xff; break;
+      case 4: regH = value & 0xff; break;
+      case 5: regL = value & 0xff; break;
+      case 6: writeMemoryByte(getHL(), value); break;
+      case 7: regA = value & 0xff; break;
+      default: throw new InternalError("bad register index: " + index);
+    }
+  }
+
+  /**
+   * Reads register pair BC, DE, HL or SP, as selected by the 2 bit
+   * register index of an op-code.
+   */
+  private int getReg16(int index) {
+    switch (index) {
+      case 0: return getBC();
+      case 1: return getDE();
+      case 2: return getHL();
+      case 3: return regSP;
+      default: throw new InternalError("bad register index: " + index);
+    }
+  }
+
+  /**
+   * Writes register pair BC, DE, HL or SP, as selected by the 2 bit
+   * register index of an op-code.
+   */
+  private void setReg16(int index, int value) {
+    switch (index) {
+      case 0: setBC(value); break;
+      case 1: setDE(value); break;
+      case 2: setHL(value); break;
+      case 3: regSP = value & 0xffff; break;
+      default: throw new InternalError("bad register index: " + index);
+    }
+  }
+
+  /**
+   * Reads register pair BC, DE, HL or AF, as selected by the 2 bit
+   * register index of a PUSH / POP op-code.
+   */
+  private int getPReg16(int index) {
+    return (index == 3) ? getAF() : getReg16(index);
+  }
+
+  /**
+   * Writes register pair BC, DE, HL or AF, as selected by the 2 bit
+   * register index of a PUSH / POP op-code.
+   */
+  private void setPReg16(int index, int value) {
+    if (index == 3)
+      setAF(value);
+    else
+      setReg16(index, value);
+  }
+
   public interface Reg8 extends CPU.Register {}
 
-  class GenericReg8 implements Reg8 {
-    private int value;
+  abstract class GenericReg8 implements Reg8 {
     private String name;
     private GenericReg8() {}
     public GenericReg8(String name) { this.name = name; }
     public String getName() { return name; }
-    public int getValue() { return value; }
-
-    public void setValue(int value) { this.value = value; }
 
     public boolean increment() {
-      value++;
-      value &= 0xff;
+      int value = (getValue() + 1) & 0xff;
+      setValue(value);
       return value == 0x00;
     }
     public boolean decrement() {
-      value--;
-      value &= 0xff;
+      int value = (getValue() - 1) & 0xff;
+      setValue(value);
       return value == 0xff;
     }
     public void reset() { setValue(0); }
-    public String toString() { return name + "=" + Util.hexByteStr(value); }
+    public String toString() { return name + "=" + Util.hexByteStr(getValue()); }
   }
 
   class IndirectReg8 implements Reg8 {
@@ -212,11 +397,11 @@ public class Z80 implements CPU {
     public String getName() { return "(" + reg16.getName() + ")"; }
 
     public int getValue() {
-      return memory.readByte(reg16.getValue(), wallClockTime) & 0xff;
+      return readMemoryByte(reg16.getValue());
     }
 
     public void setValue(int value) {
-      memory.writeByte(reg16.getValue(), value, wallClockTime);
+      writeMemoryByte(reg16.getValue(), value);
     }
 
     public boolean increment() {
@@ -257,13 +442,11 @@ public class Z80 implements CPU {
     }
 
     public int getValue() {
-      return this.memory.readByte((reg16.getValue() + disp8) & 0xffff,
-                                  wallClockTime) & 0xff;
+      return readMemoryByte((reg16.getValue() + disp8) & 0xffff);
     }
 
     public void setValue(int value) {
-      this.memory.writeByte((reg16.getValue() + disp8) & 0xffff, value,
-                            wallClockTime);
+      writeMemoryByte((reg16.getValue() + disp8) & 0xffff, value);
     }
   }
 
@@ -279,31 +462,126 @@ public class Z80 implements CPU {
   private final static int FLAG_N = 0x02;
   private final static int FLAG_C = 0x01;
 
+  // undocumented flags, never modified by any ALU operation
+  private final static int FLAGS_X = FLAG_X1 | FLAG_X2;
+
+  // *** LAZY FLAGS EVALUATION ************************************************
+
+  /*
+   * With lazy flags evaluation enabled, the ALU operations that
+   * overwrite the flags do not compute them, but merely record their
+   * operands and result.  Most of these flags are overwritten by the
+   * next ALU operation anyway.  Only when register F is actually read
+   * (e.g. for a conditional jump, a PUSH AF or by the monitor), the
+   * flags of the recorded operation are materialized.  While an
+   * evaluation is pending, register F holds all those flags that are
+   * not computed by the recorded operation.
+   */
+
+  // kinds of pending flags evaluation
+  private final static int LAZY_FLAGS_NONE = 0;
+  private final static int LAZY_FLAGS_SZP = 1;
+  private final static int LAZY_FLAGS_ADD8 = 2;
+  private final static int LAZY_FLAGS_SUB8 = 3;
+  private final static int LAZY_FLAGS_INC8 = 4;
+  private final static int LAZY_FLAGS_DEC8 = 5;
+
+  private boolean lazyFlagsEnabled;
+  private int lazyFlags;
+  private int lazyOp1, lazyOp2, lazyResult;
+
+  /**
+   * Enables or disables lazy flags evaluation.  May be called between
+   * any two instructions.
+   */
+  public void setLazyFlagsEnabled(boolean enabled) {
+    if (!enabled) {
+      evaluateFlags();
+    }
+    lazyFlagsEnabled = enabled;
+  }
+
+  public boolean isLazyFlagsEnabled() {
+    return lazyFlagsEnabled;
+  }
+
+  /**
+   * Returns the value of register F, materializing any pending
+   * flags evaluation.
+   */
+  private int getF() {
+    if (lazyFlags != LAZY_FLAGS_NONE) {
+      evaluateFlags();
+    }
+    return regF;
+  }
+
+  private void setF(int value) {
+    regF = value & 0xff;
+    lazyFlags = LAZY_FLAGS_NONE;
+  }
+
+  /**
+   * Records a flags evaluation of the specified kind as pending.
+   * Unless lazy flags evaluation is enabled, the flags are
+   * materialized immediately.
+   */
+  private void setLazyFlags(int kind) {
+    lazyFlags = kind;
+    if (!lazyFlagsEnabled) {
+      evaluateFlags();
+    }
+  }
+
+  private void evaluateFlags() {
+    int result = lazyResult;
+    switch (lazyFlags) {
+      case LAZY_FLAGS_NONE:
+        return;
+      case LAZY_FLAGS_SZP:
+        regF |= FLAGS_SZP[result];
+        break;
+      case LAZY_FLAGS_ADD8:
+        regF |= getArith8Flags(lazyOp1, lazyOp2, result, false);
+        break;
+      case LAZY_FLAGS_SUB8:
+        regF |= getArith8Flags(lazyOp1, lazyOp2, result, true);
+        break;
+      case LAZY_FLAGS_INC8:
+        regF |=
+          ((result == 0x80) ? FLAG_PV : 0) |
+          (((result & 0xf) == 0x0) ? FLAG_H : 0) |
+          ((result == 0x00) ? FLAG_Z : 0) |
+          (result & FLAG_S);
+        break;
+      case LAZY_FLAGS_DEC8:
+        regF |=
+          FLAG_N |
+          ((result == 0x7f) ? FLAG_PV : 0) |
+          (((result & 0xf) == 0xf) ? FLAG_H : 0) |
+          ((result == 0x00) ? FLAG_Z : 0) |
+          (result & FLAG_S);
+        break;
+      default:
+        throw new InternalError("unexpected lazy flags: " + lazyFlags);
+    }
+    lazyFlags = LAZY_FLAGS_NONE;
+  }
+
   private class Flag {
     private String name, nameTrue, nameFalse;
     private int andMask;
-    private int reverseAndMask;
-    private Reg8 regF;
 
     public Flag(String name, String nameTrue, String nameFalse,
-                int andMask, Reg8 regF) {
+                int andMask) {
       this.name = name;
       this.nameTrue = nameTrue;
       this.nameFalse = nameFalse;
       this.andMask = andMask;
-      reverseAndMask = andMask ^ 0xff;
-      this.regF = regF;
     }
 
     public boolean get() {
-      return (regF.getValue() & andMask) != 0x00;
-    }
-
-    public void set(boolean value) {
-      if (value)
-	regF.setValue(regF.getValue() | andMask);
-      else
-	regF.setValue(regF.getValue() & reverseAndMask);
+      return (getF() & andMask) != 0x00;
     }
 
     public String getName() {
@@ -336,17 +614,21 @@ public class Z80 implements CPU {
       super(name);
       System.out.println("setting up processor flags...");
       flags = new Flag[] {
-        flagS = new Flag("S", "M", "P", FLAG_S, this),
-        flagZ = new Flag("Z", "Z", "NZ", FLAG_Z, this),
-        flagX1 = new Flag("X", "1", "0", FLAG_X1, this),
-        flagH = new Flag("H", "H", "NH", FLAG_H, this),
-        flagX2 = new Flag("X", "1", "0", FLAG_X2, this),
-        flagPV = new Flag("PV", "PE", "PO", FLAG_PV, this),
-        flagN = new Flag("N", "N", "NN", FLAG_N, this),
-        flagC = new Flag("C", "C", "NC", FLAG_C, this)
+        flagS = new Flag("S", "M", "P", FLAG_S),
+        flagZ = new Flag("Z", "Z", "NZ", FLAG_Z),
+        flagX1 = new Flag("X", "1", "0", FLAG_X1),
+        flagH = new Flag("H", "H", "NH", FLAG_H),
+        flagX2 = new Flag("X", "1", "0", FLAG_X2),
+        flagPV = new Flag("PV", "PE", "PO", FLAG_PV),
+        flagN = new Flag("N", "N", "NN", FLAG_N),
+        flagC = new Flag("C", "C", "NC", FLAG_C)
       };
     }
 
+    public int getValue() { return getF(); }
+
+    public void setValue(int value) { setF(value); }
+
     public String toString() {
       StringBuffer s = new StringBuffer();
       for (Flag flag : flags) {
@@ -360,62 +642,23 @@ public class Z80 implements CPU {
 
   public interface Reg16 extends CPU.Register {}
 
-  class GenericReg16 implements Reg16 {
-    private int value;
+  abstract class GenericReg16 implements Reg16 {
     private String name;
     private GenericReg16() {}
     public GenericReg16(String name) { this.name = name; }
     public String getName() { return name; }
-    public int getValue() { return value; }
-    public void setValue(int value) { this.value = value; }
     public boolean increment() {
-      value++;
-      value &= 0xffff;
+      int value = (getValue() + 1) & 0xffff;
+      setValue(value);
       return value == 0x0000;
     }
     public boolean decrement() {
-      value--;
-      value &= 0xffff;
+      int value = (getValue() - 1) & 0xffff;
+      setValue(value);
       return value == 0xffff;
     }
     public void reset() { setValue(0); }
-    public String toString() { return name + "=" + Util.hexShortStr(value); }
-  }
-
-  class RegPair implements Reg16 {
-    private Reg8 regHi, regLo;
-
-    private RegPair() {}
-
-    public RegPair(Reg8 regHi, Reg8 regLo) {
-      this.regHi = regHi;
-      this.regLo = regLo;
-    }
-
-    public String getName() { return regHi.getName() + regLo.getName(); }
-
-    public int getValue() {
-      return (regHi.getValue() << 8) | (regLo.getValue() & 0xff);
-    }
-
-    public void setValue(int value) {
-      regHi.setValue(value >>> 8);
-      regLo.setValue(value & 0xff);
-    }
-
-    public boolean increment() {
-      return regLo.increment() ? regHi.increment() : false;
-    }
-
-    public boolean decrement() {
-      return regLo.decrement() ? regHi.decrement() : false;
-    }
-
-    public void reset() { setValue(0); }
-
-    public String toString() {
-      return getName() + "=" + Util.hexShortStr(getValue());
-    }
+    public String toString() { return name + "=" + Util.hexShortStr(getValue()); }
   }
 
   class RegIM extends GenericReg8 {
@@ -423,11 +666,13 @@ public class Z80 implements CPU {
       super("IM");
     }
 
+    public int getValue() { return regIM; }
+
     public void setValue(int value) {
       if ((value < 0) || (value > 0x2)) {
         throw new IllegalArgumentException(String.format("value=%02Xh", value));
       }
-      super.setValue(value);
+      regIM = value;
     }
 
     public boolean increment() {
@@ -439,13 +684,14 @@ public class Z80 implements CPU {
     }
   }
 
-  private Reg8 regA, regF, regB, regC, regD, regE, regH, regL;
-  private RegPair regAF, regBC, regDE, regHL;
-  private Reg16 regIX, regIY;
-  private Reg8 regI, regR;
-  private Reg16 regSP, regPC;
-  private Reg16 regAF_, regBC_, regDE_, regHL_;
-  private RegIM regIM;
+  private Reg8 regAView, regFView, regBView, regCView;
+  private Reg8 regDView, regEView, regHView, regLView;
+  private Reg16 regAFView, regBCView, regDEView, regHLView;
+  private Reg16 regIXView, regIYView;
+  private Reg8 regIView, regRView;
+  private Reg16 regSPView, regPCView;
+  private Reg16 regAF_View, regBC_View, regDE_View, regHL_View;
+  private RegIM regIMView;
 
   /** pseudo register (HL) */
   private Reg8 indirectRegHL;
@@ -478,82 +724,146 @@ public class Z80 implements CPU {
   private /*final*/ Reg16[] RREG16;
 
   private void createRegisters() {
-    regA = new GenericReg8("A");
-    regF = new Flags("F");
-    regB = new GenericReg8("B");
-    regC = new GenericReg8("C");
-    regD = new GenericReg8("D");
-    regE = new GenericReg8("E");
-    regH = new GenericReg8("H");
-    regL = new GenericReg8("L");
-    regAF = new RegPair(regA, regF);
-    regBC = new RegPair(regB, regC);
-    regDE = new RegPair(regD, regE);
-    regHL = new RegPair(regH, regL);
-    regIX = new GenericReg16("IX");
-    regIY = new GenericReg16("IY");
-    regI = new GenericReg8("I");
-    regR = new GenericReg8("R");
-    regSP = new GenericReg16("SP");
-    regPC = new GenericReg16("PC");
-    regAF_ = new GenericReg16("AF'");
-    regBC_ = new GenericReg16("BC'");
-    regDE_ = new GenericReg16("DE'");
-    regHL_ = new GenericReg16("HL'");
-    regIM = new RegIM();
-    indirectRegHL = new IndirectReg8(memory, regHL);
-    indirectIXDisp8 = new IndirectReg8Disp8(memory, regIX);
-    indirectIYDisp8 = new IndirectReg8Disp8(memory, regIY);
+    regAView = new GenericReg8("A") {
+      public int getValue() { return regA; }
+      public void setValue(int value) { regA = value & 0xff; }
+    };
+    regFView = new Flags("F");
+    regBView = new GenericReg8("B") {
+      public int getValue() { return regB; }
+      public void setValue(int value) { regB = value & 0xff; }
+    };
+    regCView = new GenericReg8("C") {
+      public int getValue() { return regC; }
+      public void setValue(int value) { regC = value & 0xff; }
+    };
+    regDView = new GenericReg8("D") {
+      public int getValue() { return regD; }
+      public void setValue(int value) { regD = value & 0xff; }
+    };
+    regEView = new GenericReg8("E") {
+      public int getValue() { return regE; }
+      public void setValue(int value) { regE = value & 0xff; }
+    };
+    regHView = new GenericReg8("H") {
+      public int getValue() { return regH; }
+      public void setValue(int value) { regH = value & 0xff; }
+    };
+    regLView = new GenericReg8("L") {
+      public int getValue() { return regL; }
+      public void setValue(int value) { regL = value & 0xff; }
+    };
+    regAFView = new GenericReg16("AF") {
+      public int getValue() { return getAF(); }
+      public void setValue(int value) { setAF(value); }
+    };
+    regBCView = new GenericReg16("BC") {
+      public int getValue() { return getBC(); }
+      public void setValue(int value) { setBC(value); }
+    };
+    regDEView = new GenericReg16("DE") {
+      public int getValue() { return getDE(); }
+      public void setValue(int value) { setDE(value); }
+    };
+    regHLView = new GenericReg16("HL") {
+      public int getValue() { return getHL(); }
+      public void setValue(int value) { setHL(value); }
+    };
+    regIXView = new GenericReg16("IX") {
+      public int getValue() { return regIX; }
+      public void setValue(int value) { regIX = value & 0xffff; }
+    };
+    regIYView = new GenericReg16("IY") {
+      public int getValue() { return regIY; }
+      public void setValue(int value) { regIY = value & 0xffff; }
+    };
+    regIView = new GenericReg8("I") {
+      public int getValue() { return regI; }
+      public void setValue(int value) { regI = value & 0xff; }
+    };
+    regRView = new GenericReg8("R") {
+      public int getValue() { return regR; }
+      public void setValue(int value) { regR = value & 0xff; }
+    };
+    regSPView = new GenericReg16("SP") {
+      public int getValue() { return regSP; }
+      public void setValue(int value) { regSP = value & 0xffff; }
+    };
+    regPCView = new GenericReg16("PC") {
+      public int getValue() { return regPC; }
+      public void setValue(int value) { regPC = value & 0xffff; }
+    };
+    regAF_View = new GenericReg16("AF'") {
+      public int getValue() { return regAF_; }
+      public void setValue(int value) { regAF_ = value & 0xffff; }
+    };
+    regBC_View = new GenericReg16("BC'") {
+      public int getValue() { return regBC_; }
+      public void setValue(int value) { regBC_ = value & 0xffff; }
+    };
+    regDE_View = new GenericReg16("DE'") {
+      public int getValue() { return regDE_; }
+      public void setValue(int value) { regDE_ = value & 0xffff; }
+    };
+    regHL_View = new GenericReg16("HL'") {
+      public int getValue() { return regHL_; }
+      public void setValue(int value) { regHL_ = value & 0xffff; }
+    };
+    regIMView = new RegIM();
+    indirectRegHL = new IndirectReg8(memory, regHLView);
+    indirectIXDisp8 = new IndirectReg8Disp8(memory, regIXView);
+    indirectIYDisp8 = new IndirectReg8Disp8(memory, regIYView);
     REGISTER_SET = new CPU.Register[] {
-      regF, regA, regBC, regDE, regHL, regIX, regIY,
-      regAF_, regBC_, regDE_, regHL_,
-      regSP, regPC, regI, regR, regIM
+      regFView, regAView, regBCView, regDEView, regHLView,
+      regIXView, regIYView,
+      regAF_View, regBC_View, regDE_View, regHL_View,
+      regSPView, regPCView, regIView, regRView, regIMView
     };
     REG16 = new Reg16[] {
-      regBC, regDE, regHL, regSP
+      regBCView, regDEView, regHLView, regSPView
     };
     PREG16 = new Reg16[] {
-      regBC, regDE, regHL, regAF
+      regBCView, regDEView, regHLView, regAFView
     };
     REG8 = new Reg8[] {
-      regB, regC, regD, regE, regH, regL, indirectRegHL, regA
+      regBView, regCView, regDView, regEView, regHView, regLView,
+      indirectRegHL, regAView
     };
     DREG8 = new Reg8[] {
-      regB, regC, regD, regE, regH, regL, null, regA
+      regBView, regCView, regDView, regEView, regHView, regLView,
+      null, regAView
     };
     QREG16 = new Reg16[] {
-      regBC, regDE, regIX, regSP
+      regBCView, regDEView, regIXView, regSPView
     };
     RREG16 = new Reg16[] {
-      regBC, regDE, regIY, regSP
+      regBCView, regDEView, regIYView, regSPView
     };
   }
 
   public CPU.Register[] getAllRegisters() { return REGISTER_SET; }
 
-  public CPU.Register getProgramCounter() { return regPC; }
+  public CPU.Register getProgramCounter() { return regPCView; }
 
-  public CPU.Register getStackPointer() { return regSP; }
+  public CPU.Register getStackPointer() { return regSPView; }
 
   private class Cond implements CPU.NamedObject {
     private String name;
     private int andMask;
     private int trueValue;
-    private Reg8 regF;
 
     private Cond() {}
 
-    private Cond(String name, int andMask, boolean value, Reg8 regF) {
+    private Cond(String name, int andMask, boolean value) {
       this.name = name;
       this.andMask = andMask;
       trueValue = (value) ? andMask : 0x00;
-      this.regF = regF;
     }
 
     public String getName() { return name; }
 
     public boolean isTrue() {
-      return (regF.getValue() & andMask) == trueValue;
+      return (getF() & andMask) == trueValue;
     }
   }
 
@@ -570,26 +880,46 @@ public class Z80 implements CPU {
   private /*final*/ Cond[] COND;
 
   private void createConditions() {
-    condNZ = new Cond("NZ", FLAG_Z, false, regF);
-    condZ  = new Cond("Z",  FLAG_Z, true,  regF);
-    condNC = new Cond("NC", FLAG_C, false, regF);
-    condC  = new Cond("C",  FLAG_C, true,  regF);
-    condPO = new Cond("PO", FLAG_PV, false, regF);
-    condPE = new Cond("PE", FLAG_PV, true,  regF);
-    condP  = new Cond("P",  FLAG_S, false, regF);
-    condM  = new Cond("M",  FLAG_S, true,  regF);
+    condNZ = new Cond("NZ", FLAG_Z, false);
+    condZ  = new Cond("Z",  FLAG_Z, true);
+    condNC = new Cond("NC", FLAG_C, false);
+    condC  = new Cond("C",  FLAG_C, true);
+    condPO = new Cond("PO", FLAG_PV, false);
+    condPE = new Cond("PE", FLAG_PV, true);
+    condP  = new Cond("P",  FLAG_S, false);
+    condM  = new Cond("M",  FLAG_S, true);
     COND = new Cond[]
     { condNZ, condZ, condNC, condC, condPO, condPE, condP, condM };
   }
 
+  /**
+   * Evaluates condition NZ, Z, NC, C, PO, PE, P or M, as selected by
+   * the 3 bit condition index of an op-code.
+   */
+  private boolean isCondTrue(int index) {
+    int flags = getF();
+    switch (index) {
+      case 0: return (flags & FLAG_Z) == 0;
+      case 1: return (flags & FLAG_Z) != 0;
+      case 2: return (flags & FLAG_C) == 0;
+      case 3: return (flags & FLAG_C) != 0;
+      case 4: return (flags & FLAG_PV) == 0;
+      case 5: return (flags & FLAG_PV) != 0;
+      case 6: return (flags & FLAG_S) == 0;
+      case 7: return (flags & FLAG_S) != 0;
+      default: throw new InternalError("bad condition index: " + index);
+    }
+  }
+
   public void printRegs(PrintStream out) {
     out.println("  FLAGS " + flagC + " " + flagN + " " + flagPV +
 		" " + flagH + " " + flagZ + " " + flagS);
-    out.println("  " + regA + " " + regBC + " " + regDE + " " + regHL +
-		" " + regIX + " " + regIY);
-    out.println("  " + regAF_ + " " + regBC_ + " " + regDE_ + " " + regHL_);
-    out.println("  " + regSP + " " + regPC +
-		" " + regI + " " + regR + " IM=" + regIM);
+    out.println("  " + regAView + " " + regBCView + " " + regDEView +
+                " " + regHLView + " " + regIXView + " " + regIYView);
+    out.println("  " + regAF_View + " " + regBC_View + " " + regDE_View +
+                " " + regHL_View);
+    out.println("  " + regSPView + " " + regPCView +
+		" " + regIView + " " + regRView + " IM=" + regIMView);
   }
 
   // *** INTERRUPT HANDLING ***************************************************
@@ -616,24 +946,164 @@ public class Z80 implements CPU {
     nmi_requested = true;
   }
 
+  // *** MEMORY ACCESS ********************************************************
+
+  /*
+   * Pages that are completely backed by plain RAM or ROM are
+   * accessed directly via the backing arrays that the memory bus
+   * provides.  All other pages (e.g. memory-mapped I/O or video RAM)
+   * are accessed via the bus.  Since direct writes bypass the bus,
+   * the translation cache is notified of them explicitly.
+   */
+  private byte[][] directPageData;
+  private int[] directPageOffset;
+  private boolean[] directPageWritable;
+  private boolean[] directPageWriteProtected;
+
+  private void createDirectMemoryAccess() {
+    if (memory instanceof MemoryBus) {
+      MemoryBus memoryBus = (MemoryBus)memory;
+      directPageData = memoryBus.getDirectPageData();
+      directPageOffset = memoryBus.getDirectPageOffset();
+      directPageWritable = memoryBus.getDirectPageWritable();
+      directPageWriteProtected = memoryBus.getDirectPageWriteProtected();
+    } else {
+      // no direct access at all
+      directPageData = new byte[0x100][];
+      directPageOffset = new int[0x100];
+      directPageWritable = new boolean[0x100];
+      directPageWriteProtected = new boolean[0x100];
+    }
+  }
+
+  private int readMemoryByte(int address) {
+    address &= 0xffff;
+    int page = address >>> 8;
+    byte[] data = directPageData[page];
+    if (data != null) {
+      return data[address - directPageOffset[page]] & 0xff;
+    }
+    return memory.readByte(address, wallClockTime) & 0xff;
+  }
+
+  private int readMemoryShort(int address) {
+    address &= 0xffff;
+    int page = address >>> 8;
+    byte[] data = directPageData[page];
+    if ((data != null) && ((address & 0xff) != 0xff)) {
+      int index = address - directPageOffset[page];
+      return (data[index] & 0xff) | ((data[index + 1] & 0xff) << 8);
+    }
+    return memory.readShort(address, wallClockTime) & 0xffff;
+  }
+
+  private void writeMemoryByte(int address, int value) {
+    address &= 0xffff;
+    int page = address >>> 8;
+    if (directPageWritable[page]) {
+      directPageData[page][address - directPageOffset[page]] = (byte)value;
+      if (translationCacheEnabled) {
+        invalidatePage(page);
+      }
+    } else if (!directPageWriteProtected[page]) {
+      memory.writeByte(address, value, wallClockTime);
+    }
+  }
+
+  private void writeMemoryShort(int address, int value) {
+    address &= 0xffff;
+    int page = address >>> 8;
+    if ((address & 0xff) == 0xff) {
+      // crossing page boundary
+      writeMemoryByte(address, value);
+      writeMemoryByte(address + 1, value >>> 8);
+    } else if (directPageWritable[page]) {
+      int index = address - directPageOffset[page];
+      byte[] data = directPageData[page];
+      data[index] = (byte)value;
+      data[index + 1] = (byte)(value >>> 8);
+      if (translationCacheEnabled) {
+        invalidatePage(page);
+      }
+    } else if (!directPageWriteProtected[page]) {
+      memory.writeShort(address, value, wallClockTime);
+    }
+  }
+
   // *** CPU TIMING ***********************************************************
 
   private long wallClockCycles = 0; // number of CPU cycles since startup
   private long wallClockTime = 0; // [ns since startup]
   private long timePerClockCycle; // [ns]
-  private boolean statisticsEnabled;
+  private volatile boolean statisticsEnabled;
 
-  public void addWallClockListener(WallClockListener listener) {
-    wallClockListeners.add(listener);
+  /*
+   * Rather than notifying all peripherals after each instruction,
+   * the CPU only compares its cycle counter against the earliest
+   * event of the event scheduler.  Only then, the affected
+   * peripherals are called back.
+   */
+  private final EventScheduler eventScheduler = new EventScheduler(this);
+
+  public EventScheduler getEventScheduler() {
+    return eventScheduler;
+  }
+
+  /**
+   * Wraps a deadline listener into a device of the event scheduler.
+   */
+  private class DeadlineListenerAdapter implements EventScheduler.Device {
+    private final DeadlineListener listener;
+    private final int deviceId;
+
+    private DeadlineListenerAdapter(DeadlineListener listener) {
+      if (listener == null) {
+        throw new NullPointerException("listener");
+      }
+      this.listener = listener;
+      deviceId = eventScheduler.addDevice(this);
+      eventScheduler.schedule(deviceId, wallClockCycles);
+    }
+
+    public void eventDue(long timePerClockCycle,
+                         long wallClockCycles, long wallClockTime) {
+      eventScheduler.schedule(deviceId,
+                              listener.deadlineReached(timePerClockCycle,
+                                                       wallClockCycles,
+                                                       wallClockTime));
+    }
   }
 
-  private void notifyWallClockListeners() {
-    for (WallClockListener listener : wallClockListeners) {
+  /**
+   * Wraps a wall clock listener into a deadline listener that is
+   * due after each instruction.
+   */
+  private static class WallClockListenerAdapter implements DeadlineListener {
+    private final WallClockListener listener;
+
+    private WallClockListenerAdapter(WallClockListener listener) {
+      if (listener == null) {
+        throw new NullPointerException("listener");
+      }
+      this.listener = listener;
+    }
+
+    public long deadlineReached(long timePerClockCycle,
+                                long wallClockCycles, long wallClockTime) {
       listener.wallClockChanged(timePerClockCycle,
                                 wallClockCycles, wallClockTime);
+      return wallClockCycles + 1;
     }
   }
 
+  public void addWallClockListener(WallClockListener listener) {
+    addDeadlineListener(new WallClockListenerAdapter(listener));
+  }
+
+  public void addDeadlineListener(DeadlineListener listener) {
+    new DeadlineListenerAdapter(listener);
+  }
+
   /**
    * Returns the total number of time in ns per CPU T cycle
    * (i.e. the reciprocal of the CPU speed in MHz).
@@ -661,7 +1131,10 @@ public class Z80 implements CPU {
   private void updateWallClock(int cycles) {
     wallClockCycles += cycles;
     wallClockTime += cycles * timePerClockCycle;
-    notifyWallClockListeners();
+    if (wallClockCycles >= eventScheduler.getNextEventCycle()) {
+      eventScheduler.dispatch(timePerClockCycle,
+                              wallClockCycles, wallClockTime);
+    }
   }
 
   // *** OPCODE HELPERS *******************************************************
@@ -888,15 +1361,49 @@ public class Z80 implements CPU {
     private CodeFetcher codeFetcher;
     private int address;
     private boolean isSynthesizedCode;
-    private long systemNanoTime;
+
+    /**
+     * True, if this operation has been fetched by the switch
+     * dispatch engine.  In that case, the generic operation is
+     * resolved only on demand, e.g. when the monitor asks for the
+     * mnemonic.
+     */
+    private boolean isSwitchDispatched;
+    private int dispatchTable;
+    private int dispatchOpCode;
+    private int dispatchByteLength;
+    private int dispatchClockPeriods;
+    private int[] codeBytes;
+    private CodeBytesFetcher codeBytesFetcher;
 
     public ConcreteOperation() {
       args = new Arguments();
+      codeBytes = new int[4];
+      codeBytesFetcher = new CodeBytesFetcher(codeBytes);
     }
 
     public Arguments getArguments() { return args; }
 
+    /**
+     * Lazily decode a switch dispatched operation via the decode
+     * table, such that mnemonic and op-code become available.
+     */
+    private void resolveGenericOperation() {
+      if (genericOperation != null)
+        return;
+      codeBytesFetcher.setCode(address, dispatchByteLength);
+      int leaf = decodeTable.findLeaf(codeBytesFetcher);
+      if (leaf < 0)
+        throw new InternalError("switch dispatched operation not in " +
+                                "decode table: " + codeBytesFetcher);
+      codeBytesFetcher.restart();
+      this.codeFetcher = codeBytesFetcher;
+      decodeTable.fillArgs(leaf, codeBytesFetcher, args);
+      genericOperation = decodeTable.getGenericOperation(leaf);
+    }
+
     public String getConcreteMnemonic() {
+      resolveGenericOperation();
       return genericOperation.createConcreteMnemonic(args);
     }
 
@@ -909,8 +1416,14 @@ public class Z80 implements CPU {
     }
 
     public ConcreteOpCode createOpCode() {
-      codeFetcher.restart();
       ConcreteOpCode concreteOpCode = new ConcreteOpCode();
+      if (isSwitchDispatched) {
+        for (int i = 0; i < dispatchByteLength; i++) {
+          concreteOpCode.addByte(codeBytes[i]);
+        }
+        return concreteOpCode;
+      }
+      codeFetcher.restart();
       for (int i = 0; i < genericOperation.byteLength; i++) {
         int concreteOpCodeByte = codeFetcher.fetchNextByte();
         concreteOpCode.addByte(concreteOpCodeByte);
@@ -919,23 +1432,36 @@ public class Z80 implements CPU {
     }
 
     public int getByteLength() {
-      return genericOperation.byteLength;
+      return
+        isSwitchDispatched ? dispatchByteLength : genericOperation.byteLength;
     }
 
     public int getNextAddress() {
-      return (address + genericOperation.byteLength) & 0xffff;
+      return (address + getByteLength()) & 0xffff;
     }
 
     public void execute() {
-      genericOperation.execute(args);
-      updateWallClock(getClockPeriods());
-      if (statisticsEnabled) {
-        updateInstructionLevelStatistics(getClockPeriods(),
-                                         getSystemNanoTime());
+      final int clockPeriods;
+      if (isSwitchDispatched) {
+        clockPeriods = executeSwitchDispatched(this);
+        dispatchClockPeriods = clockPeriods;
+      } else {
+        genericOperation.execute(args);
+        clockPeriods = getClockPeriods();
+      }
+      if (profilingEnabled) {
+        profiler.record(isSwitchDispatched ?
+                        dispatchOperationIndex[(dispatchTable << 8) |
+                                               dispatchOpCode] :
+                        genericOperation.index,
+                        address, clockPeriods);
       }
+      updateWallClock(clockPeriods);
     }
 
     public int getClockPeriods() {
+      if (isSwitchDispatched)
+        return dispatchClockPeriods;
       return
 	args.useDefaultClockPeriods ?
 	genericOperation.defaultClockPeriods :
@@ -953,31 +1479,36 @@ public class Z80 implements CPU {
      *
      * @see #getArg
      */
-    public int instantiate(PrecompiledGenericOperation precompiledGenericOperation,
-                           CodeFetcher codeFetcher)
+    public int instantiate(int leaf, CodeFetcher codeFetcher)
       throws CPU.MismatchException
     {
       this.codeFetcher = codeFetcher;
-      precompiledGenericOperation.fillArgs(codeFetcher, args);
-      genericOperation = precompiledGenericOperation.getGenericOperation();
+      isSwitchDispatched = false;
+      decodeTable.fillArgs(leaf, codeFetcher, args);
+      genericOperation = decodeTable.getGenericOperation(leaf);
       return genericOperation.byteLength;
     }
-
-    public void setSystemNanoTime(final long systemNanoTime)
-    {
-      this.systemNanoTime = systemNanoTime;
-    }
-
-    public long getSystemNanoTime()
-    {
-      return systemNanoTime;
-    }
   }
 
+  /**
+   * Mnemonics of all operations that (may) continue execution at
+   * other than the subsequent address.
+   */
+  private final static String[] BRANCH_MNEMONICS = {
+    "CALL", "CPDR", "CPIR", "DJNZ", "HALT", "INDR", "INIR", "JP", "JR",
+    "LDDR", "LDIR", "OTDR", "OTIR", "RET", "RETI", "RETN", "RST"
+  };
+
   private abstract class GenericOperation {
     private String genericMnemonic, genericOpCode;
     private int defaultClockPeriods, altClockPeriods;
 
+    /**
+     * True, if this operation (may) continue execution at other than
+     * the subsequent address, thus terminating a basic block.
+     */
+    private boolean isBranch;
+
     /**
      * Possible values for each bit of the op-code:
      * <PRE>
@@ -1010,6 +1541,12 @@ public class Z80 implements CPU {
      */
     private int[] varSize;
 
+    /**
+     * Position of this operation in the instruction set, e.g. for
+     * indexing the execution profile.
+     */
+    private int index;
+
     public GenericOperation() {}
 
     public void init(String genericMnemonic,
@@ -1028,6 +1565,11 @@ public class Z80 implements CPU {
       if (genericMnemonic == null)
 	throw new NullPointerException("genericMnemonic");
       this.genericMnemonic = genericMnemonic;
+      String operator = genericMnemonic.split(" ")[0];
+      isBranch = false;
+      for (String branchMnemonic : BRANCH_MNEMONICS) {
+        isBranch |= operator.equals(branchMnemonic);
+      }
     }
 
     public String getGenericMnemonic() {
@@ -1342,7 +1884,7 @@ public class Z80 implements CPU {
 	     7, 0);
       }
       public void execute0(Arguments args) {
-	regA.setValue(doADC8(regA.getValue(), getArg(args, 'd')));
+	regA = doADC8(regA, getArg(args, 'd'));
       }
     },
     new GenericOperation() {
@@ -1352,7 +1894,7 @@ public class Z80 implements CPU {
 	     7, 0);
       }
       public void execute0(Arguments args) {
-	regA.setValue(doADC8(regA.getValue(), indirectRegHL.getValue()));
+	regA = doADC8(regA, indirectRegHL.getValue());
       }
     },
     new GenericOperation() {
@@ -1362,7 +1904,7 @@ public class Z80 implements CPU {
 	     15, 0);
       }
       public void execute0(Arguments args) {
-	regHL.setValue(doADC16(regHL.getValue(),
+	setHL(doADC16(getHL(),
 			       REG16[getArg(args, 'x')].getValue()));
       }
     },
@@ -1374,7 +1916,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIXDisp8.setDisp8(getArg(args, 'd'));
-	regA.setValue(doADC8(regA.getValue(), indirectIXDisp8.getValue()));
+	regA = doADC8(regA, indirectIXDisp8.getValue());
       }
     },
     new GenericOperation() {
@@ -1385,7 +1927,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIYDisp8.setDisp8(getArg(args, 'd'));
-	regA.setValue(doADC8(regA.getValue(), indirectIYDisp8.getValue()));
+	regA = doADC8(regA, indirectIYDisp8.getValue());
       }
     },
     new GenericOperation() {
@@ -1395,8 +1937,8 @@ public class Z80 implements CPU {
 	     4, 0);
       }
       public void execute0(Arguments args) {
-	regA.setValue(doADC8(regA.getValue(), REG8[getArg(args, 'x')].
-			     getValue()));
+	regA = doADC8(regA, REG8[getArg(args, 'x')].
+			     getValue());
       }
     },
     new GenericOperation() {
@@ -1406,7 +1948,7 @@ public class Z80 implements CPU {
 	     7, 0);
       }
       public void execute0(Arguments args) {
-	regA.setValue(doADD8(regA.getValue(), getArg(args, 'd')));
+	regA = doADD8(regA, getArg(args, 'd'));
       }
     },
     new GenericOperation() {
@@ -1416,7 +1958,7 @@ public class Z80 implements CPU {
 	     7, 0);
       }
       public void execute0(Arguments args) {
-	regA.setValue(doADD8(regA.getValue(), indirectRegHL.getValue()));
+	regA = doADD8(regA, indirectRegHL.getValue());
       }
     },
     new GenericOperation() {
@@ -1426,7 +1968,7 @@ public class Z80 implements CPU {
 	     11, 0);
       }
       public void execute0(Arguments args) {
-	regHL.setValue(doADD16(regHL.getValue(),
+	setHL(doADD16(getHL(),
 			       REG16[getArg(args, 'x')].getValue()));
       }
     },
@@ -1438,7 +1980,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIXDisp8.setDisp8(getArg(args, 'd'));
-	regA.setValue(doADD8(regA.getValue(), indirectIXDisp8.getValue()));
+	regA = doADD8(regA, indirectIXDisp8.getValue());
       }
     },
     new GenericOperation() {
@@ -1448,8 +1990,8 @@ public class Z80 implements CPU {
 	     15, 0);
       }
       public void execute0(Arguments args) {
-	regIX.setValue(doADD16(regIX.getValue(),
-			       QREG16[getArg(args, 'x')].getValue()));
+	regIX = doADD16(regIX,
+			       QREG16[getArg(args, 'x')].getValue());
       }
     },
     new GenericOperation() {
@@ -1460,7 +2002,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIYDisp8.setDisp8(getArg(args, 'd'));
-	regA.setValue(doADD8(regA.getValue(), indirectIYDisp8.getValue()));
+	regA = doADD8(regA, indirectIYDisp8.getValue());
       }
     },
     new GenericOperation() {
@@ -1470,8 +2012,8 @@ public class Z80 implements CPU {
 	     15, 0);
       }
       public void execute0(Arguments args) {
-	regIY.setValue(doADD16(regIY.getValue(),
-			       RREG16[getArg(args, 'x')].getValue()));
+	regIY = doADD16(regIY,
+			       RREG16[getArg(args, 'x')].getValue());
       }
     },
     new GenericOperation() {
@@ -1481,8 +2023,8 @@ public class Z80 implements CPU {
 	     4, 0);
       }
       public void execute0(Arguments args) {
-	regA.setValue(doADD8(regA.getValue(), REG8[getArg(args, 'x')].
-			     getValue()));
+	regA = doADD8(regA, REG8[getArg(args, 'x')].
+			     getValue());
       }
     },
     new GenericOperation() {
@@ -1492,7 +2034,7 @@ public class Z80 implements CPU {
 	     7, 0);
       }
       public void execute0(Arguments args) {
-	doAND(regA, getArg(args, 'd'));
+	doAND(getArg(args, 'd'));
       }
     },
     new GenericOperation() {
@@ -1502,7 +2044,7 @@ public class Z80 implements CPU {
 	     7, 0);
       }
       public void execute0(Arguments args) {
-	doAND(regA, indirectRegHL.getValue());
+	doAND(indirectRegHL.getValue());
       }
     },
     new GenericOperation() {
@@ -1513,7 +2055,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIXDisp8.setDisp8(getArg(args, 'd'));
-	doAND(regA, indirectIXDisp8.getValue());
+	doAND(indirectIXDisp8.getValue());
       }
     },
     new GenericOperation() {
@@ -1524,7 +2066,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIYDisp8.setDisp8(getArg(args, 'd'));
-	doAND(regA, indirectIYDisp8.getValue());
+	doAND(indirectIYDisp8.getValue());
       }
     },
     new GenericOperation() {
@@ -1534,7 +2076,7 @@ public class Z80 implements CPU {
 	     4, 0);
       }
       public void execute0(Arguments args) {
-	doAND(regA, REG8[getArg(args, 'x')].getValue());
+	doAND(REG8[getArg(args, 'x')].getValue());
       }
     },
     new GenericOperation() {
@@ -1586,8 +2128,8 @@ public class Z80 implements CPU {
 	     17, 0);
       }
       public void execute0(Arguments args) {
-	doPUSH(regPC.getValue());
-	regPC.setValue(getArg(args, 'x'));
+	doPUSH(regPC);
+	regPC = getArg(args, 'x');
       }
     },
     new GenericOperation() {
@@ -1599,8 +2141,8 @@ public class Z80 implements CPU {
       public void execute0(Arguments args) {
 	if (COND[getArg(args, 'c')].isTrue())
 	{
-	  doPUSH(regPC.getValue());
-	  regPC.setValue(getArg(args, 'x'));
+	  doPUSH(regPC);
+	  regPC = getArg(args, 'x');
 	}
 	else
 	  args.useDefaultClockPeriods = false;
@@ -1623,7 +2165,7 @@ public class Z80 implements CPU {
 	     7, 0);
       }
       public void execute0(Arguments args) {
-	doCP(regA.getValue(), getArg(args, 'd'));
+	doCP(regA, getArg(args, 'd'));
       }
     },
     new GenericOperation() {
@@ -1633,7 +2175,7 @@ public class Z80 implements CPU {
 	     7, 0);
       }
       public void execute0(Arguments args) {
-	doCP(regA.getValue(), indirectRegHL.getValue());
+	doCP(regA, indirectRegHL.getValue());
       }
     },
     new GenericOperation() {
@@ -1644,7 +2186,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIXDisp8.setDisp8(getArg(args, 'd'));
-	doCP(regA.getValue(), indirectIXDisp8.getValue());
+	doCP(regA, indirectIXDisp8.getValue());
       }
     },
     new GenericOperation() {
@@ -1655,7 +2197,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIYDisp8.setDisp8(getArg(args, 'd'));
-	doCP(regA.getValue(), indirectIYDisp8.getValue());
+	doCP(regA, indirectIYDisp8.getValue());
       }
     },
     new GenericOperation() {
@@ -1665,7 +2207,7 @@ public class Z80 implements CPU {
 	     4, 0);
       }
       public void execute0(Arguments args) {
-	doCP(regA.getValue(), REG8[getArg(args, 'x')].getValue());
+	doCP(regA, REG8[getArg(args, 'x')].getValue());
       }
     },
     new GenericOperation() {
@@ -1686,8 +2228,8 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	doCPD();
-	if (regBC.getValue() != 0x0000)
-	  regPC.setValue((regPC.getValue() + 0xfffe) & 0xffff);
+	if (getBC() != 0x0000)
+	  regPC = (regPC + 0xfffe) & 0xffff;
 	else
 	  args.useDefaultClockPeriods = false;
       }
@@ -1710,8 +2252,8 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	doCPI();
-	if (regBC.getValue() != 0x0000)
-	  regPC.setValue((regPC.getValue() + 0xfffe) & 0xffff);
+	if (getBC() != 0x0000)
+	  regPC = (regPC + 0xfffe) & 0xffff;
 	else
 	  args.useDefaultClockPeriods = false;
       }
@@ -1723,7 +2265,7 @@ public class Z80 implements CPU {
 	     4, 0);
       }
       public void execute0(Arguments args) {
-	doCPL(regA);
+	doCPL();
       }
     },
     new GenericOperation() {
@@ -1733,7 +2275,7 @@ public class Z80 implements CPU {
 	     4, 0);
       }
       public void execute0(Arguments args) {
-	doDAA(regA);
+	doDAA();
       }
     },
     new GenericOperation() {
@@ -1743,7 +2285,7 @@ public class Z80 implements CPU {
 	     10, 0);
       }
       public void execute0(Arguments args) {
-	doDEC16(regIX);
+	doDEC16(regIXView);
       }
     },
     new GenericOperation() {
@@ -1754,7 +2296,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIXDisp8.setDisp8(getArg(args, 'd'));
-	doDEC8(indirectIXDisp8);
+	indirectIXDisp8.setValue(doDEC8(indirectIXDisp8.getValue()));
       }
     },
     new GenericOperation() {
@@ -1764,7 +2306,7 @@ public class Z80 implements CPU {
 	     10, 0);
       }
       public void execute0(Arguments args) {
-	doDEC16(regIY);
+	doDEC16(regIYView);
       }
     },
     new GenericOperation() {
@@ -1775,7 +2317,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIYDisp8.setDisp8(getArg(args, 'd'));
-	doDEC8(indirectIYDisp8);
+	indirectIYDisp8.setValue(doDEC8(indirectIYDisp8.getValue()));
       }
     },
     new GenericOperation() {
@@ -1795,7 +2337,8 @@ public class Z80 implements CPU {
 	     4, 0);
       }
       public void execute0(Arguments args) {
-	doDEC8(REG8[getArg(args, 'x')]);
+        Reg8 reg = REG8[getArg(args, 'x')];
+	reg.setValue(doDEC8(reg.getValue()));
       }
     },
     new GenericOperation() {
@@ -1815,9 +2358,9 @@ public class Z80 implements CPU {
 	     13, 8);
       }
       public void execute0(Arguments args) {
-	regB.decrement();
-	if (regB.getValue() != 0x00)
-	  regPC.setValue((regPC.getValue() + (byte)getArg(args, 'r')) & 0xffff);
+	regB = (regB - 1) & 0xff;
+	if (regB != 0x00)
+	  regPC = (regPC + (byte)getArg(args, 'r')) & 0xffff;
 	else
 	  args.useDefaultClockPeriods = false;
       }
@@ -1839,9 +2382,9 @@ public class Z80 implements CPU {
 	     4, 0);
       }
       public void execute0(Arguments args) {
-	int value = regAF.getValue();
-	regAF.setValue(regAF_.getValue());
-	regAF_.setValue(value);
+	int value = getAF();
+	setAF(regAF_);
+	regAF_ = value;
       }
     },
     new GenericOperation() {
@@ -1851,9 +2394,9 @@ public class Z80 implements CPU {
 	     4, 0);
       }
       public void execute0(Arguments args) {
-	int value = regDE.getValue();
-	regDE.setValue(regHL.getValue());
-	regHL.setValue(value);
+	int value = getDE();
+	setDE(getHL());
+	setHL(value);
       }
     },
     new GenericOperation() {
@@ -1863,10 +2406,10 @@ public class Z80 implements CPU {
 	     19, 0);
       }
       public void execute0(Arguments args) {
-        int address = regSP.getValue();
-	int value = memory.readShort(address, wallClockTime);
-	memory.writeShort(address, regHL.getValue(), wallClockTime);
-	regHL.setValue(value);
+        int address = regSP;
+	int value = readMemoryShort(address);
+	writeMemoryShort(address, getHL());
+	setHL(value);
       }
     },
     new GenericOperation() {
@@ -1876,10 +2419,10 @@ public class Z80 implements CPU {
 	     23, 0);
       }
       public void execute0(Arguments args) {
-        int address = regSP.getValue();
-	int value = memory.readShort(address, wallClockTime);
-	memory.writeShort(address, regIX.getValue(), wallClockTime);
-	regIX.setValue(value);
+        int address = regSP;
+	int value = readMemoryShort(address);
+	writeMemoryShort(address, regIX);
+	regIX = value;
       }
     },
     new GenericOperation() {
@@ -1889,10 +2432,10 @@ public class Z80 implements CPU {
 	     23, 0);
       }
       public void execute0(Arguments args) {
-        int address = regSP.getValue();
-	int value = memory.readShort(address, wallClockTime);
-	memory.writeShort(address, regIY.getValue(), wallClockTime);
-	regIY.setValue(value);
+        int address = regSP;
+	int value = readMemoryShort(address);
+	writeMemoryShort(address, regIY);
+	regIY = value;
       }
     },
     new GenericOperation() {
@@ -1903,15 +2446,15 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	int value;
-	value = regBC.getValue();
-	regBC.setValue(regBC_.getValue());
-	regBC_.setValue(value);
-	value = regDE.getValue();
-	regDE.setValue(regDE_.getValue());
-	regDE_.setValue(value);
-	value = regHL.getValue();
-	regHL.setValue(regHL_.getValue());
-	regHL_.setValue(value);
+	value = getBC();
+	setBC(regBC_);
+	regBC_ = value;
+	value = getDE();
+	setDE(regDE_);
+	regDE_ = value;
+	value = getHL();
+	setHL(regHL_);
+	regHL_ = value;
       }
     },
     new GenericOperation() {
@@ -1921,7 +2464,7 @@ public class Z80 implements CPU {
 	     4, 0);
       }
       public void execute0(Arguments args) {
-	regPC.decrement();
+	regPC = (regPC - 1) & 0xffff;
       }
     },
     new GenericOperation() {
@@ -1931,7 +2474,7 @@ public class Z80 implements CPU {
 	     8, 0);
       }
       public void execute0(Arguments args) {
-	regIM.setValue(INTR_MODE_0);
+	regIMView.setValue(INTR_MODE_0);
       }
     },
     new GenericOperation() {
@@ -1941,7 +2484,7 @@ public class Z80 implements CPU {
 	     8, 0);
       }
       public void execute0(Arguments args) {
-	regIM.setValue(INTR_MODE_1);
+	regIMView.setValue(INTR_MODE_1);
       }
     },
     new GenericOperation() {
@@ -1951,7 +2494,7 @@ public class Z80 implements CPU {
 	     8, 0);
       }
       public void execute0(Arguments args) {
-	regIM.setValue(INTR_MODE_2);
+	regIMView.setValue(INTR_MODE_2);
       }
     },
     new GenericOperation() {
@@ -1961,8 +2504,8 @@ public class Z80 implements CPU {
 	     10, 0);
       }
       public void execute0(Arguments args) {
-        int portAddress = (regA.getValue() << 8) | getArg(args, 'p');
-	regA.setValue(io.readByte(portAddress, wallClockTime));
+        int portAddress = (regA << 8) | getArg(args, 'p');
+	regA = io.readByte(portAddress, wallClockTime) & 0xff;
       }
     },
     new GenericOperation() {
@@ -1972,7 +2515,7 @@ public class Z80 implements CPU {
 	     11, 0);
       }
       public void execute0(Arguments args) {
-	doIN(regBC.getValue()); // result of doIN() intentionally
+	doIN(getBC()); // result of doIN() intentionally
                                 // ignored
       }
     },
@@ -1983,7 +2526,7 @@ public class Z80 implements CPU {
 	     11, 0);
       }
       public void execute0(Arguments args) {
-	DREG8[getArg(args, 'x')].setValue(doIN(regBC.getValue()));
+	DREG8[getArg(args, 'x')].setValue(doIN(getBC()));
       }
     },
     new GenericOperation() {
@@ -1993,7 +2536,7 @@ public class Z80 implements CPU {
 	     10, 0);
       }
       public void execute0(Arguments args) {
-	doINC16(regIX);
+	doINC16(regIXView);
       }
     },
     new GenericOperation() {
@@ -2004,7 +2547,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIXDisp8.setDisp8(getArg(args, 'd'));
-	doINC8(indirectIXDisp8);
+	indirectIXDisp8.setValue(doINC8(indirectIXDisp8.getValue()));
       }
     },
     new GenericOperation() {
@@ -2014,7 +2557,7 @@ public class Z80 implements CPU {
 	     10, 0);
       }
       public void execute0(Arguments args) {
-	doINC16(regIY);
+	doINC16(regIYView);
       }
     },
     new GenericOperation() {
@@ -2025,7 +2568,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIYDisp8.setDisp8(getArg(args, 'd'));
-	doINC8(indirectIYDisp8);
+	indirectIYDisp8.setValue(doINC8(indirectIYDisp8.getValue()));
       }
     },
     new GenericOperation() {
@@ -2045,7 +2588,8 @@ public class Z80 implements CPU {
 	     4, 0);
       }
       public void execute0(Arguments args) {
-	doINC8(REG8[getArg(args, 'x')]);
+        Reg8 reg = REG8[getArg(args, 'x')];
+	reg.setValue(doINC8(reg.getValue()));
       }
     },
     new GenericOperation() {
@@ -2067,7 +2611,7 @@ public class Z80 implements CPU {
       public void execute0(Arguments args) {
 	doIND();
 	if (condNZ.isTrue())
-	  regPC.setValue((regPC.getValue() + 0xfffe) & 0xffff);
+	  regPC = (regPC + 0xfffe) & 0xffff;
 	else
 	  args.useDefaultClockPeriods = false;
       }
@@ -2091,7 +2635,7 @@ public class Z80 implements CPU {
       public void execute0(Arguments args) {
 	doINI();
 	if (condNZ.isTrue())
-	  regPC.setValue((regPC.getValue() + 0xfffe) & 0xffff);
+	  regPC = (regPC + 0xfffe) & 0xffff;
 	else
 	  args.useDefaultClockPeriods = false;
       }
@@ -2103,7 +2647,7 @@ public class Z80 implements CPU {
 	     10, 0);
       }
       public void execute0(Arguments args) {
-	regPC.setValue(getArg(args, 'x'));
+	regPC = getArg(args, 'x');
       }
     },
     new GenericOperation() {
@@ -2114,7 +2658,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	if (COND[getArg(args, 'c')].isTrue())
-	  regPC.setValue(getArg(args, 'x'));
+	  regPC = getArg(args, 'x');
 	else
 	  args.useDefaultClockPeriods = false;
       }
@@ -2126,7 +2670,7 @@ public class Z80 implements CPU {
 	     4, 0);
       }
       public void execute0(Arguments args) {
-	regPC.setValue(regHL.getValue());
+	regPC = getHL();
       }
     },
     new GenericOperation() {
@@ -2136,7 +2680,7 @@ public class Z80 implements CPU {
 	     8, 0);
       }
       public void execute0(Arguments args) {
-	regPC.setValue(regIX.getValue());
+	regPC = regIX;
       }
     },
     new GenericOperation() {
@@ -2146,7 +2690,7 @@ public class Z80 implements CPU {
 	     8, 0);
       }
       public void execute0(Arguments args) {
-	regPC.setValue(regIY.getValue());
+	regPC = regIY;
       }
     },
     new GenericOperation() {
@@ -2156,7 +2700,7 @@ public class Z80 implements CPU {
 	     12, 0);
       }
       public void execute0(Arguments args) {
-	regPC.setValue((regPC.getValue() + (byte)getArg(args, 'r')) & 0xffff);
+	regPC = (regPC + (byte)getArg(args, 'r')) & 0xffff;
       }
     },
     new GenericOperation() {
@@ -2167,7 +2711,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	if (condNZ.isTrue())
-	  regPC.setValue((regPC.getValue() + (byte)getArg(args, 'r')) & 0xffff);
+	  regPC = (regPC + (byte)getArg(args, 'r')) & 0xffff;
 	else
 	  args.useDefaultClockPeriods = false;
       }
@@ -2180,7 +2724,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	if (condZ.isTrue())
-	  regPC.setValue((regPC.getValue() + (byte)getArg(args, 'r')) & 0xffff);
+	  regPC = (regPC + (byte)getArg(args, 'r')) & 0xffff;
 	else
 	  args.useDefaultClockPeriods = false;
       }
@@ -2193,7 +2737,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	if (condNC.isTrue())
-	  regPC.setValue((regPC.getValue() + (byte)getArg(args, 'r')) & 0xffff);
+	  regPC = (regPC + (byte)getArg(args, 'r')) & 0xffff;
 	else
 	  args.useDefaultClockPeriods = false;
       }
@@ -2206,7 +2750,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	if (condC.isTrue())
-	  regPC.setValue((regPC.getValue() + (byte)getArg(args, 'r')) & 0xffff);
+	  regPC = (regPC + (byte)getArg(args, 'r')) & 0xffff;
 	else
 	  args.useDefaultClockPeriods = false;
       }
@@ -2218,7 +2762,7 @@ public class Z80 implements CPU {
 	     13, 0);
       }
       public void execute0(Arguments args) {
-	regA.setValue(memory.readByte(getArg(args, 'x'), wallClockTime));
+	regA = readMemoryByte(getArg(args, 'x'));
       }
     },
     new GenericOperation() {
@@ -2228,7 +2772,7 @@ public class Z80 implements CPU {
 	     7, 0);
       }
       public void execute0(Arguments args) {
-	regA.setValue(memory.readByte(regBC.getValue(), wallClockTime));
+	regA = readMemoryByte(getBC());
       }
     },
     new GenericOperation() {
@@ -2238,7 +2782,7 @@ public class Z80 implements CPU {
 	     7, 0);
       }
       public void execute0(Arguments args) {
-	regA.setValue(memory.readByte(regDE.getValue(), wallClockTime));
+	regA = readMemoryByte(getDE());
       }
     },
     new GenericOperation() {
@@ -2268,7 +2812,7 @@ public class Z80 implements CPU {
 	     13, 0);
       }
       public void execute0(Arguments args) {
-	memory.writeByte(getArg(args, 'x'), regA.getValue(), wallClockTime);
+	writeMemoryByte(getArg(args, 'x'), regA);
       }
     },
     new GenericOperation() {
@@ -2278,8 +2822,7 @@ public class Z80 implements CPU {
 	     20, 0);
       }
       public void execute0(Arguments args) {
-	memory.writeShort(getArg(args, 'y'),
-                          REG16[getArg(args, 'x')].getValue(), wallClockTime);
+	writeMemoryShort(getArg(args, 'y'), REG16[getArg(args, 'x')].getValue());
       }
     },
     new GenericOperation() {
@@ -2289,7 +2832,7 @@ public class Z80 implements CPU {
 	     16, 0);
       }
       public void execute0(Arguments args) {
-	memory.writeShort(getArg(args, 'x'), regHL.getValue(), wallClockTime);
+	writeMemoryShort(getArg(args, 'x'), getHL());
       }
     },
     new GenericOperation() {
@@ -2299,7 +2842,7 @@ public class Z80 implements CPU {
 	     20, 0);
       }
       public void execute0(Arguments args) {
-	memory.writeShort(getArg(args, 'x'), regIX.getValue(), wallClockTime);
+	writeMemoryShort(getArg(args, 'x'), regIX);
       }
     },
     new GenericOperation() {
@@ -2309,7 +2852,7 @@ public class Z80 implements CPU {
 	     20, 0);
       }
       public void execute0(Arguments args) {
-	memory.writeShort(getArg(args, 'x'), regIY.getValue(), wallClockTime);
+	writeMemoryShort(getArg(args, 'x'), regIY);
       }
     },
     new GenericOperation() {
@@ -2319,7 +2862,7 @@ public class Z80 implements CPU {
 	     7, 0);
       }
       public void execute0(Arguments args) {
-	memory.writeByte(regBC.getValue(), regA.getValue(), wallClockTime);
+	writeMemoryByte(getBC(), regA);
       }
     },
     new GenericOperation() {
@@ -2329,7 +2872,7 @@ public class Z80 implements CPU {
 	     7, 0);
       }
       public void execute0(Arguments args) {
-	memory.writeByte(regDE.getValue(), regA.getValue(), wallClockTime);
+	writeMemoryByte(getDE(), regA);
       }
     },
     new GenericOperation() {
@@ -2339,7 +2882,7 @@ public class Z80 implements CPU {
 	     16, 0);
       }
       public void execute0(Arguments args) {
-	regHL.setValue(memory.readShort(getArg(args, 'x'), wallClockTime));
+	setHL(readMemoryShort(getArg(args, 'x')));
       }
     },
     new GenericOperation() {
@@ -2359,7 +2902,7 @@ public class Z80 implements CPU {
 	     9, 0);
       }
       public void execute0(Arguments args) {
-	regI.setValue(regA.getValue());
+	regI = regA;
       }
     },
     new GenericOperation() {
@@ -2369,7 +2912,7 @@ public class Z80 implements CPU {
 	     20, 0);
       }
       public void execute0(Arguments args) {
-	regIX.setValue(memory.readShort(getArg(args, 'x'), wallClockTime));
+	regIX = readMemoryShort(getArg(args, 'x'));
       }
     },
     new GenericOperation() {
@@ -2379,7 +2922,7 @@ public class Z80 implements CPU {
 	     14, 0);
       }
       public void execute0(Arguments args) {
-	regIX.setValue(getArg(args, 'd'));
+	regIX = getArg(args, 'd');
       }
     },
     new GenericOperation() {
@@ -2411,7 +2954,7 @@ public class Z80 implements CPU {
 	     20, 0);
       }
       public void execute0(Arguments args) {
-	regIY.setValue(memory.readShort(getArg(args, 'x'), wallClockTime));
+	regIY = readMemoryShort(getArg(args, 'x'));
       }
     },
     new GenericOperation() {
@@ -2421,7 +2964,7 @@ public class Z80 implements CPU {
 	     14, 0);
       }
       public void execute0(Arguments args) {
-	regIY.setValue(getArg(args, 'd'));
+	regIY = getArg(args, 'd');
       }
     },
     new GenericOperation() {
@@ -2453,7 +2996,7 @@ public class Z80 implements CPU {
 	     9, 0);
       }
       public void execute0(Arguments args) {
-	regR.setValue(regA.getValue());
+	regR = regA;
       }
     },
     new GenericOperation() {
@@ -2515,8 +3058,7 @@ public class Z80 implements CPU {
 	     20, 0);
       }
       public void execute0(Arguments args) {
-	REG16[getArg(args, 'x')].setValue(memory.readShort(getArg(args, 'y'),
-                                                           wallClockTime));
+	REG16[getArg(args, 'x')].setValue(readMemoryShort(getArg(args, 'y')));
       }
     },
     new GenericOperation() {
@@ -2536,7 +3078,7 @@ public class Z80 implements CPU {
 	     6, 0);
       }
       public void execute0(Arguments args) {
-	regSP.setValue(regHL.getValue());
+	regSP = getHL();
       }
     },
     new GenericOperation() {
@@ -2546,7 +3088,7 @@ public class Z80 implements CPU {
 	     10, 0);
       }
       public void execute0(Arguments args) {
-	regSP.setValue(regIX.getValue());
+	regSP = regIX;
       }
     },
     new GenericOperation() {
@@ -2556,7 +3098,7 @@ public class Z80 implements CPU {
 	     10, 0);
       }
       public void execute0(Arguments args) {
-	regSP.setValue(regIY.getValue());
+	regSP = regIY;
       }
     },
     new GenericOperation() {
@@ -2577,8 +3119,8 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	doLDD();
-	if (regBC.getValue() != 0x0000)
-	  regPC.setValue((regPC.getValue() + 0xfffe) & 0xffff);
+	if (getBC() != 0x0000)
+	  regPC = (regPC + 0xfffe) & 0xffff;
 	else
 	  args.useDefaultClockPeriods = false;
       }
@@ -2601,8 +3143,8 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	doLDI();
-	if (regBC.getValue() != 0x0000)
-	  regPC.setValue((regPC.getValue() + 0xfffe) & 0xffff);
+	if (getBC() != 0x0000)
+	  regPC = (regPC + 0xfffe) & 0xffff;
 	else
 	  args.useDefaultClockPeriods = false;
       }
@@ -2614,7 +3156,7 @@ public class Z80 implements CPU {
 	     8, 0);
       }
       public void execute0(Arguments args) {
-	doNEG(regA);
+	doNEG();
       }
     },
     new GenericOperation() {
@@ -2634,7 +3176,7 @@ public class Z80 implements CPU {
 	     7, 0);
       }
       public void execute0(Arguments args) {
-	doOR(regA, getArg(args, 'd'));
+	doOR(getArg(args, 'd'));
       }
     },
     new GenericOperation() {
@@ -2644,7 +3186,7 @@ public class Z80 implements CPU {
 	     7, 0);
       }
       public void execute0(Arguments args) {
-	doOR(regA, indirectRegHL.getValue());
+	doOR(indirectRegHL.getValue());
       }
     },
     new GenericOperation() {
@@ -2655,7 +3197,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIXDisp8.setDisp8(getArg(args, 'd'));
-	doOR(regA, indirectIXDisp8.getValue());
+	doOR(indirectIXDisp8.getValue());
       }
     },
     new GenericOperation() {
@@ -2666,7 +3208,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIYDisp8.setDisp8(getArg(args, 'd'));
-	doOR(regA, indirectIYDisp8.getValue());
+	doOR(indirectIYDisp8.getValue());
       }
     },
     new GenericOperation() {
@@ -2676,7 +3218,7 @@ public class Z80 implements CPU {
 	     4, 0);
       }
       public void execute0(Arguments args) {
-	doOR(regA, REG8[getArg(args, 'x')].getValue());
+	doOR(REG8[getArg(args, 'x')].getValue());
       }
     },
     new GenericOperation() {
@@ -2688,7 +3230,7 @@ public class Z80 implements CPU {
       public void execute0(Arguments args) {
 	doOUTD();
 	if (condNZ.isTrue())
-	  regPC.setValue((regPC.getValue() + 0xfffe) & 0xffff);
+	  regPC = (regPC + 0xfffe) & 0xffff;
 	else
 	  args.useDefaultClockPeriods = false;
       }
@@ -2702,7 +3244,7 @@ public class Z80 implements CPU {
       public void execute0(Arguments args) {
 	doOUTI();
 	if (condNZ.isTrue())
-	  regPC.setValue((regPC.getValue() + 0xfffe) & 0xffff);
+	  regPC = (regPC + 0xfffe) & 0xffff;
 	else
 	  args.useDefaultClockPeriods = false;
       }
@@ -2714,7 +3256,7 @@ public class Z80 implements CPU {
 	     12, 0);
       }
       public void execute0(Arguments args) {
-	io.writeByte(regBC.getValue(), REG8[getArg(args, 'x')].getValue(),
+	io.writeByte(getBC(), REG8[getArg(args, 'x')].getValue(),
                      wallClockTime);
       }
     },
@@ -2725,7 +3267,7 @@ public class Z80 implements CPU {
 	     11, 0);
       }
       public void execute0(Arguments args) {
-        int regAValue = regA.getValue();
+        int regAValue = regA;
         int portAddress = (regAValue << 8) | getArg(args, 'p');
 	io.writeByte(portAddress, regAValue, wallClockTime);
       }
@@ -2757,7 +3299,7 @@ public class Z80 implements CPU {
 	     14, 0);
       }
       public void execute0(Arguments args) {
-	regIX.setValue(doPOP());
+	regIX = doPOP();
       }
     },
     new GenericOperation() {
@@ -2767,7 +3309,7 @@ public class Z80 implements CPU {
 	     14, 0);
       }
       public void execute0(Arguments args) {
-	regIY.setValue(doPOP());
+	regIY = doPOP();
       }
     },
     new GenericOperation() {
@@ -2787,7 +3329,7 @@ public class Z80 implements CPU {
 	     15, 0);
       }
       public void execute0(Arguments args) {
-	doPUSH(regIX.getValue());
+	doPUSH(regIX);
       }
     },
     new GenericOperation() {
@@ -2797,7 +3339,7 @@ public class Z80 implements CPU {
 	     15, 0);
       }
       public void execute0(Arguments args) {
-	doPUSH(regIY.getValue());
+	doPUSH(regIY);
       }
     },
     new GenericOperation() {
@@ -2817,7 +3359,7 @@ public class Z80 implements CPU {
 	     15, 0);
       }
       public void execute0(Arguments args) {
-	doRES(indirectRegHL, getArg(args, 'b'));
+	indirectRegHL.setValue(doRES(indirectRegHL.getValue(), getArg(args, 'b')));
       }
     },
     new GenericOperation() {
@@ -2828,7 +3370,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIXDisp8.setDisp8(getArg(args, 'd'));
-	doRES(indirectIXDisp8, getArg(args, 'b'));
+	indirectIXDisp8.setValue(doRES(indirectIXDisp8.getValue(), getArg(args, 'b')));
       }
     },
     new GenericOperation() {
@@ -2839,7 +3381,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIYDisp8.setDisp8(getArg(args, 'd'));
-	doRES(indirectIYDisp8, getArg(args, 'b'));
+	indirectIYDisp8.setValue(doRES(indirectIYDisp8.getValue(), getArg(args, 'b')));
       }
     },
     new GenericOperation() {
@@ -2850,7 +3392,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
         Reg8 reg = REG8[getArg(args, 'x')];
-	doRES(reg, getArg(args, 'b'));
+	reg.setValue(doRES(reg.getValue(), getArg(args, 'b')));
       }
     },
     new GenericOperation() {
@@ -2860,7 +3402,7 @@ public class Z80 implements CPU {
 	     10, 0);
       }
       public void execute0(Arguments args) {
-	regPC.setValue(doPOP());
+	regPC = doPOP();
       }
     },
     new GenericOperation() {
@@ -2871,7 +3413,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	if (COND[getArg(args, 'c')].isTrue())
-	  regPC.setValue(doPOP());
+	  regPC = doPOP();
 	else
 	  args.useDefaultClockPeriods = false;
       }
@@ -2883,7 +3425,7 @@ public class Z80 implements CPU {
 	     14, 0);
       }
       public void execute0(Arguments args) {
-	regPC.setValue(doPOP());
+	regPC = doPOP();
 	irq_requested = false;
       }
     },
@@ -2894,7 +3436,7 @@ public class Z80 implements CPU {
 	     14, 0);
       }
       public void execute0(Arguments args) {
-	regPC.setValue(doPOP());
+	regPC = doPOP();
       }
     },
     new GenericOperation() {
@@ -2904,7 +3446,7 @@ public class Z80 implements CPU {
 	     15, 0);
       }
       public void execute0(Arguments args) {
-	doRL(indirectRegHL);
+	indirectRegHL.setValue(doRL(indirectRegHL.getValue()));
       }
     },
     new GenericOperation() {
@@ -2915,7 +3457,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIXDisp8.setDisp8(getArg(args, 'd'));
-	doRL(indirectIXDisp8);
+	indirectIXDisp8.setValue(doRL(indirectIXDisp8.getValue()));
       }
     },
     new GenericOperation() {
@@ -2926,7 +3468,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIYDisp8.setDisp8(getArg(args, 'd'));
-	doRL(indirectIYDisp8);
+	indirectIYDisp8.setValue(doRL(indirectIYDisp8.getValue()));
       }
     },
     new GenericOperation() {
@@ -2936,7 +3478,8 @@ public class Z80 implements CPU {
 	     8, 0);
       }
       public void execute0(Arguments args) {
-	doRL(REG8[getArg(args, 'x')]);
+        Reg8 reg = REG8[getArg(args, 'x')];
+	reg.setValue(doRL(reg.getValue()));
       }
     },
     new GenericOperation() {
@@ -2946,7 +3489,7 @@ public class Z80 implements CPU {
 	     4, 0);
       }
       public void execute0(Arguments args) {
-	doRLA(regA);
+	doRLA();
       }
     },
     new GenericOperation() {
@@ -2956,7 +3499,7 @@ public class Z80 implements CPU {
 	     15, 0);
       }
       public void execute0(Arguments args) {
-	doRLC(indirectRegHL);
+	indirectRegHL.setValue(doRLC(indirectRegHL.getValue()));
       }
     },
     new GenericOperation() {
@@ -2967,7 +3510,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIXDisp8.setDisp8(getArg(args, 'd'));
-	doRLC(indirectIXDisp8);
+	indirectIXDisp8.setValue(doRLC(indirectIXDisp8.getValue()));
       }
     },
     new GenericOperation() {
@@ -2978,7 +3521,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIYDisp8.setDisp8(getArg(args, 'd'));
-	doRLC(indirectIYDisp8);
+	indirectIYDisp8.setValue(doRLC(indirectIYDisp8.getValue()));
       }
     },
     new GenericOperation() {
@@ -2988,7 +3531,8 @@ public class Z80 implements CPU {
 	     8, 0);
       }
       public void execute0(Arguments args) {
-	doRLC(REG8[getArg(args, 'x')]);
+        Reg8 reg = REG8[getArg(args, 'x')];
+	reg.setValue(doRLC(reg.getValue()));
       }
     },
     new GenericOperation() {
@@ -2998,7 +3542,7 @@ public class Z80 implements CPU {
 	     4, 0);
       }
       public void execute0(Arguments args) {
-	doRLCA(regA);
+	doRLCA();
       }
     },
     new GenericOperation() {
@@ -3008,7 +3552,7 @@ public class Z80 implements CPU {
 	     18, 0);
       }
       public void execute0(Arguments args) {
-	doRLD(indirectRegHL);
+	doRLD();
       }
     },
     new GenericOperation() {
@@ -3018,7 +3562,7 @@ public class Z80 implements CPU {
 	     15, 0);
       }
       public void execute0(Arguments args) {
-	doRR(indirectRegHL);
+	indirectRegHL.setValue(doRR(indirectRegHL.getValue()));
       }
     },
     new GenericOperation() {
@@ -3029,7 +3573,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIXDisp8.setDisp8(getArg(args, 'd'));
-	doRR(indirectIXDisp8);
+	indirectIXDisp8.setValue(doRR(indirectIXDisp8.getValue()));
       }
     },
     new GenericOperation() {
@@ -3040,7 +3584,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIYDisp8.setDisp8(getArg(args, 'd'));
-	doRR(indirectIYDisp8);
+	indirectIYDisp8.setValue(doRR(indirectIYDisp8.getValue()));
       }
     },
     new GenericOperation() {
@@ -3050,7 +3594,8 @@ public class Z80 implements CPU {
 	     8, 0);
       }
       public void execute0(Arguments args) {
-	doRR(REG8[getArg(args, 'x')]);
+        Reg8 reg = REG8[getArg(args, 'x')];
+	reg.setValue(doRR(reg.getValue()));
       }
     },
     new GenericOperation() {
@@ -3060,7 +3605,7 @@ public class Z80 implements CPU {
 	     4, 0);
       }
       public void execute0(Arguments args) {
-	doRRA(regA);
+	doRRA();
       }
     },
     new GenericOperation() {
@@ -3070,7 +3615,7 @@ public class Z80 implements CPU {
 	     15, 0);
       }
       public void execute0(Arguments args) {
-	doRRC(indirectRegHL);
+	indirectRegHL.setValue(doRRC(indirectRegHL.getValue()));
       }
     },
     new GenericOperation() {
@@ -3081,7 +3626,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIXDisp8.setDisp8(getArg(args, 'd'));
-	doRRC(indirectIXDisp8);
+	indirectIXDisp8.setValue(doRRC(indirectIXDisp8.getValue()));
       }
     },
     new GenericOperation() {
@@ -3092,7 +3637,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIYDisp8.setDisp8(getArg(args, 'd'));
-	doRRC(indirectIYDisp8);
+	indirectIYDisp8.setValue(doRRC(indirectIYDisp8.getValue()));
       }
     },
     new GenericOperation() {
@@ -3102,7 +3647,8 @@ public class Z80 implements CPU {
 	     8, 0);
       }
       public void execute0(Arguments args) {
-	doRRC(REG8[getArg(args, 'x')]);
+        Reg8 reg = REG8[getArg(args, 'x')];
+	reg.setValue(doRRC(reg.getValue()));
       }
     },
     new GenericOperation() {
@@ -3112,7 +3658,7 @@ public class Z80 implements CPU {
 	     4, 0);
       }
       public void execute0(Arguments args) {
-	doRRCA(regA);
+	doRRCA();
       }
     },
     new GenericOperation() {
@@ -3122,7 +3668,7 @@ public class Z80 implements CPU {
 	     18, 0);
       }
       public void execute0(Arguments args) {
-	doRRD(indirectRegHL);
+	doRRD();
       }
     },
     new GenericOperation() {
@@ -3132,8 +3678,8 @@ public class Z80 implements CPU {
 	     11, 0);
       }
       public void execute0(Arguments args) {
-	doPUSH(regPC.getValue());
-	regPC.setValue(getArg(args, 'n') << 3);
+	doPUSH(regPC);
+	regPC = getArg(args, 'n') << 3;
       }
     },
     new GenericOperation() {
@@ -3143,7 +3689,7 @@ public class Z80 implements CPU {
 	     7, 0);
       }
       public void execute0(Arguments args) {
-	regA.setValue(doSBC8(regA.getValue(), getArg(args, 'd')));
+	regA = doSBC8(regA, getArg(args, 'd'));
       }
     },
     new GenericOperation() {
@@ -3153,7 +3699,7 @@ public class Z80 implements CPU {
 	     7, 0);
       }
       public void execute0(Arguments args) {
-	regA.setValue(doSBC8(regA.getValue(), indirectRegHL.getValue()));
+	regA = doSBC8(regA, indirectRegHL.getValue());
       }
     },
     new GenericOperation() {
@@ -3163,7 +3709,7 @@ public class Z80 implements CPU {
 	     15, 0);
       }
       public void execute0(Arguments args) {
-	regHL.setValue(doSBC16(regHL.getValue(),
+	setHL(doSBC16(getHL(),
 			       REG16[getArg(args, 'x')].getValue()));
       }
     },
@@ -3175,7 +3721,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIXDisp8.setDisp8(getArg(args, 'd'));
-	regA.setValue(doSBC8(regA.getValue(), indirectIXDisp8.getValue()));
+	regA = doSBC8(regA, indirectIXDisp8.getValue());
       }
     },
     new GenericOperation() {
@@ -3186,7 +3732,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIYDisp8.setDisp8(getArg(args, 'd'));
-	regA.setValue(doSBC8(regA.getValue(), indirectIYDisp8.getValue()));
+	regA = doSBC8(regA, indirectIYDisp8.getValue());
       }
     },
     new GenericOperation() {
@@ -3196,8 +3742,8 @@ public class Z80 implements CPU {
 	     4, 0);
       }
       public void execute0(Arguments args) {
-	regA.setValue(doSBC8(regA.getValue(), REG8[getArg(args, 'x')].
-			     getValue()));
+	regA = doSBC8(regA, REG8[getArg(args, 'x')].
+			     getValue());
       }
     },
     new GenericOperation() {
@@ -3217,7 +3763,7 @@ public class Z80 implements CPU {
 	     15, 0);
       }
       public void execute0(Arguments args) {
-	doSET(indirectRegHL, getArg(args, 'b'));
+	indirectRegHL.setValue(doSET(indirectRegHL.getValue(), getArg(args, 'b')));
       }
     },
     new GenericOperation() {
@@ -3228,7 +3774,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIXDisp8.setDisp8(getArg(args, 'd'));
-	doSET(indirectIXDisp8, getArg(args, 'b'));
+	indirectIXDisp8.setValue(doSET(indirectIXDisp8.getValue(), getArg(args, 'b')));
       }
     },
     new GenericOperation() {
@@ -3239,7 +3785,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIYDisp8.setDisp8(getArg(args, 'd'));
-	doSET(indirectIYDisp8, getArg(args, 'b'));
+	indirectIYDisp8.setValue(doSET(indirectIYDisp8.getValue(), getArg(args, 'b')));
       }
     },
     new GenericOperation() {
@@ -3250,7 +3796,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
         Reg8 reg = REG8[getArg(args, 'x')];
-	doSET(reg, getArg(args, 'b'));
+	reg.setValue(doSET(reg.getValue(), getArg(args, 'b')));
       }
     },
     new GenericOperation() {
@@ -3260,7 +3806,7 @@ public class Z80 implements CPU {
 	     15, 0);
       }
       public void execute0(Arguments args) {
-	doSLA(indirectRegHL);
+	indirectRegHL.setValue(doSLA(indirectRegHL.getValue()));
       }
     },
     new GenericOperation() {
@@ -3271,7 +3817,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIXDisp8.setDisp8(getArg(args, 'd'));
-	doSLA(indirectIXDisp8);
+	indirectIXDisp8.setValue(doSLA(indirectIXDisp8.getValue()));
       }
     },
     new GenericOperation() {
@@ -3282,7 +3828,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIYDisp8.setDisp8(getArg(args, 'd'));
-	doSLA(indirectIYDisp8);
+	indirectIYDisp8.setValue(doSLA(indirectIYDisp8.getValue()));
       }
     },
     new GenericOperation() {
@@ -3292,7 +3838,8 @@ public class Z80 implements CPU {
 	     8, 0);
       }
       public void execute0(Arguments args) {
-	doSLA(REG8[getArg(args, 'x')]);
+        Reg8 reg = REG8[getArg(args, 'x')];
+	reg.setValue(doSLA(reg.getValue()));
       }
     },
     new GenericOperation() {
@@ -3302,7 +3849,7 @@ public class Z80 implements CPU {
 	     15, 0);
       }
       public void execute0(Arguments args) {
-	doSRA(indirectRegHL);
+	indirectRegHL.setValue(doSRA(indirectRegHL.getValue()));
       }
     },
     new GenericOperation() {
@@ -3313,7 +3860,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIXDisp8.setDisp8(getArg(args, 'd'));
-	doSRA(indirectIXDisp8);
+	indirectIXDisp8.setValue(doSRA(indirectIXDisp8.getValue()));
       }
     },
     new GenericOperation() {
@@ -3324,7 +3871,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIYDisp8.setDisp8(getArg(args, 'd'));
-	doSRA(indirectIYDisp8);
+	indirectIYDisp8.setValue(doSRA(indirectIYDisp8.getValue()));
       }
     },
     new GenericOperation() {
@@ -3334,7 +3881,8 @@ public class Z80 implements CPU {
 	     8, 0);
       }
       public void execute0(Arguments args) {
-	doSRA(REG8[getArg(args, 'x')]);
+        Reg8 reg = REG8[getArg(args, 'x')];
+	reg.setValue(doSRA(reg.getValue()));
       }
     },
     new GenericOperation() {
@@ -3344,7 +3892,7 @@ public class Z80 implements CPU {
 	     15, 0);
       }
       public void execute0(Arguments args) {
-	doSRL(indirectRegHL);
+	indirectRegHL.setValue(doSRL(indirectRegHL.getValue()));
       }
     },
     new GenericOperation() {
@@ -3355,7 +3903,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIXDisp8.setDisp8(getArg(args, 'd'));
-	doSRL(indirectIXDisp8);
+	indirectIXDisp8.setValue(doSRL(indirectIXDisp8.getValue()));
       }
     },
     new GenericOperation() {
@@ -3366,7 +3914,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIYDisp8.setDisp8(getArg(args, 'd'));
-	doSRL(indirectIYDisp8);
+	indirectIYDisp8.setValue(doSRL(indirectIYDisp8.getValue()));
       }
     },
     new GenericOperation() {
@@ -3376,7 +3924,8 @@ public class Z80 implements CPU {
 	     8, 0);
       }
       public void execute0(Arguments args) {
-	doSRL(REG8[getArg(args, 'x')]);
+        Reg8 reg = REG8[getArg(args, 'x')];
+	reg.setValue(doSRL(reg.getValue()));
       }
     },
     new GenericOperation() {
@@ -3386,7 +3935,7 @@ public class Z80 implements CPU {
 	     7, 0);
       }
       public void execute0(Arguments args) {
-	regA.setValue(doSUB8(regA.getValue(), getArg(args, 'd')));
+	regA = doSUB8(regA, getArg(args, 'd'));
       }
     },
     new GenericOperation() {
@@ -3396,7 +3945,7 @@ public class Z80 implements CPU {
 	     7, 0);
       }
       public void execute0(Arguments args) {
-	regA.setValue(doSUB8(regA.getValue(), indirectRegHL.getValue()));
+	regA = doSUB8(regA, indirectRegHL.getValue());
       }
     },
     new GenericOperation() {
@@ -3407,7 +3956,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIXDisp8.setDisp8(getArg(args, 'd'));
-	regA.setValue(doSUB8(regA.getValue(), indirectIXDisp8.getValue()));
+	regA = doSUB8(regA, indirectIXDisp8.getValue());
       }
     },
     new GenericOperation() {
@@ -3418,7 +3967,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIYDisp8.setDisp8(getArg(args, 'd'));
-	regA.setValue(doSUB8(regA.getValue(), indirectIYDisp8.getValue()));
+	regA = doSUB8(regA, indirectIYDisp8.getValue());
       }
     },
     new GenericOperation() {
@@ -3428,8 +3977,8 @@ public class Z80 implements CPU {
 	     4, 0);
       }
       public void execute0(Arguments args) {
-	regA.setValue(doSUB8(regA.getValue(), REG8[getArg(args, 'x')].
-			     getValue()));
+	regA = doSUB8(regA, REG8[getArg(args, 'x')].
+			     getValue());
       }
     },
     new GenericOperation() {
@@ -3439,7 +3988,7 @@ public class Z80 implements CPU {
 	     7, 0);
       }
       public void execute0(Arguments args) {
-	doXOR(regA, getArg(args, 'd'));
+	doXOR(getArg(args, 'd'));
       }
     },
     new GenericOperation() {
@@ -3449,7 +3998,7 @@ public class Z80 implements CPU {
 	     7, 0);
       }
       public void execute0(Arguments args) {
-	doXOR(regA, indirectRegHL.getValue());
+	doXOR(indirectRegHL.getValue());
       }
     },
     new GenericOperation() {
@@ -3460,7 +4009,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIXDisp8.setDisp8(getArg(args, 'd'));
-	doXOR(regA, indirectIXDisp8.getValue());
+	doXOR(indirectIXDisp8.getValue());
       }
     },
     new GenericOperation() {
@@ -3471,7 +4020,7 @@ public class Z80 implements CPU {
       }
       public void execute0(Arguments args) {
 	indirectIYDisp8.setDisp8(getArg(args, 'd'));
-	doXOR(regA, indirectIYDisp8.getValue());
+	doXOR(indirectIYDisp8.getValue());
       }
     },
     new GenericOperation() {
@@ -3481,7 +4030,7 @@ public class Z80 implements CPU {
 	     4, 0);
       }
       public void execute0(Arguments args) {
-	doXOR(regA, REG8[getArg(args, 'x')].getValue());
+	doXOR(REG8[getArg(args, 'x')].getValue());
       }
     }
   };
@@ -3490,6 +4039,12 @@ public class Z80 implements CPU {
     private static interface Action {
       public void apply(CodeFetcher codeFetcher, Arguments args);
       public int getVarIndex();
+
+      /**
+       * Returns this action as packed descriptor for the flat decode
+       * table.
+       */
+      public int encode();
     }
 
     private static class ConstantAction implements Action {
@@ -3507,6 +4062,10 @@ public class Z80 implements CPU {
         args.setArg(varIndex, value);
       }
 
+      public int encode() {
+        return FlatDecodeTable.encodeConstantAction(varIndex, value);
+      }
+
       public String toString() {
         return "ConstantAction{var='" + (char)(varIndex + 'a') +
           "', value=" + value + "}";
@@ -3541,6 +4100,13 @@ public class Z80 implements CPU {
         args.setArg(varIndex, arg);
       }
 
+      public int encode() {
+        return
+          FlatDecodeTable.encodeAppendBitsToVarAction(varIndex, bitSize,
+                                                      opCodeByteIndex,
+                                                      opCodeByteShiftRight);
+      }
+
       public String toString() {
         return "AppendBitsToVarAction{var='" + (char)(varIndex + 'a') +
           "', bitSize=" + bitSize + ", byteIndex=" + opCodeByteIndex +
@@ -3588,7 +4154,21 @@ public class Z80 implements CPU {
       }
     }
 
-    public String toString() {
+    public int size() {
+      return actions.size();
+    }
+
+    /**
+     * Appends all actions as packed descriptors to the specified
+     * array, starting at the specified index.
+     */
+    public void encode(int[] descriptors, int start) {
+      for (Action action : actions) {
+        descriptors[start++] = action.encode();
+      }
+    }
+
+    public String toString() {
       StringBuffer s = new StringBuffer();
       for (Action action : actions) {
         if (s.length() > 0) {
@@ -3743,7 +4323,317 @@ public class Z80 implements CPU {
     }
   }
 
-  private DecodeTable decodeTable;
+  /**
+   * Flattened form of the decode table for fast lookup.  All nested
+   * decode tables are stored as rows of 256 entries in a single int
+   * array, row 0 being the top-level table.  Each entry is either
+   * 0 for an invalid op-code, or the offset (row &lt;&lt; 8) of the
+   * row that decodes the next op-code byte, or (leaf &lt;&lt; 1) | 1
+   * for a completely decoded operation.  Since rows other than row 0
+   * have a non-zero offset with bit 0 cleared, the three cases are
+   * distinguished by bit 0 and a test for zero.
+   *
+   * For each leaf, the decode completion actions are encoded as
+   * sequence of packed descriptors:
+   * <PRE>
+   * bits 0..4: generic variable 'a'..'z'
+   * bit 5: 0 = set variable to constant, 1 = append op-code bits
+   * constant: bits 8..31: value
+   * append: bits 8..11: number of bits, bits 12..15: op-code byte
+   *   index, bits 16..19: right shift of op-code byte
+   * </PRE>
+   */
+  private static class FlatDecodeTable {
+    private static final int ACTION_VAR_MASK = 0x1f;
+    private static final int ACTION_APPEND = 0x20;
+    private static final int MAX_CONSTANT = 0xffffff;
+
+    private final int[] rows;
+    private final GenericOperation[] leafOperations;
+
+    /**
+     * For each leaf, the index of its first action descriptor;
+     * followed by the total number of action descriptors.
+     */
+    private final int[] leafActionsStart;
+    private final int[] actions;
+
+    static int encodeConstantAction(int varIndex, int value) {
+      if ((value < 0) || (value > MAX_CONSTANT)) {
+        throw new InternalError("constant out of range: " + value);
+      }
+      return (value << 8) | varIndex;
+    }
+
+    static int encodeAppendBitsToVarAction(int varIndex, int bitSize,
+                                           int opCodeByteIndex,
+                                           int opCodeByteShiftRight) {
+      return
+        (opCodeByteShiftRight << 16) | (opCodeByteIndex << 12) |
+        (bitSize << 8) | ACTION_APPEND | varIndex;
+    }
+
+    /**
+     * Flattens the specified decode table.  Rows are numbered in
+     * breadth-first order.
+     */
+    public FlatDecodeTable(DecodeTable decodeTable) {
+      List<DecodeTable> tables = new ArrayList<DecodeTable>();
+      List<PrecompiledGenericOperation> leaves =
+        new ArrayList<PrecompiledGenericOperation>();
+      List<int[]> rowList = new ArrayList<int[]>();
+      tables.add(decodeTable);
+      for (int row = 0; row < tables.size(); row++) {
+        int[] entries = new int[256];
+        for (int i = 0; i < 256; i++) {
+          DecodeTableEntry entry = tables.get(row).entries[i];
+          if (entry instanceof DecodeTable) {
+            entries[i] = tables.size() << 8;
+            tables.add((DecodeTable)entry);
+          } else if (entry instanceof PrecompiledGenericOperation) {
+            entries[i] = (leaves.size() << 1) | 0x1;
+            leaves.add((PrecompiledGenericOperation)entry);
+          } else {
+            entries[i] = 0;
+          }
+        }
+        rowList.add(entries);
+      }
+      rows = new int[rowList.size() << 8];
+      for (int row = 0; row < rowList.size(); row++) {
+        System.arraycopy(rowList.get(row), 0, rows, row << 8, 256);
+      }
+      leafOperations = new GenericOperation[leaves.size()];
+      leafActionsStart = new int[leaves.size() + 1];
+      int actionsCount = 0;
+      for (int leaf = 0; leaf < leaves.size(); leaf++) {
+        leafOperations[leaf] = leaves.get(leaf).genericOperation;
+        leafActionsStart[leaf] = actionsCount;
+        actionsCount += leaves.get(leaf).actions.size();
+      }
+      leafActionsStart[leaves.size()] = actionsCount;
+      actions = new int[actionsCount];
+      for (int leaf = 0; leaf < leaves.size(); leaf++) {
+        leaves.get(leaf).actions.encode(actions, leafActionsStart[leaf]);
+      }
+    }
+
+    /**
+     * Reads a flat decode table that has been written with write().
+     */
+    public FlatDecodeTable(DataInputStream in, GenericOperation[] operations)
+      throws IOException
+    {
+      rows = readInts(in);
+      leafOperations = new GenericOperation[in.readInt()];
+      for (int leaf = 0; leaf < leafOperations.length; leaf++) {
+        int index = in.readUnsignedShort();
+        if (index >= operations.length) {
+          throw new IOException("operation index out of range: " + index);
+        }
+        leafOperations[leaf] = operations[index];
+      }
+      leafActionsStart = readInts(in);
+      actions = readInts(in);
+      if ((leafActionsStart.length != leafOperations.length + 1) ||
+          (leafActionsStart[leafOperations.length] != actions.length)) {
+        throw new IOException("inconsistent decode table");
+      }
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+      int[] values = new int[in.readInt()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = in.readInt();
+      }
+      return values;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values)
+      throws IOException
+    {
+      out.writeInt(values.length);
+      for (int value : values) {
+        out.writeInt(value);
+      }
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+      writeInts(out, rows);
+      out.writeInt(leafOperations.length);
+      for (GenericOperation genericOperation : leafOperations) {
+        out.writeShort(genericOperation.index);
+      }
+      writeInts(out, leafActionsStart);
+      writeInts(out, actions);
+    }
+
+    /**
+     * Decodes the op-code bytes delivered by the code fetcher.
+     * @return The leaf of the decoded operation, or -1, if the
+     * op-code is invalid.
+     */
+    public int findLeaf(CodeFetcher codeFetcher) {
+      int entry = rows[codeFetcher.fetchNextByte()];
+      while ((entry & 0x1) == 0) {
+        if (entry == 0) return -1; /* invalid opcode */
+        entry = rows[entry | codeFetcher.fetchNextByte()];
+      }
+      return entry >>> 1;
+    }
+
+    public GenericOperation getGenericOperation(int leaf) {
+      return leafOperations[leaf];
+    }
+
+    /**
+     * Extracts the arguments of the operation of the specified leaf
+     * from the op-code bytes delivered by the code fetcher.
+     */
+    public void fillArgs(int leaf, CodeFetcher codeFetcher, Arguments args) {
+      int[] argValues = args.args;
+      int end = leafActionsStart[leaf + 1];
+      for (int i = leafActionsStart[leaf]; i < end; i++) {
+        int action = actions[i];
+        int varIndex = action & ACTION_VAR_MASK;
+        if ((action & ACTION_APPEND) == 0) {
+          argValues[varIndex] = action >>> 8;
+        } else {
+          int bitSize = (action >>> 8) & 0xf;
+          int value = codeFetcher.fetchByte((action >>> 12) & 0xf);
+          argValues[varIndex] =
+            (argValues[varIndex] << bitSize) |
+            ((value >>> (action >>> 16)) & ((1 << bitSize) - 1));
+        }
+      }
+      leafOperations[leaf].swapEndiansOnAllArgs(args);
+    }
+  }
+
+  private FlatDecodeTable decodeTable;
+
+  // *** PRECOMPUTED DECODE TABLE *********************************************
+
+  /*
+   * Computing the decode table from the generic op-codes of the
+   * instruction set dominates the construction time of the CPU.
+   * Therefore, the build precomputes the flat decode table and stores
+   * it in serialized and gzip compressed form as a resource (see
+   * DecodeTableGenerator).
+   * The serialized form starts with a fingerprint of the instruction
+   * set, such that a precomputed table that does not match the
+   * instruction set is never used.  Instead, the decode table is
+   * then computed at runtime, just as if there were no precomputed
+   * one.
+   */
+  static final String DECODE_TABLE_RESOURCE = "decode-table.bin.gz";
+  private static final int DECODE_TABLE_MAGIC = 0x5a383044; // "Z80D"
+  private static final int DECODE_TABLE_VERSION = 2;
+
+  private boolean decodeTablePrecomputed;
+
+  /**
+   * Returns a checksum over all generic mnemonics and generic
+   * op-codes of the instruction set, in the order of the instruction
+   * set.
+   */
+  private int computeInstructionSetFingerprint() {
+    CRC32 crc = new CRC32();
+    for (GenericOperation genericOperation : OPERATION_SET) {
+      crc.update(genericOperation.genericMnemonic.
+                 getBytes(StandardCharsets.UTF_8));
+      crc.update(0);
+      crc.update(genericOperation.genericOpCode.
+                 getBytes(StandardCharsets.UTF_8));
+      crc.update(0);
+    }
+    return (int)crc.getValue();
+  }
+
+  private byte[] createDecodeTableImage(FlatDecodeTable decodeTable)
+    throws IOException
+  {
+    ByteArrayOutputStream image = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(image);
+    out.writeInt(DECODE_TABLE_MAGIC);
+    out.writeInt(DECODE_TABLE_VERSION);
+    out.writeInt(computeInstructionSetFingerprint());
+    out.writeShort(OPERATION_SET.length);
+    decodeTable.write(out);
+    out.flush();
+    return image.toByteArray();
+  }
+
+  /**
+   * Returns the serialized form of the decode table in use.
+   */
+  byte[] getDecodeTableImage() throws IOException {
+    return createDecodeTableImage(decodeTable);
+  }
+
+  /**
+   * Computes the decode table from the instruction set, regardless
+   * of any precomputed one, and returns its serialized form.
+   */
+  byte[] computeDecodeTableImage() throws IOException {
+    return createDecodeTableImage(computeDecodeTable());
+  }
+
+  /**
+   * Returns true, if the decode table in use has been loaded from
+   * its precomputed form rather than computed at construction.
+   */
+  public boolean isDecodeTablePrecomputed() {
+    return decodeTablePrecomputed;
+  }
+
+  private FlatDecodeTable computeDecodeTable() {
+    return new FlatDecodeTable(new DecodeTable(OPERATION_SET, new int[0]));
+  }
+
+  private FlatDecodeTable readDecodeTable(InputStream resourceIn)
+    throws IOException
+  {
+    DataInputStream in =
+      new DataInputStream(new BufferedInputStream(new GZIPInputStream(resourceIn)));
+    if (in.readInt() != DECODE_TABLE_MAGIC) {
+      throw new IOException("not a decode table");
+    }
+    int version = in.readInt();
+    if (version != DECODE_TABLE_VERSION) {
+      throw new IOException("unsupported version: " + version);
+    }
+    if ((in.readInt() != computeInstructionSetFingerprint()) ||
+        (in.readUnsignedShort() != OPERATION_SET.length)) {
+      throw new IOException("instruction set mismatch");
+    }
+    FlatDecodeTable decodeTable = new FlatDecodeTable(in, OPERATION_SET);
+    if (in.read() >= 0) {
+      throw new IOException("EOF expected");
+    }
+    return decodeTable;
+  }
+
+  /**
+   * Loads the precomputed decode table, if available and matching
+   * the instruction set, or computes it otherwise.
+   */
+  private void createDecodeTable() {
+    InputStream resourceIn = Z80.class.getResourceAsStream(DECODE_TABLE_RESOURCE);
+    if (resourceIn != null) {
+      try (InputStream in = resourceIn) {
+        decodeTable = readDecodeTable(in);
+        decodeTablePrecomputed = true;
+        return;
+      } catch (IOException e) {
+        System.out.println("WARNING: ignoring precomputed decode table: " +
+                           e.getMessage());
+      }
+    }
+    System.out.println("computing decode table...");
+    decodeTable = computeDecodeTable();
+    decodeTablePrecomputed = false;
+  }
 
   /**
    * Fills in concreteOperation for code that is delivered from the
@@ -3754,14 +4644,12 @@ public class Z80 implements CPU {
                      CodeFetcher codeFetcher, boolean isSynthesizedCode)
     throws CPU.MismatchException
   {
-    concreteOperation.address = regPC.getValue();
+    concreteOperation.address = regPC;
     concreteOperation.isSynthesizedCode = isSynthesizedCode;
     codeFetcher.reset();
-    PrecompiledGenericOperation precompiledGenericOperation =
-      decodeTable.findGenericOperation(codeFetcher);
-    if (precompiledGenericOperation != null) {
-      return
-        concreteOperation.instantiate(precompiledGenericOperation, codeFetcher);
+    int leaf = decodeTable.findLeaf(codeFetcher);
+    if (leaf >= 0) {
+      return concreteOperation.instantiate(leaf, codeFetcher);
     } else {
       /* invalid opcode */
       throw
@@ -3770,6 +4658,1269 @@ public class Z80 implements CPU {
     }
   }
 
+  // *** SWITCH DISPATCH UNIT *************************************************
+
+  /*
+   * The switch dispatch engine is an alternative to executing
+   * operations via the GenericOperation object graph.  It dispatches
+   * on the op-code byte (and the CB / ED / DD / FD / DDCB / FDCB
+   * prefix state) via plain switch statements.  Byte lengths and
+   * clock periods of each op-code are taken over from the decode
+   * table, such that both engines share identical timing and the
+   * same set of valid op-codes.
+   */
+
+  private final static int DISPATCH_TABLE_MAIN = 0;
+  private final static int DISPATCH_TABLE_CB = 1;
+  private final static int DISPATCH_TABLE_ED = 2;
+  private final static int DISPATCH_TABLE_DD = 3;
+  private final static int DISPATCH_TABLE_FD = 4;
+  private final static int DISPATCH_TABLE_DDCB = 5;
+  private final static int DISPATCH_TABLE_FDCB = 6;
+  private final static int DISPATCH_TABLES = 7;
+
+  /**
+   * For each dispatch table and op-code byte, the byte length of
+   * the operation, or 0, if the op-code is invalid.
+   */
+  private int[] dispatchByteLength;
+
+  /**
+   * For each dispatch table and op-code byte, the default number of
+   * clock periods.
+   */
+  private int[] dispatchClockPeriods;
+
+  /**
+   * For each dispatch table and op-code byte, the alternative
+   * number of clock periods (e.g. for branches not taken).
+   */
+  private int[] dispatchAltClockPeriods;
+
+  /**
+   * For each dispatch table and op-code byte, true, if the operation
+   * terminates a basic block.
+   */
+  private boolean[] dispatchIsBranch;
+
+  /**
+   * For each dispatch table and op-code byte, the index of the
+   * generic operation in the instruction set.
+   */
+  private int[] dispatchOperationIndex;
+
+  private boolean switchDispatchEnabled;
+
+  /**
+   * Set by operations of the switch dispatch engine for selecting
+   * the alternative number of clock periods.
+   */
+  private boolean useAltClockPeriods;
+
+  private void createDispatchTables() {
+    dispatchByteLength = new int[DISPATCH_TABLES << 8];
+    dispatchClockPeriods = new int[DISPATCH_TABLES << 8];
+    dispatchAltClockPeriods = new int[DISPATCH_TABLES << 8];
+    dispatchIsBranch = new boolean[DISPATCH_TABLES << 8];
+    dispatchOperationIndex = new int[DISPATCH_TABLES << 8];
+    int[] code = new int[4];
+    CodeBytesFetcher codeBytesFetcher = new CodeBytesFetcher(code);
+    for (int table = 0; table < DISPATCH_TABLES; table++) {
+      for (int opCode = 0; opCode < 256; opCode++) {
+        int opCodeIndex;
+        code[0] = code[1] = code[2] = code[3] = 0;
+        switch (table) {
+          case DISPATCH_TABLE_MAIN:
+            opCodeIndex = 0;
+            break;
+          case DISPATCH_TABLE_CB:
+            code[0] = 0xcb;
+            opCodeIndex = 1;
+            break;
+          case DISPATCH_TABLE_ED:
+            code[0] = 0xed;
+            opCodeIndex = 1;
+            break;
+          case DISPATCH_TABLE_DD:
+          case DISPATCH_TABLE_FD:
+            if (opCode == 0xcb) {
+              // handled by DDCB / FDCB tables
+              continue;
+            }
+            code[0] = table == DISPATCH_TABLE_DD ? 0xdd : 0xfd;
+            opCodeIndex = 1;
+            break;
+          case DISPATCH_TABLE_DDCB:
+          case DISPATCH_TABLE_FDCB:
+            code[0] = table == DISPATCH_TABLE_DDCB ? 0xdd : 0xfd;
+            code[1] = 0xcb;
+            opCodeIndex = 3;
+            break;
+          default:
+            throw new InternalError("unexpected dispatch table: " + table);
+        }
+        code[opCodeIndex] = opCode;
+        codeBytesFetcher.setCode(0x0000, code.length);
+        int leaf = decodeTable.findLeaf(codeBytesFetcher);
+        if (leaf >= 0) {
+          GenericOperation genericOperation =
+            decodeTable.getGenericOperation(leaf);
+          int index = (table << 8) | opCode;
+          dispatchByteLength[index] = genericOperation.byteLength;
+          dispatchClockPeriods[index] = genericOperation.defaultClockPeriods;
+          dispatchAltClockPeriods[index] = genericOperation.altClockPeriods;
+          dispatchIsBranch[index] = genericOperation.isBranch;
+          dispatchOperationIndex[index] = genericOperation.index;
+        }
+      }
+    }
+  }
+
+  /**
+   * Enables or disables the switch dispatch engine.  May be called
+   * between any two instructions, since both engines share the same
+   * processor status.
+   */
+  public void setSwitchDispatchEnabled(boolean enabled) {
+    if (enabled != switchDispatchEnabled) {
+      // translated operations are specific to the engine
+      flushTranslationCache();
+    }
+    switchDispatchEnabled = enabled;
+  }
+
+  public boolean isSwitchDispatchEnabled() {
+    return switchDispatchEnabled;
+  }
+
+  private int fetchCodeByte(int[] codeBytes, int address, int index) {
+    int codeByte = readMemoryByte((address + index) & 0xffff);
+    codeBytes[index] = codeByte;
+    return codeByte;
+  }
+
+  /**
+   * Fetches the op-code bytes at the current program counter into
+   * concreteOperation for later execution by the switch dispatch
+   * engine.
+   * @return The length of the operation in bytes.
+   */
+  private int fetchSwitchDispatched(ConcreteOperation concreteOperation)
+    throws CPU.MismatchException
+  {
+    int address = regPC;
+    int[] codeBytes = concreteOperation.codeBytes;
+    int table;
+    int opCodeIndex;
+    int fetched;
+    switch (fetchCodeByte(codeBytes, address, 0)) {
+      case 0xcb:
+        table = DISPATCH_TABLE_CB;
+        opCodeIndex = 1;
+        fetched = 1;
+        break;
+      case 0xed:
+        table = DISPATCH_TABLE_ED;
+        opCodeIndex = 1;
+        fetched = 1;
+        break;
+      case 0xdd:
+        if (fetchCodeByte(codeBytes, address, 1) == 0xcb) {
+          table = DISPATCH_TABLE_DDCB;
+          opCodeIndex = 3;
+        } else {
+          table = DISPATCH_TABLE_DD;
+          opCodeIndex = 1;
+        }
+        fetched = 2;
+        break;
+      case 0xfd:
+        if (fetchCodeByte(codeBytes, address, 1) == 0xcb) {
+          table = DISPATCH_TABLE_FDCB;
+          opCodeIndex = 3;
+        } else {
+          table = DISPATCH_TABLE_FD;
+          opCodeIndex = 1;
+        }
+        fetched = 2;
+        break;
+      default:
+        table = DISPATCH_TABLE_MAIN;
+        opCodeIndex = 0;
+        fetched = 1;
+        break;
+    }
+    while (fetched <= opCodeIndex) {
+      fetchCodeByte(codeBytes, address, fetched++);
+    }
+    int opCode = codeBytes[opCodeIndex];
+    int byteLength = dispatchByteLength[(table << 8) | opCode];
+    if (byteLength == 0) {
+      /* invalid opcode */
+      StringBuffer sb = new StringBuffer();
+      for (int i = 0; i < fetched; i++) {
+	sb.append(" " + Util.hexByteStr(codeBytes[i]));
+      }
+      throw
+	new CPU.MismatchException("no matching operation found [" +
+				  Util.hexShortStr(address) + "-   " +
+                                  sb + "]");
+    }
+    while (fetched < byteLength) {
+      fetchCodeByte(codeBytes, address, fetched++);
+    }
+    concreteOperation.address = address;
+    concreteOperation.isSynthesizedCode = false;
+    concreteOperation.isSwitchDispatched = true;
+    concreteOperation.genericOperation = null;
+    concreteOperation.dispatchTable = table;
+    concreteOperation.dispatchOpCode = opCode;
+    concreteOperation.dispatchByteLength = byteLength;
+    return byteLength;
+  }
+
+  /**
+   * Executes an operation that has been fetched by
+   * <code>fetchSwitchDispatched()</code>.
+   * @return The number of clock periods consumed by the operation.
+   */
+  private int executeSwitchDispatched(ConcreteOperation concreteOperation) {
+    int[] code = concreteOperation.codeBytes;
+    int table = concreteOperation.dispatchTable;
+    int opCode = concreteOperation.dispatchOpCode;
+    int address, result;
+    useAltClockPeriods = false;
+    switch (table) {
+      case DISPATCH_TABLE_MAIN:
+        executeMainOperation(opCode, code);
+        break;
+      case DISPATCH_TABLE_CB:
+        result = executeBitOperation(opCode, getReg8(opCode & 0x7));
+        if (result >= 0) {
+          setReg8(opCode & 0x7, result);
+        }
+        break;
+      case DISPATCH_TABLE_ED:
+        executeExtendedOperation(opCode, code);
+        break;
+      case DISPATCH_TABLE_DD:
+        regIX = executeIndexedOperation(opCode, code, regIX);
+        break;
+      case DISPATCH_TABLE_FD:
+        regIY = executeIndexedOperation(opCode, code, regIY);
+        break;
+      case DISPATCH_TABLE_DDCB:
+      case DISPATCH_TABLE_FDCB:
+        address =
+          ((table == DISPATCH_TABLE_DDCB ? regIX : regIY) + (byte)code[2]) &
+          0xffff;
+        result = executeBitOperation(opCode, readMemoryByte(address));
+        if (result >= 0) {
+          writeMemoryByte(address, result);
+        }
+        break;
+      default:
+        throw new InternalError("unexpected dispatch table: " + table);
+    }
+    int index = (table << 8) | opCode;
+    return
+      useAltClockPeriods ?
+      dispatchAltClockPeriods[index] :
+      dispatchClockPeriods[index];
+  }
+
+  private void executeJumpRelative(boolean condition, int disp8) {
+    if (condition)
+      regPC = (regPC + (byte)disp8) & 0xffff;
+    else
+      useAltClockPeriods = true;
+  }
+
+  private void executeRepeat(boolean condition) {
+    if (condition)
+      regPC = (regPC + 0xfffe) & 0xffff;
+    else
+      useAltClockPeriods = true;
+  }
+
+  /**
+   * ADD, ADC, SUB, SBC, AND, XOR, OR, CP, as selected by bits 3..5
+   * of the op-code.
+   */
+  private void executeArithmeticOperation(int opCode, int op) {
+    switch ((opCode >>> 3) & 0x7) {
+      case 0:
+        regA = doADD8(regA, op);
+        break;
+      case 1:
+        regA = doADC8(regA, op);
+        break;
+      case 2:
+        regA = doSUB8(regA, op);
+        break;
+      case 3:
+        regA = doSBC8(regA, op);
+        break;
+      case 4:
+        doAND(op);
+        break;
+      case 5:
+        doXOR(op);
+        break;
+      case 6:
+        doOR(op);
+        break;
+      case 7:
+        doCP(regA, op);
+        break;
+    }
+  }
+
+  private void executeMainOperation(int opCode, int[] code) {
+    int value;
+    switch (opCode) {
+      case 0x00: // NOP
+        doNOP();
+        break;
+      case 0x01: // LD BC,nn
+      case 0x11: // LD DE,nn
+      case 0x21: // LD HL,nn
+      case 0x31: // LD SP,nn
+        setReg16((opCode >>> 4) & 0x3, code[1] | (code[2] << 8));
+        break;
+      case 0x02: // LD (BC),A
+        writeMemoryByte(getBC(), regA);
+        break;
+      case 0x12: // LD (DE),A
+        writeMemoryByte(getDE(), regA);
+        break;
+      case 0x22: // LD (nn),HL
+        writeMemoryShort(code[1] | (code[2] << 8), getHL());
+        break;
+      case 0x32: // LD (nn),A
+        writeMemoryByte(code[1] | (code[2] << 8), regA);
+        break;
+      case 0x03: // INC BC
+      case 0x13: // INC DE
+      case 0x23: // INC HL
+      case 0x33: // INC SP
+        value = (opCode >>> 4) & 0x3;
+        setReg16(value, getReg16(value) + 1);
+        break;
+      case 0x0b: // DEC BC
+      case 0x1b: // DEC DE
+      case 0x2b: // DEC HL
+      case 0x3b: // DEC SP
+        value = (opCode >>> 4) & 0x3;
+        setReg16(value, getReg16(value) - 1);
+        break;
+      case 0x04: // INC B
+      case 0x0c: // INC C
+      case 0x14: // INC D
+      case 0x1c: // INC E
+      case 0x24: // INC H
+      case 0x2c: // INC L
+      case 0x34: // INC (HL)
+      case 0x3c: // INC A
+        value = (opCode >>> 3) & 0x7;
+        setReg8(value, doINC8(getReg8(value)));
+        break;
+      case 0x05: // DEC B
+      case 0x0d: // DEC C
+      case 0x15: // DEC D
+      case 0x1d: // DEC E
+      case 0x25: // DEC H
+      case 0x2d: // DEC L
+      case 0x35: // DEC (HL)
+      case 0x3d: // DEC A
+        value = (opCode >>> 3) & 0x7;
+        setReg8(value, doDEC8(getReg8(value)));
+        break;
+      case 0x06: // LD B,n
+      case 0x0e: // LD C,n
+      case 0x16: // LD D,n
+      case 0x1e: // LD E,n
+      case 0x26: // LD H,n
+      case 0x2e: // LD L,n
+      case 0x36: // LD (HL),n
+      case 0x3e: // LD A,n
+        setReg8((opCode >>> 3) & 0x7, code[1]);
+        break;
+      case 0x07: // RLCA
+        doRLCA();
+        break;
+      case 0x0f: // RRCA
+        doRRCA();
+        break;
+      case 0x17: // RLA
+        doRLA();
+        break;
+      case 0x1f: // RRA
+        doRRA();
+        break;
+      case 0x08: // EX AF,AF'
+        value = getAF();
+        setAF(regAF_);
+        regAF_ = value;
+        break;
+      case 0x09: // ADD HL,BC
+      case 0x19: // ADD HL,DE
+      case 0x29: // ADD HL,HL
+      case 0x39: // ADD HL,SP
+        setHL(doADD16(getHL(), getReg16((opCode >>> 4) & 0x3)));
+        break;
+      case 0x0a: // LD A,(BC)
+        regA = readMemoryByte(getBC());
+        break;
+      case 0x1a: // LD A,(DE)
+        regA = readMemoryByte(getDE());
+        break;
+      case 0x2a: // LD HL,(nn)
+        setHL(readMemoryShort(code[1] | (code[2] << 8)));
+        break;
+      case 0x3a: // LD A,(nn)
+        regA = readMemoryByte(code[1] | (code[2] << 8));
+        break;
+      case 0x10: // DJNZ e
+        regB = (regB - 1) & 0xff;
+        executeJumpRelative(regB != 0x00, code[1]);
+        break;
+      case 0x18: // JR e
+        executeJumpRelative(true, code[1]);
+        break;
+      case 0x20: // JR NZ,e
+      case 0x28: // JR Z,e
+      case 0x30: // JR NC,e
+      case 0x38: // JR C,e
+        executeJumpRelative(isCondTrue((opCode >>> 3) & 0x3), code[1]);
+        break;
+      case 0x27: // DAA
+        doDAA();
+        break;
+      case 0x2f: // CPL
+        doCPL();
+        break;
+      case 0x37: // SCF
+        doSCF();
+        break;
+      case 0x3f: // CCF
+        doCCF();
+        break;
+      case 0x76: // HALT
+        regPC = (regPC - 1) & 0xffff;
+        break;
+      case 0x40: case 0x41: case 0x42: case 0x43:
+      case 0x44: case 0x45: case 0x46: case 0x47:
+      case 0x48: case 0x49: case 0x4a: case 0x4b:
+      case 0x4c: case 0x4d: case 0x4e: case 0x4f:
+      case 0x50: case 0x51: case 0x52: case 0x53:
+      case 0x54: case 0x55: case 0x56: case 0x57:
+      case 0x58: case 0x59: case 0x5a: case 0x5b:
+      case 0x5c: case 0x5d: case 0x5e: case 0x5f:
+      case 0x60: case 0x61: case 0x62: case 0x63:
+      case 0x64: case 0x65: case 0x66: case 0x67:
+      case 0x68: case 0x69: case 0x6a: case 0x6b:
+      case 0x6c: case 0x6d: case 0x6e: case 0x6f:
+      case 0x70: case 0x71: case 0x72: case 0x73:
+      case 0x74: case 0x75:            case 0x77:
+      case 0x78: case 0x79: case 0x7a: case 0x7b:
+      case 0x7c: case 0x7d: case 0x7e: case 0x7f:
+        // LD r,r'
+        setReg8((opCode >>> 3) & 0x7, getReg8(opCode & 0x7));
+        break;
+      case 0x80: case 0x81: case 0x82: case 0x83:
+      case 0x84: case 0x85: case 0x86: case 0x87:
+      case 0x88: case 0x89: case 0x8a: case 0x8b:
+      case 0x8c: case 0x8d: case 0x8e: case 0x8f:
+      case 0x90: case 0x91: case 0x92: case 0x93:
+      case 0x94: case 0x95: case 0x96: case 0x97:
+      case 0x98: case 0x99: case 0x9a: case 0x9b:
+      case 0x9c: case 0x9d: case 0x9e: case 0x9f:
+      case 0xa0: case 0xa1: case 0xa2: case 0xa3:
+      case 0xa4: case 0xa5: case 0xa6: case 0xa7:
+      case 0xa8: case 0xa9: case 0xaa: case 0xab:
+      case 0xac: case 0xad: case 0xae: case 0xaf:
+      case 0xb0: case 0xb1: case 0xb2: case 0xb3:
+      case 0xb4: case 0xb5: case 0xb6: case 0xb7:
+      case 0xb8: case 0xb9: case 0xba: case 0xbb:
+      case 0xbc: case 0xbd: case 0xbe: case 0xbf:
+        // ADD/ADC/SUB/SBC/AND/XOR/OR/CP r
+        executeArithmeticOperation(opCode, getReg8(opCode & 0x7));
+        break;
+      case 0xc6: // ADD n
+      case 0xce: // ADC n
+      case 0xd6: // SUB n
+      case 0xde: // SBC n
+      case 0xe6: // AND n
+      case 0xee: // XOR n
+      case 0xf6: // OR n
+      case 0xfe: // CP n
+        executeArithmeticOperation(opCode, code[1]);
+        break;
+      case 0xc0: // RET NZ
+      case 0xc8: // RET Z
+      case 0xd0: // RET NC
+      case 0xd8: // RET C
+      case 0xe0: // RET PO
+      case 0xe8: // RET PE
+      case 0xf0: // RET P
+      case 0xf8: // RET M
+        if (isCondTrue((opCode >>> 3) & 0x7))
+          regPC = doPOP();
+        else
+          useAltClockPeriods = true;
+        break;
+      case 0xc1: // POP BC
+      case 0xd1: // POP DE
+      case 0xe1: // POP HL
+      case 0xf1: // POP AF
+        setPReg16((opCode >>> 4) & 0x3, doPOP());
+        break;
+      case 0xc2: // JP NZ,nn
+      case 0xca: // JP Z,nn
+      case 0xd2: // JP NC,nn
+      case 0xda: // JP C,nn
+      case 0xe2: // JP PO,nn
+      case 0xea: // JP PE,nn
+      case 0xf2: // JP P,nn
+      case 0xfa: // JP M,nn
+        if (isCondTrue((opCode >>> 3) & 0x7))
+          regPC = code[1] | (code[2] << 8);
+        else
+          useAltClockPeriods = true;
+        break;
+      case 0xc3: // JP nn
+        regPC = code[1] | (code[2] << 8);
+        break;
+      case 0xc4: // CALL NZ,nn
+      case 0xcc: // CALL Z,nn
+      case 0xd4: // CALL NC,nn
+      case 0xdc: // CALL C,nn
+      case 0xe4: // CALL PO,nn
+      case 0xec: // CALL PE,nn
+      case 0xf4: // CALL P,nn
+      case 0xfc: // CALL M,nn
+        if (isCondTrue((opCode >>> 3) & 0x7)) {
+          doPUSH(regPC);
+          regPC = code[1] | (code[2] << 8);
+        } else
+          useAltClockPeriods = true;
+        break;
+      case 0xcd: // CALL nn
+        doPUSH(regPC);
+        regPC = code[1] | (code[2] << 8);
+        break;
+      case 0xc5: // PUSH BC
+      case 0xd5: // PUSH DE
+      case 0xe5: // PUSH HL
+      case 0xf5: // PUSH AF
+        doPUSH(getPReg16((opCode >>> 4) & 0x3));
+        break;
+      case 0xc7: // RST 00
+      case 0xcf: // RST 08
+      case 0xd7: // RST 10
+      case 0xdf: // RST 18
+      case 0xe7: // RST 20
+      case 0xef: // RST 28
+      case 0xf7: // RST 30
+      case 0xff: // RST 38
+        doPUSH(regPC);
+        regPC = opCode & 0x38;
+        break;
+      case 0xc9: // RET
+        regPC = doPOP();
+        break;
+      case 0xd3: // OUT (n),A
+        value = regA;
+        io.writeByte((value << 8) | code[1], value, wallClockTime);
+        break;
+      case 0xdb: // IN A,(n)
+        regA = io.readByte((regA << 8) | code[1], wallClockTime) & 0xff;
+        break;
+      case 0xd9: // EXX
+        value = getBC();
+        setBC(regBC_);
+        regBC_ = value;
+        value = getDE();
+        setDE(regDE_);
+        regDE_ = value;
+        value = getHL();
+        setHL(regHL_);
+        regHL_ = value;
+        break;
+      case 0xe3: // EX (SP),HL
+        value = readMemoryShort(regSP);
+        writeMemoryShort(regSP, getHL());
+        setHL(value);
+        break;
+      case 0xe9: // JP (HL)
+        regPC = getHL();
+        break;
+      case 0xeb: // EX DE,HL
+        value = getDE();
+        setDE(getHL());
+        setHL(value);
+        break;
+      case 0xf3: // DI
+        irq_enabled = false;
+        break;
+      case 0xf9: // LD SP,HL
+        regSP = getHL();
+        break;
+      case 0xfb: // EI
+        irq_to_be_enabled = true;
+        break;
+      default:
+        throw new InternalError("unexpected op-code: " +
+                                Util.hexByteStr(opCode));
+    }
+  }
+
+  /**
+   * Rotate / shift, BIT, RES and SET operations with CB, DDCB or
+   * FDCB prefix.
+   * @param op The value of the operand.
+   * @return The result to be written back to the operand, or -1,
+   * if the operation (BIT) does not modify the operand.
+   */
+  private int executeBitOperation(int opCode, int op) {
+    int bit = (opCode >>> 3) & 0x7;
+    switch (opCode >>> 6) {
+      case 0:
+        switch (bit) {
+          case 0:
+            return doRLC(op);
+          case 1:
+            return doRRC(op);
+          case 2:
+            return doRL(op);
+          case 3:
+            return doRR(op);
+          case 4:
+            return doSLA(op);
+          case 5:
+            return doSRA(op);
+          case 7:
+            return doSRL(op);
+          default:
+            throw new InternalError("unexpected op-code: " +
+                                    Util.hexByteStr(opCode));
+        }
+      case 1:
+        doBIT(op, bit);
+        return -1;
+      case 2:
+        return doRES(op, bit);
+      case 3:
+        return doSET(op, bit);
+      default:
+        throw new InternalError("unexpected op-code: " +
+                                Util.hexByteStr(opCode));
+    }
+  }
+
+  /**
+   * Operations with ED prefix.
+   */
+  private void executeExtendedOperation(int opCode, int[] code) {
+    switch (opCode) {
+      case 0x40: // IN B,(C)
+      case 0x48: // IN C,(C)
+      case 0x50: // IN D,(C)
+      case 0x58: // IN E,(C)
+      case 0x60: // IN H,(C)
+      case 0x68: // IN L,(C)
+      case 0x78: // IN A,(C)
+        setReg8((opCode >>> 3) & 0x7, doIN(getBC()));
+        break;
+      case 0x70: // IN (C)
+        doIN(getBC()); // result of doIN() intentionally
+                       // ignored
+        break;
+      case 0x41: // OUT (C),B
+      case 0x49: // OUT (C),C
+      case 0x51: // OUT (C),D
+      case 0x59: // OUT (C),E
+      case 0x61: // OUT (C),H
+      case 0x69: // OUT (C),L
+      case 0x71: // OUT (C),(HL)
+      case 0x79: // OUT (C),A
+        io.writeByte(getBC(), getReg8((opCode >>> 3) & 0x7), wallClockTime);
+        break;
+      case 0x42: // SBC HL,BC
+      case 0x52: // SBC HL,DE
+      case 0x62: // SBC HL,HL
+      case 0x72: // SBC HL,SP
+        setHL(doSBC16(getHL(), getReg16((opCode >>> 4) & 0x3)));
+        break;
+      case 0x4a: // ADC HL,BC
+      case 0x5a: // ADC HL,DE
+      case 0x6a: // ADC HL,HL
+      case 0x7a: // ADC HL,SP
+        setHL(doADC16(getHL(), getReg16((opCode >>> 4) & 0x3)));
+        break;
+      case 0x43: // LD (nn),BC
+      case 0x53: // LD (nn),DE
+      case 0x63: // LD (nn),HL
+      case 0x73: // LD (nn),SP
+        writeMemoryShort(code[2] | (code[3] << 8),
+                         getReg16((opCode >>> 4) & 0x3));
+        break;
+      case 0x4b: // LD BC,(nn)
+      case 0x5b: // LD DE,(nn)
+      case 0x6b: // LD HL,(nn)
+      case 0x7b: // LD SP,(nn)
+        setReg16((opCode >>> 4) & 0x3,
+                 readMemoryShort(code[2] | (code[3] << 8)));
+        break;
+      case 0x44: // NEG
+        doNEG();
+        break;
+      case 0x45: // RETN
+        regPC = doPOP();
+        break;
+      case 0x4d: // RETI
+        regPC = doPOP();
+        irq_requested = false;
+        break;
+      case 0x46: // IM 0
+        regIM = INTR_MODE_0;
+        break;
+      case 0x56: // IM 1
+        regIM = INTR_MODE_1;
+        break;
+      case 0x5e: // IM 2
+        regIM = INTR_MODE_2;
+        break;
+      case 0x47: // LD I,A
+        regI = regA;
+        break;
+      case 0x4f: // LD R,A
+        regR = regA;
+        break;
+      case 0x57: // LD A,I
+        doLDAI();
+        break;
+      case 0x5f: // LD A,R
+        doLDAR();
+        break;
+      case 0x67: // RRD
+        doRRD();
+        break;
+      case 0x6f: // RLD
+        doRLD();
+        break;
+      case 0xa0: // LDI
+        doLDI();
+        break;
+      case 0xa1: // CPI
+        doCPI();
+        break;
+      case 0xa2: // INI
+        doINI();
+        break;
+      case 0xa3: // OUTI
+        doOUTI();
+        break;
+      case 0xa8: // LDD
+        doLDD();
+        break;
+      case 0xa9: // CPD
+        doCPD();
+        break;
+      case 0xaa: // IND
+        doIND();
+        break;
+      case 0xab: // OUTD
+        doOUTD();
+        break;
+      case 0xb0: // LDIR
+        doLDI();
+        executeRepeat(getBC() != 0x0000);
+        break;
+      case 0xb1: // CPIR
+        doCPI();
+        executeRepeat(getBC() != 0x0000);
+        break;
+      case 0xb2: // INIR
+        doINI();
+        executeRepeat((getF() & FLAG_Z) == 0);
+        break;
+      case 0xb3: // OTIR
+        doOUTI();
+        executeRepeat((getF() & FLAG_Z) == 0);
+        break;
+      case 0xb8: // LDDR
+        doLDD();
+        executeRepeat(getBC() != 0x0000);
+        break;
+      case 0xb9: // CPDR
+        doCPD();
+        executeRepeat(getBC() != 0x0000);
+        break;
+      case 0xba: // INDR
+        doIND();
+        executeRepeat((getF() & FLAG_Z) == 0);
+        break;
+      case 0xbb: // OTDR
+        doOUTD();
+        executeRepeat((getF() & FLAG_Z) == 0);
+        break;
+      default:
+        throw new InternalError("unexpected op-code: ED " +
+                                Util.hexByteStr(opCode));
+    }
+  }
+
+  /**
+   * Operations with DD or FD prefix.
+   * @param regXY The value of either IX or IY.
+   * @return The new value of IX or IY, respectively.
+   */
+  private int executeIndexedOperation(int opCode, int[] code, int regXY) {
+    int value;
+    switch (opCode) {
+      case 0x09: // ADD XY,BC
+      case 0x19: // ADD XY,DE
+      case 0x29: // ADD XY,XY
+      case 0x39: // ADD XY,SP
+        value = (opCode >>> 4) & 0x3;
+        return doADD16(regXY, value == 2 ? regXY : getReg16(value));
+      case 0x21: // LD XY,nn
+        return code[2] | (code[3] << 8);
+      case 0x22: // LD (nn),XY
+        writeMemoryShort(code[2] | (code[3] << 8), regXY);
+        return regXY;
+      case 0x23: // INC XY
+        return (regXY + 1) & 0xffff;
+      case 0x2a: // LD XY,(nn)
+        return readMemoryShort(code[2] | (code[3] << 8));
+      case 0x2b: // DEC XY
+        return (regXY - 1) & 0xffff;
+      case 0x34: // INC (XY+d)
+        value = (regXY + (byte)code[2]) & 0xffff;
+        writeMemoryByte(value, doINC8(readMemoryByte(value)));
+        return regXY;
+      case 0x35: // DEC (XY+d)
+        value = (regXY + (byte)code[2]) & 0xffff;
+        writeMemoryByte(value, doDEC8(readMemoryByte(value)));
+        return regXY;
+      case 0x36: // LD (XY+d),n
+        writeMemoryByte((regXY + (byte)code[2]) & 0xffff, code[3]);
+        return regXY;
+      case 0x46: // LD B,(XY+d)
+      case 0x4e: // LD C,(XY+d)
+      case 0x56: // LD D,(XY+d)
+      case 0x5e: // LD E,(XY+d)
+      case 0x66: // LD H,(XY+d)
+      case 0x6e: // LD L,(XY+d)
+      case 0x7e: // LD A,(XY+d)
+        setReg8((opCode >>> 3) & 0x7,
+                readMemoryByte((regXY + (byte)code[2]) & 0xffff));
+        return regXY;
+      case 0x70: // LD (XY+d),B
+      case 0x71: // LD (XY+d),C
+      case 0x72: // LD (XY+d),D
+      case 0x73: // LD (XY+d),E
+      case 0x74: // LD (XY+d),H
+      case 0x75: // LD (XY+d),L
+      case 0x77: // LD (XY+d),A
+        writeMemoryByte((regXY + (byte)code[2]) & 0xffff,
+                        getReg8(opCode & 0x7));
+        return regXY;
+      case 0x76: // (no valid register; still matched by decode table)
+        throw new NullPointerException("no register for op-code " +
+                                       Util.hexByteStr(code[0]) + " " +
+                                       Util.hexByteStr(opCode));
+      case 0x86: // ADD (XY+d)
+      case 0x8e: // ADC (XY+d)
+      case 0x96: // SUB (XY+d)
+      case 0x9e: // SBC (XY+d)
+      case 0xa6: // AND (XY+d)
+      case 0xae: // XOR (XY+d)
+      case 0xb6: // OR (XY+d)
+      case 0xbe: // CP (XY+d)
+        executeArithmeticOperation(opCode,
+                                   readMemoryByte((regXY + (byte)code[2]) &
+                                                  0xffff));
+        return regXY;
+      case 0xe1: // POP XY
+        return doPOP();
+      case 0xe3: // EX (SP),XY
+        value = readMemoryShort(regSP);
+        writeMemoryShort(regSP, regXY);
+        return value;
+      case 0xe5: // PUSH XY
+        doPUSH(regXY);
+        return regXY;
+      case 0xe9: // JP (XY)
+        regPC = regXY;
+        return regXY;
+      case 0xf9: // LD SP,XY
+        regSP = regXY;
+        return regXY;
+      default:
+        throw new InternalError("unexpected op-code: " +
+                                Util.hexByteStr(code[0]) + " " +
+                                Util.hexByteStr(opCode));
+    }
+  }
+
+  // *** TRANSLATION CACHE ****************************************************
+
+  /*
+   * The translation cache holds basic blocks, i.e. straight-line runs
+   * of already decoded operations, keyed by their start address.
+   * Blocks are recorded while operations are decoded as usual, and
+   * are terminated by any branch operation.  As long as execution
+   * follows a recorded block, fetching the next operation amounts to
+   * loading its pre-resolved operation and arguments, without
+   * accessing the memory bus or the decode table.
+   *
+   * Since all writes to memory either pass the memory bus or are
+   * direct writes of the CPU itself, the cache listens on the bus,
+   * is notified of direct writes, and invalidates all blocks that
+   * overlap the page of any written address.  Code that is executed
+   * from memory mapped devices with volatile contents is not
+   * supported.
+   */
+
+  private final static int MAX_BLOCK_LENGTH = 64;
+  private final static int PAGE_SHIFT = 8;
+  private final static int PAGES = 0x10000 >>> PAGE_SHIFT;
+
+  private static class TranslatedOperation {
+    private int address;
+    private int byteLength;
+    private int[] codeBytes;
+    private boolean isBranch;
+
+    // operation as decoded by the decode table
+    private GenericOperation genericOperation;
+    private int[] argValues;
+
+    // operation as decoded by the switch dispatch engine
+    private int dispatchTable;
+    private int dispatchOpCode;
+
+    private TranslatedOperation() {
+      codeBytes = new int[4];
+    }
+  }
+
+  private static class TranslatedBlock {
+    private int startAddress;
+    private TranslatedOperation[] operations;
+    private boolean valid;
+
+    private TranslatedBlock() {}
+
+    private TranslatedBlock(List<TranslatedOperation> operations) {
+      this.operations = operations.toArray(new TranslatedOperation[0]);
+      startAddress = this.operations[0].address;
+      valid = true;
+    }
+
+    private int getEndAddress() {
+      TranslatedOperation last = operations[operations.length - 1];
+      return (last.address + last.byteLength) & 0xffff;
+    }
+  }
+
+  private class TranslationCacheInvalidator
+    implements MemoryBus.WriteObserver
+  {
+    public void writeByte(int address, int value, long wallClockTime) {
+      invalidatePage((address & 0xffff) >>> PAGE_SHIFT);
+    }
+
+    public void writeShort(int address, int value, long wallClockTime) {
+      invalidatePage((address & 0xffff) >>> PAGE_SHIFT);
+      invalidatePage(((address + 1) & 0xffff) >>> PAGE_SHIFT);
+    }
+
+    public void resync(long wallClockTime) {}
+  }
+
+  private boolean translationCacheEnabled;
+  private boolean translationCacheSupported;
+  private TranslatedBlock[] translatedBlocks;
+  private List<List<TranslatedBlock>> pageBlocks;
+  private TranslationCacheInvalidator translationCacheInvalidator;
+  private TranslatedBlock currentBlock;
+  private int currentBlockIndex;
+  private List<TranslatedOperation> recordedOperations;
+  private long translationCacheHits;
+  private long translationCacheMisses;
+  private long translationCacheInvalidations;
+
+  private void createTranslationCache()
+  {
+    // tables are allocated only when the cache is enabled
+    translatedBlocks = null;
+    pageBlocks = null;
+    recordedOperations = null;
+    translationCacheInvalidator = null;
+    // no way to get notified about writes to code without memory bus
+    translationCacheSupported = memory instanceof MemoryBus;
+  }
+
+  private void allocateTranslationCache()
+  {
+    translatedBlocks = new TranslatedBlock[0x10000];
+    pageBlocks = new ArrayList<List<TranslatedBlock>>(PAGES);
+    for (int page = 0; page < PAGES; page++) {
+      pageBlocks.add(new ArrayList<TranslatedBlock>());
+    }
+    recordedOperations = new ArrayList<TranslatedOperation>();
+    translationCacheInvalidator = new TranslationCacheInvalidator();
+    ((MemoryBus)memory).addReader(translationCacheInvalidator);
+  }
+
+  private void releaseTranslationCache()
+  {
+    ((MemoryBus)memory).removeReader(translationCacheInvalidator);
+    translationCacheInvalidator = null;
+    translatedBlocks = null;
+    pageBlocks = null;
+    recordedOperations = null;
+    currentBlock = null;
+  }
+
+  /**
+   * Enables or disables the translation cache.  May be called
+   * between any two instructions.  The cache can only be enabled, if
+   * the CPU's memory is a MemoryBus.  The cache's tables and its
+   * write observer on the memory bus exist only while the cache is
+   * enabled, such that a disabled cache neither costs memory nor
+   * slows down bus writes.
+   */
+  public void setTranslationCacheEnabled(boolean enabled)
+  {
+    if (enabled && !translationCacheSupported) {
+      System.out.println("WARNING: translation cache requires memory bus");
+      enabled = false;
+    }
+    if (enabled == translationCacheEnabled) {
+      flushTranslationCache();
+      return;
+    }
+    translationCacheEnabled = false;
+    if (enabled) {
+      allocateTranslationCache();
+    } else {
+      releaseTranslationCache();
+    }
+    translationCacheEnabled = enabled;
+  }
+
+  public boolean isTranslationCacheEnabled() {
+    return translationCacheEnabled;
+  }
+
+  public long getTranslationCacheHits() {
+    return translationCacheHits;
+  }
+
+  public long getTranslationCacheMisses() {
+    return translationCacheMisses;
+  }
+
+  public long getTranslationCacheInvalidations() {
+    return translationCacheInvalidations;
+  }
+
+  public void resetTranslationCacheCounters() {
+    translationCacheHits = 0;
+    translationCacheMisses = 0;
+    translationCacheInvalidations = 0;
+  }
+
+  /**
+   * Drops all translated blocks.
+   */
+  public void flushTranslationCache() {
+    if (translatedBlocks == null) {
+      // cache not enabled
+      return;
+    }
+    for (List<TranslatedBlock> blocks : pageBlocks) {
+      for (TranslatedBlock block : blocks) {
+        block.valid = false;
+      }
+      blocks.clear();
+    }
+    Arrays.fill(translatedBlocks, null);
+    currentBlock = null;
+    recordedOperations.clear();
+  }
+
+  private void invalidatePage(int page) {
+    List<TranslatedBlock> blocks = pageBlocks.get(page);
+    if (!blocks.isEmpty()) {
+      for (TranslatedBlock block : blocks) {
+        if (block.valid) {
+          block.valid = false;
+          if (translatedBlocks[block.startAddress] == block) {
+            translatedBlocks[block.startAddress] = null;
+          }
+          translationCacheInvalidations++;
+        }
+      }
+      blocks.clear();
+    }
+    if (!recordedOperations.isEmpty()) {
+      // conservatively drop a block that is currently being recorded
+      int firstPage = recordedOperations.get(0).address >>> PAGE_SHIFT;
+      int lastPage =
+        recordedOperations.get(recordedOperations.size() - 1).address >>>
+        PAGE_SHIFT;
+      if ((page >= firstPage - 1) && (page <= lastPage + 1)) {
+        recordedOperations.clear();
+      }
+    }
+  }
+
+  private void commitRecordedBlock() {
+    if (recordedOperations.isEmpty()) {
+      return;
+    }
+    TranslatedBlock block = new TranslatedBlock(recordedOperations);
+    recordedOperations.clear();
+    translatedBlocks[block.startAddress] = block;
+    int firstPage = block.startAddress >>> PAGE_SHIFT;
+    int lastPage = ((block.getEndAddress() - 1) & 0xffff) >>> PAGE_SHIFT;
+    int page = firstPage;
+    while (true) {
+      List<TranslatedBlock> blocks = pageBlocks.get(page);
+      Iterator<TranslatedBlock> iterator = blocks.iterator();
+      while (iterator.hasNext()) {
+        if (!iterator.next().valid) {
+          iterator.remove();
+        }
+      }
+      blocks.add(block);
+      if (page == lastPage) {
+        break;
+      }
+      page = (page + 1) % PAGES;
+    }
+  }
+
+  /**
+   * Captures the operation that has just been decoded into
+   * concreteOperation.
+   */
+  private TranslatedOperation translate(ConcreteOperation concreteOperation)
+  {
+    TranslatedOperation operation = new TranslatedOperation();
+    operation.address = concreteOperation.address;
+    if (concreteOperation.isSwitchDispatched) {
+      operation.byteLength = concreteOperation.dispatchByteLength;
+      operation.dispatchTable = concreteOperation.dispatchTable;
+      operation.dispatchOpCode = concreteOperation.dispatchOpCode;
+      operation.isBranch =
+        dispatchIsBranch[(operation.dispatchTable << 8) |
+                         operation.dispatchOpCode];
+      System.arraycopy(concreteOperation.codeBytes, 0,
+                       operation.codeBytes, 0, operation.byteLength);
+    } else {
+      GenericOperation genericOperation = concreteOperation.genericOperation;
+      operation.genericOperation = genericOperation;
+      operation.byteLength = genericOperation.byteLength;
+      operation.isBranch = genericOperation.isBranch;
+      operation.argValues = new int[genericOperation.varIndex.length];
+      for (int i = 0; i < operation.argValues.length; i++) {
+        operation.argValues[i] =
+          concreteOperation.args.getArg(genericOperation.varIndex[i]);
+      }
+      for (int i = 0; i < operation.byteLength; i++) {
+        operation.codeBytes[i] = memoryCodeFetcher.fetchByte(i);
+      }
+    }
+    return operation;
+  }
+
+  /**
+   * Loads a translated operation into concreteOperation, as if it
+   * had just been decoded.
+   */
+  private int load(ConcreteOperation concreteOperation,
+                   TranslatedOperation operation)
+  {
+    int byteLength = operation.byteLength;
+    concreteOperation.address = operation.address;
+    concreteOperation.isSynthesizedCode = false;
+    System.arraycopy(operation.codeBytes, 0,
+                     concreteOperation.codeBytes, 0, byteLength);
+    if (operation.genericOperation == null) {
+      concreteOperation.isSwitchDispatched = true;
+      concreteOperation.genericOperation = null;
+      concreteOperation.dispatchTable = operation.dispatchTable;
+      concreteOperation.dispatchOpCode = operation.dispatchOpCode;
+      concreteOperation.dispatchByteLength = byteLength;
+    } else {
+      GenericOperation genericOperation = operation.genericOperation;
+      concreteOperation.isSwitchDispatched = false;
+      concreteOperation.genericOperation = genericOperation;
+      for (int i = 0; i < operation.argValues.length; i++) {
+        concreteOperation.args.setArg(genericOperation.varIndex[i],
+                                      operation.argValues[i]);
+      }
+      concreteOperation.codeBytesFetcher.setCode(operation.address,
+                                                 byteLength);
+      concreteOperation.codeFetcher = concreteOperation.codeBytesFetcher;
+    }
+    return byteLength;
+  }
+
+  /**
+   * Fetches the operation at the current program counter from the
+   * translation cache, or decodes it and records it for translation.
+   * @return The length of the operation in bytes.
+   */
+  private int fetchTranslated(ConcreteOperation concreteOperation)
+    throws CPU.MismatchException
+  {
+    int address = regPC;
+    TranslatedBlock block = currentBlock;
+    if ((block != null) && block.valid) {
+      int index = currentBlockIndex + 1;
+      if ((index < block.operations.length) &&
+          (block.operations[index].address == address)) {
+        currentBlockIndex = index;
+        translationCacheHits++;
+        return load(concreteOperation, block.operations[index]);
+      }
+    }
+    block = translatedBlocks[address];
+    if (block != null) {
+      commitRecordedBlock();
+      currentBlock = block;
+      currentBlockIndex = 0;
+      translationCacheHits++;
+      return load(concreteOperation, block.operations[0]);
+    }
+    currentBlock = null;
+    translationCacheMisses++;
+    int byteLength = fetchDecoded(concreteOperation);
+    if (!recordedOperations.isEmpty()) {
+      TranslatedOperation last =
+        recordedOperations.get(recordedOperations.size() - 1);
+      if (((last.address + last.byteLength) & 0xffff) != address) {
+        // execution left the recorded run of operations
+        commitRecordedBlock();
+      }
+    }
+    TranslatedOperation operation = translate(concreteOperation);
+    recordedOperations.add(operation);
+    if (operation.isBranch ||
+        (recordedOperations.size() >= MAX_BLOCK_LENGTH)) {
+      commitRecordedBlock();
+    }
+    return byteLength;
+  }
+
   // *** ALU ******************************************************************
 
   // or mask for SET command
@@ -3782,10 +5933,14 @@ public class Z80 implements CPU {
     0xfe, 0xfd, 0xfb, 0xf7, 0xef, 0xdf, 0xbf, 0x7f
   };
 
-  private final static boolean[] PARITY;
+  /**
+   * Flags S, Z and PV for each 8 bit result, as set by the logical,
+   * rotate and shift operations.
+   */
+  private final static int[] FLAGS_SZP;
 
   static {
-    PARITY = new boolean[256];
+    FLAGS_SZP = new int[256];
     for (int i = 0; i < 256; i++) {
       int bit = 0;
       int value = i;
@@ -3793,26 +5948,27 @@ public class Z80 implements CPU {
 	bit ^= value & 0x1;
 	value >>= 1;
       }
-      PARITY[i] = bit == 0;
+      FLAGS_SZP[i] =
+        (i & FLAG_S) | ((i == 0x00) ? FLAG_Z : 0) | ((bit == 0) ? FLAG_PV : 0);
     }
   }
 
   private void reset() {
-    regAF.reset();
-    regBC.reset();
-    regDE.reset();
-    regHL.reset();
-    regIX.reset();
-    regIY.reset();
-    regI.reset();
-    regR.reset();
-    regSP.reset();
-    regPC.reset();
-    regAF_.reset();
-    regBC_.reset();
-    regDE_.reset();
-    regHL_.reset();
-    regIM.reset();
+    setAF(0x0000);
+    setBC(0x0000);
+    setDE(0x0000);
+    setHL(0x0000);
+    regIX = 0x0000;
+    regIY = 0x0000;
+    regI = 0x00;
+    regR = 0x00;
+    regSP = 0x0000;
+    regPC = 0x0000;
+    regAF_ = 0x0000;
+    regBC_ = 0x0000;
+    regDE_ = 0x0000;
+    regHL_ = 0x0000;
+    regIM = 0x0;
     intr_bus_data = 0x00;
     irq_requested = false;
     irq_to_be_enabled = false;
@@ -3826,26 +5982,39 @@ public class Z80 implements CPU {
       ((bitSum == 0x0) && ((bitOp1 | bitOp2) != 0x0));
   }
 
+  private int carry() {
+    return getF() & FLAG_C;
+  }
+
   private int doADC8OrSBC8(int op1, int op2, int carry, boolean isSubOp) {
+    int sum = op1 + op2 + carry;
+    regF &= FLAGS_X;
+    lazyOp1 = op1;
+    lazyOp2 = op2;
+    lazyResult = sum;
+    setLazyFlags(isSubOp ? LAZY_FLAGS_SUB8 : LAZY_FLAGS_ADD8);
+    return sum & 0xff;
+  }
+
+  private int getArith8Flags(int op1, int op2, int sum, boolean isSubOp) {
     int msb_op1 = op1 & 0x80;
     int msb_op2 = op2 & 0x80;
-    int sum = op1 + op2 + carry;
     boolean new_flag_h = halfCarry(op1 & 0x08, op2 & 0x08, sum & 0x08);
     boolean new_flag_c = (sum >= 0x100) ^ isSubOp;
     int msb_sum = sum & 0x80;
     boolean new_flag_v = (msb_op1 == msb_op2) && (msb_op1 != msb_sum);
     sum &= 0xff;
-    flagC.set(new_flag_c);
-    flagN.set(isSubOp);
-    flagPV.set(new_flag_v);
-    flagH.set(new_flag_h);
-    flagZ.set(sum == 0x00);
-    flagS.set(sum >= 0x80);
-    return sum;
+    return
+      (new_flag_c ? FLAG_C : 0) |
+      (isSubOp ? FLAG_N : 0) |
+      (new_flag_v ? FLAG_PV : 0) |
+      (new_flag_h ? FLAG_H : 0) |
+      ((sum == 0x00) ? FLAG_Z : 0) |
+      (sum & FLAG_S);
   }
 
   private int doADC8(int op1, int op2) {
-    return doADC8OrSBC8(op1, op2, flagC.get() ? 1 : 0, false);
+    return doADC8OrSBC8(op1, op2, carry(), false);
   }
 
   private int doADC16OrSBC16(int op1, int op2, int carry, boolean isSubOp) {
@@ -3857,12 +6026,13 @@ public class Z80 implements CPU {
     int msb_sum = sum & 0x8000;
     boolean new_flag_v = (msb_op1 == msb_op2) && (msb_op1 != msb_sum);
     sum &= 0xffff;
-    flagC.set(new_flag_c);
-    flagN.set(isSubOp);
-    flagPV.set(new_flag_v);
-    flagH.set(new_flag_h);
-    flagZ.set(sum == 0x0000);
-    flagS.set(sum >= 0x8000);
+    setF((regF & FLAGS_X) |
+         (new_flag_c ? FLAG_C : 0) |
+         (isSubOp ? FLAG_N : 0) |
+         (new_flag_v ? FLAG_PV : 0) |
+         (new_flag_h ? FLAG_H : 0) |
+         ((sum == 0x0000) ? FLAG_Z : 0) |
+         ((sum >>> 8) & FLAG_S));
     return sum;
   }
 
@@ -3871,17 +6041,19 @@ public class Z80 implements CPU {
     boolean new_flag_h = halfCarry(op1 & 0x0800, op2 & 0x0800, sum & 0x0800);
     boolean new_flag_c = (sum >= 0x10000) ^ carryIsBorrow;
     sum &= 0xffff;
-    flagC.set(new_flag_c);
-    flagN.set(carryIsBorrow);
-    // flagPV not affected
-    flagH.set(new_flag_h);
-    // flagZ not affected
-    // flagS not affected
+    regF =
+      (getF() & (FLAG_PV | FLAG_Z | FLAG_S | FLAGS_X)) |
+      (new_flag_c ? FLAG_C : 0) |
+      (carryIsBorrow ? FLAG_N : 0) |
+      // flagPV not affected
+      (new_flag_h ? FLAG_H : 0);
+      // flagZ not affected
+      // flagS not affected
     return sum;
   }
 
   private int doADC16(int op1, int op2) {
-    return doADC16OrSBC16(op1, op2, flagC.get() ? 1 : 0, false);
+    return doADC16OrSBC16(op1, op2, carry(), false);
   }
 
   private int doADD8(int op1, int op2) {
@@ -3892,44 +6064,44 @@ public class Z80 implements CPU {
     return doADD16OrSUB16(op1, op2, false);
   }
 
-  private void doAND(Reg8 reg, int op) {
-    int result = (reg.getValue() & op) & 0xff;
-    reg.setValue(result);
-    flagC.set(false);
-    flagN.set(false);
-    flagPV.set(PARITY[result]);
-    flagH.set(true);
-    flagZ.set(result == 0x00);
-    flagS.set(result >= 0x80);
+  private void doAND(int op) {
+    int result = (regA & op) & 0xff;
+    regA = result;
+    // flagC, flagN cleared
+    regF = (regF & FLAGS_X) | FLAG_H;
+    lazyResult = result;
+    setLazyFlags(LAZY_FLAGS_SZP);
   }
 
   private void doBIT(int op1, int op2) {
-    // flagC not affected
-    flagN.set(false);
-    // flagPV unknown
-    flagH.set(true);
-    flagZ.set((op1 & SET_MASK[op2 & 0x7]) == 0x00);
-    // flagS unknown
+    regF =
+      (getF() & (FLAG_C | FLAG_PV | FLAG_S | FLAGS_X)) |
+      // flagC not affected
+      // flagN cleared
+      // flagPV unknown
+      FLAG_H |
+      (((op1 & SET_MASK[op2 & 0x7]) == 0x00) ? FLAG_Z : 0);
+      // flagS unknown
   }
 
   private void doCCF() {
-    boolean savedFlagC = flagC.get();
-    flagC.set(!savedFlagC);
-    flagN.set(false);
-    // flagPV not affected
-    flagH.set(savedFlagC);
-    // flagZ not affected
-    // flagS not affected
+    int savedFlagC = getF() & FLAG_C;
+    regF =
+      (getF() & (FLAG_PV | FLAG_Z | FLAG_S | FLAGS_X)) |
+      ((savedFlagC != 0) ? FLAG_H : FLAG_C);
+      // flagN cleared
+      // flagPV not affected
+      // flagZ not affected
+      // flagS not affected
   }
 
-  private void doCPL(Reg8 reg) {
-    reg.setValue(reg.getValue() ^ 0xff);
+  private void doCPL() {
+    regA ^= 0xff;
     // flagC not affected
-    flagN.set(true);
     // flagPV not affected
-    flagH.set(true);
     // flagZ not affected
     // flagS not affected
+    regF = getF() | FLAG_N | FLAG_H;
   }
 
   private void doCP(int op1, int op2) {
@@ -3937,58 +6109,56 @@ public class Z80 implements CPU {
   }
 
   private void doCPD() {
-    boolean savedFlagC = flagC.get();
-    doCP(regA.getValue(), indirectRegHL.getValue());
-    regHL.decrement();
-    regBC.decrement();
-    flagC.set(savedFlagC);
-    // flag N set by doCP()
-    flagPV.set(((regBC.getValue() + 0xffff) & 0xffff) != 0x0);
-    // flag H set by doCP()
-    // flag Z set by doCP()
-    // flag S set by doCP()
+    int savedFlagC = getF() & FLAG_C;
+    doCP(regA, readMemoryByte(getHL()));
+    setHL(getHL() - 1);
+    setBC(getBC() - 1);
+    // flag N, H, Z, S set by doCP()
+    regF =
+      (getF() & (FLAG_N | FLAG_H | FLAG_Z | FLAG_S | FLAGS_X)) |
+      savedFlagC |
+      ((((getBC() + 0xffff) & 0xffff) != 0x0) ? FLAG_PV : 0);
   }
 
   private void doCPI() {
-    boolean savedFlagC = flagC.get();
-    doCP(regA.getValue(), indirectRegHL.getValue());
-    regHL.increment();
-    regBC.decrement();
-    flagC.set(savedFlagC);
-    // flag N set by doCP()
-    flagPV.set(((regBC.getValue() + 0xffff) & 0xffff) != 0x0);
-    // flag H set by doCP()
-    // flag Z set by doCP()
-    // flag S set by doCP()
-  }
-
-  private void doDAA(Reg8 reg) {
+    int savedFlagC = getF() & FLAG_C;
+    doCP(regA, readMemoryByte(getHL()));
+    setHL(getHL() + 1);
+    setBC(getBC() - 1);
+    // flag N, H, Z, S set by doCP()
+    regF =
+      (getF() & (FLAG_N | FLAG_H | FLAG_Z | FLAG_S | FLAGS_X)) |
+      savedFlagC |
+      ((((getBC() + 0xffff) & 0xffff) != 0x0) ? FLAG_PV : 0);
+  }
+
+  private void doDAA() {
     // TODO: This is an 8080-style implementation of DAA.  The full
     // Z80-style implementation needs also considerating the processor
     // status "N" flag.
-    int op = reg.getValue();
+    int op = regA;
     boolean new_flag_h;
     if ((op & 0x0f) > 0x09) {
       op += 0x06;
       new_flag_h = true;
-    } else if (flagH.get()) {
+    } else if ((getF() & FLAG_H) != 0) {
       op += 0x06;
       new_flag_h = false;
     } else {
       new_flag_h = false;
     }
-    if (((op & 0xf0) > 0x90) || flagC.get())  {
+    if (((op & 0xf0) > 0x90) || ((getF() & FLAG_C) != 0))  {
       op += 0x60;
     }
     boolean new_flag_c = op >= 0x100;
     op &= 0xff;
-    flagC.set(new_flag_c);
-    // flagN not affected
-    flagPV.set(PARITY[op]);
-    flagH.set(new_flag_h);
-    flagZ.set(op == 0x00);
-    flagS.set(op >= 0x80);
-    reg.setValue(op);
+    regF =
+      (getF() & (FLAG_N | FLAGS_X)) |
+      // flagN not affected
+      FLAGS_SZP[op] |
+      (new_flag_h ? FLAG_H : 0) |
+      (new_flag_c ? FLAG_C : 0);
+    regA = op;
   }
 
   private void doDEC16(Reg16 reg) {
@@ -4001,15 +6171,13 @@ public class Z80 implements CPU {
     // flagS not affected
   }
 
-  private void doDEC8(Reg8 reg) {
-    reg.decrement();
-    int op = reg.getValue();
+  private int doDEC8(int op) {
+    op = (op - 1) & 0xff;
     // flagC not affected
-    flagN.set(true);
-    flagPV.set(op == 0x7f);
-    flagH.set((op & 0xf) == 0xf);
-    flagZ.set(op == 0x00);
-    flagS.set(op >= 0x80);
+    regF = getF() & (FLAG_C | FLAGS_X);
+    lazyResult = op;
+    setLazyFlags(LAZY_FLAGS_DEC8);
+    return op;
   }
 
   private void doINC16(Reg16 reg) {
@@ -4022,112 +6190,114 @@ public class Z80 implements CPU {
     // flagS not affected
   }
 
-  private void doINC8(Reg8 reg) {
-    reg.increment();
-    int op = reg.getValue();
+  private int doINC8(int op) {
+    op = (op + 1) & 0xff;
     // flagC not affected
-    flagN.set(false);
-    flagPV.set(op == 0x80);
-    flagH.set((op & 0xf) == 0x0);
-    flagZ.set(op == 0x00);
-    flagS.set(op >= 0x80);
+    regF = getF() & (FLAG_C | FLAGS_X);
+    lazyResult = op;
+    setLazyFlags(LAZY_FLAGS_INC8);
+    return op;
   }
 
   private int doIN(int op) {
     int result = io.readByte(op, wallClockTime) & 0xff;
     // flagC not affected
-    flagN.set(false);
-    flagPV.set(PARITY[result]);
-    flagH.set(false);
-    flagZ.set(result == 0x00);
-    flagS.set(result >= 0x80);
+    // flagN, flagH cleared
+    regF = (getF() & (FLAG_C | FLAGS_X)) | FLAGS_SZP[result];
     return result;
   }
 
   private void doIND() {
-    indirectRegHL.setValue(io.readByte(regBC.getValue(), wallClockTime));
-    regB.decrement();
-    regHL.decrement();
+    writeMemoryByte(getHL(), io.readByte(getBC(), wallClockTime));
+    regB = (regB - 1) & 0xff;
+    setHL(getHL() - 1);
     // flagC not affected
-    flagN.set(true);
     // flagPV unknown
     // flagH unknown
-    flagZ.set(regB.getValue() == 0x00);
     // flagS unknown
+    regF =
+      (getF() & (FLAG_C | FLAG_PV | FLAG_H | FLAG_S | FLAGS_X)) |
+      FLAG_N |
+      ((regB == 0x00) ? FLAG_Z : 0);
   }
 
   private void doINI() {
-    indirectRegHL.setValue(io.readByte(regBC.getValue(), wallClockTime));
-    regB.decrement();
-    regHL.increment();
+    writeMemoryByte(getHL(), io.readByte(getBC(), wallClockTime));
+    regB = (regB - 1) & 0xff;
+    setHL(getHL() + 1);
     // flagC not affected
-    flagN.set(true);
     // flagPV unknown
     // flagH unknown
-    flagZ.set(regB.getValue() == 0x00);
     // flagS unknown
+    regF =
+      (getF() & (FLAG_C | FLAG_PV | FLAG_H | FLAG_S | FLAGS_X)) |
+      FLAG_N |
+      ((regB == 0x00) ? FLAG_Z : 0);
   }
 
   private void doLDAI() {
-    int op = regI.getValue();
-    regA.setValue(op);
+    int op = regI;
+    regA = op;
     // flagC not affected
-    flagN.set(false);
-    flagPV.set(irq_enabled); // TODO: irq_enabled != IFF2
-    flagH.set(false);
-    flagZ.set(op == 0x00);
-    flagS.set(op >= 0x80);
+    // flagN, flagH cleared
+    regF =
+      (getF() & (FLAG_C | FLAGS_X)) |
+      (irq_enabled ? FLAG_PV : 0) | // TODO: irq_enabled != IFF2
+      ((op == 0x00) ? FLAG_Z : 0) |
+      (op & FLAG_S);
   }
 
   private void doLDAR() {
-    int op = regR.getValue();
-    regA.setValue(op);
+    int op = regR;
+    regA = op;
     // flagC not affected
-    flagN.set(false);
-    flagPV.set(irq_enabled); // TODO: irq_enabled != IFF2
-    flagH.set(false);
-    flagZ.set(op == 0x00);
-    flagS.set(op >= 0x80);
+    // flagN, flagH cleared
+    regF =
+      (getF() & (FLAG_C | FLAGS_X)) |
+      (irq_enabled ? FLAG_PV : 0) | // TODO: irq_enabled != IFF2
+      ((op == 0x00) ? FLAG_Z : 0) |
+      (op & FLAG_S);
   }
 
   private void doLDD() {
-    memory.writeByte(regDE.getValue(), indirectRegHL.getValue(),
-                     wallClockTime);
-    regDE.decrement();
-    regHL.decrement();
-    regBC.decrement();
+    writeMemoryByte(getDE(), readMemoryByte(getHL()));
+    setDE(getDE() - 1);
+    setHL(getHL() - 1);
+    setBC(getBC() - 1);
     // flagC not affected
-    flagN.set(false);
-    flagPV.set(regBC.getValue() != 0x0000);
-    flagH.set(false);
+    // flagN, flagH cleared
     // flagZ not affected
     // flagS not affected
+    regF =
+      (getF() & (FLAG_C | FLAG_Z | FLAG_S | FLAGS_X)) |
+      ((getBC() != 0x0000) ? FLAG_PV : 0);
   }
 
   private void doLDI() {
-    memory.writeByte(regDE.getValue(), indirectRegHL.getValue(),
-                     wallClockTime);
-    regDE.increment();
-    regHL.increment();
-    regBC.decrement();
+    writeMemoryByte(getDE(), readMemoryByte(getHL()));
+    setDE(getDE() + 1);
+    setHL(getHL() + 1);
+    setBC(getBC() - 1);
     // flagC not affected
-    flagN.set(false);
-    flagPV.set(regBC.getValue() != 0x0000);
-    flagH.set(false);
+    // flagN, flagH cleared
     // flagZ not affected
     // flagS not affected
+    regF =
+      (getF() & (FLAG_C | FLAG_Z | FLAG_S | FLAGS_X)) |
+      ((getBC() != 0x0000) ? FLAG_PV : 0);
   }
 
-  private void doNEG(Reg8 reg) {
-    int op = reg.getValue();
+  private void doNEG() {
+    int op = regA;
     int neg = 0x100 - op;
-    reg.setValue(neg);
-    flagC.set(op == 0x00);
-    flagN.set(true);
-    flagPV.set(op == 0x80);
-    flagH.set((op & 0x0f) != 0x00);
-    flagZ.set(neg == 0x00);
-    flagS.set(neg >= 0x80);
+    regA = neg & 0xff;
+    setF((regF & FLAGS_X) |
+         ((op == 0x00) ? FLAG_C : 0) |
+         FLAG_N |
+         ((op == 0x80) ? FLAG_PV : 0) |
+         (((op & 0x0f) != 0x00) ? FLAG_H : 0) |
+         ((neg == 0x00) ? FLAG_Z : 0) |
+         ((neg >= 0x80) ? FLAG_S : 0));
   }
 
   private void doNOP() {
@@ -4139,269 +6309,234 @@ public class Z80 implements CPU {
     // flagS not affected
   }
 
-  private void doOR(Reg8 reg, int op) {
-    int result = (reg.getValue() | op) & 0xff;
-    reg.setValue(result);
-    flagC.set(false);
-    flagN.set(false);
-    flagPV.set(PARITY[result]);
-    flagH.set(false);
-    flagZ.set(result == 0x00);
-    flagS.set(result >= 0x80);
+  private void doOR(int op) {
+    int result = (regA | op) & 0xff;
+    regA = result;
+    // flagC, flagN, flagH cleared
+    regF = (regF & FLAGS_X);
+    lazyResult = result;
+    setLazyFlags(LAZY_FLAGS_SZP);
   }
 
   private void doOUTD() {
-    int value = indirectRegHL.getValue();
-    regB.decrement();
-    io.writeByte(regBC.getValue(), value, wallClockTime);
-    regHL.decrement();
+    int value = readMemoryByte(getHL());
+    regB = (regB - 1) & 0xff;
+    io.writeByte(getBC(), value, wallClockTime);
+    setHL(getHL() - 1);
     // flagC not affected
-    flagN.set(true);
     // flagPV unknown
     // flagH unknown
-    flagZ.set(regB.getValue() == 0x00);
     // flagS unknown
+    regF =
+      (getF() & (FLAG_C | FLAG_PV | FLAG_H | FLAG_S | FLAGS_X)) |
+      FLAG_N |
+      ((regB == 0x00) ? FLAG_Z : 0);
   }
 
   private void doOUTI() {
-    int value = indirectRegHL.getValue();
-    regB.decrement();
-    io.writeByte(regBC.getValue(), value, wallClockTime);
-    regHL.increment();
+    int value = readMemoryByte(getHL());
+    regB = (regB - 1) & 0xff;
+    io.writeByte(getBC(), value, wallClockTime);
+    setHL(getHL() + 1);
     // flagC not affected
-    flagN.set(true);
     // flagPV unknown
     // flagH unknown
-    flagZ.set(regB.getValue() == 0x00);
     // flagS unknown
+    regF =
+      (getF() & (FLAG_C | FLAG_PV | FLAG_H | FLAG_S | FLAGS_X)) |
+      FLAG_N |
+      ((regB == 0x00) ? FLAG_Z : 0);
   }
 
   public int doPOP() {
-    int value = memory.readShort(regSP.getValue(), wallClockTime);
-    regSP.setValue((regSP.getValue() + 0x0002) & 0xffff);
+    int value = readMemoryShort(regSP);
+    regSP = (regSP + 0x0002) & 0xffff;
     return value;
   }
 
   public void doPUSH(int op) {
-    regSP.setValue((regSP.getValue() + 0xfffe) & 0xffff);
-    memory.writeShort(regSP.getValue(), op, wallClockTime);
+    regSP = (regSP + 0xfffe) & 0xffff;
+    writeMemoryShort(regSP, op);
   }
 
-  private void doRES(Reg8 reg, int op) {
-    reg.setValue(reg.getValue() & RES_MASK[op & 0x7]);
-    // flagC not affected
-    // flagN not affected
-    // flagPV not affected
-    // flagH not affected
-    // flagZ not affected
-    // flagS not affected
+  private int doRES(int op, int bit) {
+    // no flags affected
+    return op & RES_MASK[bit & 0x7];
   }
 
-  private void doRL(Reg8 reg) {
-    int op = reg.getValue();
-    boolean new_flag_c = (op >= 0x80);
+  private int doRL(int op) {
+    int new_flag_c = (op >= 0x80) ? FLAG_C : 0;
     op <<= 1; op &= 0xff;
-    if (flagC.get()) op |= 0x1;
-    reg.setValue(op);
-    flagC.set(new_flag_c);
-    flagN.set(false);
-    flagPV.set(PARITY[op]);
-    flagH.set(false);
-    flagZ.set(op == 0x00);
-    flagS.set(op >= 0x80);
-  }
-
-  private void doRLA(Reg8 reg) {
-    int op = reg.getValue();
-    boolean new_flag_c = (op >= 0x80);
+    if ((getF() & FLAG_C) != 0) op |= 0x1;
+    // flagN, flagH cleared
+    regF = (regF & FLAGS_X) | new_flag_c;
+    lazyResult = op;
+    setLazyFlags(LAZY_FLAGS_SZP);
+    return op;
+  }
+
+  private void doRLA() {
+    int op = regA;
+    int new_flag_c = (op >= 0x80) ? FLAG_C : 0;
     op <<= 1; op &= 0xff;
-    if (flagC.get()) op |= 0x1;
-    reg.setValue(op);
-    flagC.set(new_flag_c);
-    flagN.set(false);
+    if ((getF() & FLAG_C) != 0) op |= 0x1;
+    regA = op;
+    // flagN, flagH cleared
     // flagPV not affected
-    flagH.set(false);
     // flagZ not affected
     // flagS not affected
+    regF = (getF() & (FLAG_PV | FLAG_Z | FLAG_S | FLAGS_X)) | new_flag_c;
   }
 
-  private void doRLC(Reg8 reg) {
-    int op = reg.getValue();
+  private int doRLC(int op) {
     boolean new_flag_c = op >= 0x80;
     op <<= 1; op &= 0xff;
     if (new_flag_c) op |= 0x1;
-    reg.setValue(op);
-    flagC.set(new_flag_c);
-    flagN.set(false);
-    flagPV.set(PARITY[op]);
-    flagH.set(false);
-    flagZ.set(op == 0x00);
-    flagS.set(op >= 0x80);
+    // flagN, flagH cleared
+    regF = (regF & FLAGS_X) | (new_flag_c ? FLAG_C : 0);
+    lazyResult = op;
+    setLazyFlags(LAZY_FLAGS_SZP);
+    return op;
   }
 
-  private void doRLCA(Reg8 reg) {
-    int op = reg.getValue();
+  private void doRLCA() {
+    int op = regA;
     boolean new_flag_c = op >= 0x80;
     op <<= 1; op &= 0xff;
     if (new_flag_c) op |= 0x1;
-    reg.setValue(op);
-    flagC.set(new_flag_c);
-    flagN.set(false);
+    regA = op;
+    // flagN, flagH cleared
     // flagPV not affected
-    flagH.set(false);
     // flagZ not affected
     // flagS not affected
+    regF =
+      (getF() & (FLAG_PV | FLAG_Z | FLAG_S | FLAGS_X)) |
+      (new_flag_c ? FLAG_C : 0);
   }
 
-  private void doRLD(Reg8 reg) {
-    int regValue = reg.getValue();
-    int regAValue = regA.getValue();
-    reg.setValue(((regValue << 4) & 0xf0) | (regAValue & 0x0f));
+  private void doRLD() {
+    int address = getHL();
+    int regValue = readMemoryByte(address);
+    int regAValue = regA;
+    writeMemoryByte(address, ((regValue << 4) & 0xf0) | (regAValue & 0x0f));
     regAValue = (regAValue & 0xf0) | ((regValue >>> 4) & 0x0f);
-    regA.setValue(regAValue);
+    regA = regAValue;
     // flagC not affected
-    flagN.set(false);
-    flagPV.set(PARITY[regAValue]);
-    flagH.set(false);
-    flagZ.set(regAValue == 0x00);
-    flagS.set(regAValue >= 0x80);
+    // flagN, flagH cleared
+    regF = (getF() & (FLAG_C | FLAGS_X)) | FLAGS_SZP[regAValue];
   }
 
-  private void doRR(Reg8 reg) {
-    int op = reg.getValue();
-    boolean new_flag_c = (op & 0x01) == 1;
+  private int doRR(int op) {
+    int new_flag_c = op & 0x01;
     op >>>= 1;
-    if (flagC.get()) op |= 0x80;
-    reg.setValue(op);
-    flagC.set(new_flag_c);
-    flagN.set(false);
-    flagPV.set(PARITY[op]);
-    flagH.set(false);
-    flagZ.set(op == 0x00);
-    flagS.set(op >= 0x80);
-  }
-
-  private void doRRA(Reg8 reg) {
-    int op = reg.getValue();
-    boolean new_flag_c = (op & 0x01) == 1;
+    if ((getF() & FLAG_C) != 0) op |= 0x80;
+    // flagN, flagH cleared
+    regF = (regF & FLAGS_X) | new_flag_c;
+    lazyResult = op;
+    setLazyFlags(LAZY_FLAGS_SZP);
+    return op;
+  }
+
+  private void doRRA() {
+    int op = regA;
+    int new_flag_c = op & 0x01;
     op >>>= 1;
-    if (flagC.get()) op |= 0x80;
-    reg.setValue(op);
-    flagC.set(new_flag_c);
-    flagN.set(false);
+    if ((getF() & FLAG_C) != 0) op |= 0x80;
+    regA = op;
+    // flagN, flagH cleared
     // flagPV not affected
-    flagH.set(false);
     // flagZ not affected
     // flagS not affected
+    regF = (getF() & (FLAG_PV | FLAG_Z | FLAG_S | FLAGS_X)) | new_flag_c;
   }
 
-  private void doRRC(Reg8 reg) {
-    int op = reg.getValue();
-    boolean new_flag_c = (op & 0x01) == 1;
+  private int doRRC(int op) {
+    int new_flag_c = op & 0x01;
     op >>>= 1;
-    if (new_flag_c) op |= 0x80;
-    reg.setValue(op);
-    flagC.set(new_flag_c);
-    flagN.set(false);
-    flagPV.set(PARITY[op]);
-    flagH.set(false);
-    flagZ.set(op == 0x00);
-    flagS.set(op >= 0x80);
-  }
-
-  private void doRRCA(Reg8 reg) {
-    int op = reg.getValue();
-    boolean new_flag_c = (op & 0x01) == 1;
+    if (new_flag_c != 0) op |= 0x80;
+    // flagN, flagH cleared
+    regF = (regF & FLAGS_X) | new_flag_c;
+    lazyResult = op;
+    setLazyFlags(LAZY_FLAGS_SZP);
+    return op;
+  }
+
+  private void doRRCA() {
+    int op = regA;
+    int new_flag_c = op & 0x01;
     op >>>= 1;
-    if (new_flag_c) op |= 0x80;
-    reg.setValue(op);
-    flagC.set(new_flag_c);
-    flagN.set(false);
+    if (new_flag_c != 0) op |= 0x80;
+    regA = op;
+    // flagN, flagH cleared
     // flagPV not affected
-    flagH.set(false);
     // flagZ not affected
     // flagS not affected
+    regF = (getF() & (FLAG_PV | FLAG_Z | FLAG_S | FLAGS_X)) | new_flag_c;
   }
 
-  private void doRRD(Reg8 reg) {
-    int regValue = reg.getValue();
-    int regAValue = regA.getValue();
-    reg.setValue(((regAValue << 4) & 0xf0) | ((regValue >>> 4) & 0x0f));
+  private void doRRD() {
+    int address = getHL();
+    int regValue = readMemoryByte(address);
+    int regAValue = regA;
+    writeMemoryByte(address,
+                    ((regAValue << 4) & 0xf0) | ((regValue >>> 4) & 0x0f));
     regAValue = (regAValue & 0xf0) | (regValue & 0x0f);
-    regA.setValue(regAValue);
+    regA = regAValue;
     // flagC not affected
-    flagN.set(false);
-    flagPV.set(PARITY[regAValue]);
-    flagH.set(false);
-    flagZ.set(regAValue == 0x00);
-    flagS.set(regAValue >= 0x80);
+    // flagN, flagH cleared
+    regF = (getF() & (FLAG_C | FLAGS_X)) | FLAGS_SZP[regAValue];
   }
 
   private int doSBC8(int op1, int op2) {
-    return doADC8OrSBC8(op1, 0x100 - op2, flagC.get() ? -1 : 0, true);
+    return doADC8OrSBC8(op1, 0x100 - op2, -carry(), true);
   }
 
   private int doSBC16(int op1, int op2) {
-    return doADC16OrSBC16(op1, 0x10000 - op2, flagC.get() ? -1 : 0, true);
+    return doADC16OrSBC16(op1, 0x10000 - op2, -carry(), true);
   }
 
   private void doSCF() {
-    flagC.set(true);
-    flagN.set(false);
+    // flagN, flagH cleared
     // flagPV not affected
-    flagH.set(false);
     // flagZ not affected
     // flagS not affected
+    regF = (getF() & (FLAG_PV | FLAG_Z | FLAG_S | FLAGS_X)) | FLAG_C;
   }
 
-  private void doSET(Reg8 reg, int op) {
-    reg.setValue(reg.getValue() | SET_MASK[op & 0x7]);
-    // flagC not affected
-    // flagN not affected
-    // flagPV not affected
-    // flagH not affected
-    // flagZ not affected
-    // flagS not affected
+  private int doSET(int op, int bit) {
+    // no flags affected
+    return op | SET_MASK[bit & 0x7];
   }
 
-  private void doSLA(Reg8 reg) {
-    int op = reg.getValue();
+  private int doSLA(int op) {
     boolean new_flag_c = op >= 0x80;
     op <<= 1; op &= 0xff;
-    reg.setValue(op);
-    flagC.set(new_flag_c);
-    flagN.set(false);
-    flagPV.set(PARITY[op]);
-    flagH.set(false);
-    flagZ.set(op == 0x00);
-    flagS.set(op >= 0x80);
-  }
-
-  private void doSRA(Reg8 reg) {
-    int op = reg.getValue();
-    boolean new_flag_c = (op & 0x01) == 1;
+    // flagN, flagH cleared
+    regF = (regF & FLAGS_X) | (new_flag_c ? FLAG_C : 0);
+    lazyResult = op;
+    setLazyFlags(LAZY_FLAGS_SZP);
+    return op;
+  }
+
+  private int doSRA(int op) {
+    int new_flag_c = op & 0x01;
     op >>>= 1;
     if ((op & 0x40) == 0x1) op |= 0x80;
-    reg.setValue(op);
-    flagC.set(new_flag_c);
-    flagN.set(false);
-    flagPV.set(PARITY[op]);
-    flagH.set(false);
-    flagZ.set(op == 0x00);
-    flagS.set(op >= 0x80);
-  }
-
-  private void doSRL(Reg8 reg) {
-    int op = reg.getValue();
-    boolean new_flag_c = (op & 0x01) == 1;
+    // flagN, flagH cleared
+    regF = (regF & FLAGS_X) | new_flag_c;
+    lazyResult = op;
+    setLazyFlags(LAZY_FLAGS_SZP);
+    return op;
+  }
+
+  private int doSRL(int op) {
+    int new_flag_c = op & 0x01;
     op >>>= 1;
-    reg.setValue(op);
-    flagC.set(new_flag_c);
-    flagN.set(false);
-    flagPV.set(PARITY[op]);
-    flagH.set(false);
-    flagZ.set(op == 0x00);
-    flagS.set(op >= 0x80);
+    // flagN, flagH cleared
+    regF = (regF & FLAGS_X) | new_flag_c;
+    lazyResult = op;
+    setLazyFlags(LAZY_FLAGS_SZP);
+    return op;
   }
 
   private int doSUB8(int op1, int op2) {
@@ -4413,15 +6548,13 @@ public class Z80 implements CPU {
     return doADC16OrSBC16(op1, 0x10000 - op2, 0, true);
   }
 
-  private void doXOR(Reg8 reg, int op) {
-    int result = (reg.getValue() ^ op) & 0xff;
-    reg.setValue(result);
-    flagC.set(false);
-    flagN.set(false);
-    flagPV.set(PARITY[result]);
-    flagH.set(false);
-    flagZ.set(result == 0x00);
-    flagS.set(result >= 0x80);
+  private void doXOR(int op) {
+    int result = (regA ^ op) & 0xff;
+    regA = result;
+    // flagC, flagN, flagH cleared
+    regF = (regF & FLAGS_X);
+    lazyResult = result;
+    setLazyFlags(LAZY_FLAGS_SZP);
   }
 
   // *** INSTRUCTION FETCH/DECODE/EXECUTION UNIT ******************************
@@ -4431,13 +6564,12 @@ public class Z80 implements CPU {
   public ConcreteOperation fetchNextOperation() throws CPU.MismatchException {
     // TODO: Emulate Z80's IFF1 and IFF2 flip-flops in order to
     // correctly handle NMIs.
-    final long systemNanoTime = System.nanoTime();
     boolean workPending = false;
     do {
       if (nmi_requested) {
 	nmi_requested = false;
-	doPUSH(regPC.getValue());
-	regPC.setValue(0x0066);
+	doPUSH(regPC);
+	regPC = 0x0066;
         if (irq_to_be_enabled) {
           irq_enabled = true;
           irq_to_be_enabled = false;
@@ -4445,7 +6577,7 @@ public class Z80 implements CPU {
 	workPending = true;
       } else if (irq_requested && irq_enabled) {
         irq_enabled = false;
-	switch (regIM.getValue()) {
+	switch (regIM) {
 	  case INTR_MODE_0 :
 	    intrBusDataFetcher.setIntrBusData(intr_bus_data);
 	    decode(concreteOperation, intrBusDataFetcher, true);
@@ -4454,23 +6586,26 @@ public class Z80 implements CPU {
 	    workPending = false;
 	    break;
 	  case INTR_MODE_1 :
-            doPUSH(regPC.getValue());
-	    regPC.setValue(0x0038);
+            doPUSH(regPC);
+	    regPC = 0x0038;
 	    workPending = true;
 	    break;
 	  case INTR_MODE_2 :
-            doPUSH(regPC.getValue());
+            doPUSH(regPC);
 	    int vectorTableAddr =
-	      (regI.getValue() << 8) | (intr_bus_data & 0xfe);
-	    regPC.setValue(memory.readShort(vectorTableAddr, wallClockTime));
+	      (regI << 8) | (intr_bus_data & 0xfe);
+	    regPC = readMemoryShort(vectorTableAddr);
 	    workPending = true;
 	    break;
 	  default :
 	    throw new InternalError("illegal interrupt mode");
 	}
       } else {
-	int opCodeLength = decode(concreteOperation, memoryCodeFetcher, false);
-	regPC.setValue((regPC.getValue() + opCodeLength) & 0xffff);
+	int opCodeLength =
+          translationCacheEnabled ?
+          fetchTranslated(concreteOperation) :
+          fetchDecoded(concreteOperation);
+	regPC = (regPC + opCodeLength) & 0xffff;
         if (irq_to_be_enabled) {
           irq_enabled = true;
           irq_to_be_enabled = false;
@@ -4478,20 +6613,32 @@ public class Z80 implements CPU {
         workPending = false;
       }
     } while (workPending);
-    concreteOperation.setSystemNanoTime(systemNanoTime);
     return concreteOperation;
   }
 
+  /**
+   * Fetches the operation at the current program counter with the
+   * currently selected engine.
+   * @return The length of the operation in bytes.
+   */
+  private int fetchDecoded(ConcreteOperation concreteOperation)
+    throws CPU.MismatchException
+  {
+    return
+      switchDispatchEnabled ?
+      fetchSwitchDispatched(concreteOperation) :
+      decode(concreteOperation, memoryCodeFetcher, false);
+  }
+
   public ConcreteOperation fetchNextOperationNoInterrupts()
     throws CPU.MismatchException
   {
     int opCodeLength = decode(concreteOperation, memoryCodeFetcher, false);
-    regPC.setValue((regPC.getValue() + opCodeLength) & 0xffff);
+    regPC = (regPC + opCodeLength) & 0xffff;
     return concreteOperation;
   }
 
   private CPU.Memory memory, io;
-  private List<WallClockListener> wallClockListeners;
   private Annotations annotations;
 
   public Annotations getAnnotations() { return annotations; }
@@ -4500,7 +6647,7 @@ public class Z80 implements CPU {
 
   public CPU.Memory getIO() { return io; }
 
-  public String getProgramCounterName() { return regPC.getName(); }
+  public String getProgramCounterName() { return regPCView.getName(); }
 
   public void resyncPeripherals() {
     io.resync(wallClockTime);
@@ -4513,6 +6660,18 @@ public class Z80 implements CPU {
   }
 
   public Z80(CPU.Memory memory, CPU.Memory io) {
+    this(memory, io, UserPreferences.getInstance().getSwitchDispatch());
+    setLazyFlagsEnabled(UserPreferences.getInstance().getLazyFlags());
+    setTranslationCacheEnabled(UserPreferences.getInstance().
+                               getTranslationCache());
+  }
+
+  /**
+   * @param switchDispatch If true, operations are executed by the
+   * switch dispatch engine rather than via the generic operations of
+   * the decode table.
+   */
+  public Z80(CPU.Memory memory, CPU.Memory io, boolean switchDispatch) {
     System.out.println("initializing Z80:");
     this.memory = memory;
     this.io = io;
@@ -4527,57 +6686,275 @@ public class Z80 implements CPU {
     System.out.println("setting up instruction set...");
     for (int i = 0; i < OPERATION_SET.length; i++) {
       OPERATION_SET[i].init();
+      OPERATION_SET[i].index = i;
     }
     System.out.println("setting up decode table...");
-    decodeTable = new DecodeTable(OPERATION_SET, new int[0]);
+    createDecodeTable();
+    System.out.println("setting up dispatch tables...");
+    createDispatchTables();
+    switchDispatchEnabled = switchDispatch;
     System.out.println("setting up processor interface...");
-    memoryCodeFetcher = new MemoryCodeFetcher(memory, regPC);
+    memoryCodeFetcher = new MemoryCodeFetcher(memory);
+    createDirectMemoryAccess();
+    System.out.println("setting up translation cache...");
+    createTranslationCache();
     intrBusDataFetcher = new IntrBusDataFetcher();
-    wallClockListeners = new ArrayList<WallClockListener>();
     System.out.println("resetting processor status...");
     reset();
     UserPreferences.getInstance().addListener(this);
+    createStatistics();
+    createProfiler();
     System.out.println("Z80 initialized.");
   }
 
-  private long prevSystemNanoTime;
-  private long prevWallClockTime;
-  private double avgJitterNanoTime;
-  private double avgSpeed;
-  private double avgThreadLoad;
+  /**
+   * Unregisters the CPU from the user preferences and releases the
+   * translation cache.  To be called when the CPU is no longer used,
+   * e.g. for a forked headless machine; otherwise, the user
+   * preferences keep it reachable.
+   */
+  public void dispose() {
+    UserPreferences.getInstance().removeListener(this);
+    setTranslationCacheEnabled(false);
+  }
+
+  // *** PROCESSOR STATE *****************************************************
+
+  /**
+   * Writes the complete processor state, i.e. all registers, the
+   * interrupt state and the wall clock, in binary form.  Must be
+   * called between two instructions, i.e. from the CPU thread or
+   * while the CPU is stopped.
+   */
+  public void writeState(DataOutputStream out) throws IOException {
+    out.writeShort(getAF());
+    out.writeShort(getBC());
+    out.writeShort(getDE());
+    out.writeShort(getHL());
+    out.writeShort(regIX);
+    out.writeShort(regIY);
+    out.writeByte(regI);
+    out.writeByte(regR);
+    out.writeShort(regSP);
+    out.writeShort(regPC);
+    out.writeShort(regAF_);
+    out.writeShort(regBC_);
+    out.writeShort(regDE_);
+    out.writeShort(regHL_);
+    out.writeByte(regIM);
+    out.writeByte(intr_bus_data);
+    out.writeBoolean(irq_requested);
+    out.writeBoolean(irq_to_be_enabled);
+    out.writeBoolean(irq_enabled);
+    out.writeBoolean(nmi_requested);
+    out.writeLong(wallClockCycles);
+    out.writeLong(wallClockTime);
+  }
+
+  /**
+   * Restores the processor state from its binary form as written by
+   * writeState().  Must be called between two instructions, i.e. from
+   * the CPU thread or while the CPU is stopped.  Since the wall clock
+   * may jump, all devices with pending events are called back at the
+   * end of the next instruction, such that they can reschedule.
+   */
+  public void readState(DataInputStream in) throws IOException {
+    setAF(in.readUnsignedShort());
+    setBC(in.readUnsignedShort());
+    setDE(in.readUnsignedShort());
+    setHL(in.readUnsignedShort());
+    regIX = in.readUnsignedShort();
+    regIY = in.readUnsignedShort();
+    regI = in.readUnsignedByte();
+    regR = in.readUnsignedByte();
+    regSP = in.readUnsignedShort();
+    regPC = in.readUnsignedShort();
+    regAF_ = in.readUnsignedShort();
+    regBC_ = in.readUnsignedShort();
+    regDE_ = in.readUnsignedShort();
+    regHL_ = in.readUnsignedShort();
+    int im = in.readUnsignedByte();
+    if (im > INTR_MODE_2) {
+      throw new IOException("invalid interrupt mode: " + im);
+    }
+    regIM = im;
+    intr_bus_data = in.readUnsignedByte();
+    irq_requested = in.readBoolean();
+    irq_to_be_enabled = in.readBoolean();
+    irq_enabled = in.readBoolean();
+    nmi_requested = in.readBoolean();
+    long cycles = in.readLong();
+    long time = in.readLong();
+    if ((cycles < 0) || (time < 0)) {
+      throw new IOException("invalid wall clock");
+    }
+    wallClockCycles = cycles;
+    wallClockTime = time;
+    flushTranslationCache();
+    eventScheduler.requestReschedule();
+  }
+
+  // *** PROFILING ************************************************************
+
+  private Profiler profiler;
+  private volatile boolean profilingEnabled;
+
+  private void createProfiler()
+  {
+    // the profile's counters are allocated upon first enabling
+    profiler = null;
+    profilingEnabled = false;
+  }
+
+  private Profiler allocateProfiler()
+  {
+    final String[] operationNames = new String[OPERATION_SET.length];
+    for (int i = 0; i < OPERATION_SET.length; i++) {
+      operationNames[i] = OPERATION_SET[i].getGenericMnemonic();
+    }
+    return new Profiler(operationNames);
+  }
 
-  private void updateInstructionLevelStatistics(final int clockPeriods,
-                                                final long fetchSystemNanoTime)
+  /**
+   * Returns the execution profile of the CPU thread, or null, if
+   * profiling has never been enabled.  Other threads should evaluate
+   * the returned object only while the CPU is stopped.
+   */
+  public Profiler getProfiler()
   {
-    final long systemNanoTime = System.nanoTime();
-    final long wallClockTime = getWallClockTime();
-    final long systemInstructionCycleTime =
-      systemNanoTime - prevSystemNanoTime;
-    final long wallClockInstructionCycleTime =
-      wallClockTime - prevWallClockTime;
-    final long systemInstructionPerformanceTime =
-      systemNanoTime - fetchSystemNanoTime;
-
-    final long currentJitterNanoTime =
-      wallClockInstructionCycleTime - systemInstructionCycleTime;
-    avgJitterNanoTime =
-      0.9 * avgJitterNanoTime +
-      0.1 * currentJitterNanoTime;
-
-    final double currentSpeed =
-      1000000000.0 * clockPeriods / wallClockInstructionCycleTime;
-    avgSpeed =
-      0.9 * avgSpeed +
-      0.1 * currentSpeed;
-
-    final double currentThreadLoad =
-      ((double)systemInstructionPerformanceTime) / systemInstructionCycleTime;
-    avgThreadLoad =
-      0.9 * avgThreadLoad +
-      0.1 * currentThreadLoad;
-
-    prevSystemNanoTime = systemNanoTime;
-    prevWallClockTime = wallClockTime;
+    return profiler;
+  }
+
+  /**
+   * Enables or disables counting executed instructions per
+   * operation and per address.  The profile is created when
+   * profiling is enabled for the first time.  Counters are not
+   * reset, such that profiling may be paused and continued.
+   */
+  public void setProfilingEnabled(final boolean enabled)
+  {
+    if (enabled && (profiler == null)) {
+      // published to the CPU thread by the volatile write below
+      profiler = allocateProfiler();
+    }
+    profilingEnabled = enabled;
+  }
+
+  public boolean isProfilingEnabled()
+  {
+    return profilingEnabled;
+  }
+
+  // *** STATISTICS ***********************************************************
+
+  /*
+   * Rather than after each instruction, statistics are sampled once
+   * per STATISTICS_SLICE_TIME of emulated time by an event of the
+   * event scheduler.  When the CPU runs faster than real time, slices
+   * are stretched to span STATISTICS_SLICE_TIME of host time, such
+   * that sampling overhead does not grow with speed.  The sampling
+   * event is always pending, such that enabling statistics from any
+   * thread only needs to set a flag.
+   */
+  private static final long STATISTICS_SLICE_TIME = 10000000; // [ns]
+  private static final long MAX_STATISTICS_SLICE_TIME = 1000000000; // [ns]
+
+  private StatisticsSnapshot statistics;
+  private ThreadMXBean threadMXBean;
+  private int statisticsDeviceId;
+  private boolean statisticsSampling;
+  private long sliceStartSystemTime;
+  private long sliceStartThreadCpuTime;
+  private long sliceStartWallClockCycles;
+  private long sliceStartWallClockTime;
+  private volatile double avgJitterNanoTime;
+  private volatile double avgSpeed;
+  private volatile double avgThreadLoad;
+
+  private void createStatistics()
+  {
+    statistics = new StatisticsSnapshot();
+    threadMXBean = ManagementFactory.getThreadMXBean();
+    if (!threadMXBean.isCurrentThreadCpuTimeSupported()) {
+      threadMXBean = null;
+    }
+    statisticsSampling = false;
+    statisticsDeviceId = eventScheduler.addDevice(new EventScheduler.Device() {
+        public void eventDue(final long timePerClockCycle,
+                             final long wallClockCycles,
+                             final long wallClockTime)
+        {
+          sampleStatistics(wallClockCycles, wallClockTime);
+        }
+      });
+    eventScheduler.scheduleAtTime(statisticsDeviceId,
+                                  wallClockTime + STATISTICS_SLICE_TIME);
+  }
+
+  private void startStatisticsSlice(final long wallClockCycles,
+                                    final long wallClockTime)
+  {
+    sliceStartSystemTime = System.nanoTime();
+    sliceStartThreadCpuTime =
+      threadMXBean != null ? threadMXBean.getCurrentThreadCpuTime() : 0;
+    sliceStartWallClockCycles = wallClockCycles;
+    sliceStartWallClockTime = wallClockTime;
+  }
+
+  private void sampleStatistics(final long wallClockCycles,
+                                final long wallClockTime)
+  {
+    long sliceTime = STATISTICS_SLICE_TIME;
+    if (!statisticsEnabled) {
+      statisticsSampling = false;
+    } else if (!statisticsSampling) {
+      // first slice after enabling statistics
+      statistics.clear();
+      startStatisticsSlice(wallClockCycles, wallClockTime);
+      statisticsSampling = true;
+    } else {
+      final long systemTime = System.nanoTime();
+      final long threadCpuTime =
+        threadMXBean != null ? threadMXBean.getCurrentThreadCpuTime() : 0;
+      final long systemSliceTime = systemTime - sliceStartSystemTime;
+      final long wallClockSliceTime = wallClockTime - sliceStartWallClockTime;
+      if (systemSliceTime > 0) {
+        final double speed =
+          1000000000.0 * (wallClockCycles - sliceStartWallClockCycles) /
+          systemSliceTime;
+        final double threadLoad =
+          threadMXBean != null ?
+          ((double)(threadCpuTime - sliceStartThreadCpuTime)) /
+          systemSliceTime :
+          0.0;
+        final long jitter = wallClockSliceTime - systemSliceTime;
+        statistics.addSample(speed, threadLoad, jitter);
+        avgSpeed = 0.9 * avgSpeed + 0.1 * speed;
+        avgThreadLoad = 0.9 * avgThreadLoad + 0.1 * threadLoad;
+        avgJitterNanoTime = 0.9 * avgJitterNanoTime + 0.1 * jitter;
+        if (systemSliceTime < STATISTICS_SLICE_TIME) {
+          sliceTime =
+            Math.min(wallClockSliceTime * STATISTICS_SLICE_TIME /
+                     systemSliceTime, MAX_STATISTICS_SLICE_TIME);
+        }
+      }
+      sliceStartSystemTime = systemTime;
+      sliceStartThreadCpuTime = threadCpuTime;
+      sliceStartWallClockCycles = wallClockCycles;
+      sliceStartWallClockTime = wallClockTime;
+    }
+    eventScheduler.scheduleAtTime(statisticsDeviceId,
+                                  wallClockTime + sliceTime);
+  }
+
+  /**
+   * Returns the live statistics of the CPU thread.  Other threads
+   * must not evaluate the returned object directly, but take a copy
+   * via StatisticsSnapshot.copyFrom().
+   */
+  public StatisticsSnapshot getStatistics()
+  {
+    return statistics;
   }
 
   public double getAvgSpeed()
@@ -4598,6 +6975,8 @@ public class Z80 implements CPU {
   public void speedChanged(final int frequency)
   {
     timePerClockCycle = 1000000000 / frequency;
+    // event cycles depend on speed => let peripherals reschedule
+    eventScheduler.requestReschedule();
   }
 
   public void statisticsEnabledChanged(final boolean enabled)
@@ -4610,6 +6989,18 @@ public class Z80 implements CPU {
     // This callback is handled by Monitor class.
     // Hence, do nothing here.
   }
+
+  public void hybridWaitChanged(final boolean hybridWait)
+  {
+    // This callback is handled by CPUControl class.
+    // Hence, do nothing here.
+  }
+
+  public void maxSpeedChanged(final boolean maxSpeed)
+  {
+    // This callback is handled by CPUControl class.
+    // Hence, do nothing here.
+  }
 }
 
 /*